@@ -18,6 +18,8 @@
  */
 package org.apache.shindig.common.cache;
 
+import java.util.List;
+
 /**
  * A basic cache interface. If necessary, we can always move to the commons
  * cache for the future.
@@ -36,6 +38,31 @@ public interface Cache<K, V> {
    */
   public void addElement(K key, V value);
 
+  /**
+   * Stores an entry that is to be refreshed, and that expires, after the given times. Expired
+   * entries are never returned, and are removed from the cache without waiting to be evicted.
+   *
+   * @param refreshAfter Milliseconds after which {@link #getEntry} reports that the entry should
+   * be refreshed, or -1 for never.
+   * @param expireAfter Milliseconds after which the entry expires, or -1 for never.
+   */
+  public void addElement(K key, V value, long refreshAfter, long expireAfter);
+
+  /**
+   * Retrieves an entry along with whether it is due to be refreshed.
+   *
+   * @return The entry stored under the given key, or null if it doesn't exist.
+   */
+  public CacheEntry<V> getEntry(K key);
+
+  /**
+   * Checks for an entry without counting a lookup, changing which entries are evicted first, or
+   * consulting a remote tier. An expired entry that has not been removed yet may be reported.
+   *
+   * @return True if an entry is stored locally under the given key.
+   */
+  public boolean containsElement(K key);
+
   /**
    * Removes an entry from the cache.
    *
@@ -56,4 +83,18 @@ public interface Cache<K, V> {
    * @return The current size of the cache, or -1 if the cache does not support returning sizes.
    */
   public long getSize();
+
+  /**
+   * @return The activity of the cache so far.
+   */
+  public CacheStats getStats();
+
+  /**
+   * Lists the entries most worth keeping, such as when saving the cache to be restored after a
+   * restart. Caches that can't list their entries return an empty list.
+   *
+   * @param limit The largest number of entries to list.
+   * @return Copies of up to limit unexpired entries, most valuable first.
+   */
+  public List<SnapshotEntry<K, V>> getHottestEntries(int limit);
 }
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+/**
+ * A value retrieved from a cache, along with whether it is due to be refreshed.
+ */
+public final class CacheEntry<V> {
+  private final V value;
+  private final boolean refreshNeeded;
+
+  public CacheEntry(V value, boolean refreshNeeded) {
+    this.value = value;
+    this.refreshNeeded = refreshNeeded;
+  }
+
+  public V getValue() {
+    return value;
+  }
+
+  /**
+   * @return True if the entry is older than the refresh time it was stored with. The value is
+   * still usable, but the caller should arrange to replace it.
+   */
+  public boolean isRefreshNeeded() {
+    return refreshNeeded;
+  }
+}
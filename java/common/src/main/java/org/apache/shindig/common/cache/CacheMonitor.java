@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Exposes the size and statistics of a cache over JMX.
+ */
+public class CacheMonitor implements CacheMonitorMBean {
+  private static final Logger LOG = Logger.getLogger(CacheMonitor.class.getName());
+  public static final String DOMAIN = "org.apache.shindig";
+
+  private final Cache<?, ?> cache;
+
+  public CacheMonitor(Cache<?, ?> cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Registers a monitor for the cache with the platform MBean server, under the name
+   * org.apache.shindig:type=Cache,name=<name>.
+   */
+  public static void register(String name, Cache<?, ?> cache) {
+    try {
+      ObjectName objectName =
+          new ObjectName(DOMAIN + ":type=Cache,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new CacheMonitor(cache), objectName);
+    } catch (InstanceAlreadyExistsException e) {
+      // Another cache provider in this JVM, such as in another web application, got there first.
+      LOG.info("Cache " + name + " is already registered with JMX");
+    } catch (JMException e) {
+      LOG.log(Level.WARNING, "Unable to register cache " + name + " with JMX", e);
+    }
+  }
+
+  public long getSize() {
+    return cache.getSize();
+  }
+
+  public long getCapacity() {
+    return cache.getCapacity();
+  }
+
+  public long getHitCount() {
+    return cache.getStats().getHitCount();
+  }
+
+  public long getMissCount() {
+    return cache.getStats().getMissCount();
+  }
+
+  public long getEvictionCount() {
+    return cache.getStats().getEvictionCount();
+  }
+
+  public double getHitRate() {
+    return cache.getStats().getHitRate();
+  }
+}
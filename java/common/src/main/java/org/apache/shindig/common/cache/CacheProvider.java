@@ -19,6 +19,8 @@ package org.apache.shindig.common.cache;
 
 import com.google.inject.ImplementedBy;
 
+import java.util.Map;
+
 @ImplementedBy(LruCacheProvider.class)
 public interface CacheProvider {
   /**
@@ -32,4 +34,23 @@ public interface CacheProvider {
    * @return A Cache configured to the required specification.
    */
   public <K, V> Cache<K, V> createCache(String name);
+
+  /**
+   * Create a named single instance cache whose size is bounded by the total weight of its entries,
+   * as computed by the given weigher. Providers that can't bound caches by weight, or that have no
+   * weight budget configured for the named cache, return the same cache as
+   * {@link #createCache(String)}.
+   *
+   * @param <K>  The Key type for the cache
+   * @param <V>  The pay-load type
+   * @param name The name of the cache.
+   * @param weigher Computes the weight, usually the approximate size in bytes, of each entry.
+   * @return A Cache configured to the required specification.
+   */
+  public <K, V> Cache<K, V> createCache(String name, Weigher<? super K, ? super V> weigher);
+
+  /**
+   * @return The named caches created by this cache manager so far, keyed by name.
+   */
+  public Map<String, Cache<?, ?>> getCaches();
 }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import com.google.common.collect.MapMaker;
+import com.google.inject.Singleton;
+
+import java.util.Map;
+
+/**
+ * The serializers for named caches. Components that can have their cached entries kept outside
+ * of the JVM register serializers for their keys and values here under the name of their cache.
+ * Caches without serializers are kept in memory only.
+ */
+@Singleton
+public class CacheSerializerRegistry {
+  private final Map<String, CacheSerializer<?>> keySerializers = new MapMaker().makeMap();
+  private final Map<String, CacheSerializer<?>> valueSerializers = new MapMaker().makeMap();
+
+  public void register(String cacheName, CacheSerializer<?> keySerializer,
+      CacheSerializer<?> valueSerializer) {
+    keySerializers.put(cacheName, keySerializer);
+    valueSerializers.put(cacheName, valueSerializer);
+  }
+
+  /**
+   * @return The serializer for the keys of the named cache, or null if there is none.
+   */
+  @SuppressWarnings("unchecked")
+  public <K> CacheSerializer<K> getKeySerializer(String cacheName) {
+    return (CacheSerializer<K>) keySerializers.get(cacheName);
+  }
+
+  /**
+   * @return The serializer for the values of the named cache, or null if there is none.
+   */
+  @SuppressWarnings("unchecked")
+  public <V> CacheSerializer<V> getValueSerializer(String cacheName) {
+    return (CacheSerializer<V>) valueSerializers.get(cacheName);
+  }
+}
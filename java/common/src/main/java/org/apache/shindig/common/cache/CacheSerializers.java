@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.util.CharsetUtil;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serializers for common kinds of cache keys.
+ */
+public final class CacheSerializers {
+  private CacheSerializers() {}
+
+  /**
+   * Writes strings as UTF-8, without the length limit of {@link DataOutput#writeUTF}.
+   */
+  public static final CacheSerializer<String> STRING = new CacheSerializer<String>() {
+    public void write(String value, DataOutput out) throws IOException {
+      byte[] bytes = CharsetUtil.getUtf8Bytes(value);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    public String read(DataInput in) throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return CharsetUtil.UTF8.decode(ByteBuffer.wrap(bytes)).toString();
+    }
+  };
+
+  public static final CacheSerializer<Uri> URI = new CacheSerializer<Uri>() {
+    public void write(Uri value, DataOutput out) throws IOException {
+      STRING.write(value.toString(), out);
+    }
+
+    public Uri read(DataInput in) throws IOException {
+      try {
+        return Uri.parse(STRING.read(in));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Invalid uri: " + e.getMessage());
+      }
+    }
+  };
+}
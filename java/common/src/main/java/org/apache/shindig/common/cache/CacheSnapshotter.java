@@ -0,0 +1,381 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import org.apache.shindig.common.util.DaemonThreadFactory;
+import org.apache.shindig.common.util.TimeSource;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves the hottest entries of the caches to a file, so that a restarted server can start with
+ * warm caches instead of fetching everything again from origin servers.
+ *
+ * Only caches with serializers registered in {@link CacheSerializerRegistry} are saved. Each
+ * entry is saved with its refresh and expiration times; entries that have expired by the time
+ * the file is read are not restored. Values are deserialized on several threads in parallel,
+ * which matters for values that are parsed again when read, such as gadget specs.
+ *
+ * Saving and restoring are configured with:
+ *
+ * shindig.cache.snapshot.file - the file to use. Blank disables snapshots.
+ * shindig.cache.snapshot.max-entries - the largest number of entries saved per cache.
+ * shindig.cache.snapshot.interval - milliseconds between saves, or 0 to save only at shutdown.
+ */
+@Singleton
+public class CacheSnapshotter {
+  private static final Logger logger = Logger.getLogger(CacheSnapshotter.class.getName());
+  private static final int MAGIC = 0x53434e50;
+  private static final byte VERSION = 1;
+  private static final int PROGRESS_STEPS = 10;
+
+  private final CacheProvider cacheProvider;
+  private final CacheSerializerRegistry serializers;
+  private final File file;
+  private final int maxEntries;
+  private final long interval;
+  private final AtomicBoolean started = new AtomicBoolean();
+  private volatile boolean restored;
+  private volatile TimeSource timeSource = new TimeSource();
+
+  @Inject
+  public CacheSnapshotter(CacheProvider cacheProvider, CacheSerializerRegistry serializers,
+      @Named("shindig.cache.snapshot.file") String file,
+      @Named("shindig.cache.snapshot.max-entries") int maxEntries,
+      @Named("shindig.cache.snapshot.interval") long interval) {
+    this.cacheProvider = cacheProvider;
+    this.serializers = serializers;
+    this.file = file.trim().length() == 0 ? null : new File(file.trim());
+    this.maxEntries = maxEntries;
+    this.interval = interval;
+  }
+
+  /**
+   * Set a new time source. For use in testing.
+   */
+  public void setTimeSource(TimeSource timeSource) {
+    this.timeSource = timeSource;
+  }
+
+  /**
+   * Restores the saved entries in the background, then saves the caches periodically and at
+   * shutdown. Call once the caches to be restored have been created and their serializers
+   * registered. Does nothing if snapshots are disabled or have already been started.
+   */
+  public void start() {
+    if (file == null || !started.compareAndSet(false, true)) {
+      return;
+    }
+    final ScheduledExecutorService scheduler
+        = Executors.newSingleThreadScheduledExecutor(DaemonThreadFactory.INSTANCE);
+    final Runnable saver = new Runnable() {
+      public void run() {
+        saveQuietly();
+      }
+    };
+    scheduler.execute(new Runnable() {
+      public void run() {
+        restore();
+        // Saving before the restore completes would replace the file with a partial snapshot.
+        restored = true;
+        if (interval > 0) {
+          scheduler.scheduleWithFixedDelay(saver, interval, interval, TimeUnit.MILLISECONDS);
+        }
+      }
+    });
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        scheduler.shutdownNow();
+        if (restored) {
+          saveQuietly();
+        }
+      }
+    });
+  }
+
+  private void saveQuietly() {
+    try {
+      save();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to save cache snapshot to " + file, e);
+    }
+  }
+
+  /**
+   * Writes the hottest entries of each cache to the snapshot file, replacing it.
+   *
+   * @return The number of entries saved.
+   */
+  public synchronized int save() throws IOException {
+    long start = System.currentTimeMillis();
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Unable to create directory " + parent);
+    }
+    File temp = new File(file.getPath() + ".tmp");
+    int saved = 0;
+    DataOutputStream out
+        = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      for (Map.Entry<String, Cache<?, ?>> entry : cacheProvider.getCaches().entrySet()) {
+        saved += writeCache(entry.getKey(), entry.getValue(), out);
+      }
+      out.writeBoolean(false);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+    // Replace the old snapshot only once the new one is complete.
+    if ((file.exists() && !file.delete()) || !temp.renameTo(file)) {
+      temp.delete();
+      throw new IOException("Unable to replace " + file);
+    }
+    logger.info("Saved " + saved + " cache entries to " + file + " in " +
+        (System.currentTimeMillis() - start) + "ms");
+    return saved;
+  }
+
+  /**
+   * Layout of each cache:
+   *
+   * boolean - true
+   * UTF - cache name
+   * int - number of entries
+   * entries - each an int length followed by that many bytes, holding the refresh time, the
+   *     expiration time, the key and the value. Entries that could not be serialized have a
+   *     length of 0.
+   *
+   * The snapshot ends with a boolean false.
+   */
+  private <K, V> int writeCache(String name, Cache<K, V> cache, DataOutputStream out)
+      throws IOException {
+    CacheSerializer<K> keySerializer = serializers.getKeySerializer(name);
+    CacheSerializer<V> valueSerializer = serializers.getValueSerializer(name);
+    if (keySerializer == null || valueSerializer == null) {
+      return 0;
+    }
+    List<SnapshotEntry<K, V>> entries = cache.getHottestEntries(maxEntries);
+    out.writeBoolean(true);
+    out.writeUTF(name);
+    out.writeInt(entries.size());
+
+    int saved = 0;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream entryOut = new DataOutputStream(bytes);
+    for (SnapshotEntry<K, V> entry : entries) {
+      bytes.reset();
+      try {
+        entryOut.writeLong(entry.getRefreshTime());
+        entryOut.writeLong(entry.getExpirationTime());
+        keySerializer.write(entry.getKey(), entryOut);
+        valueSerializer.write(entry.getValue(), entryOut);
+        entryOut.flush();
+      } catch (IOException e) {
+        logger.log(Level.FINE, "Unable to save an entry of cache " + name, e);
+        out.writeInt(0);
+        continue;
+      }
+      out.writeInt(bytes.size());
+      bytes.writeTo(out);
+      ++saved;
+    }
+    return saved;
+  }
+
+  /**
+   * Reads the snapshot file back into the caches. Entries are deserialized in parallel, and this
+   * returns once they have all been added. Entries of caches that don't exist yet, and entries
+   * already replaced by fresher ones, are skipped.
+   *
+   * @return The number of entries restored.
+   */
+  public int restore() {
+    if (!file.exists()) {
+      logger.info("No cache snapshot at " + file);
+      return 0;
+    }
+    long start = System.currentTimeMillis();
+    AtomicInteger total = new AtomicInteger();
+    ExecutorService workers = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), DaemonThreadFactory.INSTANCE);
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+        logger.warning("Ignoring cache snapshot " + file + " in an unknown format");
+        return 0;
+      }
+      while (in.readBoolean()) {
+        readCache(in, workers, total);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cache snapshot " + file +
+          " is damaged. Restoring the entries read before the damage.", e);
+    } finally {
+      IOUtils.closeQuietly(in);
+      workers.shutdown();
+      try {
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        workers.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+    logger.info("Restored " + total.get() + " cache entries from " + file + " in " +
+        (System.currentTimeMillis() - start) + "ms");
+    return total.get();
+  }
+
+  private <K, V> void readCache(DataInputStream in, ExecutorService workers,
+      AtomicInteger total) throws IOException {
+    String name = in.readUTF();
+    int count = in.readInt();
+    @SuppressWarnings("unchecked")
+    Cache<K, V> cache = (Cache<K, V>) cacheProvider.getCaches().get(name);
+    CacheSerializer<K> keySerializer = serializers.getKeySerializer(name);
+    CacheSerializer<V> valueSerializer = serializers.getValueSerializer(name);
+    if (cache == null || keySerializer == null || valueSerializer == null) {
+      logger.info("Skipping " + count + " saved entries of unknown cache " + name);
+      for (int i = 0; i < count; ++i) {
+        in.readFully(new byte[in.readInt()]);
+      }
+      return;
+    }
+
+    logger.info("Restoring " + count + " entries of cache " + name);
+    Progress progress = new Progress(name, count, total);
+    for (int i = 0; i < count; ++i) {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      if (bytes.length > 0) {
+        workers.execute(new EntryRestorer<K, V>(cache, keySerializer, valueSerializer, bytes,
+            progress));
+      } else {
+        progress.done(false);
+      }
+    }
+  }
+
+  /**
+   * Deserializes a single entry and adds it to its cache.
+   */
+  private final class EntryRestorer<K, V> implements Runnable {
+    private final Cache<K, V> cache;
+    private final CacheSerializer<K> keySerializer;
+    private final CacheSerializer<V> valueSerializer;
+    private final byte[] bytes;
+    private final Progress progress;
+
+    private EntryRestorer(Cache<K, V> cache, CacheSerializer<K> keySerializer,
+        CacheSerializer<V> valueSerializer, byte[] bytes, Progress progress) {
+      this.cache = cache;
+      this.keySerializer = keySerializer;
+      this.valueSerializer = valueSerializer;
+      this.bytes = bytes;
+      this.progress = progress;
+    }
+
+    public void run() {
+      boolean added = false;
+      try {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        long refreshTime = in.readLong();
+        long expirationTime = in.readLong();
+        long now = timeSource.currentTimeMillis();
+        if (now < expirationTime) {
+          K key = keySerializer.read(in);
+          // Don't replace entries added since the server started. This is checked without a
+          // lookup, so restoring doesn't count as misses or wait on a remote tier.
+          if (!cache.containsElement(key)) {
+            V value = valueSerializer.read(in);
+            cache.addElement(key, value, remaining(refreshTime, now),
+                remaining(expirationTime, now));
+            added = true;
+          }
+        }
+      } catch (IOException e) {
+        logger.log(Level.FINE, "Unable to restore an entry of cache " + progress.name, e);
+      } catch (RuntimeException e) {
+        logger.log(Level.FINE, "Unable to restore an entry of cache " + progress.name, e);
+      }
+      progress.done(added);
+    }
+  }
+
+  private static long remaining(long deadline, long now) {
+    return deadline == SnapshotEntry.NEVER ? -1 : Math.max(0, deadline - now);
+  }
+
+  /**
+   * Logs the progress of restoring a cache.
+   */
+  private static final class Progress {
+    private final String name;
+    private final int total;
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger restored = new AtomicInteger();
+    private final AtomicInteger totalRestored;
+
+    private Progress(String name, int total, AtomicInteger totalRestored) {
+      this.name = name;
+      this.total = total;
+      this.totalRestored = totalRestored;
+    }
+
+    void done(boolean added) {
+      if (added) {
+        restored.incrementAndGet();
+        totalRestored.incrementAndGet();
+      }
+      int count = processed.incrementAndGet();
+      if (count == total) {
+        logger.info("Restored " + restored.get() + " of " + total + " entries of cache " + name);
+      } else if (total >= PROGRESS_STEPS && count % (total / PROGRESS_STEPS) == 0) {
+        logger.info("Restoring cache " + name + ": " + (count * 100L / total) + "% done");
+      }
+    }
+  }
+}
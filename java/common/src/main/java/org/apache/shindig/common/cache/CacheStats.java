@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+/**
+ * A snapshot of the activity of a cache since it was created.
+ */
+public final class CacheStats {
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+
+  public CacheStats(long hitCount, long missCount, long evictionCount) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+  }
+
+  /**
+   * @return The number of lookups that found an entry.
+   */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return The number of lookups that found nothing.
+   */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return The number of entries removed to make room for others, or because they expired.
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @return The total number of lookups.
+   */
+  public long getRequestCount() {
+    return hitCount + missCount;
+  }
+
+  /**
+   * @return The fraction of lookups that found an entry, or 1 if there have been no lookups.
+   */
+  public double getHitRate() {
+    long requests = getRequestCount();
+    return requests == 0 ? 1.0 : (double) hitCount / requests;
+  }
+
+  /**
+   * @return The fraction of lookups that found nothing, or 0 if there have been no lookups.
+   */
+  public double getMissRate() {
+    long requests = getRequestCount();
+    return requests == 0 ? 0.0 : (double) missCount / requests;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof CacheStats)) {
+      return false;
+    }
+    CacheStats other = (CacheStats) obj;
+    return hitCount == other.hitCount && missCount == other.missCount &&
+        evictionCount == other.evictionCount;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (hitCount ^ (missCount * 31) ^ (evictionCount * 961));
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats[hits=" + hitCount + ", misses=" + missCount + ", evictions=" +
+        evictionCount + ']';
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import org.apache.shindig.common.util.TimeSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the refresh and expiration times of the entries of a cache that can't hold them
+ * alongside its values. Only entries stored with a refresh or expiration time are tracked.
+ *
+ * Not thread safe.
+ */
+final class ExpirationTracker<K> {
+  static final long NEVER = Long.MAX_VALUE;
+
+  private final Map<K, Times<K>> times = new HashMap<K, Times<K>>();
+  private TimeSource timeSource = new TimeSource();
+  private TimerWheel<K> wheel;
+  private final List<K> expired = new ArrayList<K>();
+
+  /**
+   * Converts a relative time to an absolute one.
+   *
+   * @param after Milliseconds from now, or negative for never.
+   */
+  static long deadline(long now, long after) {
+    return after < 0 ? NEVER : now + after;
+  }
+
+  long now() {
+    return timeSource.currentTimeMillis();
+  }
+
+  void setTimeSource(TimeSource timeSource) {
+    this.timeSource = timeSource;
+    wheel = null;
+  }
+
+  /**
+   * Records the times for an entry, replacing any previous times.
+   */
+  void set(K key, long refreshAfter, long expireAfter) {
+    clear(key);
+    if (refreshAfter < 0 && expireAfter < 0) {
+      return;
+    }
+    long now = now();
+    long expirationTime = deadline(now, expireAfter);
+    TimerWheel.Timer<K> timer = null;
+    if (expirationTime != NEVER) {
+      if (wheel == null) {
+        wheel = new TimerWheel<K>(now);
+      }
+      timer = wheel.schedule(key, expirationTime);
+    }
+    times.put(key, new Times<K>(deadline(now, refreshAfter), expirationTime, timer));
+  }
+
+  /**
+   * Stops tracking an entry.
+   */
+  void clear(K key) {
+    if (!times.isEmpty()) {
+      Times<K> removed = times.remove(key);
+      if (removed != null && removed.timer != null) {
+        wheel.cancel(removed.timer);
+      }
+    }
+  }
+
+  long getRefreshTime(K key) {
+    Times<K> entry = times.isEmpty() ? null : times.get(key);
+    return entry == null ? NEVER : entry.refreshTime;
+  }
+
+  long getExpirationTime(K key) {
+    Times<K> entry = times.isEmpty() ? null : times.get(key);
+    return entry == null ? NEVER : entry.expirationTime;
+  }
+
+  boolean isExpired(K key, long now) {
+    Times<K> entry = times.isEmpty() ? null : times.get(key);
+    return entry != null && now >= entry.expirationTime;
+  }
+
+  boolean isRefreshNeeded(K key, long now) {
+    Times<K> entry = times.isEmpty() ? null : times.get(key);
+    return entry != null && now >= entry.refreshTime;
+  }
+
+  /**
+   * @return The keys of entries that have expired since the last call. They are no longer
+   * tracked. The list is reused by the next call.
+   */
+  List<K> expire() {
+    expired.clear();
+    if (wheel != null) {
+      wheel.advance(now(), expired);
+      for (K key : expired) {
+        times.remove(key);
+      }
+    }
+    return expired;
+  }
+
+  private static final class Times<K> {
+    private final long refreshTime;
+    private final long expirationTime;
+    private final TimerWheel.Timer<K> timer;
+
+    private Times(long refreshTime, long expirationTime, TimerWheel.Timer<K> timer) {
+      this.refreshTime = refreshTime;
+      this.expirationTime = expirationTime;
+      this.timer = timer;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A client for an {@link InProcessCacheServer}. This is the default {@link RemoteCacheClient},
+ * which gives a single server the behavior of a cluster sharing a cache.
+ */
+public class InProcessCacheClient implements RemoteCacheClient {
+  private final InProcessCacheServer server;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+  @Inject
+  public InProcessCacheClient(InProcessCacheServer server) {
+    this.server = server;
+    server.connect(this);
+  }
+
+  public byte[] get(String key) {
+    return server.get(key);
+  }
+
+  public Map<String, byte[]> getAll(Collection<String> keys) {
+    Map<String, byte[]> values = Maps.newHashMapWithExpectedSize(keys.size());
+    for (String key : keys) {
+      byte[] value = server.get(key);
+      if (value != null) {
+        values.put(key, value);
+      }
+    }
+    return values;
+  }
+
+  public void set(String key, byte[] value, long expireAfter) {
+    server.set(this, key, value, expireAfter);
+  }
+
+  public void delete(String key) {
+    server.delete(this, key);
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  void invalidated(String key) {
+    for (Listener listener : listeners) {
+      listener.invalidated(key);
+    }
+  }
+}
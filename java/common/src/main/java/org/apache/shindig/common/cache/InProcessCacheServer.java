@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import org.apache.shindig.common.util.TimeSource;
+
+import com.google.common.collect.MapMaker;
+import com.google.inject.Singleton;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A stand-in for a shared key/value store, for tests and single server deployments. Every
+ * {@link InProcessCacheClient} connected to the same server sees the same values, and is told
+ * about changes made through the others just as the servers of a cluster would be.
+ *
+ * Values are copied on the way in and out, as they would be by a network store.
+ */
+@Singleton
+public class InProcessCacheServer {
+  private final ConcurrentMap<String, StoredValue> data = new MapMaker().makeMap();
+  private final List<InProcessCacheClient> clients
+      = new CopyOnWriteArrayList<InProcessCacheClient>();
+  private volatile TimeSource timeSource = new TimeSource();
+
+  /**
+   * Set a new time source. For use in testing.
+   */
+  public void setTimeSource(TimeSource timeSource) {
+    this.timeSource = timeSource;
+  }
+
+  /**
+   * @return The number of values stored, including expired values not yet read.
+   */
+  public int size() {
+    return data.size();
+  }
+
+  void connect(InProcessCacheClient client) {
+    clients.add(client);
+  }
+
+  byte[] get(String key) {
+    StoredValue stored = data.get(key);
+    if (stored == null) {
+      return null;
+    }
+    if (timeSource.currentTimeMillis() >= stored.expirationTime) {
+      data.remove(key, stored);
+      return null;
+    }
+    return stored.value.clone();
+  }
+
+  void set(InProcessCacheClient from, String key, byte[] value, long expireAfter) {
+    long expirationTime
+        = ExpirationTracker.deadline(timeSource.currentTimeMillis(), expireAfter);
+    data.put(key, new StoredValue(value.clone(), expirationTime));
+    invalidate(from, key);
+  }
+
+  void delete(InProcessCacheClient from, String key) {
+    if (data.remove(key) != null) {
+      invalidate(from, key);
+    }
+  }
+
+  private void invalidate(InProcessCacheClient from, String key) {
+    for (InProcessCacheClient client : clients) {
+      if (client != from) {
+        client.invalidated(key);
+      }
+    }
+  }
+
+  private static final class StoredValue {
+    private final byte[] value;
+    private final long expirationTime;
+
+    private StoredValue(byte[] value, long expirationTime) {
+      this.value = value;
+      this.expirationTime = expirationTime;
+    }
+  }
+}
@@ -18,7 +18,12 @@
  */
 package org.apache.shindig.common.cache;
 
+import org.apache.shindig.common.util.TimeSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -26,6 +31,8 @@ import java.util.Map;
  */
 public class LruCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
   final int capacity;
+  private final transient StatsCounter stats = new StatsCounter();
+  private final transient ExpirationTracker<K> expirations = new ExpirationTracker<K>();
 
   public LruCache(int capacity) {
     super(capacity, 0.75f, true);
@@ -33,14 +40,38 @@ public class LruCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
   }
 
   public synchronized V getElement(K key) {
-    return super.get(key);
+    V value = lookup(key, expirations.now());
+    stats.recordLookup(value);
+    return value;
+  }
+
+  public synchronized CacheEntry<V> getEntry(K key) {
+    long now = expirations.now();
+    V value = lookup(key, now);
+    stats.recordLookup(value);
+    return value == null ? null : new CacheEntry<V>(value, expirations.isRefreshNeeded(key, now));
+  }
+
+  public synchronized boolean containsElement(K key) {
+    expireEntries();
+    // Unlike get(), containsKey() leaves the access order alone.
+    return super.containsKey(key) && !expirations.isExpired(key, expirations.now());
   }
 
   public synchronized void addElement(K key, V value) {
+    expireEntries();
     super.put(key, value);
+    expirations.clear(key);
+  }
+
+  public synchronized void addElement(K key, V value, long refreshAfter, long expireAfter) {
+    expireEntries();
+    super.put(key, value);
+    expirations.set(key, refreshAfter, expireAfter);
   }
 
   public synchronized V removeElement(K key) {
+    expirations.clear(key);
     return super.remove(key);
   }
 
@@ -52,8 +83,59 @@ public class LruCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
     return size();
   }
 
+  public CacheStats getStats() {
+    return stats.snapshot();
+  }
+
+  public synchronized List<SnapshotEntry<K, V>> getHottestEntries(int limit) {
+    long now = expirations.now();
+    List<SnapshotEntry<K, V>> hottest = new ArrayList<SnapshotEntry<K, V>>();
+    // Entries are iterated least recently used first.
+    for (Map.Entry<K, V> entry : entrySet()) {
+      K key = entry.getKey();
+      if (!expirations.isExpired(key, now)) {
+        hottest.add(new SnapshotEntry<K, V>(key, entry.getValue(),
+            expirations.getRefreshTime(key), expirations.getExpirationTime(key)));
+      }
+    }
+    Collections.reverse(hottest);
+    return hottest.size() > limit ? hottest.subList(0, limit) : hottest;
+  }
+
+  /**
+   * Set a new time source. For use in testing, before any entries are added.
+   */
+  public synchronized void setTimeSource(TimeSource timeSource) {
+    expirations.setTimeSource(timeSource);
+  }
+
+  private V lookup(K key, long now) {
+    expireEntries();
+    V value = super.get(key);
+    if (value != null && expirations.isExpired(key, now)) {
+      // Not yet reached by the timer wheel.
+      expirations.clear(key);
+      super.remove(key);
+      stats.recordEviction();
+      return null;
+    }
+    return value;
+  }
+
+  private void expireEntries() {
+    for (K key : expirations.expire()) {
+      super.remove(key);
+      stats.recordEviction();
+    }
+  }
+
   @Override
   protected synchronized boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-    return size() > capacity;
+    if (size() > capacity) {
+      expirations.clear(eldest.getKey());
+      stats.recordEviction();
+      return true;
+    }
+    return false;
   }
 }
@@ -26,6 +26,7 @@ import com.google.inject.Key;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -38,6 +39,13 @@ import java.util.logging.Logger;
  *
  * The default value is expected under shindig.cache.lru.default.capacity
  *
+ * Caches created with a {@link Weigher} are additionally bounded by the total weight of their
+ * entries when a budget is configured for them, in the form
+ *
+ * shindig.cache.lru.<cache name>.max-bytes=foo
+ *
+ * Named caches are registered with JMX if shindig.cache.lru.jmx.enabled is true.
+ *
  * An in memory LRU cache only scales so far. For a production-worthy cache, use
  * {@code EhCacheCacheProvider}.
  */
@@ -46,6 +54,7 @@ public class LruCacheProvider implements CacheProvider {
   private final int defaultCapacity;
   private final Injector injector;
   private final Map<String, Cache<?, ?>> caches = new MapMaker().makeMap();
+  private volatile boolean jmxEnabled;
 
   @Inject
   public LruCacheProvider(Injector injector,
@@ -58,42 +67,95 @@ public class LruCacheProvider implements CacheProvider {
     this(null, capacity);
   }
 
+  @Inject(optional = true)
+  public void setJmxEnabled(@Named("shindig.cache.lru.jmx.enabled") boolean jmxEnabled) {
+    this.jmxEnabled = jmxEnabled;
+    if (jmxEnabled) {
+      for (Map.Entry<String, Cache<?, ?>> entry : caches.entrySet()) {
+        CacheMonitor.register(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
   private int getCapacity(String name) {
+    return (int) getConfiguredValue(name, "capacity", defaultCapacity);
+  }
+
+  private long getMaxBytes(String name) {
+    return getConfiguredValue(name, "max-bytes", -1L);
+  }
+
+  private long getConfiguredValue(String name, String setting, long defaultValue) {
     if (injector != null && name != null) {
-      String key = "shindig.cache.lru." + name + ".capacity";
+      String key = "shindig.cache.lru." + name + '.' + setting;
       Key<String> guiceKey = Key.get(String.class, Names.named(key));
       try {
         if (injector.getBinding(guiceKey) == null) {
-          LOG.warning("No LRU capacity configured for " + name);
+          LOG.warning("No LRU " + setting + " configured for " + name);
         } else {
           String value = injector.getInstance(guiceKey);
           try {
-            return Integer.parseInt(value);
+            return Long.parseLong(value);
           } catch (NumberFormatException e) {
-            LOG.warning("Invalid LRU capacity configured for " + name);
+            LOG.warning("Invalid LRU " + setting + " configured for " + name);
           }
         }
       } catch ( ConfigurationException e ) {
-        return defaultCapacity;
+        return defaultValue;
       }
     }
-    return defaultCapacity;
+    return defaultValue;
   }
 
-  @SuppressWarnings("unchecked")
   public <K, V> Cache<K, V> createCache(String name) {
-    int capacity = getCapacity(name);
+    return createCache(name, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <K, V> Cache<K, V> createCache(String name, Weigher<? super K, ? super V> weigher) {
     if (name == null) {
       LOG.info("Creating anonymous cache");
-      return new LruCache<K, V>(capacity);
+      return newCache(name, weigher);
     } else {
       Cache<K, V> cache = (Cache<K, V>) caches.get(name);
       if (cache == null) {
         LOG.info("Creating cache named " + name);
-        cache = new LruCache<K, V>(capacity);
+        cache = newCache(name, weigher);
         caches.put(name, cache);
+        if (jmxEnabled) {
+          CacheMonitor.register(name, cache);
+        }
       }
       return cache;
     }
   }
+
+  public Map<String, Cache<?, ?>> getCaches() {
+    return Collections.unmodifiableMap(caches);
+  }
+
+  private <K, V> Cache<K, V> newCache(String name, Weigher<? super K, ? super V> weigher) {
+    int capacity = getCapacity(name);
+    if (weigher != null) {
+      long maxBytes = getMaxBytes(name);
+      if (maxBytes >= 0) {
+        return newCache(capacity, maxBytes, weigher);
+      }
+    }
+    return newCache(capacity, -1, null);
+  }
+
+  /**
+   * Creates a cache holding at most capacity entries.
+   *
+   * @param maxBytes The largest total weight of the entries, if weigher is not null.
+   * @param weigher Weighs the entries, or null if the cache is bounded by capacity only.
+   */
+  protected <K, V> Cache<K, V> newCache(int capacity, long maxBytes,
+      Weigher<? super K, ? super V> weigher) {
+    if (weigher == null) {
+      return new LruCache<K, V>(capacity);
+    }
+    return new WeightedLruCache<K, V>(capacity, maxBytes, weigher);
+  }
 }
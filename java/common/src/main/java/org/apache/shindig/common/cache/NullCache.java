@@ -18,22 +18,39 @@
  */
 package org.apache.shindig.common.cache;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Cache implementation that does nothing.
  */
 public class NullCache<K, V> implements Cache<K, V>{
+  private final StatsCounter stats = new StatsCounter();
 
   public void addElement(K key, V value) {
   }
 
+  public void addElement(K key, V value, long refreshAfter, long expireAfter) {
+  }
+
   public long getCapacity() {
     return 0;
   }
 
   public V getElement(K key) {
+    stats.recordLookup(null);
+    return null;
+  }
+
+  public CacheEntry<V> getEntry(K key) {
+    stats.recordLookup(null);
     return null;
   }
 
+  public boolean containsElement(K key) {
+    return false;
+  }
+
   public long getSize() {
     return 0;
   }
@@ -41,4 +58,12 @@ public class NullCache<K, V> implements Cache<K, V>{
   public V removeElement(K key) {
     return null;
   }
+
+  public CacheStats getStats() {
+    return stats.snapshot();
+  }
+
+  public List<SnapshotEntry<K, V>> getHottestEntries(int limit) {
+    return Collections.emptyList();
+  }
 }
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import org.apache.shindig.common.util.TimeSource;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache with two tiers: a local cache in front of a {@link RemoteCacheClient} shared by every
+ * server in the cluster. Values missing locally are read from the remote tier, and values added
+ * are written to both. When another server replaces or removes a value, the local copy is
+ * dropped.
+ *
+ * Values only reach the remote tier if a {@link CacheSerializer} is registered for the cache.
+ * Remote values carry their refresh and expiration times, so a value read from the remote tier
+ * is refreshed when it would have been on the server that wrote it.
+ */
+public class RemoteCache<K, V> implements Cache<K, V> {
+  private static final Logger logger = Logger.getLogger(RemoteCache.class.getName());
+
+  private final String name;
+  private final Cache<String, LocalEntry<K, V>> local;
+  private final RemoteCacheClient client;
+  private final CacheSerializerRegistry serializers;
+  private final StatsCounter stats = new StatsCounter();
+  private volatile TimeSource timeSource = new TimeSource();
+
+  /**
+   * @param local The local tier, keyed by the remote keys of the entries.
+   */
+  RemoteCache(String name, Cache<String, LocalEntry<K, V>> local, RemoteCacheClient client,
+      CacheSerializerRegistry serializers) {
+    this.name = name;
+    this.local = local;
+    this.client = client;
+    this.serializers = serializers;
+  }
+
+  public V getElement(K key) {
+    CacheEntry<V> entry = getEntry(key);
+    return entry == null ? null : entry.getValue();
+  }
+
+  public CacheEntry<V> getEntry(K key) {
+    String remoteKey = remoteKey(name, key);
+    CacheEntry<LocalEntry<K, V>> cached = local.getEntry(remoteKey);
+    if (cached != null) {
+      stats.recordLookup(cached);
+      return new CacheEntry<V>(cached.getValue().value, cached.isRefreshNeeded());
+    }
+    CacheEntry<V> entry = null;
+    CacheSerializer<V> serializer = serializers.getValueSerializer(name);
+    if (serializer != null) {
+      entry = decode(key, remoteKey, serializer, fetch(remoteKey));
+    }
+    stats.recordLookup(entry);
+    return entry;
+  }
+
+  /**
+   * Checks the local tier only.
+   */
+  public boolean containsElement(K key) {
+    return local.containsElement(remoteKey(name, key));
+  }
+
+  /**
+   * Looks up several entries at once. Entries missing locally are fetched from the remote tier
+   * in a single round trip.
+   *
+   * @return The values found, by key.
+   */
+  public Map<K, V> getElements(Collection<K> keys) {
+    Map<K, V> values = Maps.newHashMapWithExpectedSize(keys.size());
+    Map<String, K> missing = Maps.newHashMap();
+    for (K key : keys) {
+      String remoteKey = remoteKey(name, key);
+      LocalEntry<K, V> cached = local.getElement(remoteKey);
+      if (cached == null) {
+        missing.put(remoteKey, key);
+      } else {
+        values.put(key, cached.value);
+      }
+    }
+
+    CacheSerializer<V> serializer = serializers.getValueSerializer(name);
+    if (!missing.isEmpty() && serializer != null) {
+      Map<String, byte[]> fetched;
+      try {
+        fetched = client.getAll(missing.keySet());
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Unable to read from remote cache " + name, e);
+        fetched = Maps.newHashMap();
+      }
+      for (Map.Entry<String, byte[]> remote : fetched.entrySet()) {
+        K key = missing.get(remote.getKey());
+        CacheEntry<V> entry = decode(key, remote.getKey(), serializer, remote.getValue());
+        if (entry != null) {
+          values.put(key, entry.getValue());
+        }
+      }
+    }
+
+    for (K key : keys) {
+      stats.recordLookup(values.get(key));
+    }
+    return values;
+  }
+
+  public void addElement(K key, V value) {
+    addElement(key, value, -1, -1);
+  }
+
+  public void addElement(K key, V value, long refreshAfter, long expireAfter) {
+    String remoteKey = remoteKey(name, key);
+    local.addElement(remoteKey, new LocalEntry<K, V>(key, value), refreshAfter, expireAfter);
+
+    CacheSerializer<V> serializer = serializers.getValueSerializer(name);
+    if (serializer != null) {
+      long now = timeSource.currentTimeMillis();
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      try {
+        out.writeLong(ExpirationTracker.deadline(now, refreshAfter));
+        out.writeLong(ExpirationTracker.deadline(now, expireAfter));
+        serializer.write(value, out);
+        out.flush();
+        client.set(remoteKey, bytes.toByteArray(), expireAfter);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to serialize " + remoteKey, e);
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Unable to write to remote cache " + name, e);
+      }
+    }
+  }
+
+  public V removeElement(K key) {
+    String remoteKey = remoteKey(name, key);
+    LocalEntry<K, V> removed = local.removeElement(remoteKey);
+    if (serializers.getValueSerializer(name) != null) {
+      try {
+        client.delete(remoteKey);
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Unable to write to remote cache " + name, e);
+      }
+    }
+    return removed == null ? null : removed.value;
+  }
+
+  public long getCapacity() {
+    return local.getCapacity();
+  }
+
+  public long getSize() {
+    return local.getSize();
+  }
+
+  /**
+   * Lists the entries of the local tier.
+   */
+  public List<SnapshotEntry<K, V>> getHottestEntries(int limit) {
+    List<SnapshotEntry<String, LocalEntry<K, V>>> localEntries = local.getHottestEntries(limit);
+    List<SnapshotEntry<K, V>> hottest = Lists.newArrayListWithCapacity(localEntries.size());
+    for (SnapshotEntry<String, LocalEntry<K, V>> entry : localEntries) {
+      LocalEntry<K, V> localEntry = entry.getValue();
+      hottest.add(new SnapshotEntry<K, V>(localEntry.key, localEntry.value,
+          entry.getRefreshTime(), entry.getExpirationTime()));
+    }
+    return hottest;
+  }
+
+  /**
+   * @return Lookups satisfied by either tier count as hits. Evictions are those of the local
+   * tier.
+   */
+  public CacheStats getStats() {
+    CacheStats counts = stats.snapshot();
+    return new CacheStats(counts.getHitCount(), counts.getMissCount(),
+        local.getStats().getEvictionCount());
+  }
+
+  /**
+   * Set a new time source. For use in testing, before any entries are added.
+   */
+  public void setTimeSource(TimeSource timeSource) {
+    this.timeSource = timeSource;
+  }
+
+  /**
+   * Drops the local copy of an entry changed by another server.
+   */
+  void invalidated(String remoteKey) {
+    local.removeElement(remoteKey);
+  }
+
+  static String remoteKey(String name, Object key) {
+    return name + ':' + key;
+  }
+
+  private byte[] fetch(String remoteKey) {
+    try {
+      return client.get(remoteKey);
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Unable to read from remote cache " + name, e);
+      return null;
+    }
+  }
+
+  /**
+   * Decodes a value read from the remote tier and copies it into the local tier.
+   *
+   * @return The entry, or null if there is no usable value.
+   */
+  private CacheEntry<V> decode(K key, String remoteKey, CacheSerializer<V> serializer,
+      byte[] bytes) {
+    if (bytes == null) {
+      return null;
+    }
+    long now = timeSource.currentTimeMillis();
+    V value;
+    long refreshTime;
+    long expirationTime;
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      refreshTime = in.readLong();
+      expirationTime = in.readLong();
+      value = serializer.read(in);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to deserialize " + remoteKey, e);
+      return null;
+    }
+    if (value == null || now >= expirationTime) {
+      return null;
+    }
+    local.addElement(remoteKey, new LocalEntry<K, V>(key, value),
+        remaining(refreshTime, now), remaining(expirationTime, now));
+    return new CacheEntry<V>(value, now >= refreshTime);
+  }
+
+  private static long remaining(long deadline, long now) {
+    return deadline == ExpirationTracker.NEVER ? -1 : Math.max(0, deadline - now);
+  }
+
+  /**
+   * A locally cached value, along with its key so that the local tier can weigh it.
+   */
+  static final class LocalEntry<K, V> {
+    final K key;
+    final V value;
+
+    LocalEntry(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Weighs local entries with the weigher the cache was created with.
+   */
+  static final class LocalWeigher<K, V> implements Weigher<String, LocalEntry<K, V>> {
+    private final Weigher<? super K, ? super V> weigher;
+
+    LocalWeigher(Weigher<? super K, ? super V> weigher) {
+      this.weigher = weigher;
+    }
+
+    public int weigh(String remoteKey, LocalEntry<K, V> entry) {
+      return weigher.weigh(entry.key, entry.value);
+    }
+  }
+}
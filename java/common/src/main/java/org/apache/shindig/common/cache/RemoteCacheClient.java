@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import com.google.inject.ImplementedBy;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A client for a key/value store shared by every server in a cluster, such as memcached.
+ *
+ * The remote tier only saves work, so implementations should not throw when the store is
+ * unavailable. Reads should report a miss and writes should be dropped instead.
+ */
+@ImplementedBy(InProcessCacheClient.class)
+public interface RemoteCacheClient {
+  /**
+   * @return The value stored under key, or null if there is none.
+   */
+  public byte[] get(String key);
+
+  /**
+   * Fetches several values in a single round trip.
+   *
+   * @return The values that were found, by key.
+   */
+  public Map<String, byte[]> getAll(Collection<String> keys);
+
+  /**
+   * Stores a value, replacing any previous value.
+   *
+   * @param expireAfter Milliseconds after which the store may drop the value, or -1 for never.
+   */
+  public void set(String key, byte[] value, long expireAfter);
+
+  public void delete(String key);
+
+  /**
+   * Registers a listener to be told about values written or deleted by other clients.
+   */
+  public void addListener(Listener listener);
+
+  /**
+   * Receives notice of changes made by other clients.
+   */
+  public interface Listener {
+    /**
+     * Called when the value under key has been replaced or deleted by another client.
+     */
+    public void invalidated(String key);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import com.google.common.collect.MapMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A cache provider for clusters of servers. Each cache keeps an LRU cache in memory, configured
+ * as by {@link LruCacheProvider}, in front of a remote tier shared by the whole cluster, so that
+ * a resource fetched by one server need not be fetched again by the others.
+ *
+ * The remote tier is reached through a {@link RemoteCacheClient}. Bind it to a client for the
+ * store of your choice; the default client stores values in process.
+ */
+@Singleton
+public class RemoteCacheProvider implements CacheProvider {
+  private static final Logger LOG = Logger.getLogger(RemoteCacheProvider.class.getName());
+  private final LruCacheProvider localProvider;
+  private final RemoteCacheClient client;
+  private final CacheSerializerRegistry serializers;
+  private final Map<String, RemoteCache<?, ?>> caches = new MapMaker().makeMap();
+
+  @Inject
+  public RemoteCacheProvider(LruCacheProvider localProvider, RemoteCacheClient client,
+      CacheSerializerRegistry serializers) {
+    this.localProvider = localProvider;
+    this.client = client;
+    this.serializers = serializers;
+    client.addListener(new RemoteCacheClient.Listener() {
+      public void invalidated(String key) {
+        int separator = key.indexOf(':');
+        if (separator != -1) {
+          RemoteCache<?, ?> cache = caches.get(key.substring(0, separator));
+          if (cache != null) {
+            cache.invalidated(key);
+          }
+        }
+      }
+    });
+  }
+
+  public <K, V> Cache<K, V> createCache(String name) {
+    return createCache(name, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <K, V> Cache<K, V> createCache(String name, Weigher<? super K, ? super V> weigher) {
+    if (name == null) {
+      // Anonymous caches can't be shared between servers.
+      return localProvider.createCache(null, weigher);
+    }
+    RemoteCache<K, V> cache = (RemoteCache<K, V>) caches.get(name);
+    if (cache == null) {
+      LOG.info("Creating remote cache named " + name);
+      Weigher<String, RemoteCache.LocalEntry<K, V>> localWeigher = null;
+      if (weigher != null) {
+        localWeigher = new RemoteCache.LocalWeigher<K, V>(weigher);
+      }
+      Cache<String, RemoteCache.LocalEntry<K, V>> local
+          = localProvider.createCache(name, localWeigher);
+      cache = new RemoteCache<K, V>(name, local, client, serializers);
+      caches.put(name, cache);
+    }
+    return cache;
+  }
+
+  public Map<String, Cache<?, ?>> getCaches() {
+    return Collections.<String, Cache<?, ?>>unmodifiableMap(caches);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+/**
+ * A copy of a cache entry along with the times it was stored with, so that it can be saved and
+ * later restored with the same refresh and expiration times.
+ */
+public final class SnapshotEntry<K, V> {
+  /**
+   * The time of entries that are never refreshed or never expire.
+   */
+  public static final long NEVER = ExpirationTracker.NEVER;
+
+  private final K key;
+  private final V value;
+  private final long refreshTime;
+  private final long expirationTime;
+
+  public SnapshotEntry(K key, V value, long refreshTime, long expirationTime) {
+    this.key = key;
+    this.value = value;
+    this.refreshTime = refreshTime;
+    this.expirationTime = expirationTime;
+  }
+
+  public K getKey() {
+    return key;
+  }
+
+  public V getValue() {
+    return value;
+  }
+
+  /**
+   * @return The time in milliseconds after which the entry is due to be refreshed, or
+   * {@link #NEVER}.
+   */
+  public long getRefreshTime() {
+    return refreshTime;
+  }
+
+  /**
+   * @return The time in milliseconds after which the entry expires, or {@link #NEVER}.
+   */
+  public long getExpirationTime() {
+    return expirationTime;
+  }
+}
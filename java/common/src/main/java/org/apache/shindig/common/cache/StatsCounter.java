@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts cache activity. The counters are striped by thread, with each stripe on its own cache
+ * line, so that threads on different processors rarely update the same memory.
+ */
+final class StatsCounter {
+  // Longs per stripe: enough to fill a typical 64 byte cache line.
+  private static final int STRIPE_SIZE = 8;
+  private static final int HITS = 0;
+  private static final int MISSES = 1;
+  private static final int EVICTIONS = 2;
+  private static final int NUMBER_OF_STRIPES;
+  static {
+    int stripes = 1;
+    while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+      stripes <<= 1;
+    }
+    NUMBER_OF_STRIPES = stripes;
+  }
+
+  private final AtomicLongArray counters = new AtomicLongArray(NUMBER_OF_STRIPES * STRIPE_SIZE);
+
+  /**
+   * Records a lookup, which was a hit if the value is not null.
+   */
+  void recordLookup(Object value) {
+    counters.incrementAndGet(stripe() + (value == null ? MISSES : HITS));
+  }
+
+  void recordEviction() {
+    counters.incrementAndGet(stripe() + EVICTIONS);
+  }
+
+  /**
+   * @return The current totals.
+   */
+  CacheStats snapshot() {
+    long hits = 0;
+    long misses = 0;
+    long evictions = 0;
+    for (int i = 0; i < NUMBER_OF_STRIPES * STRIPE_SIZE; i += STRIPE_SIZE) {
+      hits += counters.get(i + HITS);
+      misses += counters.get(i + MISSES);
+      evictions += counters.get(i + EVICTIONS);
+    }
+    return new CacheStats(hits, misses, evictions);
+  }
+
+  private static int stripe() {
+    return ((int) Thread.currentThread().getId() & (NUMBER_OF_STRIPES - 1)) * STRIPE_SIZE;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import java.util.List;
+
+/**
+ * A hierarchical timer wheel for expiring cache entries in amortized constant time.
+ *
+ * Timers are kept in buckets by expiration time, with each level of the wheel covering a coarser
+ * span of time than the one before: about a second per bucket for the first minute, a minute per
+ * bucket for the first hour, and so on. As time advances, the buckets that have come due are
+ * emptied. Timers that have expired are reported, and the rest cascade into finer buckets.
+ *
+ * Not thread safe.
+ */
+final class TimerWheel<E> {
+  private static final int BUCKETS = 64;
+  // Bucket spans of 2^10 ms (~1 s), 2^16 ms (~1 min), 2^22 ms (~70 min) and 2^28 ms (~3 days).
+  private static final int[] SHIFTS = {10, 16, 22, 28};
+
+  private final Timer<E>[][] wheel;
+  private long currentTime;
+
+  @SuppressWarnings("unchecked")
+  TimerWheel(long now) {
+    currentTime = now;
+    wheel = new Timer[SHIFTS.length][BUCKETS];
+    for (int i = 0; i < SHIFTS.length; ++i) {
+      for (int j = 0; j < BUCKETS; ++j) {
+        Timer<E> sentinel = new Timer<E>(null, 0);
+        sentinel.previous = sentinel;
+        sentinel.next = sentinel;
+        wheel[i][j] = sentinel;
+      }
+    }
+  }
+
+  /**
+   * Starts a timer for the element.
+   *
+   * @return The timer, which can be passed to {@link #cancel}.
+   */
+  Timer<E> schedule(E element, long time) {
+    Timer<E> timer = new Timer<E>(element, time);
+    link(timer);
+    return timer;
+  }
+
+  /**
+   * Stops a timer. Does nothing if the timer has already fired or been cancelled.
+   */
+  void cancel(Timer<E> timer) {
+    if (timer != null && timer.next != null) {
+      unlink(timer);
+    }
+  }
+
+  /**
+   * Advances the wheel to the given time.
+   *
+   * @param expired Receives the elements whose timers expired.
+   */
+  void advance(long now, List<E> expired) {
+    long previousTime = currentTime;
+    if (now <= previousTime) {
+      return;
+    }
+    currentTime = now;
+    for (int i = 0; i < SHIFTS.length; ++i) {
+      long previousTicks = previousTime >>> SHIFTS[i];
+      long ticks = now >>> SHIFTS[i];
+      if (ticks == previousTicks) {
+        break;
+      }
+      expireBuckets(i, previousTicks, ticks - previousTicks, expired);
+    }
+  }
+
+  private void expireBuckets(int level, long previousTicks, long delta, List<E> expired) {
+    int steps = (int) Math.min(delta + 1, BUCKETS);
+    for (int i = 0; i < steps; ++i) {
+      Timer<E> sentinel = wheel[level][(int) ((previousTicks + i) & (BUCKETS - 1))];
+      Timer<E> timer = sentinel.next;
+      sentinel.previous = sentinel;
+      sentinel.next = sentinel;
+      while (timer != sentinel) {
+        Timer<E> next = timer.next;
+        timer.previous = null;
+        timer.next = null;
+        if (timer.time <= currentTime) {
+          expired.add(timer.element);
+        } else {
+          link(timer);
+        }
+        timer = next;
+      }
+    }
+  }
+
+  private void link(Timer<E> timer) {
+    Timer<E> sentinel = findBucket(timer.time);
+    timer.next = sentinel;
+    timer.previous = sentinel.previous;
+    sentinel.previous.next = timer;
+    sentinel.previous = timer;
+  }
+
+  private static <E> void unlink(Timer<E> timer) {
+    timer.previous.next = timer.next;
+    timer.next.previous = timer.previous;
+    timer.previous = null;
+    timer.next = null;
+  }
+
+  private Timer<E> findBucket(long time) {
+    long duration = Math.max(time - currentTime, 0);
+    int level = 0;
+    while (level < SHIFTS.length - 1 && duration >= 1L << SHIFTS[level + 1]) {
+      level++;
+    }
+    long ticks = Math.max(time, currentTime) >>> SHIFTS[level];
+    if (level == SHIFTS.length - 1 && duration >= (long) BUCKETS << SHIFTS[level]) {
+      // Further out than the wheel reaches. Park it in the last bucket to be reached, and it will
+      // be rescheduled from there.
+      ticks = (currentTime >>> SHIFTS[level]) - 1;
+    }
+    return wheel[level][(int) (ticks & (BUCKETS - 1))];
+  }
+
+  static final class Timer<E> {
+    final E element;
+    final long time;
+    Timer<E> previous;
+    Timer<E> next;
+
+    Timer(E element, long time) {
+      this.element = element;
+      this.time = time;
+    }
+  }
+}
@@ -0,0 +1,513 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import org.apache.shindig.common.util.TimeSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache using the W-TinyLFU eviction policy.
+ *
+ * Entries are held in a ConcurrentHashMap, so reads never block. Rather than reordering a shared
+ * list on every read, reads are recorded in striped buffers and replayed against the eviction
+ * policy in batches by whichever thread acquires the policy lock. Under heavy load some reads
+ * are not recorded at all, which only makes the recency and frequency information slightly less
+ * precise. Writes are always recorded.
+ *
+ * New entries enter a small LRU admission window. Entries leaving the window compete with the
+ * least recently used entry of the main space, and the one seen more often recently, as
+ * estimated by a {@link FrequencySketch}, is kept. The main space is a segmented LRU, where
+ * entries read while on probation are promoted to a protected segment. Together this keeps
+ * popular entries cached through bursts of one-off requests that would flush a plain LRU cache.
+ *
+ * The cache is bounded by number of entries, and optionally also by the total weight of its
+ * entries. Entries stored with an expiration time are removed by a {@link TimerWheel} once they
+ * expire.
+ */
+public class TinyLfuCache<K, V> implements Cache<K, V> {
+  private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+  private static final int READ_BUFFER_MAX_SIZE = 128;
+  private static final int NUMBER_OF_READ_BUFFERS;
+  static {
+    int buffers = 1;
+    while (buffers < Runtime.getRuntime().availableProcessors()) {
+      buffers <<= 1;
+    }
+    NUMBER_OF_READ_BUFFERS = buffers;
+  }
+
+  private final ConcurrentMap<K, Node<K, V>> data;
+  private final Weigher<? super K, ? super V> weigher;
+  final int capacity;
+  final long maximum;
+
+  private final ReadBuffer<K, V>[] readBuffers;
+  private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<Runnable>();
+  private final StatsCounter stats = new StatsCounter();
+  private volatile TimeSource timeSource = new TimeSource();
+
+  // The eviction policy, guarded by evictionLock.
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final FrequencySketch sketch;
+  private final AccessOrderQueue<K, V> window = new AccessOrderQueue<K, V>();
+  private final AccessOrderQueue<K, V> probation = new AccessOrderQueue<K, V>();
+  private final AccessOrderQueue<K, V> protectedQueue = new AccessOrderQueue<K, V>();
+  private final long windowMaximum;
+  private final long mainMaximum;
+  private final long protectedMaximum;
+  private long windowWeight;
+  private long mainWeight;
+  private long protectedWeight;
+  private int count;
+  private TimerWheel<Node<K, V>> wheel;
+  private final List<Node<K, V>> expired = new ArrayList<Node<K, V>>();
+
+  /**
+   * Creates a cache bounded by number of entries.
+   */
+  public TinyLfuCache(int capacity) {
+    this(capacity, capacity, null);
+  }
+
+  /**
+   * Creates a cache bounded by both number of entries and their total weight.
+   *
+   * @param weigher Weighs the entries, or null to give every entry a weight of 1.
+   */
+  @SuppressWarnings("unchecked")
+  public TinyLfuCache(int capacity, long maxWeight, Weigher<? super K, ? super V> weigher) {
+    this.capacity = capacity;
+    this.maximum = maxWeight;
+    this.weigher = weigher;
+    data = new ConcurrentHashMap<K, Node<K, V>>(Math.min(capacity, 1 << 16));
+    readBuffers = new ReadBuffer[NUMBER_OF_READ_BUFFERS];
+    for (int i = 0; i < readBuffers.length; ++i) {
+      readBuffers[i] = new ReadBuffer<K, V>();
+    }
+    sketch = new FrequencySketch(capacity);
+    windowMaximum = Math.max(1, maximum / 100);
+    mainMaximum = maximum - windowMaximum;
+    protectedMaximum = mainMaximum * 4 / 5;
+  }
+
+  public V getElement(K key) {
+    Node<K, V> node = lookup(key, timeSource.currentTimeMillis());
+    return node == null ? null : node.value;
+  }
+
+  public CacheEntry<V> getEntry(K key) {
+    long now = timeSource.currentTimeMillis();
+    Node<K, V> node = lookup(key, now);
+    return node == null ? null : new CacheEntry<V>(node.value, now >= node.refreshTime);
+  }
+
+  public boolean containsElement(K key) {
+    Node<K, V> node = data.get(key);
+    return node != null && timeSource.currentTimeMillis() < node.expirationTime;
+  }
+
+  private Node<K, V> lookup(K key, long now) {
+    final Node<K, V> node = data.get(key);
+    if (node == null) {
+      stats.recordLookup(null);
+      return null;
+    }
+    if (now >= node.expirationTime) {
+      // Not yet reached by the timer wheel.
+      stats.recordLookup(null);
+      if (data.remove(key, node)) {
+        stats.recordEviction();
+        writeBuffer.add(new Runnable() {
+          public void run() {
+            unlink(node);
+          }
+        });
+        drainBuffers();
+      }
+      return null;
+    }
+    stats.recordLookup(node.value);
+    recordRead(node);
+    return node;
+  }
+
+  public void addElement(K key, V value) {
+    addElement(key, value, -1, -1);
+  }
+
+  public void addElement(K key, V value, long refreshAfter, long expireAfter) {
+    if (capacity <= 0) {
+      return;
+    }
+    int weight = weigher == null ? 1 : weigher.weigh(key, value);
+    if (weight > Math.max(windowMaximum, mainMaximum)) {
+      // Too heavy to ever be kept. Admitting it would only evict other entries.
+      removeElement(key);
+      return;
+    }
+    long now = timeSource.currentTimeMillis();
+    final Node<K, V> node = new Node<K, V>(key, value, weight,
+        ExpirationTracker.deadline(now, refreshAfter),
+        ExpirationTracker.deadline(now, expireAfter));
+    final Node<K, V> previous = data.put(key, node);
+    writeBuffer.add(new Runnable() {
+      public void run() {
+        if (previous != null) {
+          unlink(previous);
+        }
+        add(node);
+      }
+    });
+    drainBuffers();
+  }
+
+  public V removeElement(K key) {
+    final Node<K, V> node = data.remove(key);
+    if (node == null) {
+      return null;
+    }
+    writeBuffer.add(new Runnable() {
+      public void run() {
+        unlink(node);
+      }
+    });
+    drainBuffers();
+    return node.value;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public long getSize() {
+    return data.size();
+  }
+
+  public CacheStats getStats() {
+    return stats.snapshot();
+  }
+
+  /**
+   * Lists the protected entries, then those in the admission window, then those on probation,
+   * each most recently used first.
+   */
+  public List<SnapshotEntry<K, V>> getHottestEntries(int limit) {
+    long now = timeSource.currentTimeMillis();
+    List<SnapshotEntry<K, V>> hottest = new ArrayList<SnapshotEntry<K, V>>();
+    evictionLock.lock();
+    try {
+      addHottest(protectedQueue, hottest, limit, now);
+      addHottest(window, hottest, limit, now);
+      addHottest(probation, hottest, limit, now);
+    } finally {
+      evictionLock.unlock();
+    }
+    return hottest;
+  }
+
+  private void addHottest(AccessOrderQueue<K, V> queue, List<SnapshotEntry<K, V>> hottest,
+      int limit, long now) {
+    for (Node<K, V> node = queue.peekLast(); node != null && hottest.size() < limit;
+        node = node.previous) {
+      if (now < node.expirationTime) {
+        hottest.add(new SnapshotEntry<K, V>(node.key, node.value, node.refreshTime,
+            node.expirationTime));
+      }
+    }
+  }
+
+  /**
+   * Set a new time source. For use in testing, before any entries are added.
+   */
+  public void setTimeSource(TimeSource timeSource) {
+    this.timeSource = timeSource;
+  }
+
+  private void recordRead(Node<K, V> node) {
+    ReadBuffer<K, V> buffer =
+        readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+    int pending = buffer.pending.incrementAndGet();
+    if (pending > READ_BUFFER_MAX_SIZE) {
+      // The policy is falling behind. Drop the read rather than wait for it.
+      buffer.pending.decrementAndGet();
+    } else {
+      buffer.queue.add(node);
+    }
+    if (pending >= READ_BUFFER_DRAIN_THRESHOLD) {
+      drainBuffers();
+    }
+  }
+
+  /**
+   * Applies the buffered reads and writes to the eviction policy, unless another thread is
+   * already doing so.
+   */
+  private void drainBuffers() {
+    do {
+      if (!evictionLock.tryLock()) {
+        // The lock holder checks the write buffer again after releasing the lock.
+        return;
+      }
+      try {
+        for (ReadBuffer<K, V> buffer : readBuffers) {
+          Node<K, V> node;
+          while ((node = buffer.queue.poll()) != null) {
+            buffer.pending.decrementAndGet();
+            onAccess(node);
+          }
+        }
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null) {
+          task.run();
+        }
+        expireEntries();
+      } finally {
+        evictionLock.unlock();
+      }
+    } while (!writeBuffer.isEmpty());
+  }
+
+  private void add(Node<K, V> node) {
+    sketch.increment(node.hash);
+    if (data.get(node.key) != node) {
+      // Replaced or removed before the policy caught up.
+      return;
+    }
+    node.queue = Node.WINDOW;
+    window.addLast(node);
+    windowWeight += node.weight;
+    count++;
+    if (node.expirationTime != ExpirationTracker.NEVER) {
+      if (wheel == null) {
+        wheel = new TimerWheel<Node<K, V>>(timeSource.currentTimeMillis());
+      }
+      node.timer = wheel.schedule(node, node.expirationTime);
+    }
+    evict();
+  }
+
+  private void onAccess(Node<K, V> node) {
+    sketch.increment(node.hash);
+    switch (node.queue) {
+      case Node.WINDOW:
+        window.moveToBack(node);
+        break;
+      case Node.PROBATION:
+        probation.remove(node);
+        node.queue = Node.PROTECTED;
+        protectedQueue.addLast(node);
+        protectedWeight += node.weight;
+        while (protectedWeight > protectedMaximum && !protectedQueue.isEmpty()) {
+          Node<K, V> demoted = protectedQueue.pollFirst();
+          protectedWeight -= demoted.weight;
+          demoted.queue = Node.PROBATION;
+          probation.addLast(demoted);
+        }
+        break;
+      case Node.PROTECTED:
+        protectedQueue.moveToBack(node);
+        break;
+      default:
+        // Not in the policy, so removed or not yet added.
+    }
+  }
+
+  /**
+   * Removes a node from the policy.
+   */
+  private void unlink(Node<K, V> node) {
+    switch (node.queue) {
+      case Node.WINDOW:
+        window.remove(node);
+        windowWeight -= node.weight;
+        break;
+      case Node.PROBATION:
+        probation.remove(node);
+        mainWeight -= node.weight;
+        break;
+      case Node.PROTECTED:
+        protectedQueue.remove(node);
+        mainWeight -= node.weight;
+        protectedWeight -= node.weight;
+        break;
+      default:
+        return;
+    }
+    node.queue = Node.RETIRED;
+    count--;
+    if (node.timer != null) {
+      wheel.cancel(node.timer);
+    }
+  }
+
+  private void expireEntries() {
+    if (wheel != null) {
+      expired.clear();
+      wheel.advance(timeSource.currentTimeMillis(), expired);
+      for (Node<K, V> node : expired) {
+        evictNode(node);
+      }
+    }
+  }
+
+  private void evictNode(Node<K, V> node) {
+    unlink(node);
+    if (data.remove(node.key, node)) {
+      stats.recordEviction();
+    }
+  }
+
+  private void evict() {
+    while (windowWeight > windowMaximum) {
+      Node<K, V> candidate = window.pollFirst();
+      windowWeight -= candidate.weight;
+      mainWeight += candidate.weight;
+      candidate.queue = Node.PROBATION;
+      probation.addLast(candidate);
+
+      // Make room for the candidate, keeping whichever of it and the victim is more popular.
+      while (mainWeight > mainMaximum) {
+        Node<K, V> victim = probation.peekFirst();
+        if (victim == candidate) {
+          victim = protectedQueue.peekFirst();
+        }
+        if (victim == null || sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+          evictNode(candidate);
+          break;
+        }
+        evictNode(victim);
+      }
+    }
+
+    while (count > capacity) {
+      Node<K, V> victim = probation.peekFirst();
+      if (victim == null) {
+        victim = protectedQueue.peekFirst();
+      }
+      if (victim == null) {
+        victim = window.peekFirst();
+      }
+      evictNode(victim);
+    }
+  }
+
+  private static final class Node<K, V> {
+    static final int RETIRED = 0;
+    static final int WINDOW = 1;
+    static final int PROBATION = 2;
+    static final int PROTECTED = 3;
+
+    final K key;
+    final V value;
+    final int hash;
+    final int weight;
+    final long refreshTime;
+    final long expirationTime;
+
+    // Guarded by the eviction lock.
+    int queue = RETIRED;
+    Node<K, V> previous;
+    Node<K, V> next;
+    TimerWheel.Timer<Node<K, V>> timer;
+
+    Node(K key, V value, int weight, long refreshTime, long expirationTime) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+      this.refreshTime = refreshTime;
+      this.expirationTime = expirationTime;
+      int h = key.hashCode() * 0x9e3779b9;
+      this.hash = h ^ (h >>> 16);
+    }
+  }
+
+  /**
+   * An intrusive doubly linked list of nodes, least recently used first.
+   */
+  private static final class AccessOrderQueue<K, V> {
+    private Node<K, V> first;
+    private Node<K, V> last;
+
+    boolean isEmpty() {
+      return first == null;
+    }
+
+    Node<K, V> peekFirst() {
+      return first;
+    }
+
+    Node<K, V> peekLast() {
+      return last;
+    }
+
+    Node<K, V> pollFirst() {
+      Node<K, V> node = first;
+      if (node != null) {
+        remove(node);
+      }
+      return node;
+    }
+
+    void addLast(Node<K, V> node) {
+      node.previous = last;
+      node.next = null;
+      if (last == null) {
+        first = node;
+      } else {
+        last.next = node;
+      }
+      last = node;
+    }
+
+    void remove(Node<K, V> node) {
+      if (node.previous == null) {
+        first = node.next;
+      } else {
+        node.previous.next = node.next;
+      }
+      if (node.next == null) {
+        last = node.previous;
+      } else {
+        node.next.previous = node.previous;
+      }
+      node.previous = null;
+      node.next = null;
+    }
+
+    void moveToBack(Node<K, V> node) {
+      if (node != last) {
+        remove(node);
+        addLast(node);
+      }
+    }
+  }
+
+  private static final class ReadBuffer<K, V> {
+    final Queue<Node<K, V>> queue = new ConcurrentLinkedQueue<Node<K, V>>();
+    final AtomicInteger pending = new AtomicInteger();
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import org.apache.shindig.common.util.TimeSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An LRU cache bounded by both the number of entries and their total weight. Least recently used
+ * entries are evicted until both limits are met. An entry heavier than the whole weight budget is
+ * never stored.
+ */
+public class WeightedLruCache<K, V> implements Cache<K, V> {
+  private final Map<K, Entry<K, V>> entries;
+  private final Weigher<? super K, ? super V> weigher;
+  final int capacity;
+  final long maxWeight;
+  private long weight;
+  private final StatsCounter stats = new StatsCounter();
+  private TimeSource timeSource = new TimeSource();
+  private TimerWheel<K> wheel;
+  private final List<K> expired = new ArrayList<K>();
+
+  public WeightedLruCache(int capacity, long maxWeight, Weigher<? super K, ? super V> weigher) {
+    this.entries = new LinkedHashMap<K, Entry<K, V>>(16, 0.75f, true);
+    this.capacity = capacity;
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+  }
+
+  public V getElement(K key) {
+    Entry<K, V> entry = lookup(key, timeSource.currentTimeMillis());
+    V value = entry == null ? null : entry.value;
+    stats.recordLookup(value);
+    return value;
+  }
+
+  public CacheEntry<V> getEntry(K key) {
+    long now = timeSource.currentTimeMillis();
+    Entry<K, V> entry = lookup(key, now);
+    if (entry == null) {
+      stats.recordLookup(null);
+      return null;
+    }
+    stats.recordLookup(entry.value);
+    return new CacheEntry<V>(entry.value, now >= entry.refreshTime);
+  }
+
+  public synchronized boolean containsElement(K key) {
+    expireEntries(timeSource.currentTimeMillis());
+    // Unlike get(), containsKey() leaves the access order alone.
+    return entries.containsKey(key);
+  }
+
+  public void addElement(K key, V value) {
+    addElement(key, value, -1, -1);
+  }
+
+  public void addElement(K key, V value, long refreshAfter, long expireAfter) {
+    // Weigh outside of the lock, since weighers may be slow.
+    int entryWeight = weigher.weigh(key, value);
+    synchronized (this) {
+      long now = timeSource.currentTimeMillis();
+      expireEntries(now);
+      release(entries.remove(key));
+      if (entryWeight > maxWeight) {
+        return;
+      }
+      Entry<K, V> entry = new Entry<K, V>(value, entryWeight,
+          ExpirationTracker.deadline(now, refreshAfter),
+          ExpirationTracker.deadline(now, expireAfter));
+      if (entry.expirationTime != ExpirationTracker.NEVER) {
+        if (wheel == null) {
+          wheel = new TimerWheel<K>(now);
+        }
+        entry.timer = wheel.schedule(key, entry.expirationTime);
+      }
+      entries.put(key, entry);
+      weight += entryWeight;
+      evict();
+    }
+  }
+
+  public synchronized V removeElement(K key) {
+    Entry<K, V> entry = entries.remove(key);
+    release(entry);
+    return entry == null ? null : entry.value;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public synchronized long getSize() {
+    return entries.size();
+  }
+
+  public CacheStats getStats() {
+    return stats.snapshot();
+  }
+
+  public synchronized List<SnapshotEntry<K, V>> getHottestEntries(int limit) {
+    long now = timeSource.currentTimeMillis();
+    List<SnapshotEntry<K, V>> hottest = new ArrayList<SnapshotEntry<K, V>>();
+    // Entries are iterated least recently used first.
+    for (Map.Entry<K, Entry<K, V>> mapEntry : entries.entrySet()) {
+      Entry<K, V> entry = mapEntry.getValue();
+      if (now < entry.expirationTime) {
+        hottest.add(new SnapshotEntry<K, V>(mapEntry.getKey(), entry.value, entry.refreshTime,
+            entry.expirationTime));
+      }
+    }
+    Collections.reverse(hottest);
+    return hottest.size() > limit ? hottest.subList(0, limit) : hottest;
+  }
+
+  /**
+   * @return The total weight of the cached entries.
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return The largest total weight that the cache will hold.
+   */
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * Set a new time source. For use in testing, before any entries are added.
+   */
+  public synchronized void setTimeSource(TimeSource timeSource) {
+    this.timeSource = timeSource;
+    wheel = null;
+  }
+
+  private synchronized Entry<K, V> lookup(K key, long now) {
+    expireEntries(now);
+    Entry<K, V> entry = entries.get(key);
+    if (entry != null && now >= entry.expirationTime) {
+      // Not yet reached by the timer wheel.
+      release(entries.remove(key));
+      stats.recordEviction();
+      return null;
+    }
+    return entry;
+  }
+
+  private void release(Entry<K, V> entry) {
+    if (entry != null) {
+      weight -= entry.weight;
+      if (entry.timer != null) {
+        wheel.cancel(entry.timer);
+      }
+    }
+  }
+
+  private void expireEntries(long now) {
+    if (wheel != null) {
+      expired.clear();
+      wheel.advance(now, expired);
+      for (K key : expired) {
+        // The timer has fired, so it needs no cancelling.
+        weight -= entries.remove(key).weight;
+        stats.recordEviction();
+      }
+    }
+  }
+
+  private void evict() {
+    Iterator<Entry<K, V>> it = entries.values().iterator();
+    while ((entries.size() > capacity || weight > maxWeight) && it.hasNext()) {
+      release(it.next());
+      it.remove();
+      stats.recordEviction();
+    }
+  }
+
+  private static final class Entry<K, V> {
+    private final V value;
+    private final int weight;
+    private final long refreshTime;
+    private final long expirationTime;
+    private TimerWheel.Timer<K> timer;
+
+    private Entry(V value, int weight, long refreshTime, long expirationTime) {
+      this.value = value;
+      this.weight = weight;
+      this.refreshTime = refreshTime;
+      this.expirationTime = expirationTime;
+    }
+  }
+}
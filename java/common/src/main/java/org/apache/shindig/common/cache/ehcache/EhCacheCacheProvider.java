@@ -20,6 +20,7 @@ package org.apache.shindig.common.cache.ehcache;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.Weigher;
 import org.apache.shindig.common.util.ResourceLoader;
 
 import com.google.common.collect.MapMaker;
@@ -34,6 +35,7 @@ import javax.management.MBeanServer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.management.ManagementFactory;
+import java.util.Collections;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -110,4 +112,16 @@ public class EhCacheCacheProvider implements CacheProvider {
     }
   }
 
+  /**
+   * Ehcache bounds its stores by element count only, so caches are sized by the ehcache
+   * configuration and the weigher is not used.
+   */
+  public <K, V> Cache<K, V> createCache(String name, Weigher<? super K, ? super V> weigher) {
+    return createCache(name);
+  }
+
+  public Map<String, Cache<?, ?>> getCaches() {
+    return Collections.unmodifiableMap(caches);
+  }
+
 }
@@ -19,13 +19,23 @@
 package org.apache.shindig.common.cache.ehcache;
 
 import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheEntry;
+import org.apache.shindig.common.cache.CacheStats;
+import org.apache.shindig.common.cache.SnapshotEntry;
 
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.Statistics;
 
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Produces a cache configured from ehcache.
+ *
+ * Expiration times are applied as per-element time to live, so expired entries are removed by
+ * ehcache itself. Values stored with a refresh time are wrapped to carry it.
  */
 public class EhConfiguredCache<K, V> implements Cache<K, V> {
 
@@ -51,15 +61,54 @@ public class EhConfiguredCache<K, V> implements Cache<K, V> {
     cache.put(new Element(key, value));
   }
 
+  public void addElement(K key, V value, long refreshAfter, long expireAfter) {
+    Element element;
+    if (refreshAfter < 0) {
+      element = new Element(key, value);
+    } else {
+      element = new Element(key,
+          new RefreshableValue(value, System.currentTimeMillis() + refreshAfter));
+    }
+    if (expireAfter >= 0) {
+      element.setEternal(false);
+      // Ehcache works in seconds. Round up so that entries never expire early.
+      element.setTimeToLive((int) Math.min((expireAfter + 999) / 1000, Integer.MAX_VALUE));
+    }
+    cache.put(element);
+  }
+
   @SuppressWarnings("unchecked")
   public V getElement(K key) {
     Element cacheElement = cache.get(key);
     if (cacheElement != null) {
-      return (V) cacheElement.getObjectValue();
+      Object value = cacheElement.getObjectValue();
+      if (value instanceof RefreshableValue) {
+        return (V) ((RefreshableValue) value).value;
+      }
+      return (V) value;
     }
     return null;
   }
 
+  @SuppressWarnings("unchecked")
+  public CacheEntry<V> getEntry(K key) {
+    Element cacheElement = cache.get(key);
+    if (cacheElement == null) {
+      return null;
+    }
+    Object value = cacheElement.getObjectValue();
+    if (value instanceof RefreshableValue) {
+      RefreshableValue refreshable = (RefreshableValue) value;
+      return new CacheEntry<V>((V) refreshable.value,
+          System.currentTimeMillis() >= refreshable.refreshTime);
+    }
+    return new CacheEntry<V>((V) value, false);
+  }
+
+  public boolean containsElement(K key) {
+    return cache.isKeyInCache(key);
+  }
+
   @SuppressWarnings("unchecked")
   public V removeElement(K key) {
     Object value = getElement(key);
@@ -81,4 +130,28 @@ public class EhConfiguredCache<K, V> implements Cache<K, V> {
   public long getSize() {
     return cache.getMemoryStoreSize() + cache.getDiskStoreSize();
   }
+
+  public CacheStats getStats() {
+    Statistics statistics = cache.getStatistics();
+    return new CacheStats(statistics.getCacheHits(), statistics.getCacheMisses(),
+        statistics.getEvictionCount());
+  }
+
+  /**
+   * Lists nothing. Ehcache can keep its own disk stores across restarts instead; see the
+   * diskPersistent setting of its configuration.
+   */
+  public List<SnapshotEntry<K, V>> getHottestEntries(int limit) {
+    return Collections.emptyList();
+  }
+
+  private static final class RefreshableValue implements Serializable {
+    private final Object value;
+    private final long refreshTime;
+
+    private RefreshableValue(Object value, long refreshTime) {
+      this.value = value;
+      this.refreshTime = refreshTime;
+    }
+  }
 }
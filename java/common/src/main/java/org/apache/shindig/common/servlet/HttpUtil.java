@@ -20,6 +20,7 @@ package org.apache.shindig.common.servlet;
 
 import org.apache.shindig.common.util.TimeSource;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -99,4 +100,60 @@ public class HttpUtil {
       }
     }
   }
+
+  /**
+   * @return True if the request's Accept-Encoding header allows a gzip-compressed response.
+   */
+  public static boolean acceptsGzip(HttpServletRequest request) {
+    return acceptsEncoding(request.getHeader("Accept-Encoding"), "gzip");
+  }
+
+  /**
+   * Checks an Accept-Encoding header value for a content coding, as described in RFC 2616,
+   * section 14.3. A coding listed with a quality value of 0, such as "gzip;q=0", is refused, and a
+   * coding that isn't listed is accepted only through "*". The coding's "x-" prefixed alias, such
+   * as "x-gzip", counts as the coding itself.
+   *
+   * @param acceptEncoding The header value, or null if the header is absent.
+   * @param coding The content coding, in lower case.
+   */
+  public static boolean acceptsEncoding(String acceptEncoding, String coding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    String alias = "x-" + coding;
+    float codingQuality = -1;
+    float wildcardQuality = -1;
+    for (String element : acceptEncoding.split(",")) {
+      String[] params = element.split(";");
+      String name = params[0].trim().toLowerCase();
+      float quality = 1;
+      for (int i = 1; i < params.length; ++i) {
+        String param = params[i].trim();
+        if (param.startsWith("q=") || param.startsWith("Q=")) {
+          quality = parseQuality(param.substring(2).trim());
+        }
+      }
+      if (name.equals(coding) || name.equals(alias)) {
+        codingQuality = Math.max(codingQuality, quality);
+      } else if (name.equals("*")) {
+        wildcardQuality = Math.max(wildcardQuality, quality);
+      }
+    }
+    if (codingQuality >= 0) {
+      return codingQuality > 0;
+    }
+    return wildcardQuality > 0;
+  }
+
+  /**
+   * @return The quality value, or 0 if it can't be parsed.
+   */
+  private static float parseQuality(String value) {
+    try {
+      return Float.parseFloat(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
 }
@@ -23,9 +23,6 @@ import com.google.common.collect.Lists;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.traversal.DocumentTraversal;
-import org.w3c.dom.traversal.NodeFilter;
-import org.w3c.dom.traversal.NodeIterator;
 
 import java.util.List;
 import java.util.Set;
@@ -66,20 +63,25 @@ public class DomUtil {
   }
 
   public static List<Element> getElementsByTagNameCaseInsensitive(Document doc,
-      final Set<String> lowerCaseNames) {
-    final List<Element> result = Lists.newArrayList();
-    NodeIterator nodeIterator = ((DocumentTraversal) doc)
-        .createNodeIterator(doc, NodeFilter.SHOW_ELEMENT,
-            new NodeFilter() {
-              public short acceptNode(Node n) {
-                if (lowerCaseNames.contains(n.getNodeName().toLowerCase())) {
-                  return NodeFilter.FILTER_ACCEPT;
-                }
-                return NodeFilter.FILTER_REJECT;
-              }
-            }, false);
-    for (Node n = nodeIterator.nextNode(); n != null ; n = nodeIterator.nextNode()) {
-      result.add((Element)n);
+      Set<String> lowerCaseNames) {
+    // Walks the tree directly rather than with a NodeIterator, which the document keeps track of.
+    // This leaves the document untouched, so it is safe on documents shared between threads.
+    List<Element> result = Lists.newArrayList();
+    Node node = doc.getFirstChild();
+    while (node != null) {
+      if (node.getNodeType() == Node.ELEMENT_NODE &&
+          lowerCaseNames.contains(node.getNodeName().toLowerCase())) {
+        result.add((Element)node);
+      }
+      Node next = node.getFirstChild();
+      while (next == null && node != null) {
+        next = node.getNextSibling();
+        node = node.getParentNode();
+        if (node == doc) {
+          node = null;
+        }
+      }
+      node = next;
     }
     return result;
   }
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.shindig.common.util.FakeTimeSource;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Tests for CacheSnapshotter.
+ */
+public class CacheSnapshotterTest {
+  private static final String CACHE_NAME = "saved";
+  private static final CacheSerializer<String> VALUE_SERIALIZER = new CacheSerializer<String>() {
+    public void write(String value, DataOutput out) throws IOException {
+      if (value.equals("unserializable")) {
+        throw new IOException("Can't serialize");
+      }
+      out.writeUTF(value);
+    }
+
+    public String read(DataInput in) throws IOException {
+      return in.readUTF();
+    }
+  };
+
+  private final FakeTimeSource timeSource = new FakeTimeSource(1000);
+  private File directory;
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = File.createTempFile("shindig-cache-snapshot", "");
+    directory.delete();
+    file = new File(directory, "snapshot");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  private CacheSnapshotter createSnapshotter(CacheProvider provider, int maxEntries) {
+    CacheSerializerRegistry serializers = new CacheSerializerRegistry();
+    serializers.register(CACHE_NAME, CacheSerializers.STRING, VALUE_SERIALIZER);
+    CacheSnapshotter snapshotter
+        = new CacheSnapshotter(provider, serializers, file.getPath(), maxEntries, 0);
+    snapshotter.setTimeSource(timeSource);
+    return snapshotter;
+  }
+
+  private LruCache<String, String> createCache(CacheProvider provider) {
+    LruCache<String, String> cache
+        = (LruCache<String, String>) provider.<String, String>createCache(CACHE_NAME);
+    cache.setTimeSource(timeSource);
+    return cache;
+  }
+
+  @Test
+  public void entriesRestored() throws Exception {
+    CacheProvider provider = new LruCacheProvider(10);
+    Cache<String, String> cache = createCache(provider);
+    cache.addElement("a", "1");
+    cache.addElement("b", "2");
+    assertEquals(2, createSnapshotter(provider, 10).save());
+
+    CacheProvider restartedProvider = new LruCacheProvider(10);
+    Cache<String, String> restarted = createCache(restartedProvider);
+    assertEquals(2, createSnapshotter(restartedProvider, 10).restore());
+    assertEquals("1", restarted.getElement("a"));
+    assertEquals("2", restarted.getElement("b"));
+  }
+
+  @Test
+  public void hottestEntriesSaved() throws Exception {
+    CacheProvider provider = new LruCacheProvider(10);
+    Cache<String, String> cache = createCache(provider);
+    cache.addElement("a", "1");
+    cache.addElement("b", "2");
+    cache.addElement("c", "3");
+    cache.getElement("a");
+    assertEquals(2, createSnapshotter(provider, 2).save());
+
+    CacheProvider restartedProvider = new LruCacheProvider(10);
+    Cache<String, String> restarted = createCache(restartedProvider);
+    createSnapshotter(restartedProvider, 2).restore();
+    assertEquals("1", restarted.getElement("a"));
+    assertNull(restarted.getElement("b"));
+    assertEquals("3", restarted.getElement("c"));
+  }
+
+  @Test
+  public void timesRestored() throws Exception {
+    CacheProvider provider = new LruCacheProvider(10);
+    Cache<String, String> cache = createCache(provider);
+    cache.addElement("refresh", "value", 1000, -1);
+    cache.addElement("expire", "value", -1, 1000);
+    cache.addElement("expired", "value", -1, 5000);
+    createSnapshotter(provider, 10).save();
+
+    timeSource.setCurrentTimeMillis(3000);
+    CacheProvider restartedProvider = new LruCacheProvider(10);
+    Cache<String, String> restarted = createCache(restartedProvider);
+    createSnapshotter(restartedProvider, 10).restore();
+    assertNull(restarted.getElement("expire"));
+    assertTrue(restarted.getEntry("refresh").isRefreshNeeded());
+
+    timeSource.setCurrentTimeMillis(6000);
+    assertNull(restarted.getElement("expired"));
+  }
+
+  @Test
+  public void newerEntriesKept() throws Exception {
+    CacheProvider provider = new LruCacheProvider(10);
+    createCache(provider).addElement("key", "old");
+    createSnapshotter(provider, 10).save();
+
+    CacheProvider restartedProvider = new LruCacheProvider(10);
+    Cache<String, String> restarted = createCache(restartedProvider);
+    restarted.addElement("key", "new");
+    assertEquals(0, createSnapshotter(restartedProvider, 10).restore());
+    assertEquals("new", restarted.getElement("key"));
+  }
+
+  @Test
+  public void unserializableEntrySkipped() throws Exception {
+    CacheProvider provider = new LruCacheProvider(10);
+    Cache<String, String> cache = createCache(provider);
+    cache.addElement("bad", "unserializable");
+    cache.addElement("good", "value");
+    assertEquals(1, createSnapshotter(provider, 10).save());
+
+    CacheProvider restartedProvider = new LruCacheProvider(10);
+    Cache<String, String> restarted = createCache(restartedProvider);
+    assertEquals(1, createSnapshotter(restartedProvider, 10).restore());
+    assertEquals("value", restarted.getElement("good"));
+  }
+
+  @Test
+  public void cachesWithoutSerializersNotSaved() throws Exception {
+    CacheProvider provider = new LruCacheProvider(10);
+    provider.<String, String>createCache("other").addElement("key", "value");
+    assertEquals(0, createSnapshotter(provider, 10).save());
+  }
+
+  @Test
+  public void missingFileRestoresNothing() throws Exception {
+    assertEquals(0, createSnapshotter(new LruCacheProvider(10), 10).restore());
+  }
+
+  @Test
+  public void truncatedFileRestoresWhatWasRead() throws Exception {
+    CacheProvider provider = new LruCacheProvider(10);
+    Cache<String, String> cache = createCache(provider);
+    cache.addElement("a", "1");
+    cache.addElement("b", "2");
+    createSnapshotter(provider, 10).save();
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(raf.length() - 4);
+    } finally {
+      raf.close();
+    }
+
+    CacheProvider restartedProvider = new LruCacheProvider(10);
+    Cache<String, String> restarted = createCache(restartedProvider);
+    assertEquals(1, createSnapshotter(restartedProvider, 10).restore());
+    assertEquals("2", restarted.getElement("b"));
+  }
+
+  @Test
+  public void disabledWithoutFile() {
+    CacheSnapshotter snapshotter
+        = new CacheSnapshotter(new LruCacheProvider(10), new CacheSerializerRegistry(), "", 10, 0);
+    snapshotter.start();
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void restoreRecordsNoLookups() throws Exception {
+    CacheProvider provider = new LruCacheProvider(10);
+    createCache(provider).addElement("key", "value");
+    createSnapshotter(provider, 10).save();
+
+    CacheProvider restartedProvider = new LruCacheProvider(10);
+    Cache<String, String> restarted = createCache(restartedProvider);
+    assertEquals(1, createSnapshotter(restartedProvider, 10).restore());
+    assertEquals(0, restarted.getStats().getRequestCount());
+  }
+}
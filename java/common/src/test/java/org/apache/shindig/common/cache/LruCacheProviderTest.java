@@ -20,6 +20,7 @@ package org.apache.shindig.common.cache;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -48,13 +49,18 @@ public class LruCacheProviderTest {
     assertEquals(10, getCache(provider, null).capacity);
   }
 
-  LruCacheProvider createProvider(final String name, final String capacity, int defaultCapacity) {
+  LruCacheProvider createProvider(String name, String capacity, int defaultCapacity) {
+    return createProvider(name, "capacity", capacity, defaultCapacity);
+  }
+
+  LruCacheProvider createProvider(final String name, final String setting, final String value,
+      int defaultCapacity) {
     Module module = new AbstractModule() {
       @Override
       public void configure() {
         binder().bindConstant()
-            .annotatedWith(Names.named("shindig.cache.lru." + name + ".capacity"))
-            .to(capacity);
+            .annotatedWith(Names.named("shindig.cache.lru." + name + '.' + setting))
+            .to(value);
       }
     };
 
@@ -87,4 +93,27 @@ public class LruCacheProviderTest {
     assertEquals(10, getCache(provider, "foo").capacity);
   }
 
+  private static final Weigher<Object, Object> WEIGHER = new Weigher<Object, Object>() {
+    public int weigh(Object key, Object value) {
+      return 1;
+    }
+  };
+
+  @Test
+  public void configuredMaxBytes() throws Exception {
+    LruCacheProvider provider = createProvider("foo", "max-bytes", "1000", 10);
+    Cache<Object, Object> cache = provider.createCache("foo", WEIGHER);
+    assertTrue(cache instanceof WeightedLruCache);
+    assertEquals(1000, ((WeightedLruCache<Object, Object>) cache).maxWeight);
+    assertEquals(10, cache.getCapacity());
+    assertSame(cache, provider.createCache("foo", WEIGHER));
+  }
+
+  @Test
+  public void weigherWithoutMaxBytes() throws Exception {
+    LruCacheProvider provider = createProvider("foo", "100", 10);
+    Cache<Object, Object> cache = provider.createCache("foo", WEIGHER);
+    assertTrue(cache instanceof LruCache);
+    assertEquals(100, cache.getCapacity());
+  }
 }
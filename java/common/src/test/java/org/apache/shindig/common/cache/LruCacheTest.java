@@ -19,10 +19,16 @@
 package org.apache.shindig.common.cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.shindig.common.util.FakeTimeSource;
 
 import org.junit.Test;
 
+import java.util.List;
+
 public class LruCacheTest {
   private static final int TEST_CAPACITY = 2;
 
@@ -50,4 +56,73 @@ public class LruCacheTest {
     assertEquals(TEST_CAPACITY, cache.getCapacity());
     assertNull(cache.getElement("0"));
   }
+
+  @Test
+  public void statsRecorded() {
+    for (int i = 0; i < TEST_CAPACITY + 1; ++i) {
+      cache.addElement(Integer.toString(i), Integer.toString(i));
+    }
+    cache.getElement("0");
+    cache.getElement("1");
+    cache.getElement("2");
+    assertEquals(new CacheStats(2, 1, 1), cache.getStats());
+    assertEquals(2.0 / 3, cache.getStats().getHitRate(), 0.001);
+  }
+
+  @Test
+  public void hottestEntriesMostRecentFirst() {
+    cache.addElement("a", "1");
+    cache.addElement("b", "2");
+    cache.getElement("a");
+    List<SnapshotEntry<String, String>> hottest = cache.getHottestEntries(1);
+    assertEquals(1, hottest.size());
+    assertEquals("a", hottest.get(0).getKey());
+    assertEquals("1", hottest.get(0).getValue());
+    assertEquals(SnapshotEntry.NEVER, hottest.get(0).getExpirationTime());
+    assertEquals(2, cache.getHottestEntries(10).size());
+  }
+
+  @Test
+  public void expiredEntryRemoved() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    cache.setTimeSource(timeSource);
+    cache.addElement("expiring", "value", -1, 1000);
+    cache.addElement("eternal", "value");
+    assertEquals("value", cache.getElement("expiring"));
+
+    timeSource.setCurrentTimeMillis(1000);
+    assertNull(cache.getElement("expiring"));
+    cache.addElement("other", "value");
+    assertNull(cache.getEntry("expiring"));
+    assertEquals("value", cache.getElement("eternal"));
+    assertEquals(2, cache.getSize());
+  }
+
+  @Test
+  public void refreshNeededAfterRefreshTime() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    cache.setTimeSource(timeSource);
+    cache.addElement("key", "value", 1000, -1);
+    assertFalse(cache.getEntry("key").isRefreshNeeded());
+
+    timeSource.setCurrentTimeMillis(5000);
+    CacheEntry<String> entry = cache.getEntry("key");
+    assertEquals("value", entry.getValue());
+    assertTrue(entry.isRefreshNeeded());
+
+    cache.addElement("key", "fresh", 1000, -1);
+    assertFalse(cache.getEntry("key").isRefreshNeeded());
+  }
+
+  @Test
+  public void containsElementLeavesStatsAndOrder() {
+    cache.addElement("a", "1");
+    cache.addElement("b", "2");
+    assertTrue(cache.containsElement("a"));
+    assertFalse(cache.containsElement("missing"));
+
+    cache.addElement("c", "3");
+    assertFalse(cache.containsElement("a"));
+    assertEquals(new CacheStats(0, 0, 1), cache.getStats());
+  }
 }
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.shindig.common.util.FakeTimeSource;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Tests for RemoteCache, with two providers standing in for two servers of a cluster.
+ */
+public class RemoteCacheTest {
+  private static final String CACHE_NAME = "shared";
+  private static final CacheSerializer<String> STRING_SERIALIZER = new CacheSerializer<String>() {
+    public void write(String value, DataOutput out) throws IOException {
+      out.writeUTF(value);
+    }
+
+    public String read(DataInput in) throws IOException {
+      return in.readUTF();
+    }
+  };
+
+  private final InProcessCacheServer server = new InProcessCacheServer();
+  private final CacheSerializerRegistry serializers = new CacheSerializerRegistry();
+  private RemoteCache<String, String> first;
+  private RemoteCache<String, String> second;
+
+  @Before
+  public void setUp() {
+    serializers.register(CACHE_NAME, CacheSerializers.STRING, STRING_SERIALIZER);
+    first = createCache(CACHE_NAME);
+    second = createCache(CACHE_NAME);
+  }
+
+  private RemoteCache<String, String> createCache(String name) {
+    RemoteCacheProvider provider = new RemoteCacheProvider(new LruCacheProvider(10),
+        new InProcessCacheClient(server), serializers);
+    return (RemoteCache<String, String>) provider.<String, String>createCache(name);
+  }
+
+  @Test
+  public void valueSharedBetweenServers() {
+    first.addElement("key", "value");
+    assertEquals(1, server.size());
+    assertEquals("value", second.getElement("key"));
+    assertEquals(1, second.getSize());
+    assertEquals(new CacheStats(1, 0, 0), second.getStats());
+  }
+
+  @Test
+  public void missingEverywhere() {
+    assertNull(first.getElement("key"));
+    assertEquals(new CacheStats(0, 1, 0), first.getStats());
+  }
+
+  @Test
+  public void writeInvalidatesOtherServers() {
+    first.addElement("key", "value");
+    assertEquals("value", second.getElement("key"));
+
+    first.addElement("key", "changed");
+    assertEquals(0, second.getSize());
+    assertEquals("changed", second.getElement("key"));
+  }
+
+  @Test
+  public void removeInvalidatesOtherServers() {
+    first.addElement("key", "value");
+    assertEquals("value", second.getElement("key"));
+
+    assertEquals("value", first.removeElement("key"));
+    assertNull(second.getElement("key"));
+    assertEquals(0, server.size());
+  }
+
+  @Test
+  public void cacheWithoutSerializerIsLocal() {
+    RemoteCache<String, String> local = createCache("local");
+    RemoteCache<String, String> otherLocal = createCache("local");
+    local.addElement("key", "value");
+    assertEquals("value", local.getElement("key"));
+    assertNull(otherLocal.getElement("key"));
+    assertEquals(0, server.size());
+  }
+
+  @Test
+  public void multipleElementsFetched() {
+    first.addElement("a", "1");
+    first.addElement("b", "2");
+    second.addElement("c", "3");
+
+    assertEquals(ImmutableMap.of("a", "1", "b", "2", "c", "3"),
+        second.getElements(Lists.newArrayList("a", "b", "c", "d")));
+    assertEquals(new CacheStats(3, 1, 0), second.getStats());
+    assertEquals("1", second.getElement("a"));
+  }
+
+  @Test
+  public void refreshTimeShared() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    first.setTimeSource(timeSource);
+    second.setTimeSource(timeSource);
+    first.addElement("key", "value", 1000, -1);
+
+    timeSource.setCurrentTimeMillis(5000);
+    CacheEntry<String> entry = second.getEntry("key");
+    assertEquals("value", entry.getValue());
+    assertTrue(entry.isRefreshNeeded());
+  }
+
+  @Test
+  public void expiredRemoteValueIgnored() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    server.setTimeSource(timeSource);
+    first.setTimeSource(timeSource);
+    second.setTimeSource(timeSource);
+    first.addElement("key", "value", -1, 1000);
+
+    timeSource.setCurrentTimeMillis(1000);
+    assertNull(second.getElement("key"));
+    assertEquals(new CacheStats(0, 1, 0), second.getStats());
+  }
+
+  @Test
+  public void containsElementChecksLocalTierOnly() {
+    first.addElement("key", "value");
+    assertTrue(first.containsElement("key"));
+    assertFalse(second.containsElement("key"));
+    assertEquals(0, second.getStats().getRequestCount());
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class TimerWheelTest {
+  private final TimerWheel<String> wheel = new TimerWheel<String>(0);
+  private final List<String> expired = Lists.newArrayList();
+
+  @Test
+  public void timersFireInOrder() {
+    wheel.schedule("second", 2000);
+    wheel.schedule("minute", 60 * 1000);
+    wheel.schedule("hour", 3600 * 1000);
+
+    wheel.advance(1000, expired);
+    assertTrue(expired.isEmpty());
+
+    wheel.advance(5000, expired);
+    assertEquals(Lists.newArrayList("second"), expired);
+
+    expired.clear();
+    wheel.advance(59 * 1000, expired);
+    assertTrue(expired.isEmpty());
+    wheel.advance(62 * 1000, expired);
+    assertEquals(Lists.newArrayList("minute"), expired);
+
+    expired.clear();
+    wheel.advance(3599 * 1000, expired);
+    assertTrue(expired.isEmpty());
+    wheel.advance(3602 * 1000, expired);
+    assertEquals(Lists.newArrayList("hour"), expired);
+  }
+
+  @Test
+  public void largeJumpExpiresEverythingDue() {
+    for (int i = 1; i <= 100; ++i) {
+      wheel.schedule(Integer.toString(i), i * 100000L);
+    }
+    wheel.advance(50 * 100000L, expired);
+    assertEquals(50, expired.size());
+    expired.clear();
+    wheel.advance(1000 * 100000L, expired);
+    assertEquals(50, expired.size());
+  }
+
+  @Test
+  public void cancelledTimerDoesNotFire() {
+    TimerWheel.Timer<String> timer = wheel.schedule("cancelled", 2000);
+    wheel.schedule("kept", 2000);
+    wheel.cancel(timer);
+    wheel.cancel(timer);
+    wheel.advance(10000, expired);
+    assertEquals(Lists.newArrayList("kept"), expired);
+  }
+
+  @Test
+  public void distantTimerFires() {
+    long year = 365L * 24 * 3600 * 1000;
+    wheel.schedule("year", year);
+    wheel.advance(year / 2, expired);
+    assertTrue(expired.isEmpty());
+    wheel.advance(year + 1, expired);
+    assertEquals(Lists.newArrayList("year"), expired);
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.shindig.common.util.FakeTimeSource;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TinyLfuCacheTest {
+  private static final int TEST_CAPACITY = 100;
+
+  private final TinyLfuCache<String, String> cache
+      = new TinyLfuCache<String, String>(TEST_CAPACITY);
+
+  @Test
+  public void addGetRemove() {
+    cache.addElement("key", "value");
+    assertEquals("value", cache.getElement("key"));
+    cache.addElement("key", "other");
+    assertEquals("other", cache.getElement("key"));
+    assertEquals(1, cache.getSize());
+    assertEquals("other", cache.removeElement("key"));
+    assertNull(cache.getElement("key"));
+    assertEquals(0, cache.getSize());
+    assertEquals(TEST_CAPACITY, cache.getCapacity());
+  }
+
+  @Test
+  public void exceededCapacityRemoved() {
+    for (int i = 0; i < TEST_CAPACITY * 3; ++i) {
+      cache.addElement(Integer.toString(i), Integer.toString(i));
+    }
+    assertEquals(TEST_CAPACITY, cache.getSize());
+  }
+
+  @Test
+  public void popularEntrySurvivesScan() {
+    cache.addElement("hot", "hot");
+    for (int i = 0; i < 50; ++i) {
+      cache.getElement("hot");
+    }
+    for (int i = 0; i < TEST_CAPACITY * 10; ++i) {
+      cache.addElement(Integer.toString(i), Integer.toString(i));
+    }
+    assertEquals("hot", cache.getElement("hot"));
+  }
+
+  @Test
+  public void statsRecorded() {
+    for (int i = 0; i < TEST_CAPACITY + 5; ++i) {
+      cache.addElement(Integer.toString(i), Integer.toString(i));
+    }
+    cache.getElement(Integer.toString(TEST_CAPACITY + 4));
+    cache.getElement("missing");
+    CacheStats stats = cache.getStats();
+    assertEquals(1, stats.getHitCount());
+    assertEquals(1, stats.getMissCount());
+    assertEquals(5, stats.getEvictionCount());
+  }
+
+  @Test
+  public void zeroCapacityCachesNothing() {
+    TinyLfuCache<String, String> empty = new TinyLfuCache<String, String>(0);
+    empty.addElement("key", "value");
+    assertNull(empty.getElement("key"));
+  }
+
+  @Test
+  public void exceededWeightRemoved() {
+    Weigher<String, String> weigher = new Weigher<String, String>() {
+      public int weigh(String key, String value) {
+        return value.length();
+      }
+    };
+    TinyLfuCache<String, String> weighted
+        = new TinyLfuCache<String, String>(TEST_CAPACITY, 1000, weigher);
+    for (int i = 0; i < 50; ++i) {
+      weighted.addElement(Integer.toString(i), "0123456789012345678901234567890123456789");
+    }
+    assertTrue(weighted.getSize() <= 25);
+  }
+
+  @Test
+  public void oversizedEntryRejected() {
+    Weigher<String, String> weigher = new Weigher<String, String>() {
+      public int weigh(String key, String value) {
+        return value.length();
+      }
+    };
+    TinyLfuCache<String, String> weighted
+        = new TinyLfuCache<String, String>(TEST_CAPACITY, 100, weigher);
+    for (int i = 0; i < 10; ++i) {
+      weighted.addElement(Integer.toString(i), "0123456789");
+    }
+    String oversized = "0123456789012345678901234567890123456789012345678901234567890123456789" +
+        "012345678901234567890123456789";
+
+    // However often it is requested, the oversized entry never displaces the others.
+    for (int i = 0; i < 20; ++i) {
+      weighted.getElement("big");
+      weighted.addElement("big", oversized);
+    }
+    weighted.addElement("0", oversized);
+
+    assertNull(weighted.getElement("big"));
+    assertNull(weighted.getElement("0"));
+    assertTrue(weighted.getSize() >= 8);
+  }
+
+  @Test
+  public void concurrentAccess() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; ++t) {
+      final int seed = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 10000; ++i) {
+              String key = Integer.toString((i * 31 + seed) % (TEST_CAPACITY * 4));
+              if (i % 3 == 0) {
+                cache.addElement(key, key);
+              } else if (i % 17 == 0) {
+                cache.removeElement(key);
+              } else {
+                String value = cache.getElement(key);
+                if (value != null && !value.equals(key)) {
+                  throw new AssertionError("Wrong value for " + key);
+                }
+              }
+            }
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+    assertTrue(cache.getSize() <= TEST_CAPACITY);
+  }
+
+  @Test
+  public void providerUsesConfiguredCapacity() {
+    TinyLfuCacheProvider provider = new TinyLfuCacheProvider(10);
+    Cache<String, String> created = provider.createCache("foo");
+    assertTrue(created instanceof TinyLfuCache);
+    assertEquals(10, created.getCapacity());
+  }
+
+  @Test
+  public void hottestEntriesListed() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    cache.setTimeSource(timeSource);
+    cache.addElement("a", "1", 1000, 2000);
+    cache.addElement("b", "2");
+    List<SnapshotEntry<String, String>> hottest = cache.getHottestEntries(10);
+    assertEquals(2, hottest.size());
+    assertEquals("b", hottest.get(0).getKey());
+    assertEquals(1000, hottest.get(1).getRefreshTime());
+    assertEquals(2000, hottest.get(1).getExpirationTime());
+    assertEquals(1, cache.getHottestEntries(1).size());
+  }
+
+  @Test
+  public void expiredEntryRemoved() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    cache.setTimeSource(timeSource);
+    cache.addElement("expiring", "value", -1, 1000);
+    cache.addElement("eternal", "value");
+    assertEquals("value", cache.getElement("expiring"));
+
+    timeSource.setCurrentTimeMillis(1000);
+    assertNull(cache.getElement("expiring"));
+    cache.addElement("other", "value");
+    assertNull(cache.getEntry("expiring"));
+    assertEquals("value", cache.getElement("eternal"));
+    assertEquals(2, cache.getSize());
+  }
+
+  @Test
+  public void refreshNeededAfterRefreshTime() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    cache.setTimeSource(timeSource);
+    cache.addElement("key", "value", 1000, -1);
+    assertFalse(cache.getEntry("key").isRefreshNeeded());
+
+    timeSource.setCurrentTimeMillis(5000);
+    CacheEntry<String> entry = cache.getEntry("key");
+    assertEquals("value", entry.getValue());
+    assertTrue(entry.isRefreshNeeded());
+
+    cache.addElement("key", "fresh", 1000, -1);
+    assertFalse(cache.getEntry("key").isRefreshNeeded());
+  }
+
+  @Test
+  public void containsElementIgnoresExpiredEntries() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    cache.setTimeSource(timeSource);
+    cache.addElement("expiring", "value", -1, 1000);
+    assertTrue(cache.containsElement("expiring"));
+    assertFalse(cache.containsElement("missing"));
+
+    timeSource.setCurrentTimeMillis(1000);
+    assertFalse(cache.containsElement("expiring"));
+    assertEquals(0, cache.getStats().getRequestCount());
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.shindig.common.util.FakeTimeSource;
+
+import org.junit.Test;
+
+public class WeightedLruCacheTest {
+  private static final Weigher<String, String> LENGTH_WEIGHER = new Weigher<String, String>() {
+    public int weigh(String key, String value) {
+      return value.length();
+    }
+  };
+
+  private final WeightedLruCache<String, String> cache
+      = new WeightedLruCache<String, String>(10, 10, LENGTH_WEIGHER);
+
+  @Test
+  public void weightTracked() {
+    cache.addElement("a", "aaa");
+    cache.addElement("b", "bb");
+    assertEquals(5, cache.getWeight());
+    cache.addElement("a", "a");
+    assertEquals(3, cache.getWeight());
+    cache.removeElement("b");
+    assertEquals(1, cache.getWeight());
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  public void exceededWeightEvictsLeastRecentlyUsed() {
+    cache.addElement("a", "aaaa");
+    cache.addElement("b", "bbbb");
+    cache.getElement("a");
+    cache.addElement("c", "cccc");
+    assertNull(cache.getElement("b"));
+    assertEquals("aaaa", cache.getElement("a"));
+    assertEquals("cccc", cache.getElement("c"));
+    assertEquals(8, cache.getWeight());
+  }
+
+  @Test
+  public void manySmallEntriesEvictedForLargeOne() {
+    for (int i = 0; i < 10; ++i) {
+      cache.addElement(Integer.toString(i), "x");
+    }
+    cache.addElement("big", "xxxxxxxx");
+    assertEquals(3, cache.getSize());
+    assertEquals("xxxxxxxx", cache.getElement("big"));
+    assertEquals("x", cache.getElement("9"));
+  }
+
+  @Test
+  public void exceededCapacityRemoved() {
+    for (int i = 0; i < 11; ++i) {
+      cache.addElement(Integer.toString(i), "");
+    }
+    assertEquals(10, cache.getSize());
+    assertNull(cache.getElement("0"));
+  }
+
+  @Test
+  public void entryHeavierThanBudgetNotStored() {
+    cache.addElement("a", "a");
+    cache.addElement("a", "xxxxxxxxxxx");
+    assertNull(cache.getElement("a"));
+    assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  public void expiredEntryRemoved() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    cache.setTimeSource(timeSource);
+    cache.addElement("expiring", "value", -1, 1000);
+    cache.addElement("eternal", "value");
+    assertEquals("value", cache.getElement("expiring"));
+
+    timeSource.setCurrentTimeMillis(1000);
+    assertNull(cache.getElement("expiring"));
+    cache.addElement("other", "value");
+    assertNull(cache.getEntry("expiring"));
+    assertEquals("value", cache.getElement("eternal"));
+    assertEquals(2, cache.getSize());
+  }
+
+  @Test
+  public void refreshNeededAfterRefreshTime() {
+    FakeTimeSource timeSource = new FakeTimeSource(0);
+    cache.setTimeSource(timeSource);
+    cache.addElement("key", "value", 1000, -1);
+    assertFalse(cache.getEntry("key").isRefreshNeeded());
+
+    timeSource.setCurrentTimeMillis(5000);
+    CacheEntry<String> entry = cache.getEntry("key");
+    assertEquals("value", entry.getValue());
+    assertTrue(entry.isRefreshNeeded());
+
+    cache.addElement("key", "fresh", 1000, -1);
+    assertFalse(cache.getEntry("key").isRefreshNeeded());
+  }
+
+  @Test
+  public void containsElementLeavesStatsAndOrder() {
+    cache.addElement("a", "aaaa");
+    cache.addElement("b", "bbbb");
+    assertTrue(cache.containsElement("a"));
+    assertFalse(cache.containsElement("missing"));
+
+    cache.addElement("c", "cccc");
+    assertFalse(cache.containsElement("a"));
+    assertEquals(0, cache.getStats().getRequestCount());
+  }
+}
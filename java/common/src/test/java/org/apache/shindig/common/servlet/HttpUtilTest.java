@@ -21,6 +21,7 @@ package org.apache.shindig.common.servlet;
 import static junitx.framework.ComparableAssert.assertGreater;
 import static junitx.framework.ComparableAssert.assertLesser;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.apache.commons.lang.StringUtils;
@@ -73,6 +74,29 @@ public class HttpUtilTest {
     checkCacheControlHeaders(testStartTime, recorder, ttl, false);
   }
 
+  @Test
+  public void testAcceptsEncoding() {
+    assertTrue(HttpUtil.acceptsEncoding("gzip", "gzip"));
+    assertTrue(HttpUtil.acceptsEncoding("deflate, GZIP", "gzip"));
+    assertTrue(HttpUtil.acceptsEncoding("x-gzip", "gzip"));
+    assertTrue(HttpUtil.acceptsEncoding("gzip;q=0.5, deflate", "gzip"));
+    assertTrue(HttpUtil.acceptsEncoding("*", "gzip"));
+    assertFalse(HttpUtil.acceptsEncoding(null, "gzip"));
+    assertFalse(HttpUtil.acceptsEncoding("", "gzip"));
+    assertFalse(HttpUtil.acceptsEncoding("deflate", "gzip"));
+    assertFalse(HttpUtil.acceptsEncoding("gzip-ish", "gzip"));
+  }
+
+  @Test
+  public void testAcceptsEncodingQualityZero() {
+    assertFalse(HttpUtil.acceptsEncoding("gzip;q=0", "gzip"));
+    assertFalse(HttpUtil.acceptsEncoding("gzip ; q=0.0, deflate", "gzip"));
+    assertFalse(HttpUtil.acceptsEncoding("*, gzip;q=0", "gzip"));
+    assertFalse(HttpUtil.acceptsEncoding("*;q=0", "gzip"));
+    assertFalse(HttpUtil.acceptsEncoding("gzip;q=junk", "gzip"));
+    assertTrue(HttpUtil.acceptsEncoding("*;q=0, gzip", "gzip"));
+  }
+
   @Test
   public void testSetCachingHeadersWithTtlAndNoProxy() {
     int ttl = 20;
@@ -19,7 +19,7 @@
 package org.apache.shindig.gadgets;
 
 import org.apache.shindig.common.cache.Cache;
-import org.apache.shindig.common.cache.SoftExpiringCache;
+import org.apache.shindig.common.cache.CacheEntry;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.xml.XmlException;
 import org.apache.shindig.config.ContainerConfig;
@@ -42,7 +42,7 @@ public abstract class AbstractSpecFactory<T> {
   private final Class<T> clazz;
   private final ExecutorService executor;
   private final RequestPipeline pipeline;
-  final SoftExpiringCache<Uri, Object> cache;
+  final Cache<Uri, Object> cache;
   private final long refresh;
 
   /**
@@ -50,14 +50,14 @@ public abstract class AbstractSpecFactory<T> {
    * @param executor for asynchronously updating specs
    * @param pipeline the request pipeline for fetching new specs
    * @param cache a cache for parsed spec objects
-   * @param refresh the frequency at which to update specs, independent of cache expiration policy
+   * @param refresh the frequency at which to update specs, independent of cache eviction policy
    */
   public AbstractSpecFactory(Class<T> clazz, ExecutorService executor, RequestPipeline pipeline,
       Cache<Uri, Object> cache, long refresh) {
     this.clazz = clazz;
     this.executor = executor;
     this.pipeline = pipeline;
-    this.cache = new SoftExpiringCache<Uri, Object>(cache);
+    this.cache = cache;
     this.refresh = refresh;
   }
 
@@ -71,14 +71,14 @@ public abstract class AbstractSpecFactory<T> {
   protected T getSpec(Query query) throws GadgetException {
     Object obj = null;
     if (!query.ignoreCache) {
-      SoftExpiringCache.CachedObject<Object> cached = cache.getElement(query.specUri);
+      CacheEntry<Object> cached = cache.getEntry(query.specUri);
       if (cached != null) {
-        obj = cached.obj;
-        if (cached.isExpired) {
+        obj = cached.getValue();
+        if (cached.isRefreshNeeded()) {
           // We write to the cache to avoid any race conditions with multiple writers.
           // This causes a double write, but that's better than a write per thread or synchronizing
           // this block.
-          cache.addElement(query.specUri, obj, refresh);
+          addToCache(query.specUri, obj);
           executor.execute(new SpecUpdater(query, obj));
         }
       }
@@ -90,7 +90,7 @@ public abstract class AbstractSpecFactory<T> {
       } catch (GadgetException e) {
         obj = e;
       }
-      cache.addElement(query.specUri, obj, refresh);
+      addToCache(query.specUri, obj);
     }
 
     if (obj instanceof GadgetException) {
@@ -101,6 +101,15 @@ public abstract class AbstractSpecFactory<T> {
     return clazz.cast(obj);
   }
 
+  /**
+   * Caches a spec, or the exception raised fetching it, to be refreshed in the background once it
+   * is older than the refresh interval. Entries are kept until evicted, so that a stale spec can
+   * still be served when its origin is down.
+   */
+  private void addToCache(Uri specUri, Object obj) {
+    cache.addElement(specUri, obj, refresh, -1);
+  }
+
   /**
    * Retrieves a spec from the network, parses, and adds it to the cache.
    */
@@ -115,14 +124,19 @@ public abstract class AbstractSpecFactory<T> {
     request.setCacheTtl((int) (refresh / 1000));
 
     HttpResponse response = pipeline.execute(request);
-    if (response.getHttpStatusCode() != HttpResponse.SC_OK) {
-      throw new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT,
-                                "Unable to retrieve spec for " + query.specUri + ". HTTP error " +
-                                response.getHttpStatusCode());
+    String content;
+    try {
+      if (response.getHttpStatusCode() != HttpResponse.SC_OK) {
+        throw new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT,
+                                  "Unable to retrieve spec for " + query.specUri +
+                                  ". HTTP error " + response.getHttpStatusCode());
+      }
+      content = response.getResponseAsString();
+    } finally {
+      response.release();
     }
 
     try {
-      String content = response.getResponseAsString();
       return parse(content, query);
     } catch (XmlException e) {
       throw new SpecParserException(e);
@@ -195,14 +209,14 @@ public abstract class AbstractSpecFactory<T> {
     public void run() {
       try {
         T newSpec = fetchFromNetwork(query);
-        cache.addElement(query.specUri, newSpec, refresh);
+        addToCache(query.specUri, newSpec);
       } catch (GadgetException e) {
         if (old != null) {
           logger.log(Level.INFO, "Failed to update {0}. Using cached version.", query.specUri);
-          cache.addElement(query.specUri, old, refresh);
+          addToCache(query.specUri, old);
         } else {
           logger.log(Level.INFO, "Failed to update {0}. Applying negative cache.", query.specUri);
-          cache.addElement(query.specUri, e, refresh);
+          addToCache(query.specUri, e);
         }
       }
     }
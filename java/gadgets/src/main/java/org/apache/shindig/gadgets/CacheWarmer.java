@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import org.apache.shindig.common.cache.CacheSnapshotter;
+import org.apache.shindig.gadgets.http.HttpCache;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Restores the gadget spec, message bundle and HTTP response caches saved before the last
+ * shutdown, and keeps saving them from then on. See {@link CacheSnapshotter} for configuration.
+ */
+@Singleton
+public class CacheWarmer {
+  /**
+   * The caches are created, and their serializers registered, when the components that own them
+   * are, so they are injected here even though they aren't used directly.
+   */
+  @Inject
+  public CacheWarmer(CacheSnapshotter snapshotter, HttpCache httpCache,
+      GadgetSpecFactory specFactory, MessageBundleFactory bundleFactory) {
+    snapshotter.start();
+  }
+}
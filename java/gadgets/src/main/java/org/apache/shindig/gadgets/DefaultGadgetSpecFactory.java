@@ -20,6 +20,8 @@ package org.apache.shindig.gadgets;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.CacheSerializerRegistry;
+import org.apache.shindig.common.cache.CacheSerializers;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.xml.XmlException;
 import org.apache.shindig.common.xml.XmlUtil;
@@ -57,6 +59,14 @@ public class DefaultGadgetSpecFactory extends AbstractSpecFactory<GadgetSpec>
     return cacheProvider.createCache(CACHE_NAME);
   }
 
+  /**
+   * Allows specs to be kept in caches shared between servers.
+   */
+  @Inject(optional = true)
+  public void setSerializers(CacheSerializerRegistry serializers) {
+    serializers.register(CACHE_NAME, CacheSerializers.URI, new GadgetSpecSerializer());
+  }
+
   public GadgetSpec getGadgetSpec(GadgetContext context) throws GadgetException {
     String rawxml = context.getParameter(RAW_GADGETSPEC_XML_PARAM_NAME);
     if (rawxml != null) {
@@ -18,6 +18,7 @@
  */
 package org.apache.shindig.gadgets;
 
+import org.apache.shindig.common.util.DaemonThreadFactory;
 import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.http.InvalidationHandler;
 import org.apache.shindig.gadgets.parse.ParseModule;
@@ -36,6 +37,7 @@ import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 
 /**
@@ -50,9 +52,14 @@ public class DefaultGuiceModule extends AbstractModule {
     final ExecutorService service = Executors.newCachedThreadPool(DAEMON_THREAD_FACTORY);
     bind(Executor.class).toInstance(service);
     bind(ExecutorService.class).toInstance(service);
+    // Runs short timed tasks, such as timeouts, that hand any real work to the executor.
+    final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(DAEMON_THREAD_FACTORY);
+    bind(ScheduledExecutorService.class).toInstance(scheduler);
     Runtime.getRuntime().addShutdownHook(new Thread() {
         public void run() {
             service.shutdownNow();
+            scheduler.shutdownNow();
         }
     });
 
@@ -71,16 +78,12 @@ public class DefaultGuiceModule extends AbstractModule {
 
     // We perform static injection on HttpResponse for cache TTLs.
     requestStaticInjection(HttpResponse.class);
+
+    // Restore the caches saved at the last shutdown, if snapshots are enabled.
+    bind(CacheWarmer.class).asEagerSingleton();
   }
 
 
-  public static final ThreadFactory DAEMON_THREAD_FACTORY =
-    new ThreadFactory() {
-        public Thread newThread(Runnable r) {
-            Thread t = Executors.defaultThreadFactory().newThread(r);
-            t.setDaemon(true);
-            return t;
-        }
-    };
+  public static final ThreadFactory DAEMON_THREAD_FACTORY = DaemonThreadFactory.INSTANCE;
 
 }
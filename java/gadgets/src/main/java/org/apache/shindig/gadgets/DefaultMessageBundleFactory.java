@@ -20,6 +20,8 @@ package org.apache.shindig.gadgets;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.CacheSerializerRegistry;
+import org.apache.shindig.common.cache.CacheSerializers;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.config.ContainerConfig;
 import org.apache.shindig.gadgets.http.RequestPipeline;
@@ -55,6 +57,14 @@ public class DefaultMessageBundleFactory extends AbstractSpecFactory<MessageBund
     return cacheProvider.createCache(CACHE_NAME);
   }
 
+  /**
+   * Allows bundles to be kept in caches shared between servers.
+   */
+  @Inject(optional = true)
+  public void setSerializers(CacheSerializerRegistry serializers) {
+    serializers.register(CACHE_NAME, CacheSerializers.URI, new MessageBundleSerializer());
+  }
+
   @Override
   protected MessageBundle parse(String content, Query query) throws GadgetException {
     return new MessageBundle(((LocaleQuery) query).locale, content);
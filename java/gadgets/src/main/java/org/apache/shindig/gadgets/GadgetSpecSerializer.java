@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import org.apache.shindig.common.cache.CacheSerializers;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.xml.XmlException;
+import org.apache.shindig.common.xml.XmlUtil;
+import org.apache.shindig.gadgets.spec.GadgetSpec;
+import org.apache.shindig.gadgets.spec.SpecParserException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Stores gadget specs as their XML source. They are parsed again when read, which is much
+ * cheaper than fetching them.
+ */
+class GadgetSpecSerializer extends SpecCacheSerializer {
+  @Override
+  protected void writeSpec(Object value, DataOutput out) throws IOException {
+    if (!(value instanceof GadgetSpec)) {
+      throw new IOException("Unexpected gadget spec cache entry " + value.getClass().getName());
+    }
+    GadgetSpec spec = (GadgetSpec) value;
+    CacheSerializers.URI.write(spec.getUrl(), out);
+    CacheSerializers.STRING.write(spec.getSource(), out);
+  }
+
+  @Override
+  protected Object readSpec(DataInput in) throws IOException {
+    Uri url = CacheSerializers.URI.read(in);
+    String source = CacheSerializers.STRING.read(in);
+    try {
+      return new GadgetSpec(url, XmlUtil.parse(source), source);
+    } catch (XmlException e) {
+      throw new IOException("Unable to parse cached spec " + url + ": " + e.getMessage());
+    } catch (SpecParserException e) {
+      throw new IOException("Unable to parse cached spec " + url + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import org.apache.shindig.common.cache.CacheSerializers;
+import org.apache.shindig.gadgets.spec.MessageBundle;
+
+import com.google.common.collect.Maps;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Stores message bundles as their messages and language direction.
+ */
+class MessageBundleSerializer extends SpecCacheSerializer {
+  @Override
+  protected void writeSpec(Object value, DataOutput out) throws IOException {
+    if (!(value instanceof MessageBundle)) {
+      throw new IOException("Unexpected message bundle cache entry " +
+          value.getClass().getName());
+    }
+    MessageBundle bundle = (MessageBundle) value;
+    out.writeUTF(bundle.getLanguageDirection());
+    Map<String, String> messages = bundle.getMessages();
+    out.writeInt(messages.size());
+    for (Map.Entry<String, String> message : messages.entrySet()) {
+      CacheSerializers.STRING.write(message.getKey(), out);
+      CacheSerializers.STRING.write(message.getValue(), out);
+    }
+  }
+
+  @Override
+  protected Object readSpec(DataInput in) throws IOException {
+    String languageDirection = in.readUTF();
+    int size = in.readInt();
+    Map<String, String> messages = Maps.newHashMapWithExpectedSize(size);
+    for (int i = 0; i < size; ++i) {
+      messages.put(CacheSerializers.STRING.read(in), CacheSerializers.STRING.read(in));
+    }
+    return new MessageBundle(messages, languageDirection);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import org.apache.shindig.common.cache.CacheSerializer;
+import org.apache.shindig.common.cache.CacheSerializers;
+import org.apache.shindig.gadgets.spec.SpecParserException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Stores the entries of an {@link AbstractSpecFactory} cache outside of the JVM. Cached failures
+ * are kept as their error code and message; subclasses store the specs themselves.
+ */
+abstract class SpecCacheSerializer implements CacheSerializer<Object> {
+  private static final byte VERSION = 1;
+  private static final byte TYPE_SPEC = 0;
+  private static final byte TYPE_EXCEPTION = 1;
+  private static final byte TYPE_PARSER_EXCEPTION = 2;
+
+  public void write(Object value, DataOutput out) throws IOException {
+    out.writeByte(VERSION);
+    if (value instanceof GadgetException) {
+      GadgetException e = (GadgetException) value;
+      out.writeByte(e instanceof SpecParserException ? TYPE_PARSER_EXCEPTION : TYPE_EXCEPTION);
+      out.writeUTF(e.getCode().name());
+      CacheSerializers.STRING.write(e.getMessage() == null ? "" : e.getMessage(), out);
+    } else {
+      out.writeByte(TYPE_SPEC);
+      writeSpec(value, out);
+    }
+  }
+
+  public Object read(DataInput in) throws IOException {
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unknown spec cache format version " + version);
+    }
+    byte type = in.readByte();
+    switch (type) {
+      case TYPE_SPEC:
+        return readSpec(in);
+      case TYPE_EXCEPTION:
+        GadgetException.Code code;
+        try {
+          code = GadgetException.Code.valueOf(in.readUTF());
+        } catch (IllegalArgumentException e) {
+          throw new IOException("Unknown error code: " + e.getMessage());
+        }
+        return new GadgetException(code, CacheSerializers.STRING.read(in));
+      case TYPE_PARSER_EXCEPTION:
+        in.readUTF();
+        return new SpecParserException(CacheSerializers.STRING.read(in));
+      default:
+        throw new IOException("Unknown spec cache entry type " + type);
+    }
+  }
+
+  /**
+   * Writes a spec.
+   *
+   * @throws IOException If the value is not a spec of the expected type.
+   */
+  protected abstract void writeSpec(Object spec, DataOutput out) throws IOException;
+
+  protected abstract Object readSpec(DataInput in) throws IOException;
+}
@@ -26,6 +26,8 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
 import org.apache.shindig.common.Pair;
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.uri.UriBuilder;
 import org.apache.shindig.common.util.ResourceLoader;
@@ -59,6 +61,7 @@ public class FeatureRegistry {
   public static final char FILE_SEPARATOR = ',';
   public static final String RESOURCE_SCHEME = "res";
   public static final String FILE_SCHEME = "file";
+  public static final String BUNDLE_CACHE_NAME = "featureJsBundles";
   
   private static final Logger logger
       = Logger.getLogger("org.apache.shindig.gadgets");
@@ -71,6 +74,9 @@ public class FeatureRegistry {
   private final FeatureParser parser;
   private final FeatureResourceLoader resourceLoader;
   private final Map<String, FeatureNode> featureMap;
+  private Cache<String, JsBundle> bundleCache;
+  // Incremented by register(), so that bundles built from earlier registrations are not reused.
+  private volatile int registrations;
   
   @Inject
   public FeatureRegistry(FeatureResourceLoader resourceLoader) {
@@ -90,6 +96,11 @@ public class FeatureRegistry {
       @Named("shindig.features.default") String featureFiles) throws GadgetException {
     register(featureFiles);
   }
+
+  @Inject(optional = true)
+  public void setCacheProvider(CacheProvider cacheProvider) {
+    bundleCache = cacheProvider.createCache(BUNDLE_CACHE_NAME);
+  }
   
   /**
    * Reads and registers all of the features in the directory, or the file, specified by
@@ -154,6 +165,7 @@ public class FeatureRegistry {
       // Connect the dependency graph made up of all features and validate there
       // are no circular deps.
       connectDependencyGraph();
+      ++registrations;
     } catch (IOException e) {
       throw new GadgetException(GadgetException.Code.INVALID_PATH, e);
     }
@@ -184,12 +196,22 @@ public class FeatureRegistry {
       useCache = (unsupported != null) ? cache : cacheIgnoreUnsupported;
     }
     
-    List<FeatureResource> resources = Lists.newLinkedList();
-    
     if (useCache != null && useCache.containsKey(needed)) {
       return useCache.get(needed);
     }
     
+    List<FeatureResource> resources = getResources(ctx, needed, unsupported, transitive);
+    
+    if (useCache != null && (unsupported == null || unsupported.isEmpty())) {
+      useCache.put(needed, resources);
+    }
+      
+    return resources;
+  }
+  
+  private List<FeatureResource> getResources(GadgetContext ctx, Collection<String> needed,
+      List<String> unsupported, boolean transitive) {
+    List<FeatureResource> resources = Lists.newLinkedList();
     List<FeatureNode> featureNodes = null;
     if (transitive) {
       featureNodes = getTransitiveDeps(needed, unsupported);
@@ -209,11 +231,6 @@ public class FeatureRegistry {
         }
       }
     }
-    
-    if (useCache != null && (unsupported == null || unsupported.isEmpty())) {
-      useCache.put(needed, resources);
-    }
-      
     return resources;
   }
   
@@ -229,6 +246,72 @@ public class FeatureRegistry {
     return getFeatureResources(ctx, needed, unsupported, true);
   }
   
+  /**
+   * Returns the JavaScript for the needed features and their transitive dependencies, without
+   * the resources of the excluded features and their dependencies. Unknown features are ignored.
+   *
+   * Bundles for known features are cached by feature lists, container, rendering context and
+   * debug flag, so that serving the same set of features again doesn't join or encode anything.
+   *
+   * @param ctx Context for the request.
+   * @param needed List of all needed features.
+   * @param excluded Features whose resources are already available, eg. through &libs=.
+   * @return The joined JavaScript.
+   */
+  public JsBundle getJsBundle(
+      GadgetContext ctx, Collection<String> needed, Collection<String> excluded) {
+    String key = null;
+    if (bundleCache != null) {
+      key = getBundleKey(ctx, needed, excluded);
+      JsBundle bundle = bundleCache.getElement(key);
+      if (bundle != null) {
+        return bundle;
+      }
+    }
+
+    List<String> unsupported = Lists.newArrayList();
+    List<FeatureResource> resources = Lists.newArrayList(getResources(ctx, needed, unsupported,
+        true));
+    if (!excluded.isEmpty()) {
+      resources.removeAll(getResources(ctx, excluded, unsupported, true));
+    }
+    JsBundle bundle = new JsBundle(resources, ctx.getDebug());
+
+    // Only bundles of known features are kept, as arbitrary names may come from request URLs.
+    if (key != null && unsupported.isEmpty()) {
+      bundleCache.addElement(key, bundle);
+    }
+    return bundle;
+  }
+
+  private String getBundleKey(
+      GadgetContext ctx, Collection<String> needed, Collection<String> excluded) {
+    StringBuilder key = new StringBuilder();
+    key.append(registrations).append(':')
+       .append(ctx.getRenderingContext()).append(':')
+       .append(ctx.getDebug()).append(':');
+    appendKeyPart(key, ctx.getContainer());
+    key.append(needed.size()).append(':');
+    for (String feature : needed) {
+      appendKeyPart(key, feature);
+    }
+    for (String feature : excluded) {
+      appendKeyPart(key, feature);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Appends a length-prefixed value, so that no two sets of values produce the same key.
+   */
+  private static void appendKeyPart(StringBuilder key, String value) {
+    if (value == null) {
+      key.append('-');
+    } else {
+      key.append(value.length()).append(':').append(value);
+    }
+  }
+  
   /**
    * Returns all known FeatureResources in dependency order, as described in getFeatureResources.
    * Returns only GADGET-context resources. This is a convenience method largely for calculating
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.features;
+
+import org.apache.shindig.common.util.CharsetUtil;
+import org.apache.shindig.common.util.HashUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The JavaScript of a set of feature resources, joined once and kept both as a String and as
+ * UTF-8 bytes, along with a checksum of the content that can be used to version it. A gzipped
+ * copy of the bytes is made the first time it is needed.
+ *
+ * Each resource is followed by ";\n". External resources are loaded with document.write().
+ */
+public class JsBundle {
+  private final String content;
+  private final byte[] bytes;
+  private final String checksum;
+  private final boolean proxyCacheable;
+  private final boolean hasExternal;
+  // Compressed on first use, since bundles inlined into rendered gadgets never need it.
+  private volatile byte[] gzipped;
+
+  /**
+   * @param resources The resources to join, in order.
+   * @param debug True to use the debug content of each resource.
+   */
+  public JsBundle(Collection<? extends FeatureResource> resources, boolean debug) {
+    StringBuilder js = new StringBuilder();
+    boolean isProxyCacheable = true;
+    boolean isExternal = false;
+    for (FeatureResource resource : resources) {
+      String resourceContent = debug ? resource.getDebugContent() : resource.getContent();
+      if (!resource.isExternal()) {
+        js.append(resourceContent);
+      } else {
+        // Support external/type=url feature serving through document.write()
+        js.append("document.write('<script src=\"").append(resourceContent)
+            .append("\"></script>')");
+        isExternal = true;
+      }
+      isProxyCacheable = isProxyCacheable && resource.isProxyCacheable();
+      js.append(";\n");
+    }
+    content = js.toString();
+    bytes = CharsetUtil.getUtf8Bytes(content);
+    checksum = HashUtil.checksum(bytes);
+    proxyCacheable = isProxyCacheable;
+    hasExternal = isExternal;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public int getContentLength() {
+    return bytes.length;
+  }
+
+  /**
+   * Writes the UTF-8 encoded content to the given stream.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes);
+  }
+
+  /**
+   * @return The length of the gzip-compressed content.
+   */
+  public int getGzippedLength() {
+    return getGzipped().length;
+  }
+
+  /**
+   * Writes the gzip-compressed UTF-8 content to the given stream. The content is only
+   * compressed once.
+   */
+  public void writeGzippedTo(OutputStream out) throws IOException {
+    out.write(getGzipped());
+  }
+
+  private byte[] getGzipped() {
+    byte[] result = gzipped;
+    if (result == null) {
+      // Concurrent callers may both compress the content, but they produce the same bytes.
+      ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      try {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+      } catch (IOException e) {
+        // Not possible when writing to memory.
+        throw new IllegalStateException(e);
+      }
+      result = out.toByteArray();
+      gzipped = result;
+    }
+    return result;
+  }
+
+  public String getChecksum() {
+    return checksum;
+  }
+
+  /**
+   * @return True if every resource in the bundle may be cached by intermediary proxies.
+   */
+  public boolean isProxyCacheable() {
+    return proxyCacheable;
+  }
+
+  /**
+   * @return True if any resource is a URL rather than inline JavaScript.
+   */
+  public boolean hasExternalResources() {
+    return hasExternal;
+  }
+}
@@ -63,6 +63,13 @@ public abstract class AbstractHttpCache implements HttpCache {
     return null;
   }
 
+  public final HttpResponse getStaleResponse(HttpRequest request) {
+    if (isCacheable(request)) {
+      return getResponseImpl(createKey(request));
+    }
+    return null;
+  }
+
   public boolean addResponse(HttpRequest request, HttpResponse response) {
     if (isCacheable(request, response)) {
       // Both are cacheable. Check for forced cache TTL overrides.
@@ -71,7 +78,6 @@ public abstract class AbstractHttpCache implements HttpCache {
       if (forcedTtl != -1) {
         responseBuilder.setCacheTtl(forcedTtl);
       }
-
       response = responseBuilder.create();
       String keyString = createKey(request);
       addResponseImpl(keyString, response);
@@ -104,6 +110,12 @@ public abstract class AbstractHttpCache implements HttpCache {
       return false;
     }
 
+    if (response.getResponseFile() != null) {
+      // Bodies over the spill threshold live in temporary files that the caller releases once
+      // the response has been sent, so they are fetched again rather than held by the cache.
+      return false;
+    }
+
     if (request.getCacheTtl() != -1) {
       // Caching was forced. Ignore what the response wants.
       return true;
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+/**
+ * An HttpFetcher that can also perform fetches without blocking the calling thread.
+ *
+ * DefaultRequestPipeline uses this interface when the bound HttpFetcher supports it, and falls
+ * back to running {@link HttpFetcher#fetch(HttpRequest)} on an executor otherwise.
+ */
+public interface AsyncHttpFetcher extends HttpFetcher {
+
+  /**
+   * Start fetching HTTP content.
+   *
+   * @param request The request to fetch.
+   * @return A future that completes with the response from the relevant resource, including
+   *     error conditions, or with a GadgetException for failures that can't be mapped to an HTTP
+   *     result code.
+   */
+  HttpResponseFuture fetchAsync(HttpRequest request);
+}
@@ -19,9 +19,13 @@ package org.apache.shindig.gadgets.http;
 
 import com.google.inject.internal.Preconditions;
 import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
@@ -32,7 +36,9 @@ import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
+
+import org.apache.shindig.gadgets.DefaultGuiceModule;
+import org.apache.shindig.gadgets.GadgetException;
 
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
@@ -47,39 +53,78 @@ import java.net.Proxy;
 import java.net.ProxySelector;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 /**
- * A very primitive HTTP fetcher implementation. Not recommended for production deployments until
- * the following issues are addressed:
+ * A simple HTTP fetcher implementation. All fetches share a single thread-safe connection pool,
+ * so connections to the same origin are kept alive and reused across requests.
+ *
+ * Asynchronous fetches run on a dedicated pool that is never larger than the connection pool, so
+ * callers of {@link #fetchAsync(HttpRequest)} don't tie up one of their own threads per request
+ * and the number of threads blocked on origin servers stays bounded. A limited number of fetches
+ * wait for a thread; beyond that, new asynchronous fetches fail immediately.
+ *
+ * Response bodies are read through a fixed-size buffer. Bodies larger than the spill threshold are
+ * written to a temporary file instead of the heap and streamed from there, so a few concurrent
+ * large downloads can't exhaust memory. Once the temporary files of all responses hold the spill
+ * limit, further bodies are kept in memory so that they can't fill the disk either.
+ *
+ * Not recommended for production deployments until the following issues are addressed:
  *
  * 1. This class potentially allows access to resources behind an organization's firewall.
  * 2. This class does not handle most advanced HTTP functionality correctly (SSL, etc.)
- * 3. This class does not enforce any limits on what is fetched from remote hosts.
  */
 @Singleton
-public class BasicHttpFetcher implements HttpFetcher {
+public class BasicHttpFetcher implements AsyncHttpFetcher {
   private static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
   private static final int DEFAULT_MAX_OBJECT_SIZE = 0;  // no limit
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+  private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+  private static final int DEFAULT_MAX_QUEUED_FETCHES = 1000;
+  private static final long DEFAULT_IDLE_CONNECTION_TIMEOUT_MS = 30000L;
   private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
+  private static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+  private static final long DEFAULT_MAX_SPILLED_BYTES = 256L * 1024 * 1024;
+
+  private final MultiThreadedHttpConnectionManager connectionManager;
+  private final HttpClient httpClient;
+  private final ThreadPoolExecutor asyncExecutor;
+  private final AtomicLong lastIdleEviction = new AtomicLong(System.currentTimeMillis());
 
   // mutable fields must be volatile
-  private volatile int maxObjSize; 
-  private volatile int connectionTimeoutMs;
+  private volatile int maxObjSize;
+  private volatile int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+  private volatile long maxSpilledBytes = DEFAULT_MAX_SPILLED_BYTES;
+  private volatile int readTimeoutMs;
+  private volatile long idleConnectionTimeoutMs = DEFAULT_IDLE_CONNECTION_TIMEOUT_MS;
 
   /**
-   * Creates a new fetcher for fetching HTTP objects.  Not really suitable
-   * for production use. Use of an HTTP proxy for security is also necessary
-   * for production deployment.
+   * Creates a new fetcher for fetching HTTP objects. Use of an HTTP proxy for security is
+   * necessary for production deployment.
    *
    * @param maxObjSize Maximum size, in bytes, of the object we will fetch, 0 if no limit..
-   * @param connectionTimeoutMs timeout, in milliseconds, for requests.
+   * @param connectionTimeoutMs timeout, in milliseconds, for establishing connections and for
+   *     reading responses.
    */
   public BasicHttpFetcher(int maxObjSize, int connectionTimeoutMs) {
+    connectionManager = new MultiThreadedHttpConnectionManager();
+    httpClient = new HttpClient(connectionManager);
+    asyncExecutor = new ThreadPoolExecutor(DEFAULT_MAX_TOTAL_CONNECTIONS,
+        DEFAULT_MAX_TOTAL_CONNECTIONS, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(DEFAULT_MAX_QUEUED_FETCHES),
+        DefaultGuiceModule.DAEMON_THREAD_FACTORY);
     setMaxObjectSizeBytes(maxObjSize);
-	  setConnectionTimeoutMs(connectionTimeoutMs);
+    setConnectionTimeoutMs(connectionTimeoutMs);
+    setReadTimeoutMs(connectionTimeoutMs);
+    setMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
   }
 
   /**
@@ -100,6 +145,34 @@ public class BasicHttpFetcher implements HttpFetcher {
     this.maxObjSize = maxObjectSizeBytes;
   }
 
+  /**
+   * Change the size above which response bodies are kept in temporary files rather than in
+   * memory.
+   *
+   * @param spillThresholdBytes threshold in bytes, or 0 to always keep bodies in memory
+   */
+  @Inject(optional = true)
+  public void setSpillThresholdBytes(
+      @Named("shindig.http.client.spill-threshold-bytes") int spillThresholdBytes) {
+    Preconditions.checkArgument(spillThresholdBytes >= 0,
+        "spill-threshold-bytes must not be negative");
+    this.spillThreshold = spillThresholdBytes;
+  }
+
+  /**
+   * Change the number of bytes that temporary response files may hold in total. Bodies that would
+   * spill past this limit are kept in memory instead.
+   *
+   * @param maxSpilledBytes limit in bytes, or 0 for no limit
+   */
+  @Inject(optional = true)
+  public void setMaxSpilledBytes(
+      @Named("shindig.http.client.spill-max-total-bytes") long maxSpilledBytes) {
+    Preconditions.checkArgument(maxSpilledBytes >= 0,
+        "spill-max-total-bytes must not be negative");
+    this.maxSpilledBytes = maxSpilledBytes;
+  }
+
   /**
    * Change the global connection timeout for all fetchs.
    *
@@ -108,7 +181,91 @@ public class BasicHttpFetcher implements HttpFetcher {
   @Inject(optional = true)
   public void setConnectionTimeoutMs(@Named("shindig.http.client.connection-timeout-ms") int connectionTimeoutMs) {
     Preconditions.checkArgument(connectionTimeoutMs > 0, "connection-timeout-ms must be greater than 0");
-    this.connectionTimeoutMs = connectionTimeoutMs;
+    connectionManager.getParams().setConnectionTimeout(connectionTimeoutMs);
+  }
+
+  /**
+   * Change the global socket read timeout for all fetches.
+   *
+   * @param readTimeoutMs maximum time, in milliseconds, to wait for data from the remote host
+   */
+  @Inject(optional = true)
+  public void setReadTimeoutMs(@Named("shindig.http.client.read-timeout-ms") int readTimeoutMs) {
+    Preconditions.checkArgument(readTimeoutMs > 0, "read-timeout-ms must be greater than 0");
+    this.readTimeoutMs = readTimeoutMs;
+  }
+
+  /**
+   * Change the maximum number of pooled connections to a single host.
+   *
+   * @param maxConnectionsPerHost new per host limit
+   */
+  @Inject(optional = true)
+  public void setMaxConnectionsPerHost(
+      @Named("shindig.http.client.max-connections-per-host") int maxConnectionsPerHost) {
+    Preconditions.checkArgument(maxConnectionsPerHost > 0,
+        "max-connections-per-host must be greater than 0");
+    connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+  }
+
+  /**
+   * Change the maximum number of pooled connections across all hosts. This also bounds the number
+   * of threads used for asynchronous fetches.
+   *
+   * @param maxTotalConnections new overall limit
+   */
+  @Inject(optional = true)
+  public void setMaxTotalConnections(
+      @Named("shindig.http.client.max-total-connections") int maxTotalConnections) {
+    Preconditions.checkArgument(maxTotalConnections > 0,
+        "max-total-connections must be greater than 0");
+    connectionManager.getParams().setMaxTotalConnections(maxTotalConnections);
+    synchronized (asyncExecutor) {
+      if (maxTotalConnections > asyncExecutor.getMaximumPoolSize()) {
+        asyncExecutor.setMaximumPoolSize(maxTotalConnections);
+        asyncExecutor.setCorePoolSize(maxTotalConnections);
+      } else {
+        asyncExecutor.setCorePoolSize(maxTotalConnections);
+        asyncExecutor.setMaximumPoolSize(maxTotalConnections);
+      }
+    }
+  }
+
+  /**
+   * Change how long a pooled connection may sit unused before it is closed.
+   *
+   * @param idleConnectionTimeoutMs idle time in milliseconds, or 0 to never evict idle connections
+   */
+  @Inject(optional = true)
+  public void setIdleConnectionTimeoutMs(
+      @Named("shindig.http.client.idle-connection-timeout-ms") long idleConnectionTimeoutMs) {
+    Preconditions.checkArgument(idleConnectionTimeoutMs >= 0,
+        "idle-connection-timeout-ms must not be negative");
+    this.idleConnectionTimeoutMs = idleConnectionTimeoutMs;
+  }
+
+  /**
+   * @return The parameters of the underlying connection pool. Exposed for testing.
+   */
+  HttpConnectionManagerParams getConnectionManagerParams() {
+    return connectionManager.getParams();
+  }
+
+  /**
+   * Closes connections that have been idle for longer than the configured timeout. This is done
+   * at most once per timeout interval, piggybacking on regular fetches so that no dedicated
+   * reaper thread is required.
+   */
+  private void evictIdleConnections() {
+    long timeout = idleConnectionTimeoutMs;
+    if (timeout <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long last = lastIdleEviction.get();
+    if (now - last >= timeout && lastIdleEviction.compareAndSet(last, now)) {
+      connectionManager.closeIdleConnections(timeout);
+    }
   }
 
   /**
@@ -145,6 +302,16 @@ public class BasicHttpFetcher implements HttpFetcher {
     }
 
     String encoding = headers.get("Content-Encoding");
+    if (encoding == null && maxObjSize > 0) {
+      // Don't bother reading a body we already know is too large.
+      long contentLength = httpMethod instanceof HttpMethodBase ?
+          ((HttpMethodBase) httpMethod).getResponseContentLength() : -1;
+      if (contentLength > maxObjSize) {
+        httpMethod.abort();
+        IOUtils.closeQuietly(responseBodyStream);
+        return HttpResponse.badrequest("Exceeded maximum number of bytes - " + this.maxObjSize);
+      }
+    }
 
     // Create the appropriate stream wrapper based on the encoding type.
     InputStream is = responseBodyStream;
@@ -157,33 +324,64 @@ public class BasicHttpFetcher implements HttpFetcher {
       is = new InflaterInputStream(responseBodyStream, inflater);
     }
 
-    ByteArrayOutputStream output = new ByteArrayOutputStream();
-    byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-    int totalBytesRead = 0;
-    int currentBytesRead;
-
-    while ((currentBytesRead = is.read(buffer)) != -1) {
-      output.write(buffer, 0, currentBytesRead);
-      totalBytesRead += currentBytesRead;
-
-      if(maxObjSize > 0 && totalBytesRead > maxObjSize) {
-        IOUtils.closeQuietly(is);
-        IOUtils.closeQuietly(output);
-        // Exceeded max # of bytes
-        return HttpResponse.badrequest("Exceeded maximum number of bytes - " + this.maxObjSize);
+    HttpResponseBuilder builder = new HttpResponseBuilder().setHttpStatusCode(responseCode);
+    SpillingOutputStream output = new SpillingOutputStream(spillThreshold, maxSpilledBytes);
+    try {
+      byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+      int currentBytesRead;
+
+      while ((currentBytesRead = is.read(buffer)) != -1) {
+        output.write(buffer, 0, currentBytesRead);
+
+        if (maxObjSize > 0 && output.getCount() > maxObjSize) {
+          // Abort rather than drain the rest of the body back into the pooled connection.
+          httpMethod.abort();
+          IOUtils.closeQuietly(is);
+          output.discard();
+          // Exceeded max # of bytes
+          return HttpResponse.badrequest("Exceeded maximum number of bytes - " + this.maxObjSize);
+        }
       }
+      output.setResponse(builder);
+    } catch (IOException e) {
+      output.discard();
+      throw e;
     }
 
-    return new HttpResponseBuilder()
-        .setHttpStatusCode(responseCode)
-        .setResponse(output.toByteArray())
+    return builder
         .addHeaders(headers)
         .create();
   }
 
+  /** {@inheritDoc} */
+  public HttpResponseFuture fetchAsync(final HttpRequest request) {
+    final HttpResponseFuture future = new HttpResponseFuture();
+    try {
+      asyncExecutor.execute(new Runnable() {
+        public void run() {
+          if (future.isCancelled()) {
+            return;
+          }
+          try {
+            future.set(fetch(request));
+          } catch (RuntimeException e) {
+            future.setException(
+                new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e));
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.setException(new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT,
+          "Too many fetches waiting for " + request.getUri()));
+    }
+    return future;
+  }
+
   /** {@inheritDoc} */
   public HttpResponse fetch(HttpRequest request) {
-    HttpClient httpClient = new HttpClient();
+    evictIdleConnections();
+
+    HostConfiguration hostConfiguration = new HostConfiguration();
     HttpMethod httpMethod;
     String methodType = request.getMethod();
     String requestUri = request.getUri().toString();
@@ -193,10 +391,9 @@ public class BasicHttpFetcher implements HttpFetcher {
 
     if (proxy != Proxy.NO_PROXY) {
       InetSocketAddress address = (InetSocketAddress) proxy.address();
-      httpClient.getHostConfiguration().setProxy(address.getHostName(), address.getPort());
+      hostConfiguration.setProxy(address.getHostName(), address.getPort());
     }
 
-
     // true for non-HEAD requests
     boolean requestCompressedContent = true;
 
@@ -220,7 +417,7 @@ public class BasicHttpFetcher implements HttpFetcher {
     }
 
     httpMethod.setFollowRedirects(false);
-    httpMethod.getParams().setSoTimeout(connectionTimeoutMs);
+    httpMethod.getParams().setSoTimeout(readTimeoutMs);
 
     if (requestCompressedContent)
       httpMethod.setRequestHeader("Accept-Encoding", "gzip, deflate");
@@ -231,7 +428,7 @@ public class BasicHttpFetcher implements HttpFetcher {
 
     try {
 
-      int statusCode = httpClient.executeMethod(httpMethod);
+      int statusCode = httpClient.executeMethod(hostConfiguration, httpMethod);
 
       // Handle redirects manually
       if (request.getFollowRedirects() &&
@@ -250,7 +447,7 @@ public class BasicHttpFetcher implements HttpFetcher {
             httpMethod.releaseConnection();
             httpMethod = new GetMethod(redirectUri);
 
-            statusCode = httpClient.executeMethod(httpMethod);
+            statusCode = httpClient.executeMethod(hostConfiguration, httpMethod);
         }
       }
 
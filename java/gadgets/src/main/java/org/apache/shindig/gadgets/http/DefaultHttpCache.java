@@ -19,23 +19,68 @@ package org.apache.shindig.gadgets.http;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.CacheSerializerRegistry;
+import org.apache.shindig.common.cache.CacheSerializers;
+import org.apache.shindig.common.cache.Weigher;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 
 /**
  * Simple cache of HttpResponses. It is recommended that this cache be configured with a shared
  * cache rather than a memory only cache.
+ *
+ * Text responses may optionally be stored gzip-compressed. They are inflated only when their
+ * content is read, and can be served as-is to clients that accept gzip.
  */
 @Singleton
 public class DefaultHttpCache extends AbstractHttpCache {
   public static final String CACHE_NAME = "httpResponses";
+  private static final int DEFAULT_COMPRESS_MIN_BYTES = 1024;
+
+  /**
+   * Weighs cached responses by their approximate size in bytes, so that the cache can be bounded
+   * by memory use rather than by number of responses.
+   */
+  public static final Weigher<String, HttpResponse> WEIGHER = new Weigher<String, HttpResponse>() {
+    public int weigh(String key, HttpResponse response) {
+      return key.length() * 2 + response.getEstimatedSize();
+    }
+  };
 
   private final Cache<String, HttpResponse> cache;
+  private volatile boolean compressText;
+  private volatile int compressMinBytes = DEFAULT_COMPRESS_MIN_BYTES;
 
   @Inject
   public DefaultHttpCache(CacheProvider cacheProvider) {
-    cache = cacheProvider.createCache(CACHE_NAME);
+    cache = cacheProvider.createCache(CACHE_NAME, WEIGHER);
+  }
+
+  /**
+   * Allows responses to be kept in caches shared between servers.
+   */
+  @Inject(optional = true)
+  public void setSerializers(CacheSerializerRegistry serializers) {
+    serializers.register(CACHE_NAME, CacheSerializers.STRING, new HttpResponseSerializer());
+  }
+
+  /**
+   * Whether to keep text responses gzip-compressed in the cache.
+   */
+  @Inject(optional = true)
+  public void setCompressText(@Named("shindig.cache.http.gzip-text") boolean compressText) {
+    this.compressText = compressText;
+  }
+
+  /**
+   * Text responses smaller than this are cached uncompressed, since gzip saves little on them.
+   */
+  @Inject(optional = true)
+  public void setCompressMinBytes(
+      @Named("shindig.cache.http.gzip-min-bytes") int compressMinBytes) {
+    this.compressMinBytes = compressMinBytes;
   }
 
   @Override
@@ -45,6 +90,10 @@ public class DefaultHttpCache extends AbstractHttpCache {
 
   @Override
   protected void addResponseImpl(String key, HttpResponse response) {
+    if (compressText && !response.isGzipped() && response.getContentLength() >= compressMinBytes &&
+        isText(response.getHeader("Content-Type"))) {
+      response = new HttpResponseBuilder(response).compressResponse().create();
+    }
     cache.addElement(key, response);
   }
 
@@ -52,4 +101,13 @@ public class DefaultHttpCache extends AbstractHttpCache {
   protected HttpResponse removeResponseImpl(String key) {
     return cache.removeElement(key);
   }
+
+  private static boolean isText(String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    contentType = contentType.toLowerCase();
+    return contentType.startsWith("text/") || contentType.contains("javascript") ||
+        contentType.contains("json") || contentType.contains("xml");
+  }
 }
@@ -18,25 +18,84 @@
 package org.apache.shindig.gadgets.http;
 
 import org.apache.shindig.common.util.Utf8UrlCoder;
+import org.apache.shindig.gadgets.AuthType;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.oauth.OAuthRequest;
 import org.apache.shindig.gadgets.rewrite.image.ImageRewriter;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A standard implementation of a request pipeline. Performs request caching and
  * signing on top of standard HTTP requests.
+ *
+ * Concurrent cache misses for the same cache key are coalesced into a single origin fetch, so an
+ * expiring popular resource doesn't send a burst of identical requests to the origin. Requests
+ * carrying headers of their own are never coalesced, and responses that must not be cached or
+ * that answer a conditional request are not shared with other requests.
+ *
+ * Expired responses may still be served for a grace period: within the stale-while-revalidate
+ * window the stale response is returned immediately while a single background fetch refreshes
+ * it, and within the stale-if-error window it is used in place of a failed fetch. The windows
+ * come from the Cache-Control directives of the same names, or from configuration.
+ *
+ * Expired responses that carry an ETag or Last-Modified validator are refreshed with a
+ * conditional GET. If the origin answers 304 Not Modified, the cached body is kept and only its
+ * freshness headers are updated.
  */
 @Singleton
 public class DefaultRequestPipeline implements RequestPipeline {
+  private static final long DEFAULT_COALESCE_TIMEOUT_MS = 10000L;
+
+  /**
+   * Request headers that don't change the response, so requests that differ only in these can
+   * share a fetch.
+   */
+  private static final Set<String> COALESCABLE_HEADERS =
+      ImmutableSet.of(HttpRequest.DOS_PREVENTION_HEADER.toLowerCase(), "x-forwarded-for");
+
+  /**
+   * Headers of a 304 response that replace those of the cached response being revalidated.
+   */
+  private static final String[] REVALIDATION_HEADERS = {
+    "Date", "Expires", "Cache-Control", "ETag", "Last-Modified"
+  };
+
   private final HttpFetcher httpFetcher;
   private final HttpCache httpCache;
   private final Provider<OAuthRequest> oauthRequestProvider;
   private final ImageRewriter imageRewriter;
   private final InvalidationService invalidationService;
+  private final ConcurrentMap<String, HttpResponseFuture> inFlightRequests =
+      new MapMaker().makeMap();
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong originFetches = new AtomicLong();
+  private final AtomicLong notModifiedResponses = new AtomicLong();
+  private final AtomicLong coalescedRequests = new AtomicLong();
+  private final AtomicLong coalesceTimeouts = new AtomicLong();
+  private Executor executor;
+  private ScheduledExecutorService scheduler;
+  private volatile long coalesceTimeoutMs = DEFAULT_COALESCE_TIMEOUT_MS;
+  private volatile long staleWhileRevalidateMs = 0;
+  private volatile long staleIfErrorMs = 0;
 
   @Inject
   public DefaultRequestPipeline(HttpFetcher httpFetcher,
@@ -51,49 +110,591 @@ public class DefaultRequestPipeline implements RequestPipeline {
     this.invalidationService = invalidationService;
   }
 
+  /**
+   * Executor used to run fetches that can't be performed asynchronously, such as signed and OAuth
+   * requests. When none is set, {@link #executeAsync(HttpRequest)} fetches on the calling thread.
+   */
+  @Inject(optional = true)
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Scheduler used to time out asynchronous requests waiting for a fetch shared with another
+   * request. When none is set, asynchronous requests are not coalesced.
+   */
+  @Inject(optional = true)
+  public void setScheduler(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Concurrent cache misses for the same cache key share a single origin fetch. Requests that
+   * wait longer than this for the shared fetch give up and fetch on their own. 0 disables
+   * coalescing.
+   */
+  @Inject(optional = true)
+  public void setCoalesceTimeoutMs(@Named("shindig.http.coalesce-timeout-ms") long timeoutMs) {
+    this.coalesceTimeoutMs = timeoutMs;
+  }
+
+  /**
+   * How long after expiration a response may be served while it is refreshed in the background,
+   * for responses that don't specify stale-while-revalidate themselves.
+   */
+  @Inject(optional = true)
+  public void setStaleWhileRevalidateMs(
+      @Named("shindig.cache.http.staleWhileRevalidate") long staleWhileRevalidateMs) {
+    this.staleWhileRevalidateMs = staleWhileRevalidateMs;
+  }
+
+  /**
+   * How long after expiration a response may be served when it can't be refreshed, for responses
+   * that don't specify stale-if-error themselves.
+   */
+  @Inject(optional = true)
+  public void setStaleIfErrorMs(@Named("shindig.cache.http.staleIfError") long staleIfErrorMs) {
+    this.staleIfErrorMs = staleIfErrorMs;
+  }
+
+  /**
+   * @return The number of requests served directly from the cache.
+   */
+  public long getCacheHitCount() {
+    return cacheHits.get();
+  }
+
+  /**
+   * @return The number of requests served a stale response while it was being refreshed.
+   */
+  public long getStaleHitCount() {
+    return staleHits.get();
+  }
+
+  /**
+   * @return The number of requests sent to origin servers.
+   */
+  public long getOriginFetchCount() {
+    return originFetches.get();
+  }
+
+  /**
+   * @return The number of expired responses revalidated by a 304 from the origin.
+   */
+  public long getNotModifiedCount() {
+    return notModifiedResponses.get();
+  }
+
+  /**
+   * @return The number of requests that joined a fetch already in flight instead of issuing
+   * their own.
+   */
+  public long getCoalescedCount() {
+    return coalescedRequests.get();
+  }
+
+  /**
+   * @return The number of coalesced requests that timed out waiting and fetched on their own.
+   */
+  public long getCoalesceTimeoutCount() {
+    return coalesceTimeouts.get();
+  }
+
   public HttpResponse execute(HttpRequest request) throws GadgetException {
     normalizeProtocol(request);
-    HttpResponse invalidatedResponse = null;
-
-    if (!request.getIgnoreCache()) {
-      HttpResponse cachedResponse = httpCache.getResponse(request);
-      // Note that we don't remove invalidated entries from the cache as we want them to be
-      // available in the event of a backend fetch failure
-      if (cachedResponse != null) {
-        if (!cachedResponse.isStale()) {
-          if(invalidationService.isValid(request, cachedResponse)) {
-            return cachedResponse;
+
+    HttpResponse cachedResponse = getCachedResponse(request);
+    HttpResponse servable = getServableResponse(request, cachedResponse);
+    if (servable != null) {
+      return servable;
+    }
+
+    String key = getCoalescingKey(request);
+    if (key == null) {
+      return fetchAndProcess(request, cachedResponse);
+    }
+
+    HttpResponseFuture leader = new HttpResponseFuture();
+    HttpResponseFuture inFlight = inFlightRequests.putIfAbsent(key, leader);
+    if (inFlight != null) {
+      HttpResponse shared = awaitInFlight(inFlight);
+      if (shared != null && isShareable(shared) && shared.retain()) {
+        return shared;
+      }
+      // The shared fetch is taking too long, its response is only good for the request that made
+      // it, or its body has already been released. Fetch independently rather than waiting.
+      return fetchAndProcess(request, cachedResponse);
+    }
+
+    try {
+      HttpResponse response = fetchAndProcess(request, cachedResponse);
+      leader.set(response);
+      return response;
+    } catch (GadgetException e) {
+      leader.setException(e);
+      throw e;
+    } catch (RuntimeException e) {
+      leader.setException(new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e));
+      throw e;
+    } finally {
+      inFlightRequests.remove(key, leader);
+    }
+  }
+
+  public HttpResponseFuture executeAsync(HttpRequest request) {
+    HttpResponse cachedResponse;
+    HttpResponse servable;
+    try {
+      normalizeProtocol(request);
+      cachedResponse = getCachedResponse(request);
+      servable = getServableResponse(request, cachedResponse);
+    } catch (GadgetException e) {
+      return HttpResponseFuture.failed(e);
+    }
+    if (servable != null) {
+      return HttpResponseFuture.immediate(servable);
+    }
+
+    // Waiting for a shared fetch without blocking needs a scheduler for the timeout.
+    String key = scheduler == null ? null : getCoalescingKey(request);
+    if (key == null) {
+      HttpResponseFuture result = new HttpResponseFuture();
+      startFetch(request, cachedResponse, result);
+      return result;
+    }
+
+    HttpResponseFuture leader = new HttpResponseFuture();
+    HttpResponseFuture inFlight = registerInFlight(key, leader);
+    if (inFlight != null) {
+      coalescedRequests.incrementAndGet();
+      // Copy the request, since the caller is free to modify it once we return.
+      return awaitInFlightAsync(inFlight, new HttpRequest(request), cachedResponse);
+    }
+
+    startFetch(request, cachedResponse, leader);
+    // Callers get their own future so that cancelling it doesn't affect the other waiters.
+    return forward(leader);
+  }
+
+  /**
+   * @return A cached response that can be returned without waiting for the origin, or null.
+   */
+  private HttpResponse getServableResponse(HttpRequest request, HttpResponse cachedResponse) {
+    if (cachedResponse == null) {
+      return null;
+    }
+
+    if (!cachedResponse.isStale()) {
+      if (invalidationService.isValid(request, cachedResponse)) {
+        cacheHits.incrementAndGet();
+        return cachedResponse;
+      }
+      return null;
+    }
+
+    if (!cachedResponse.isError() &&
+        isWithinStaleWindow(cachedResponse, getStaleWhileRevalidateMs(cachedResponse)) &&
+        invalidationService.isValid(request, cachedResponse)) {
+      staleHits.incrementAndGet();
+      refreshInBackground(request, cachedResponse);
+      return cachedResponse;
+    }
+    return null;
+  }
+
+  /**
+   * @return The cached response to use if fetching fails: one that is not stale but has been
+   * invalidated, or a stale one within its stale-if-error window. Null if there is none.
+   */
+  private HttpResponse getFallbackResponse(HttpResponse cachedResponse) {
+    if (cachedResponse == null) {
+      return null;
+    }
+    if (!cachedResponse.isStale()) {
+      return cachedResponse;
+    }
+    if (!cachedResponse.isError() &&
+        isWithinStaleWindow(cachedResponse, getStaleIfErrorMs(cachedResponse))) {
+      return cachedResponse;
+    }
+    return null;
+  }
+
+  private long getStaleWhileRevalidateMs(HttpResponse response) {
+    long window = response.getStaleWhileRevalidateTtl();
+    return window == -1 ? staleWhileRevalidateMs : window;
+  }
+
+  private long getStaleIfErrorMs(HttpResponse response) {
+    long window = response.getStaleIfErrorTtl();
+    return window == -1 ? staleIfErrorMs : window;
+  }
+
+  private static boolean isWithinStaleWindow(HttpResponse response, long window) {
+    long expiration = response.getCacheExpiration();
+    if (expiration == -1 || window <= 0) {
+      return false;
+    }
+    return System.currentTimeMillis() < expiration + window;
+  }
+
+  /**
+   * Refreshes a stale response without making the current request wait. Only one refresh per
+   * cache key runs at a time. If the refresh fails, the stale response stays in the cache.
+   */
+  private void refreshInBackground(HttpRequest request, HttpResponse staleResponse) {
+    HttpResponseFuture refresh = new HttpResponseFuture();
+    String key = hasOwnHeaders(request) ? null : httpCache.createKey(request);
+    if (key == null || registerInFlight(key, refresh) == null) {
+      // Nobody sends the refreshed response, so release it once it is in the cache.
+      refresh.addCallback(new HttpResponseFuture.Callback() {
+        public void onResponse(HttpResponse response) {
+          response.release();
+        }
+
+        public void onFailure(GadgetException e) {}
+      });
+      // Copy the request, since the caller is free to modify it once we return.
+      startFetch(new HttpRequest(request), staleResponse, refresh);
+    }
+  }
+
+  /**
+   * Records a fetch as in flight until the future completes.
+   *
+   * @return The fetch already in flight for the key, in which case nothing was registered, or
+   * null.
+   */
+  private HttpResponseFuture registerInFlight(final String key, final HttpResponseFuture future) {
+    HttpResponseFuture inFlight = inFlightRequests.putIfAbsent(key, future);
+    if (inFlight != null) {
+      return inFlight;
+    }
+    future.addCallback(new HttpResponseFuture.Callback() {
+      public void onResponse(HttpResponse response) {
+        inFlightRequests.remove(key, future);
+      }
+
+      public void onFailure(GadgetException e) {
+        inFlightRequests.remove(key, future);
+      }
+    });
+    return null;
+  }
+
+  /**
+   * @return The key used to coalesce concurrent fetches of the request, or null if the request
+   * must be fetched on its own.
+   */
+  private String getCoalescingKey(HttpRequest request) {
+    if (coalesceTimeoutMs <= 0 || request.getIgnoreCache() || !"GET".equals(request.getMethod())) {
+      return null;
+    }
+    // The cache key ignores headers, but the caller's own headers, such as Authorization, Cookie
+    // or If-None-Match, may change the response.
+    if (hasOwnHeaders(request)) {
+      return null;
+    }
+    return httpCache.createKey(request);
+  }
+
+  private static boolean hasOwnHeaders(HttpRequest request) {
+    for (String name : request.getHeaders().keySet()) {
+      if (!COALESCABLE_HEADERS.contains(name.toLowerCase())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return True if a response fetched for one request may be given to others waiting for the
+   * same resource. Responses that must not be cached may be meant for the requester alone, and a
+   * 304 only makes sense to a requester that sent a conditional request.
+   */
+  private static boolean isShareable(HttpResponse response) {
+    return response.getHttpStatusCode() != HttpResponse.SC_NOT_MODIFIED &&
+        !response.isStrictNoCache();
+  }
+
+  /**
+   * Waits for a fetch started by another request for the same resource.
+   *
+   * @return The shared response, or null if the wait timed out.
+   */
+  private HttpResponse awaitInFlight(HttpResponseFuture inFlight) throws GadgetException {
+    coalescedRequests.incrementAndGet();
+    try {
+      return inFlight.get(coalesceTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      coalesceTimeouts.incrementAndGet();
+      return null;
+    } catch (CancellationException e) {
+      return null;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof GadgetException) {
+        throw (GadgetException) e.getCause();
+      }
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e);
+    }
+  }
+
+  /**
+   * Waits for a fetch started by another request for the same resource without blocking. If the
+   * shared fetch doesn't complete within the coalescing timeout, or its response can't be shared,
+   * the request is fetched on its own. That fetch runs on the executor unless it can be made
+   * without blocking, so the scheduler thread is only held up when no executor is set.
+   *
+   * @return A future completed with the shared response, or with the request's own.
+   */
+  private HttpResponseFuture awaitInFlightAsync(HttpResponseFuture inFlight,
+      final HttpRequest request, final HttpResponse cachedResponse) {
+    final HttpResponseFuture result = new HttpResponseFuture();
+    // Set by whichever of the shared fetch and the timeout decides the outcome first.
+    final AtomicBoolean decided = new AtomicBoolean();
+    final ScheduledFuture<?> timeout = scheduler.schedule(new Runnable() {
+      public void run() {
+        if (decided.compareAndSet(false, true)) {
+          coalesceTimeouts.incrementAndGet();
+          startFetch(request, cachedResponse, result);
+        }
+      }
+    }, coalesceTimeoutMs, TimeUnit.MILLISECONDS);
+
+    inFlight.addCallback(new HttpResponseFuture.Callback() {
+      public void onResponse(HttpResponse response) {
+        if (decided.compareAndSet(false, true)) {
+          timeout.cancel(false);
+          if (isShareable(response) && response.retain()) {
+            result.set(response);
           } else {
-            invalidatedResponse = cachedResponse;
+            startFetch(request, cachedResponse, result);
           }
         }
       }
+
+      public void onFailure(GadgetException e) {
+        if (decided.compareAndSet(false, true)) {
+          timeout.cancel(false);
+          result.setException(e);
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @return A new future that completes with the same result as the given one.
+   */
+  private static HttpResponseFuture forward(HttpResponseFuture source) {
+    final HttpResponseFuture result = new HttpResponseFuture();
+    source.addCallback(new HttpResponseFuture.Callback() {
+      public void onResponse(HttpResponse response) {
+        result.set(response);
+      }
+
+      public void onFailure(GadgetException e) {
+        result.setException(e);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Fetches the request without blocking the calling thread when possible, completing result
+   * with the processed response.
+   *
+   * @param cachedResponse The response currently cached for the request, or null.
+   */
+  private void startFetch(final HttpRequest request, final HttpResponse cachedResponse,
+      final HttpResponseFuture result) {
+    if (request.getAuthType() == AuthType.NONE && httpFetcher instanceof AsyncHttpFetcher) {
+      final HttpResponse fallbackResponse = getFallbackResponse(cachedResponse);
+      originFetches.incrementAndGet();
+      ((AsyncHttpFetcher) httpFetcher).fetchAsync(getConditionalRequest(request, cachedResponse))
+          .addCallback(new HttpResponseFuture.Callback() {
+            public void onResponse(HttpResponse response) {
+              try {
+                result.set(processResponse(request, response, cachedResponse));
+              } catch (RuntimeException e) {
+                result.setException(
+                    new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e));
+              }
+            }
+
+            public void onFailure(GadgetException e) {
+              if (fallbackResponse != null) {
+                result.set(fallbackResponse);
+              } else {
+                result.setException(e);
+              }
+            }
+          });
+      return;
+    }
+
+    Runnable fetch = new Runnable() {
+      public void run() {
+        try {
+          result.set(fetchAndProcess(request, cachedResponse));
+        } catch (GadgetException e) {
+          result.setException(e);
+        } catch (RuntimeException e) {
+          result.setException(new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e));
+        }
+      }
+    };
+    if (executor == null) {
+      fetch.run();
+    } else {
+      executor.execute(fetch);
+    }
+  }
+
+  private HttpResponse fetchAndProcess(HttpRequest request, HttpResponse cachedResponse)
+      throws GadgetException {
+    HttpResponse fetchedResponse;
+    try {
+      fetchedResponse = fetchResponse(getConditionalRequest(request, cachedResponse));
+    } catch (GadgetException e) {
+      HttpResponse fallbackResponse = getFallbackResponse(cachedResponse);
+      if (fallbackResponse != null) {
+        return fallbackResponse;
+      }
+      throw e;
+    }
+    if (fetchedResponse == null) {
+      return HttpResponse.error();
     }
+    return processResponse(request, fetchedResponse, cachedResponse);
+  }
 
-    HttpResponse fetchedResponse = null;
+  /**
+   * @return True if the cached response is expired but can be revalidated with a conditional GET
+   * instead of being fetched again in full.
+   */
+  private boolean isRevalidatable(HttpRequest request, HttpResponse cachedResponse) {
+    if (cachedResponse == null || !cachedResponse.isStale() || cachedResponse.isError()) {
+      return false;
+    }
+    if (!"GET".equals(request.getMethod())) {
+      return false;
+    }
+    // A conditional request made by the caller is passed through untouched, 304 and all.
+    if (request.getHeader("If-None-Match") != null ||
+        request.getHeader("If-Modified-Since") != null) {
+      return false;
+    }
+    if (cachedResponse.getHeader("ETag") == null &&
+        cachedResponse.getHeader("Last-Modified") == null) {
+      return false;
+    }
+    return invalidationService.isValid(request, cachedResponse);
+  }
+
+  /**
+   * @return A copy of the request carrying the cached response's validators, or the request
+   * itself if the cached response can't be revalidated.
+   */
+  private HttpRequest getConditionalRequest(HttpRequest request, HttpResponse cachedResponse) {
+    if (!isRevalidatable(request, cachedResponse)) {
+      return request;
+    }
+    HttpRequest conditional = new HttpRequest(request);
+    String etag = cachedResponse.getHeader("ETag");
+    if (etag != null) {
+      conditional.setHeader("If-None-Match", etag);
+    }
+    String lastModified = cachedResponse.getHeader("Last-Modified");
+    if (lastModified != null) {
+      conditional.setHeader("If-Modified-Since", lastModified);
+    }
+    return conditional;
+  }
+
+  /**
+   * Updates a revalidated response with the freshness information from the origin's 304 and
+   * caches it again.
+   */
+  private HttpResponse refreshResponse(HttpRequest request, HttpResponse notModified,
+      HttpResponse cachedResponse) {
+    notModifiedResponses.incrementAndGet();
+    HttpResponseBuilder builder = new HttpResponseBuilder(cachedResponse);
+    for (String name : REVALIDATION_HEADERS) {
+      String value = notModified.getHeader(name);
+      if (value != null) {
+        builder.setHeader(name, value);
+      }
+    }
+    HttpResponse refreshed = builder.create();
+    if (refreshed.getCacheTtl() > 0) {
+      refreshed = invalidationService.markResponse(request, refreshed);
+    }
+    httpCache.addResponse(request, refreshed);
+    return refreshed;
+  }
+
+  /**
+   * @return The cached response for the request, which may be stale, or null. Note that we don't
+   * remove invalidated entries from the cache as we want them to be available in the event of a
+   * backend fetch failure.
+   */
+  private HttpResponse getCachedResponse(HttpRequest request) {
+    if (request.getIgnoreCache()) {
+      return null;
+    }
+    return httpCache.getStaleResponse(request);
+  }
+
+  /**
+   * Fetches the request from the origin, signing it if necessary.
+   *
+   * @return The fetched response, or null if the request uses an unknown auth type.
+   */
+  private HttpResponse fetchResponse(HttpRequest request) throws GadgetException {
     switch (request.getAuthType()) {
       case NONE:
-        fetchedResponse = httpFetcher.fetch(request);
-        break;
+        originFetches.incrementAndGet();
+        return httpFetcher.fetch(request);
       case SIGNED:
       case OAUTH:
-        fetchedResponse = oauthRequestProvider.get().fetch(request);
-        break;
+        originFetches.incrementAndGet();
+        return oauthRequestProvider.get().fetch(request);
       default:
-        return HttpResponse.error();
+        return null;
+    }
+  }
+
+  /**
+   * Rewrites and caches a freshly fetched response.
+   *
+   * @param cachedResponse The response currently cached for the request, or null.
+   */
+  private HttpResponse processResponse(HttpRequest request, HttpResponse fetchedResponse,
+      HttpResponse cachedResponse) {
+    if (fetchedResponse.getHttpStatusCode() == HttpResponse.SC_NOT_MODIFIED &&
+        isRevalidatable(request, cachedResponse)) {
+      return refreshResponse(request, fetchedResponse, cachedResponse);
     }
 
-    if (fetchedResponse.isError() && invalidatedResponse != null) {
-      // Use the invalidated cached response if it is not stale. We don't update its
-      // mark so it remains invalidated
-      return invalidatedResponse;
+    HttpResponse fallbackResponse = getFallbackResponse(cachedResponse);
+    if (fetchedResponse.isError() && fallbackResponse != null) {
+      // Use the cached response, which is either invalidated but not stale or still within its
+      // stale-if-error window. We don't update its mark so an invalidated response remains
+      // invalidated.
+      return fallbackResponse;
     }
 
     if (!fetchedResponse.isError() && !request.getIgnoreCache() && request.getCacheTtl() != 0) {
       fetchedResponse = imageRewriter.rewrite(request, fetchedResponse);
     }
 
-    if (!request.getIgnoreCache() ) {
+    // A 304 answering the caller's own conditional request has no body worth caching.
+    if (!request.getIgnoreCache() &&
+        fetchedResponse.getHttpStatusCode() != HttpResponse.SC_NOT_MODIFIED) {
       // Mark the response with invalidation information prior to caching
       if (fetchedResponse.getCacheTtl() > 0) {
         fetchedResponse = invalidationService.markResponse(request, fetchedResponse);
@@ -0,0 +1,536 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.shindig.common.util.CharsetUtil;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Stores HttpResponses on local disk, outside of the Java heap.
+ *
+ * Responses are appended to fixed-size, memory-mapped segment files. An in-memory index maps each
+ * key to the location of its latest record. When the store grows past its size limit the oldest
+ * segment is dropped. When the oldest segment is mostly made up of overwritten or removed records,
+ * its remaining live records are copied forward and the segment is deleted. Only ever cleaning the
+ * oldest segment guarantees that a removal is never forgotten while an older copy of the record
+ * still exists.
+ *
+ * A dropped segment's file and mapping are kept as a spare and reused for the next segment, since
+ * a mapping can't be released explicitly and would otherwise hold on to address space and disk
+ * space until it is garbage collected. Reads check each record against its key and checksum, so a
+ * reader that looked up a record just before its segment was reused sees a miss rather than
+ * another record's bytes.
+ *
+ * Responses are stored in the format written by HttpResponseSerializer. Each segment keeps the
+ * keys written to it, so that cleaning a segment only has to look at its own records.
+ *
+ * Every record carries a checksum. At startup the segments are scanned in order to rebuild the
+ * index; scanning a segment stops at the first record that is incomplete or corrupt, so a crash
+ * in the middle of a write loses at most the records written after the last complete one.
+ *
+ * Reads don't block writes, and concurrent writes are serialized.
+ */
+@Singleton
+public class DiskResponseStore {
+  private static final Logger logger = Logger.getLogger(DiskResponseStore.class.getName());
+
+  private static final int RECORD_MAGIC = 0x53484443;
+  private static final byte TYPE_PUT = 1;
+  private static final byte TYPE_REMOVE = 2;
+  // magic, type, key length, value length, checksum
+  private static final int HEADER_SIZE = 4 + 1 + 4 + 4 + 4;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".dat";
+  private static final String SPARE_NAME = "spare" + SEGMENT_SUFFIX;
+  private static final int ZERO_FILL_CHUNK = 64 * 1024;
+
+  // Clean the oldest segment once less than this fraction of it is live.
+  private static final double COMPACTION_THRESHOLD = 0.5;
+
+  private final File directory;
+  private final int segmentSize;
+  private final long maxBytes;
+  private final ConcurrentMap<String, Location> index = new MapMaker().makeMap();
+  private final HttpResponseSerializer serializer = new HttpResponseSerializer();
+
+  // Guarded by this.
+  private final SortedMap<Integer, Segment> segments = Maps.newTreeMap();
+  private Segment active;
+  // A dropped segment waiting to be reused, or null. Guarded by this.
+  private Segment spare;
+
+  /**
+   * @param directory Where segment files are kept. Blank to use a directory under java.io.tmpdir.
+   * @param segmentSize Size of each segment file, in bytes. Larger responses aren't stored.
+   * @param maxBytes Total disk space to use, in bytes.
+   */
+  @Inject
+  public DiskResponseStore(@Named("shindig.cache.http.disk.directory") String directory,
+                           @Named("shindig.cache.http.disk.segment-bytes") int segmentSize,
+                           @Named("shindig.cache.http.disk.max-bytes") long maxBytes)
+      throws IOException {
+    if (StringUtils.isBlank(directory)) {
+      directory = System.getProperty("java.io.tmpdir") + File.separator + "shindig-http-cache";
+    }
+    if (segmentSize <= HEADER_SIZE) {
+      throw new IllegalArgumentException("segment-bytes must be greater than " + HEADER_SIZE);
+    }
+    if (maxBytes < segmentSize * 2L) {
+      throw new IllegalArgumentException("max-bytes must allow for at least two segments");
+    }
+    this.directory = new File(directory);
+    this.segmentSize = segmentSize;
+    this.maxBytes = maxBytes;
+    if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+      throw new IOException("Unable to create cache directory " + directory);
+    }
+    recover();
+  }
+
+  /**
+   * @return The stored response, or null if there is none.
+   */
+  public HttpResponse get(String key) {
+    Location location = index.get(key);
+    if (location == null) {
+      return null;
+    }
+    byte[] value = readValue(location, CharsetUtil.getUtf8Bytes(key));
+    if (value != null) {
+      try {
+        return serializer.read(new DataInputStream(new ByteArrayInputStream(value)));
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Discarding unreadable cache entry " + key, e);
+      }
+    }
+    // Either the record is damaged, or its segment was dropped since the lookup, in which case
+    // the index no longer holds this location and nothing is removed.
+    if (index.remove(key, location)) {
+      release(location);
+    }
+    return null;
+  }
+
+  /**
+   * Reads a record's value, checking that the record is still the one the location was made for.
+   *
+   * @return The value, or null if the record no longer matches.
+   */
+  private static byte[] readValue(Location location, byte[] key) {
+    int keyLength = location.recordLength - HEADER_SIZE - location.valueLength;
+    if (keyLength != key.length) {
+      return null;
+    }
+    byte[] storedKey = new byte[keyLength];
+    byte[] value = new byte[location.valueLength];
+    ByteBuffer buffer = location.segment.buffer.duplicate();
+    buffer.position(location.valueOffset - keyLength - HEADER_SIZE);
+    if (buffer.getInt() != RECORD_MAGIC || buffer.get() != TYPE_PUT ||
+        buffer.getInt() != keyLength || buffer.getInt() != value.length) {
+      return null;
+    }
+    int checksum = buffer.getInt();
+    buffer.get(storedKey);
+    buffer.get(value);
+    if (!Arrays.equals(key, storedKey) || checksum(TYPE_PUT, key, value) != checksum) {
+      return null;
+    }
+    return value;
+  }
+
+  /**
+   * Stores a response, replacing any previous response for the key.
+   *
+   * @return false if the response is too large to be stored.
+   */
+  public boolean put(String key, HttpResponse response) {
+    if (response.getContentLength() >= segmentSize) {
+      return false;
+    }
+    byte[] value;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(response.getContentLength() + 512);
+      DataOutputStream out = new DataOutputStream(bytes);
+      serializer.write(response, out);
+      out.close();
+      value = bytes.toByteArray();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to store cache entry " + key, e);
+      return false;
+    }
+
+    byte[] keyBytes = CharsetUtil.getUtf8Bytes(key);
+    if (HEADER_SIZE + keyBytes.length + value.length > segmentSize) {
+      return false;
+    }
+    synchronized (this) {
+      Location location = append(TYPE_PUT, keyBytes, value);
+      location.segment.keys.add(key);
+      release(index.put(key, location));
+    }
+    return true;
+  }
+
+  /**
+   * Removes the response stored for a key.
+   *
+   * @return true if a response was removed.
+   */
+  public synchronized boolean remove(String key) {
+    Location removed = index.remove(key);
+    if (removed == null) {
+      return false;
+    }
+    release(removed);
+    // Record the removal so that recovery doesn't bring the entry back.
+    append(TYPE_REMOVE, CharsetUtil.getUtf8Bytes(key), new byte[0]);
+    return true;
+  }
+
+  /**
+   * @return The number of stored responses.
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * Flushes all segments to disk.
+   */
+  public synchronized void flush() {
+    for (Segment segment : segments.values()) {
+      segment.buffer.force();
+    }
+  }
+
+  /**
+   * Appends a record to the active segment, starting a new segment if it doesn't fit.
+   */
+  private Location append(byte type, byte[] key, byte[] value) {
+    int recordLength = HEADER_SIZE + key.length + value.length;
+    if (active.writePosition + recordLength > segmentSize) {
+      roll();
+    }
+    return write(active, type, key, value);
+  }
+
+  private Location write(Segment segment, byte type, byte[] key, byte[] value) {
+    int offset = segment.writePosition;
+    ByteBuffer buffer = segment.buffer.duplicate();
+    buffer.position(offset);
+    buffer.putInt(RECORD_MAGIC);
+    buffer.put(type);
+    buffer.putInt(key.length);
+    buffer.putInt(value.length);
+    buffer.putInt(checksum(type, key, value));
+    buffer.put(key);
+    buffer.put(value);
+    int recordLength = buffer.position() - offset;
+    segment.writePosition = buffer.position();
+    if (type == TYPE_PUT) {
+      segment.liveBytes.addAndGet(recordLength);
+    }
+    return new Location(segment, recordLength, offset + HEADER_SIZE + key.length, value.length);
+  }
+
+  /**
+   * Accounts for a record that is no longer live.
+   */
+  private static void release(Location previous) {
+    if (previous != null) {
+      previous.segment.liveBytes.addAndGet(-previous.recordLength);
+    }
+  }
+
+  /**
+   * Seals the active segment and starts a new one, then cleans up old segments as needed.
+   */
+  private void roll() {
+    active = createSegment(active.id + 1);
+
+    while (segments.size() > 1) {
+      Segment oldest = segments.get(segments.firstKey());
+      if ((long) segments.size() * segmentSize > maxBytes) {
+        evict(oldest, false);
+      } else if (oldest.liveBytes.get() < oldest.writePosition * COMPACTION_THRESHOLD) {
+        evict(oldest, true);
+      } else {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Deletes a segment.
+   *
+   * @param keepLive Whether live records are first copied into the active segment.
+   */
+  private void evict(Segment segment, boolean keepLive) {
+    for (String key : segment.keys) {
+      Location location = index.get(key);
+      if (location == null || location.segment != segment) {
+        // Removed, overwritten since, or already handled as an earlier record for the same key.
+        continue;
+      }
+      if (keepLive && active.writePosition + location.recordLength <= segmentSize) {
+        byte[] keyBytes = CharsetUtil.getUtf8Bytes(key);
+        byte[] value = new byte[location.valueLength];
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(location.valueOffset);
+        buffer.get(value);
+        index.put(key, write(active, TYPE_PUT, keyBytes, value));
+        active.keys.add(key);
+      } else {
+        index.remove(key);
+      }
+    }
+    segments.remove(segment.id);
+    File spareFile = new File(directory, SPARE_NAME);
+    if (spare == null && segment.file.renameTo(spareFile)) {
+      // Renamed first so that recovery never mistakes the dropped records for current ones.
+      spare = new Segment(-1, spareFile, segment.buffer);
+    } else if (!segment.file.delete()) {
+      logger.warning("Unable to delete cache segment " + segment.file);
+    }
+  }
+
+  private Segment createSegment(int id) {
+    File file = new File(directory, segmentName(id));
+    if (spare != null) {
+      Segment reused = spare;
+      spare = null;
+      // Cleared before it is renamed, so that a crash can't expose the old records either.
+      clear(reused.buffer, 0);
+      if (reused.file.renameTo(file)) {
+        Segment segment = new Segment(id, file, reused.buffer);
+        segments.put(id, segment);
+        return segment;
+      }
+      reused.file.delete();
+    }
+    try {
+      Segment segment = openSegment(id, file);
+      segments.put(id, segment);
+      return segment;
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to create cache segment", e);
+    }
+  }
+
+  /**
+   * Zeroes a mapped segment from the given position to its end.
+   */
+  private static void clear(MappedByteBuffer segmentBuffer, int from) {
+    byte[] zeros = new byte[ZERO_FILL_CHUNK];
+    ByteBuffer buffer = segmentBuffer.duplicate();
+    buffer.position(from);
+    while (buffer.hasRemaining()) {
+      buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+    }
+  }
+
+  private Segment openSegment(int id, File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(segmentSize);
+      MappedByteBuffer buffer =
+          raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+      return new Segment(id, file, buffer);
+    } finally {
+      // The mapping remains valid after the file is closed.
+      raf.close();
+    }
+  }
+
+  /**
+   * Rebuilds the index from the segment files.
+   */
+  private synchronized void recover() throws IOException {
+    // A spare left behind by the last run holds nothing but dropped records.
+    new File(directory, SPARE_NAME).delete();
+    SortedMap<Integer, File> files = Maps.newTreeMap();
+    String[] names = directory.list();
+    for (String name : names == null ? new String[0] : names) {
+      if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+        try {
+          int id = Integer.parseInt(
+              name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+          files.put(id, new File(directory, name));
+        } catch (NumberFormatException e) {
+          // Not one of ours.
+        }
+      }
+    }
+
+    for (Map.Entry<Integer, File> entry : files.entrySet()) {
+      File file = entry.getValue();
+      if (file.length() != segmentSize) {
+        // Written with a different segment size. Start over rather than guess at its layout.
+        logger.info("Discarding cache segment of unexpected size " + file);
+        file.delete();
+        continue;
+      }
+      Segment segment = openSegment(entry.getKey(), file);
+      segments.put(segment.id, segment);
+      scan(segment);
+    }
+
+    if (segments.isEmpty()) {
+      active = createSegment(0);
+    } else {
+      active = segments.get(segments.lastKey());
+      // Clear anything after the last good record so that stale records beyond a corrupt one
+      // can't be mistaken for new ones later.
+      clear(active.buffer, active.writePosition);
+    }
+    logger.info("Recovered " + index.size() + " cached responses from " + directory);
+  }
+
+  /**
+   * Reads a segment's records into the index, stopping at the first invalid record.
+   */
+  private void scan(Segment segment) {
+    ByteBuffer buffer = segment.buffer.duplicate();
+    int offset = 0;
+    while (offset + HEADER_SIZE <= segmentSize) {
+      buffer.position(offset);
+      if (buffer.getInt() != RECORD_MAGIC) {
+        break;
+      }
+      byte type = buffer.get();
+      int keyLength = buffer.getInt();
+      int valueLength = buffer.getInt();
+      int checksum = buffer.getInt();
+      if ((type != TYPE_PUT && type != TYPE_REMOVE) || keyLength < 0 || valueLength < 0 ||
+          (long) offset + HEADER_SIZE + keyLength + valueLength > segmentSize) {
+        break;
+      }
+      byte[] key = new byte[keyLength];
+      byte[] value = new byte[valueLength];
+      buffer.get(key);
+      buffer.get(value);
+      if (checksum(type, key, value) != checksum) {
+        logger.info("Truncating cache segment " + segment.file + " at corrupt record " + offset);
+        break;
+      }
+
+      int recordLength = HEADER_SIZE + keyLength + valueLength;
+      String keyString = CharsetUtil.UTF8.decode(ByteBuffer.wrap(key)).toString();
+      if (type == TYPE_PUT) {
+        segment.liveBytes.addAndGet(recordLength);
+        segment.keys.add(keyString);
+        release(index.put(keyString,
+            new Location(segment, recordLength, offset + HEADER_SIZE + keyLength, valueLength)));
+      } else {
+        release(index.remove(keyString));
+      }
+      offset += recordLength;
+    }
+    segment.writePosition = offset;
+  }
+
+  private static int checksum(byte type, byte[] key, byte[] value) {
+    CRC32 crc = new CRC32();
+    crc.update(type);
+    crc.update(key);
+    crc.update(value);
+    return (int) crc.getValue();
+  }
+
+  private static String segmentName(int id) {
+    return SEGMENT_PREFIX + StringUtils.leftPad(Integer.toString(id), 10, '0') + SEGMENT_SUFFIX;
+  }
+
+  /**
+   * @return The ids of the current segments, oldest first. For tests.
+   */
+  synchronized List<Integer> getSegmentIds() {
+    return Collections.unmodifiableList(Lists.newArrayList(segments.keySet()));
+  }
+
+  /**
+   * @return The total size of the live records in all segments. For tests.
+   */
+  synchronized long getLiveBytes() {
+    long liveBytes = 0;
+    for (Segment segment : segments.values()) {
+      liveBytes += segment.liveBytes.get();
+    }
+    return liveBytes;
+  }
+
+  private static final class Segment {
+    private final int id;
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final AtomicInteger liveBytes = new AtomicInteger();
+    // The key of every put record in the segment, in order. Guarded by the store.
+    private final List<String> keys = Lists.newArrayList();
+    // Guarded by the store.
+    private int writePosition;
+
+    private Segment(int id, File file, MappedByteBuffer buffer) {
+      this.id = id;
+      this.file = file;
+      this.buffer = buffer;
+    }
+  }
+
+  private static final class Location {
+    private final Segment segment;
+    private final int recordLength;
+    private final int valueOffset;
+    private final int valueLength;
+
+    private Location(Segment segment, int recordLength, int valueOffset, int valueLength) {
+      this.segment = segment;
+      this.recordLength = recordLength;
+      this.valueOffset = valueOffset;
+      this.valueLength = valueLength;
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A response body kept in a temporary file rather than on the heap.
+ *
+ * The file is reference counted. The response that first receives the body holds one reference,
+ * and every caller that is handed the same body through {@link #retain()} holds another. The file
+ * is deleted once every reference has been released, or when the body is collected if a caller
+ * never releases it. Responses with a body in a file are not cached, so a cache never holds a
+ * reference.
+ *
+ * The bytes held in all temporary files are tracked so that spilling can be limited. The files
+ * are created in a directory owned by this process, which holds a lock on it while it runs and
+ * deletes it on exit. Directories left by processes that exited without deleting theirs are
+ * removed before this process creates its own.
+ */
+final class FileResponseBody {
+  private static final Logger logger = Logger.getLogger(FileResponseBody.class.getName());
+
+  static final String FILE_PREFIX = "shindig-response";
+  static final String FILE_SUFFIX = ".tmp";
+  static final String DIRECTORY_PREFIX = "shindig-responses";
+  static final String LOCK_NAME = "owner.lock";
+
+  /**
+   * Directories without a lock file that were modified this recently may belong to a process that
+   * has not locked them yet.
+   */
+  private static final long UNLOCKED_DIRECTORY_AGE_MS = 60 * 1000L;
+
+  private static final AtomicLong spilledBytes = new AtomicLong();
+
+  private static File directory;
+  // Held, never released, for as long as this process runs.
+  private static FileLock directoryLock;
+
+  private final File file;
+  private final int length;
+  private final AtomicInteger references = new AtomicInteger(1);
+
+  /**
+   * Takes ownership of the file and counts its bytes until it is deleted.
+   */
+  FileResponseBody(File file) {
+    this.file = file;
+    this.length = (int) file.length();
+    addSpilledBytes(length);
+  }
+
+  /**
+   * @return A new, empty temporary file for a response body.
+   */
+  static File createTempFile() throws IOException {
+    return File.createTempFile(FILE_PREFIX, FILE_SUFFIX, getDirectory());
+  }
+
+  /**
+   * @return The directory holding this process's response files, created on first use.
+   */
+  static synchronized File getDirectory() throws IOException {
+    if (directory == null) {
+      File parent = new File(System.getProperty("java.io.tmpdir"));
+      deleteStaleDirectories(parent, System.currentTimeMillis() - UNLOCKED_DIRECTORY_AGE_MS);
+
+      final File created = File.createTempFile(DIRECTORY_PREFIX, "", parent);
+      if (!created.delete() || !created.mkdir()) {
+        throw new IOException("Unable to create response directory " + created);
+      }
+      RandomAccessFile lockFile = new RandomAccessFile(new File(created, LOCK_NAME), "rw");
+      FileLock lock = null;
+      try {
+        lock = lockFile.getChannel().tryLock();
+      } finally {
+        if (lock == null) {
+          closeQuietly(lockFile);
+          deleteDirectory(created);
+        }
+      }
+      if (lock == null) {
+        throw new IOException("Unable to lock response directory " + created);
+      }
+
+      directoryLock = lock;
+      directory = created;
+      Runtime.getRuntime().addShutdownHook(new Thread("shindig-response-cleanup") {
+        @Override
+        public void run() {
+          try {
+            directoryLock.channel().close();
+          } catch (IOException e) {
+            // The directory is deleted regardless.
+          }
+          deleteDirectory(created);
+        }
+      });
+    }
+    return directory;
+  }
+
+  /**
+   * @return The number of bytes currently held in temporary response files.
+   */
+  static long getSpilledBytes() {
+    return spilledBytes.get();
+  }
+
+  /**
+   * Records bytes written to, or, when negative, removed from, temporary response files.
+   */
+  static void addSpilledBytes(long bytes) {
+    spilledBytes.addAndGet(bytes);
+  }
+
+  /**
+   * Deletes response directories in the given directory whose owning process has exited, which
+   * is known because nothing holds the lock on them. A directory without a lock file is deleted
+   * only if it was last modified before the given time.
+   *
+   * @return The number of directories deleted.
+   */
+  static int deleteStaleDirectories(File parent, final long unlockedBefore) {
+    File[] candidates = parent.listFiles(new FileFilter() {
+      public boolean accept(File file) {
+        return file.getName().startsWith(DIRECTORY_PREFIX) && file.isDirectory() &&
+            !file.equals(directory);
+      }
+    });
+    if (candidates == null) {
+      return 0;
+    }
+    int deleted = 0;
+    for (File candidate : candidates) {
+      if (!isOwned(candidate, unlockedBefore) && deleteDirectory(candidate)) {
+        ++deleted;
+      }
+    }
+    if (deleted > 0) {
+      logger.info("Deleted " + deleted + " response directories left by exited processes from " +
+          parent);
+    }
+    return deleted;
+  }
+
+  private static boolean isOwned(File candidate, long unlockedBefore) {
+    File lockFile = new File(candidate, LOCK_NAME);
+    if (!lockFile.exists()) {
+      return candidate.lastModified() >= unlockedBefore;
+    }
+
+    RandomAccessFile file = null;
+    try {
+      file = new RandomAccessFile(lockFile, "rw");
+      FileLock lock = file.getChannel().tryLock();
+      if (lock == null) {
+        return true;
+      }
+      lock.release();
+      return false;
+    } catch (OverlappingFileLockException e) {
+      // Locked elsewhere in this process.
+      return true;
+    } catch (IOException e) {
+      return true;
+    } finally {
+      closeQuietly(file);
+    }
+  }
+
+  private static void closeQuietly(RandomAccessFile file) {
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        // Nothing is left to do with the file.
+      }
+    }
+  }
+
+  private static boolean deleteDirectory(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    return dir.delete();
+  }
+
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * @return A new stream over the body.
+   */
+  InputStream open() throws IOException {
+    return new BufferedInputStream(new FileInputStream(file));
+  }
+
+  /**
+   * @return At most the first maxLength bytes of the body.
+   */
+  byte[] readHead(int maxLength) throws IOException {
+    byte[] head = new byte[Math.min(length, maxLength)];
+    DataInputStream is = new DataInputStream(open());
+    try {
+      is.readFully(head);
+    } finally {
+      IOUtils.closeQuietly(is);
+    }
+    return head;
+  }
+
+  /**
+   * @return The entire body, read onto the heap.
+   */
+  byte[] readAll() throws IOException {
+    return readHead(length);
+  }
+
+  /**
+   * Adds a reference to the body, for a caller that is handed a response already held by another
+   * caller.
+   *
+   * @return False if the file has already been deleted, in which case the body can't be used.
+   */
+  boolean retain() {
+    while (true) {
+      int count = references.get();
+      if (count == 0) {
+        return false;
+      }
+      if (references.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Drops a reference to the body, deleting the file once none remain. The caller must not read
+   * the body afterwards.
+   */
+  void release() {
+    while (true) {
+      int count = references.get();
+      if (count == 0) {
+        return;
+      }
+      if (references.compareAndSet(count, count - 1)) {
+        if (count == 1) {
+          delete();
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return True if the file has been deleted.
+   */
+  boolean isReleased() {
+    return references.get() == 0;
+  }
+
+  private void delete() {
+    if (file.delete() || !file.exists()) {
+      addSpilledBytes(-length);
+    } else {
+      logger.warning("Unable to delete response file " + file);
+    }
+  }
+
+  @Override
+  protected void finalize() throws Throwable {
+    try {
+      // Backstop for bodies whose holders never released them.
+      if (references.getAndSet(0) > 0) {
+        delete();
+      }
+    } finally {
+      super.finalize();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body held gzip-compressed in memory. The body is only inflated when its bytes or
+ * text are actually needed, and can be sent as-is to clients that accept gzip.
+ */
+final class GzippedResponseBody {
+  private final byte[] compressed;
+  private final int length;
+
+  private GzippedResponseBody(byte[] compressed, int length) {
+    this.compressed = compressed;
+    this.length = length;
+  }
+
+  /**
+   * @return A gzipped copy of the given body.
+   */
+  static GzippedResponseBody compress(byte[] body) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+    try {
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+      gzip.write(body);
+      gzip.close();
+    } catch (IOException e) {
+      // Not possible when writing to memory.
+      throw new IllegalStateException(e);
+    }
+    return new GzippedResponseBody(out.toByteArray(), body.length);
+  }
+
+  /**
+   * @return A body holding already compressed bytes, which are not copied.
+   *
+   * @param length The length of the inflated body.
+   */
+  static GzippedResponseBody wrap(byte[] compressed, int length) {
+    return new GzippedResponseBody(compressed, length);
+  }
+
+  /**
+   * @return The length of the inflated body.
+   */
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * @return The length of the compressed body.
+   */
+  int getCompressedLength() {
+    return compressed.length;
+  }
+
+  /**
+   * @return The compressed body. Not copied, so callers must not modify it.
+   */
+  byte[] getCompressed() {
+    return compressed;
+  }
+
+  /**
+   * @return A stream over the compressed body.
+   */
+  InputStream openCompressed() {
+    return new ByteArrayInputStream(compressed);
+  }
+
+  /**
+   * @return A stream over the inflated body.
+   */
+  InputStream open() throws IOException {
+    return new GZIPInputStream(openCompressed());
+  }
+
+  /**
+   * @return At most the first maxLength bytes of the inflated body.
+   */
+  byte[] readHead(int maxLength) throws IOException {
+    byte[] head = new byte[Math.min(length, maxLength)];
+    DataInputStream is = new DataInputStream(open());
+    try {
+      is.readFully(head);
+    } finally {
+      IOUtils.closeQuietly(is);
+    }
+    return head;
+  }
+
+  /**
+   * @return The entire inflated body.
+   */
+  byte[] readAll() throws IOException {
+    return readHead(length);
+  }
+}
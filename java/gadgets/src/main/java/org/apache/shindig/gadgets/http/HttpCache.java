@@ -29,6 +29,14 @@ public interface HttpCache {
 
   HttpResponse getResponse(HttpRequest request);
 
+  /**
+   * Retrieves a cached response even if it has expired, so that it can be served while it is
+   * refreshed or in place of a failed fetch.
+   *
+   * @return The cached response, or null if there is none.
+   */
+  HttpResponse getStaleResponse(HttpRequest request);
+
   /**
    * Add a request/response pair to the cache.
    * 
@@ -26,11 +26,15 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.shindig.common.util.DateUtil;
 import org.apache.shindig.gadgets.encoding.EncodingDetector;
 
 import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -125,6 +129,9 @@ public final class HttpResponse implements Externalizable {
 
   static final Charset DEFAULT_ENCODING = Charset.forName("UTF-8");
 
+  // How much of a body kept on disk is read to detect its encoding.
+  private static final int ENCODING_SAMPLE_SIZE = 8192;
+
   @Inject(optional = true) @Named("shindig.cache.http.negativeCacheTtl")
   private static long negativeCacheTtl = DEFAULT_NEGATIVE_CACHE_TTL;
 
@@ -143,8 +150,23 @@ public final class HttpResponse implements Externalizable {
   private transient Map<String, String> metadata;
 
   private int httpStatusCode;
-  private Multimap<String, String> headers;
+  // Headers as parallel arrays, grouped by name in case insensitive order. Responses carry few
+  // headers, so a linear scan is cheap and this is far smaller than a multimap per cached entry.
+  private transient String[] headerNames;
+  private transient String[] headerValues;
   private byte[] responseBytes;
+  private transient FileResponseBody responseFile;
+  private transient GzippedResponseBody responseGzipped;
+
+  // Caching directives, parsed once when the response is created. Times are in milliseconds,
+  // -1 if not set.
+  private transient boolean negativelyCached;
+  private transient boolean strictNoCache;
+  private transient long maxAge;
+  private transient long expires;
+  private transient long retryAfter;
+  private transient long staleWhileRevalidate;
+  private transient long staleIfError;
 
   /**
    * Needed for serialization. Do not use this for any other purpose.
@@ -161,6 +183,8 @@ public final class HttpResponse implements Externalizable {
 
     // Always safe, HttpResponseBuilder won't modify the body.
     responseBytes = builder.getResponse();
+    responseFile = builder.getResponseFile();
+    responseGzipped = builder.getResponseGzipped();
 
     Map<String, String> metadataCopy = Maps.newHashMap(builder.getMetadata());
     metadata = Collections.unmodifiableMap(metadataCopy);
@@ -168,8 +192,94 @@ public final class HttpResponse implements Externalizable {
     // We want to modify the headers to ensure that the proper Content-Type and Date headers
     // have been set. This allows us to avoid these expensive calculations from the cache.
     date = getAndUpdateDate(headerCopy);
-    encoding = getAndUpdateEncoding(headerCopy, responseBytes);
-    headers = Multimaps.unmodifiableMultimap(headerCopy);
+    encoding = getAndUpdateEncoding(headerCopy);
+    setHeaders(headerCopy);
+  }
+
+  /**
+   * Stores the final headers and parses the caching directives out of them.
+   */
+  private void setHeaders(Multimap<String, String> headerCopy) {
+    int size = headerCopy.size();
+    headerNames = new String[size];
+    headerValues = new String[size];
+    int i = 0;
+    for (Map.Entry<String, String> entry : headerCopy.entries()) {
+      // Names repeat across nearly every response, so share a single copy of each.
+      headerNames[i] = entry.getKey().intern();
+      headerValues[i] = entry.getValue();
+      ++i;
+    }
+
+    negativelyCached = isError() && !NEGATIVE_CACHING_EXEMPT_STATUS.contains(httpStatusCode);
+    strictNoCache = false;
+    maxAge = -1;
+    staleWhileRevalidate = -1;
+    staleIfError = -1;
+
+    String cacheControl = getHeader("Cache-Control");
+    if (cacheControl != null) {
+      for (String directive : StringUtils.split(cacheControl, ',')) {
+        directive = directive.trim();
+        if (directive.equalsIgnoreCase("no-cache")
+            || directive.equalsIgnoreCase("no-store")
+            || directive.equalsIgnoreCase("private")) {
+          strictNoCache = true;
+        } else if (maxAge == -1 && directive.startsWith("max-age")) {
+          maxAge = parseDeltaSeconds(directive);
+        } else if (staleWhileRevalidate == -1 && directive.startsWith("stale-while-revalidate")) {
+          staleWhileRevalidate = parseDeltaSeconds(directive);
+        } else if (staleIfError == -1 && directive.startsWith("stale-if-error")) {
+          staleIfError = parseDeltaSeconds(directive);
+        }
+      }
+    }
+    for (int j = 0; j < headerNames.length; ++j) {
+      if ("Pragma".equalsIgnoreCase(headerNames[j]) &&
+          "no-cache".equalsIgnoreCase(headerValues[j])) {
+        strictNoCache = true;
+      }
+    }
+
+    expires = parseDate(getHeader("Expires"));
+
+    retryAfter = -1;
+    String retryAfterHeader = getHeader("Retry-After");
+    if (retryAfterHeader != null) {
+      if (StringUtils.isNumeric(retryAfterHeader)) {
+        retryAfter = date + Integer.parseInt(retryAfterHeader) * 1000L;
+      } else {
+        retryAfter = parseDate(retryAfterHeader);
+      }
+    }
+  }
+
+  /**
+   * @return The value of a name=seconds directive in milliseconds, or -1 if invalid.
+   */
+  private static long parseDeltaSeconds(String directive) {
+    String[] parts = directive.split("=");
+    if (parts.length == 2) {
+      try {
+        return Long.parseLong(parts[1].trim()) * 1000;
+      } catch (NumberFormatException ignore) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The time in an RFC 1123 date header, or -1 if missing or invalid.
+   */
+  private static long parseDate(String value) {
+    if (value != null) {
+      Date parsed = DateUtil.parseRfc1123Date(value);
+      if (parsed != null) {
+        return parsed.getTime();
+      }
+    }
+    return -1;
   }
 
   private HttpResponse(int httpStatusCode, String body) {
@@ -220,16 +330,56 @@ public final class HttpResponse implements Externalizable {
    * @return the content length
    */
   public int getContentLength() {
+    if (responseFile != null) {
+      return responseFile.getLength();
+    }
+    if (responseGzipped != null) {
+      return responseGzipped.getLength();
+    }
     return responseBytes.length;
   }
 
   /**
-   * @return An input stream suitable for reading the entirety of the response.
+   * @return An input stream suitable for reading the entirety of the response. Large bodies are
+   * streamed from disk, so prefer this to {@link #getResponseAsString()} when the body doesn't
+   * need to be inspected.
    */
   public InputStream getResponse() {
+    try {
+      if (responseFile != null) {
+        return responseFile.open();
+      }
+      if (responseGzipped != null) {
+        return responseGzipped.open();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Response body is no longer available", e);
+    }
     return new ByteArrayInputStream(responseBytes);
   }
 
+  /**
+   * @return True if the body is held gzip-compressed, in which case it can be sent to clients
+   * that accept gzip through {@link #getGzippedResponse()} without being inflated.
+   */
+  public boolean isGzipped() {
+    return responseGzipped != null;
+  }
+
+  /**
+   * @return A stream over the gzip-compressed body, or null if the body isn't held compressed.
+   */
+  public InputStream getGzippedResponse() {
+    return responseGzipped == null ? null : responseGzipped.openCompressed();
+  }
+
+  /**
+   * @return The length of the gzip-compressed body, or -1 if the body isn't held compressed.
+   */
+  public int getGzippedLength() {
+    return responseGzipped == null ? -1 : responseGzipped.getCompressedLength();
+  }
+
   /**
    * Attempts to convert the response body to a string using the Content-Type header. If no
    * Content-Type header is specified (or it doesn't include an encoding), we will assume it is
@@ -239,7 +389,7 @@ public final class HttpResponse implements Externalizable {
    */
   public String getResponseAsString() {
     if (responseString == null) {
-      responseString = encoding.decode(ByteBuffer.wrap(responseBytes)).toString();
+      responseString = encoding.decode(ByteBuffer.wrap(getResponseAsBytes())).toString();
 
       // Strip BOM if present
       if (responseString.length() > 0 && responseString.codePointAt(0) == 0xFEFF) {
@@ -250,10 +400,15 @@ public final class HttpResponse implements Externalizable {
   }
 
   /**
-   * @return All headers for this object.
+   * @return All headers for this object. The returned multimap is built on each call, so prefer
+   * {@link #getHeader(String)} when only specific headers are needed.
    */
   public Multimap<String, String> getHeaders() {
-    return headers;
+    Multimap<String, String> headers = newHeaderMultimap();
+    for (int i = 0; i < headerNames.length; ++i) {
+      headers.put(headerNames[i], headerValues[i]);
+    }
+    return Multimaps.unmodifiableMultimap(headers);
   }
 
   /**
@@ -261,7 +416,19 @@ public final class HttpResponse implements Externalizable {
    * collection will be returned.
    */
   public Collection<String> getHeaders(String name) {
-    return headers.get(name);
+    List<String> values = null;
+    for (int i = 0; i < headerNames.length; ++i) {
+      if (headerNames[i].equalsIgnoreCase(name)) {
+        if (values == null) {
+          values = Lists.newArrayList();
+        }
+        values.add(headerValues[i]);
+      }
+    }
+    if (values == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(values);
   }
 
   /**
@@ -269,12 +436,12 @@ public final class HttpResponse implements Externalizable {
    *         values for the header, use getHeaders().
    */
   public String getHeader(String name) {
-    Collection<String> headerList = getHeaders(name);
-    if (headerList.isEmpty()) {
-      return null;
-    } else {
-      return headerList.iterator().next();
+    for (int i = 0; i < headerNames.length; ++i) {
+      if (headerNames[i].equalsIgnoreCase(name)) {
+        return headerValues[i];
+      }
     }
+    return null;
   }
 
   /**
@@ -300,32 +467,23 @@ public final class HttpResponse implements Externalizable {
    * @return consolidated cache expiration time or -1
    */
   public long getCacheExpiration() {
-    if (isError() && !NEGATIVE_CACHING_EXEMPT_STATUS.contains(httpStatusCode)) {
+    if (negativelyCached) {
       // If the server provides a Retry-After header use that as the cacheTtl
-      String retryAfter = this.getHeader("Retry-After");
-      if (retryAfter != null) {
-        if (StringUtils.isNumeric(retryAfter)) {
-          return date + Integer.parseInt(retryAfter) * 1000L;
-        } else {
-          Date expiresDate = DateUtil.parseRfc1123Date(retryAfter);
-          if (expiresDate != null)
-            return expiresDate.getTime();
-        }
+      if (retryAfter != -1) {
+        return retryAfter;
       }
       // default value
       return date + negativeCacheTtl;
     }
 
-    if (isStrictNoCache()) {
+    if (strictNoCache) {
       return -1;
     }
-    long maxAge = getCacheControlMaxAge();
     if (maxAge != -1) {
       return date + maxAge;
     }
-    long expiration = getExpiresTime();
-    if (expiration != -1) {
-      return expiration;
+    if (expires != -1) {
+      return expires;
     }
     return date + defaultTtl;
   }
@@ -352,66 +510,21 @@ public final class HttpResponse implements Externalizable {
    * @return true if a strict no-cache header is set in Cache-Control or Pragma
    */
   public boolean isStrictNoCache() {
-    if (isError() && !NEGATIVE_CACHING_EXEMPT_STATUS.contains(httpStatusCode)) {
-      return false;
-    }
-    String cacheControl = getHeader("Cache-Control");
-    if (cacheControl != null) {
-      String[] directives = cacheControl.split(",");
-      for (String directive : directives) {
-        directive = directive.trim();
-        if (directive.equalsIgnoreCase("no-cache")
-            || directive.equalsIgnoreCase("no-store")
-            || directive.equalsIgnoreCase("private")) {
-          return true;
-        }
-      }
-    }
-
-    for (String pragma : getHeaders("Pragma")) {
-      if ("no-cache".equalsIgnoreCase(pragma)) {
-        return true;
-      }
-    }
-    return false;
+    return !negativelyCached && strictNoCache;
   }
 
   /**
-   * @return the expiration time from the Expires header or -1 if not set
+   * @return The stale-while-revalidate value in milliseconds, or -1 if invalid or not set.
    */
-  private long getExpiresTime() {
-    String expires = getHeader("Expires");
-    if (expires != null) {
-      Date expiresDate = DateUtil.parseRfc1123Date(expires);
-      if (expiresDate != null) {
-        return expiresDate.getTime();
-      }
-    }
-    return -1;
+  public long getStaleWhileRevalidateTtl() {
+    return staleWhileRevalidate;
   }
 
   /**
-   * @return max-age value or -1 if invalid or not set
+   * @return The stale-if-error value in milliseconds, or -1 if invalid or not set.
    */
-  private long getCacheControlMaxAge() {
-    String cacheControl = getHeader("Cache-Control");
-    if (cacheControl != null) {
-      String[] directives = cacheControl.split(",");
-      for (String directive : directives) {
-        directive = directive.trim();
-        if (directive.startsWith("max-age")) {
-          String[] parts = directive.split("=");
-          if (parts.length == 2) {
-            try {
-              return Long.parseLong(parts[1]) * 1000;
-            } catch (NumberFormatException ignore) {
-              return -1;
-            }
-          }
-        }
-      }
-    }
-    return -1;
+  public long getStaleIfErrorTtl() {
+    return staleIfError;
   }
 
   /**
@@ -441,10 +554,13 @@ public final class HttpResponse implements Externalizable {
    * Attempts to determine the encoding of the body. If it can't be determined, we use
    * DEFAULT_ENCODING instead.
    *
+   * The body is only read when the content type is textual and doesn't name a charset, so
+   * binary bodies and bodies kept compressed or on disk are left alone otherwise.
+   *
    * @return The detected encoding or DEFAULT_ENCODING.
    */
-  private static Charset getAndUpdateEncoding(Multimap<String, String> headers, byte[] body) {
-    if (body == null || body.length == 0) {
+  private Charset getAndUpdateEncoding(Multimap<String, String> headers) {
+    if (isBodyEmpty()) {
       return DEFAULT_ENCODING;
     }
 
@@ -472,7 +588,8 @@ public final class HttpResponse implements Externalizable {
           }
         }
       }
-      Charset encoding = EncodingDetector.detectEncoding(body, fastEncodingDetection);
+      Charset encoding = EncodingDetector.detectEncoding(getEncodingSample(),
+          fastEncodingDetection);
       // Record the charset in the content-type header so that its value can be cached
       // and re-used. This is a BIG performance win.
       values.clear();
@@ -508,15 +625,28 @@ public final class HttpResponse implements Externalizable {
     HttpResponse response = (HttpResponse)obj;
 
     return httpStatusCode == response.httpStatusCode &&
-           headers.equals(response.headers) &&
-           Arrays.equals(responseBytes, response.responseBytes);
+           headersEqual(response) &&
+           Arrays.equals(getResponseAsBytes(), response.getResponseAsBytes());
+  }
+
+  private boolean headersEqual(HttpResponse response) {
+    if (headerNames.length != response.headerNames.length) {
+      return false;
+    }
+    for (int i = 0; i < headerNames.length; ++i) {
+      if (!headerNames[i].equalsIgnoreCase(response.headerNames[i]) ||
+          !StringUtils.equals(headerValues[i], response.headerValues[i])) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public String toString() {
     StringBuilder buf = new StringBuilder("HTTP/1.1 ").append(httpStatusCode).append("\r\n\r\n");
-    for (Map.Entry<String,String> entry : headers.entries()) {
-      buf.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+    for (int i = 0; i < headerNames.length; ++i) {
+      buf.append(headerNames[i]).append(": ").append(headerValues[i]).append("\r\n");
     }
     buf.append("\r\n").append(getResponseAsString()).append("\r\n");
     return buf.toString();
@@ -524,23 +654,289 @@ public final class HttpResponse implements Externalizable {
 
   /**
    * @return The response as a byte array. Only visible to the package to avoid copying when
-   * making a new HttpResponseBuilder.
+   * making a new HttpResponseBuilder. Bodies kept on disk are read onto the heap.
    */
   byte[] getResponseAsBytes() {
+    try {
+      if (responseFile != null) {
+        return responseFile.readAll();
+      }
+      if (responseGzipped != null) {
+        return responseGzipped.readAll();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Response body is no longer available", e);
+    }
     return responseBytes;
   }
 
+  /**
+   * @return The file holding the body, or null if the body is held in memory.
+   */
+  FileResponseBody getResponseFile() {
+    return responseFile;
+  }
+
+  /**
+   * Releases the temporary file holding a large body once the caller is done with the response.
+   * The file is deleted when no other caller shares it. Call this at most once per caller, and
+   * don't read the body afterwards. Bodies held in memory are unaffected.
+   */
+  public void release() {
+    if (responseFile != null) {
+      responseFile.release();
+    }
+  }
+
+  /**
+   * Takes a reference to the body for another caller that is handed this response, which must
+   * then release it in turn.
+   *
+   * @return False if the body has already been released and can no longer be read.
+   */
+  boolean retain() {
+    return responseFile == null || responseFile.retain();
+  }
+
+  /**
+   * @return The compressed body, or null if the body is not held compressed.
+   */
+  GzippedResponseBody getResponseGzipped() {
+    return responseGzipped;
+  }
+
+  /**
+   * @return A rough estimate of the space used by this response, in bytes. Bodies kept on disk
+   * are counted at their full length, since they are resources held on the response's behalf.
+   */
+  int getEstimatedSize() {
+    // Object headers, fields and the header arrays themselves.
+    int size = 128;
+    if (responseFile != null) {
+      size += responseFile.getLength();
+    } else if (responseGzipped != null) {
+      size += responseGzipped.getCompressedLength();
+    } else if (responseBytes != null) {
+      size += responseBytes.length;
+    }
+    if (responseString != null) {
+      size += responseString.length() * 2;
+    }
+    for (int i = 0; i < headerNames.length; ++i) {
+      // Names are interned, so only the reference is counted.
+      size += 8 + 40 + headerValues[i].length() * 2;
+    }
+    return size;
+  }
+
+  private boolean isBodyEmpty() {
+    if (responseFile != null) {
+      return responseFile.getLength() == 0;
+    }
+    if (responseGzipped != null) {
+      return responseGzipped.getLength() == 0;
+    }
+    return responseBytes == null || responseBytes.length == 0;
+  }
+
+  /**
+   * @return The bytes used to detect the encoding of the body.
+   */
+  private byte[] getEncodingSample() {
+    try {
+      if (responseFile != null) {
+        return responseFile.readHead(ENCODING_SAMPLE_SIZE);
+      }
+      if (responseGzipped != null) {
+        return responseGzipped.readHead(ENCODING_SAMPLE_SIZE);
+      }
+    } catch (IOException e) {
+      return ArrayUtils.EMPTY_BYTE_ARRAY;
+    }
+    return responseBytes;
+  }
+
+  // Marks the binary format in place of the status code that the original format starts with.
+  private static final int FORMAT_MARKER = -2;
+
+  // Body types in the binary format.
+  private static final byte BODY_BYTES = 0;
+  private static final byte BODY_GZIPPED = 1;
+
   /**
    * Expected layout:
    *
+   * int - format marker, -2
+   * binary form, as written by writeTo
+   *
+   * Responses written before the binary format was introduced are still read. Their layout is:
+   *
    * int - status code
    * Map<String, List<String>> - headers
    * int - length of body
    * byte array - body, of previously specified length
    */
-  @SuppressWarnings("unchecked")
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    int marker = in.readInt();
+    if (marker == FORMAT_MARKER) {
+      readFrom(in);
+    } else if (marker >= 0) {
+      readLegacyExternal(marker, in);
+    } else {
+      throw new IOException("Unknown HttpResponse format " + marker);
+    }
+  }
+
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeInt(FORMAT_MARKER);
+    writeTo(out);
+  }
+
+  /**
+   * Writes the binary form of this response. Unlike Java serialization of the headers, it needs
+   * no class descriptors, and it keeps the date, encoding, caching directives and metadata so that
+   * none of them are computed again when the response is read.
+   *
+   * Layout:
+   *
+   * int - status code
+   * long - date
+   * string - encoding
+   * byte - flags: 1 if negatively cached, 2 if strictly not cacheable
+   * long - max age, expires, retry after, stale while revalidate and stale if error, in order
+   * int - number of headers, followed by each name and value
+   * int - number of metadata entries, followed by each key and value
+   * byte - body type: 0 for plain bytes, 1 for gzipped
+   * int - length of the inflated body, if gzipped
+   * int - length of the body as stored
+   * byte array - body, of previously specified length
+   *
+   * Strings are an int byte length followed by the UTF-8 bytes.
+   */
+  void writeTo(DataOutput out) throws IOException {
+    out.writeInt(httpStatusCode);
+    out.writeLong(date);
+    writeString(out, encoding.name());
+    out.writeByte((negativelyCached ? 1 : 0) | (strictNoCache ? 2 : 0));
+    out.writeLong(maxAge);
+    out.writeLong(expires);
+    out.writeLong(retryAfter);
+    out.writeLong(staleWhileRevalidate);
+    out.writeLong(staleIfError);
+
+    out.writeInt(headerNames.length);
+    for (int i = 0; i < headerNames.length; ++i) {
+      writeString(out, headerNames[i]);
+      writeString(out, headerValues[i]);
+    }
+
+    out.writeInt(metadata.size());
+    for (Map.Entry<String, String> entry : metadata.entrySet()) {
+      writeString(out, entry.getKey());
+      writeString(out, entry.getValue());
+    }
+
+    if (responseGzipped != null) {
+      out.writeByte(BODY_GZIPPED);
+      out.writeInt(responseGzipped.getLength());
+      byte[] compressed = responseGzipped.getCompressed();
+      out.writeInt(compressed.length);
+      out.write(compressed);
+    } else if (responseFile != null) {
+      out.writeByte(BODY_BYTES);
+      out.writeInt(responseFile.getLength());
+      InputStream is = responseFile.open();
+      try {
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        IOUtils.closeQuietly(is);
+      }
+    } else {
+      byte[] body = getResponseAsBytes();
+      out.writeByte(BODY_BYTES);
+      out.writeInt(body.length);
+      out.write(body);
+    }
+  }
+
+  /**
+   * Reads the binary form written by writeTo into this response, which must be newly created
+   * with the no argument constructor.
+   */
+  void readFrom(DataInput in) throws IOException {
     httpStatusCode = in.readInt();
+    date = in.readLong();
+    try {
+      encoding = charsetForName(readString(in));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Unsupported encoding in serialized response");
+    }
+    byte flags = in.readByte();
+    negativelyCached = (flags & 1) != 0;
+    strictNoCache = (flags & 2) != 0;
+    maxAge = in.readLong();
+    expires = in.readLong();
+    retryAfter = in.readLong();
+    staleWhileRevalidate = in.readLong();
+    staleIfError = in.readLong();
+
+    int headerCount = in.readInt();
+    headerNames = new String[headerCount];
+    headerValues = new String[headerCount];
+    for (int i = 0; i < headerCount; ++i) {
+      headerNames[i] = readString(in).intern();
+      headerValues[i] = readString(in);
+    }
+
+    int metadataCount = in.readInt();
+    if (metadataCount == 0) {
+      metadata = Collections.emptyMap();
+    } else {
+      Map<String, String> metadataCopy = Maps.newHashMap();
+      for (int i = 0; i < metadataCount; ++i) {
+        metadataCopy.put(readString(in), readString(in));
+      }
+      metadata = Collections.unmodifiableMap(metadataCopy);
+    }
+
+    byte bodyType = in.readByte();
+    if (bodyType == BODY_GZIPPED) {
+      int length = in.readInt();
+      byte[] compressed = new byte[in.readInt()];
+      in.readFully(compressed);
+      responseGzipped = GzippedResponseBody.wrap(compressed, length);
+    } else if (bodyType == BODY_BYTES) {
+      responseBytes = new byte[in.readInt()];
+      in.readFully(responseBytes);
+    } else {
+      throw new IOException("Unknown body type " + bodyType);
+    }
+  }
+
+  private static void writeString(DataOutput out, String value) throws IOException {
+    byte[] bytes = value.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  /**
+   * Reads the original format, which holds only the status, headers and body. Everything else is
+   * computed again from the headers, as it is when the response is first created.
+   */
+  @SuppressWarnings("unchecked")
+  private void readLegacyExternal(int status, ObjectInput in)
+      throws IOException, ClassNotFoundException {
+    httpStatusCode = status;
 
     // We store the multimap as a Map<String,List<String>> to insulate us from google-collections API churn
     // And to remain backwards compatible
@@ -564,23 +960,11 @@ public final class HttpResponse implements Externalizable {
     }
 
     date = getAndUpdateDate(headerCopy);
-    encoding = getAndUpdateEncoding(headerCopy, responseBytes);
-    headers = Multimaps.unmodifiableMultimap(headerCopy);
+    encoding = getAndUpdateEncoding(headerCopy);
+    setHeaders(headerCopy);
     metadata = Collections.emptyMap();
   }
 
-  public void writeExternal(ObjectOutput out) throws IOException {
-    out.writeInt(httpStatusCode);
-    // Write out multimap as a map (see above)
-    Map<String,List<String>> map = Maps.newHashMap();
-    for (String key : headers.keySet()) {
-      map.put(key, Lists.newArrayList(headers.get(key)));
-    }
-    out.writeObject(Maps.newHashMap(map));
-    out.writeInt(responseBytes.length);
-    out.write(responseBytes);
-  }
-
 
   private static final Supplier<Collection<String>> HEADER_COLLECTION_SUPPLIER = new HeaderCollectionSupplier();
 
@@ -27,6 +27,7 @@ import com.google.common.collect.Multimap;
 
 import org.apache.commons.lang.ArrayUtils;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +40,8 @@ public class HttpResponseBuilder {
   private int httpStatusCode = HttpResponse.SC_OK;
   private final Multimap<String, String> headers = HttpResponse.newHeaderMultimap();
   private byte[] responseBytes = ArrayUtils.EMPTY_BYTE_ARRAY;
+  private FileResponseBody responseFile;
+  private GzippedResponseBody responseGzipped;
   private final Map<String, String> metadata = Maps.newHashMap();
 
   public HttpResponseBuilder() {}
@@ -48,6 +51,8 @@ public class HttpResponseBuilder {
     headers.putAll(builder.headers);
     metadata.putAll(builder.metadata);
     responseBytes = builder.responseBytes;
+    responseFile = builder.responseFile;
+    responseGzipped = builder.responseGzipped;
   }
 
   public HttpResponseBuilder(HttpResponse response) {
@@ -56,7 +61,11 @@ public class HttpResponseBuilder {
     headers.putAll(response.getHeaders());
 
     metadata.putAll(response.getMetadata());
-    responseBytes = response.getResponseAsBytes();
+    responseFile = response.getResponseFile();
+    responseGzipped = response.getResponseGzipped();
+    if (responseFile == null && responseGzipped == null) {
+      responseBytes = response.getResponseAsBytes();
+    }
   }
 
   /**
@@ -71,6 +80,8 @@ public class HttpResponseBuilder {
    */
   public HttpResponseBuilder setResponseString(String body) {
     responseBytes = CharsetUtil.getUtf8Bytes(body);
+    responseFile = null;
+    responseGzipped = null;
     return this;
   }
 
@@ -83,6 +94,8 @@ public class HttpResponseBuilder {
     }
     this.responseBytes = new byte[responseBytes.length];
     System.arraycopy(responseBytes, 0, this.responseBytes, 0, responseBytes.length);
+    responseFile = null;
+    responseGzipped = null;
     return this;
   }
 
@@ -94,6 +107,43 @@ public class HttpResponseBuilder {
       responseBytes = ArrayUtils.EMPTY_BYTE_ARRAY;
     }
     this.responseBytes = responseBytes;
+    responseFile = null;
+    responseGzipped = null;
+    return this;
+  }
+
+  /**
+   * @param file A file holding the response body. The body is streamed from the file rather than
+   * held in memory. The response takes ownership of the file and deletes it once it has been
+   * released through {@link HttpResponse#release()}, or once it is no longer referenced, so
+   * callers must not modify or delete it.
+   */
+  public HttpResponseBuilder setResponseFile(File file) {
+    responseFile = new FileResponseBody(file);
+    responseGzipped = null;
+    responseBytes = ArrayUtils.EMPTY_BYTE_ARRAY;
+    return this;
+  }
+
+  /**
+   * Keeps the current body gzip-compressed in memory. The body is inflated only when it is read,
+   * and can be sent as-is to clients that accept gzip. Bodies kept in files are left alone.
+   */
+  public HttpResponseBuilder compressResponse() {
+    if (responseFile == null && responseGzipped == null) {
+      responseGzipped = GzippedResponseBody.compress(responseBytes);
+      responseBytes = ArrayUtils.EMPTY_BYTE_ARRAY;
+    }
+    return this;
+  }
+
+  /**
+   * @param responseGzipped A gzip-compressed response body.
+   */
+  HttpResponseBuilder setResponseGzipped(GzippedResponseBody responseGzipped) {
+    this.responseGzipped = responseGzipped;
+    responseFile = null;
+    responseBytes = ArrayUtils.EMPTY_BYTE_ARRAY;
     return this;
   }
 
@@ -216,6 +266,14 @@ public class HttpResponseBuilder {
     return responseBytes;
   }
 
+  FileResponseBody getResponseFile() {
+    return responseFile;
+  }
+
+  GzippedResponseBody getResponseGzipped() {
+    return responseGzipped;
+  }
+
   public int getHttpStatusCode() {
     return httpStatusCode;
   }
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.shindig.gadgets.GadgetException;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The pending result of an asynchronous fetch. Completed exactly once, either with an
+ * HttpResponse or with a GadgetException. Callbacks registered with
+ * {@link #addCallback(Callback)} run on the thread that completes the future, or immediately on
+ * the registering thread if the result is already available, so they must not block.
+ */
+public class HttpResponseFuture implements Future<HttpResponse> {
+  private static final Logger logger = Logger.getLogger(HttpResponseFuture.class.getName());
+
+  /**
+   * Receives the outcome of an asynchronous fetch.
+   */
+  public interface Callback {
+    void onResponse(HttpResponse response);
+
+    void onFailure(GadgetException e);
+  }
+
+  private final CountDownLatch latch = new CountDownLatch(1);
+  private final List<Callback> callbacks = Lists.newArrayList();
+
+  // Guarded by "this" until the latch is released, immutable afterwards.
+  private boolean done;
+  private boolean cancelled;
+  private HttpResponse response;
+  private GadgetException exception;
+
+  /**
+   * @return A future that has already completed with the given response.
+   */
+  public static HttpResponseFuture immediate(HttpResponse response) {
+    HttpResponseFuture future = new HttpResponseFuture();
+    future.set(response);
+    return future;
+  }
+
+  /**
+   * @return A future that has already failed with the given exception.
+   */
+  public static HttpResponseFuture failed(GadgetException e) {
+    HttpResponseFuture future = new HttpResponseFuture();
+    future.setException(e);
+    return future;
+  }
+
+  /**
+   * Completes the future with a response.
+   *
+   * @return false if the future was already complete, in which case this call has no effect.
+   */
+  public boolean set(HttpResponse response) {
+    synchronized (this) {
+      if (done) {
+        return false;
+      }
+      this.response = response;
+      done = true;
+    }
+    complete();
+    return true;
+  }
+
+  /**
+   * Completes the future with a failure.
+   *
+   * @return false if the future was already complete, in which case this call has no effect.
+   */
+  public boolean setException(GadgetException e) {
+    synchronized (this) {
+      if (done) {
+        return false;
+      }
+      this.exception = e;
+      done = true;
+    }
+    complete();
+    return true;
+  }
+
+  /**
+   * Registers a callback for the result of this future.
+   */
+  public void addCallback(Callback callback) {
+    synchronized (this) {
+      if (!done) {
+        callbacks.add(callback);
+        return;
+      }
+    }
+    notify(callback);
+  }
+
+  /**
+   * Blocks until the fetch completes and returns its result, unwrapping any failure.
+   *
+   * @return The fetched response.
+   * @throws GadgetException If the fetch failed, was cancelled, or the wait was interrupted.
+   */
+  public HttpResponse getResponse() throws GadgetException {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e);
+    }
+    if (cancelled) {
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, "Fetch cancelled");
+    }
+    if (exception != null) {
+      throw exception;
+    }
+    return response;
+  }
+
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    synchronized (this) {
+      if (done) {
+        return false;
+      }
+      cancelled = true;
+      done = true;
+    }
+    complete();
+    return true;
+  }
+
+  public boolean isCancelled() {
+    synchronized (this) {
+      return cancelled;
+    }
+  }
+
+  public boolean isDone() {
+    synchronized (this) {
+      return done;
+    }
+  }
+
+  public HttpResponse get() throws InterruptedException, ExecutionException {
+    latch.await();
+    return getResult();
+  }
+
+  public HttpResponse get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    if (!latch.await(timeout, unit)) {
+      throw new TimeoutException();
+    }
+    return getResult();
+  }
+
+  private HttpResponse getResult() throws ExecutionException {
+    if (cancelled) {
+      throw new CancellationException();
+    }
+    if (exception != null) {
+      throw new ExecutionException(exception);
+    }
+    return response;
+  }
+
+  private void complete() {
+    List<Callback> toNotify;
+    synchronized (this) {
+      toNotify = Lists.newArrayList(callbacks);
+      callbacks.clear();
+    }
+    latch.countDown();
+    for (Callback callback : toNotify) {
+      notify(callback);
+    }
+  }
+
+  private void notify(Callback callback) {
+    try {
+      if (cancelled) {
+        callback.onFailure(
+            new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, "Fetch cancelled"));
+      } else if (exception != null) {
+        callback.onFailure(exception);
+      } else {
+        callback.onResponse(response);
+      }
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Fetch callback failed", e);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.shindig.common.cache.CacheSerializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A compact binary form of HttpResponse, for caches kept outside of the JVM. Unlike Java
+ * serialization, it writes no class descriptors. It is a version byte followed by the form
+ * written by HttpResponse.writeTo, which keeps metadata, gzipped bodies and the values computed
+ * from the headers as they are.
+ *
+ * Version 1 entries are still read. Their layout is:
+ *
+ * byte - format version
+ * int - status code
+ * int - number of headers, followed by each name and value
+ * int - number of metadata entries, followed by each key and value
+ * boolean - whether the body is gzipped
+ * int - length of the inflated body, if gzipped
+ * int - length of the body as stored
+ * byte array - body, of previously specified length
+ */
+public class HttpResponseSerializer implements CacheSerializer<HttpResponse> {
+  private static final byte VERSION = 2;
+  private static final byte VERSION_1 = 1;
+
+  public void write(HttpResponse response, DataOutput out) throws IOException {
+    out.writeByte(VERSION);
+    response.writeTo(out);
+  }
+
+  public HttpResponse read(DataInput in) throws IOException {
+    byte version = in.readByte();
+    if (version == VERSION) {
+      HttpResponse response = new HttpResponse();
+      response.readFrom(in);
+      return response;
+    }
+    if (version != VERSION_1) {
+      throw new IOException("Unknown HttpResponse format version " + version);
+    }
+    HttpResponseBuilder builder = new HttpResponseBuilder()
+        .setHttpStatusCode(in.readInt());
+
+    for (int i = in.readInt(); i > 0; --i) {
+      builder.addHeader(in.readUTF(), in.readUTF());
+    }
+    for (int i = in.readInt(); i > 0; --i) {
+      builder.setMetadata(in.readUTF(), in.readUTF());
+    }
+
+    boolean gzipped = in.readBoolean();
+    int length = gzipped ? in.readInt() : 0;
+    byte[] body = new byte[in.readInt()];
+    in.readFully(body);
+    if (gzipped) {
+      builder.setResponseGzipped(GzippedResponseBody.wrap(body, length));
+    } else {
+      builder.setResponseNoCopy(body);
+    }
+    return builder.create();
+  }
+}
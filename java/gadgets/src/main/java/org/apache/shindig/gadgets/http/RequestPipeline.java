@@ -36,6 +36,13 @@ public interface RequestPipeline {
    */
   HttpResponse execute(HttpRequest request) throws GadgetException;
 
+  /**
+   * Execute the given request without blocking the calling thread on the remote fetch. Cache
+   * hits complete immediately. Failures that {@link #execute(HttpRequest)} would throw are
+   * reported through the returned future instead.
+   */
+  HttpResponseFuture executeAsync(HttpRequest request);
+
   /**
    * Normalize the request protocol. Typically this would restrict the allowed
    * protocols to http/https but containers may support other protocols
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Collects a response body in memory until it grows past a threshold, then moves it to a
+ * temporary file so that large bodies don't occupy the heap. Bodies stay in memory while the
+ * temporary files of all responses already hold the configured maximum.
+ */
+class SpillingOutputStream extends OutputStream {
+  private final int threshold;
+  private final long maxSpilledBytes;
+  private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+  private File file;
+  private OutputStream fileStream;
+  private int count;
+
+  /**
+   * @param threshold Number of bytes kept in memory before spilling to disk, or 0 to never spill.
+   */
+  SpillingOutputStream(int threshold) {
+    this(threshold, 0);
+  }
+
+  /**
+   * @param threshold Number of bytes kept in memory before spilling to disk, or 0 to never spill.
+   * @param maxSpilledBytes Number of bytes all temporary response files may hold before bodies
+   *     are kept in memory instead, or 0 for no limit. The limit is checked when a body spills,
+   *     so a body that is already on disk may still take it over the limit as it grows.
+   */
+  SpillingOutputStream(int threshold, long maxSpilledBytes) {
+    this.threshold = threshold;
+    this.maxSpilledBytes = maxSpilledBytes;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (fileStream == null && threshold > 0 && count + len > threshold &&
+        hasSpillCapacity(count + len)) {
+      spill();
+    }
+    if (fileStream != null) {
+      fileStream.write(b, off, len);
+      FileResponseBody.addSpilledBytes(len);
+    } else {
+      memory.write(b, off, len);
+    }
+    count += len;
+  }
+
+  private boolean hasSpillCapacity(int bytes) {
+    return maxSpilledBytes == 0 || FileResponseBody.getSpilledBytes() + bytes <= maxSpilledBytes;
+  }
+
+  private void spill() throws IOException {
+    File spillFile = FileResponseBody.createTempFile();
+    try {
+      fileStream = new BufferedOutputStream(new FileOutputStream(spillFile));
+    } catch (IOException e) {
+      spillFile.delete();
+      throw e;
+    }
+    file = spillFile;
+    FileResponseBody.addSpilledBytes(count);
+    memory.writeTo(fileStream);
+    memory = null;
+  }
+
+  /**
+   * @return The number of bytes written so far.
+   */
+  int getCount() {
+    return count;
+  }
+
+  /**
+   * @return True if the body has been moved to a file.
+   */
+  boolean isSpilled() {
+    return file != null;
+  }
+
+  /**
+   * Writes the collected body to a response builder. The stream must not be used afterwards.
+   */
+  void setResponse(HttpResponseBuilder builder) throws IOException {
+    if (isSpilled()) {
+      fileStream.close();
+      // The response body counts the file from here on.
+      FileResponseBody.addSpilledBytes(-count);
+      builder.setResponseFile(file);
+    } else {
+      builder.setResponseNoCopy(memory.toByteArray());
+    }
+  }
+
+  /**
+   * Releases the collected body, deleting any file.
+   */
+  void discard() {
+    if (isSpilled()) {
+      IOUtils.closeQuietly(fileStream);
+      file.delete();
+      FileResponseBody.addSpilledBytes(-count);
+    }
+    memory = null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (fileStream != null) {
+      fileStream.close();
+    }
+  }
+}
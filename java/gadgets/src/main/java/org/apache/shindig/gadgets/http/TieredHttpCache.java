@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.shindig.common.cache.CacheProvider;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * An HttpCache with two tiers: the usual in-memory cache, backed by a much larger
+ * {@link DiskResponseStore}. Responses are written to both tiers. Responses found only on disk
+ * are copied back into memory when they are requested.
+ *
+ * To use it, bind HttpCache to this class in place of DefaultHttpCache.
+ */
+@Singleton
+public class TieredHttpCache extends DefaultHttpCache {
+  private final DiskResponseStore diskStore;
+
+  @Inject
+  public TieredHttpCache(CacheProvider cacheProvider, DiskResponseStore diskStore) {
+    super(cacheProvider);
+    this.diskStore = diskStore;
+  }
+
+  @Override
+  protected HttpResponse getResponseImpl(String key) {
+    HttpResponse response = super.getResponseImpl(key);
+    if (response == null) {
+      response = diskStore.get(key);
+      if (response != null) {
+        super.addResponseImpl(key, response);
+      }
+    }
+    return response;
+  }
+
+  @Override
+  protected void addResponseImpl(String key, HttpResponse response) {
+    super.addResponseImpl(key, response);
+    diskStore.put(key, response);
+  }
+
+  @Override
+  protected HttpResponse removeResponseImpl(String key) {
+    HttpResponse response = super.removeResponseImpl(key);
+    diskStore.remove(key);
+    return response;
+  }
+}
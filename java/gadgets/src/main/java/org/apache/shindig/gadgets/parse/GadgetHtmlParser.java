@@ -19,6 +19,7 @@ package org.apache.shindig.gadgets.parse;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.Weigher;
 import org.apache.shindig.common.util.HashUtil;
 import org.apache.shindig.common.xml.DomUtil;
 import org.apache.shindig.gadgets.GadgetException;
@@ -43,6 +44,25 @@ public abstract class GadgetHtmlParser {
   public static final String PARSED_DOCUMENTS = "parsedDocuments";
   public static final String PARSED_FRAGMENTS = "parsedFragments";
 
+  // Records the length of the source of a cached document or fragment, for weighing it.
+  private static final String SOURCE_LENGTH = "source-length";
+
+  // Marks cached documents, which are shared and must be copied before they are modified.
+  private static final String READ_ONLY = "read-only";
+
+  // A parsed DOM takes several times the memory of its source text.
+  private static final int DOM_BYTES_PER_SOURCE_CHAR = 8;
+
+  /**
+   * Weighs parsed documents and fragments by the approximate heap size of their DOM.
+   */
+  private static final Weigher<String, Node> DOM_WEIGHER = new Weigher<String, Node>() {
+    public int weigh(String key, Node node) {
+      Integer length = (Integer) node.getUserData(SOURCE_LENGTH);
+      return key.length() * 2 + (length == null ? 0 : length * DOM_BYTES_PER_SOURCE_CHAR);
+    }
+  };
+
   private Cache<String, Document> documentCache;
   private Cache<String, DocumentFragment> fragmentCache;
   private Provider<HtmlSerializer> serializerProvider = new DefaultSerializerProvider();
@@ -61,8 +81,8 @@ public abstract class GadgetHtmlParser {
 
   @Inject
   public void setCacheProvider(CacheProvider cacheProvider) {
-    documentCache = cacheProvider.createCache(PARSED_DOCUMENTS);
-    fragmentCache = cacheProvider.createCache(PARSED_FRAGMENTS);
+    documentCache = cacheProvider.createCache(PARSED_DOCUMENTS, DOM_WEIGHER);
+    fragmentCache = cacheProvider.createCache(PARSED_FRAGMENTS, DOM_WEIGHER);
   }
 
   @Inject
@@ -79,7 +99,21 @@ public abstract class GadgetHtmlParser {
     return normalized.contains("<!DOCTYPE") || normalized.contains("<HTML");
   }
 
+  /**
+   * @return A parsed document that the caller may modify.
+   */
   public final Document parseDom(String source) throws GadgetException {
+    return copyForWrite(parseDomReadOnly(source));
+  }
+
+  /**
+   * Parses a document without copying it out of the cache. The result may be shared with other
+   * threads, so it must not be modified, and it should only be read with methods that keep no
+   * state in the document, such as getFirstChild, getNextSibling, getAttribute and
+   * DomUtil.getElementsByTagNameCaseInsensitive. Use {@link #copyForWrite} to get a copy that can
+   * be modified.
+   */
+  public final Document parseDomReadOnly(String source) throws GadgetException {
     Document document = null;
     String key = null;
     // Avoid checksum overhead if we arent caching
@@ -108,17 +142,33 @@ public abstract class GadgetHtmlParser {
             document.createElement("body"));
       }
       if (shouldCache) {
+        document.setUserData(SOURCE_LENGTH, source.length(), null);
+        document.setUserData(READ_ONLY, Boolean.TRUE, null);
         documentCache.addElement(key, document);
       }
     }
-    if (shouldCache) {
-      Document copy = (Document)document.cloneNode(true);
-      HtmlSerialization.copySerializer(document, copy);
-      return copy;
-    }
     return document;
   }
 
+  /**
+   * @return The given document if it is not shared, otherwise a copy of it that may be modified.
+   */
+  public final Document copyForWrite(Document document) {
+    if (!isReadOnly(document)) {
+      return document;
+    }
+    Document copy = (Document)document.cloneNode(true);
+    HtmlSerialization.copySerializer(document, copy);
+    return copy;
+  }
+
+  /**
+   * @return True if the document is shared through the cache and must not be modified.
+   */
+  public static boolean isReadOnly(Document document) {
+    return document.getUserData(READ_ONLY) != null;
+  }
+
   /**
    * Parses a snippet of markup and appends the result as children to the 
    * provided node.
@@ -140,6 +190,7 @@ public abstract class GadgetHtmlParser {
     }
     DocumentFragment fragment = parseFragmentImpl(source);
     if (shouldCache) {
+      fragment.setUserData(SOURCE_LENGTH, source.length(), null);
       fragmentCache.addElement(key, fragment);
     }
     copyFragment(fragment, result);
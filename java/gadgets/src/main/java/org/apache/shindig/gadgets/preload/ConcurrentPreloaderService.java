@@ -30,8 +30,10 @@ import com.google.inject.Inject;
  * Preloads will be fetched concurrently using the injected ExecutorService, and they can be read
  * lazily using the returned map of futures.
  *
- * The last preloaded object always executes in the current thread to avoid creating unnecessary
- * additional threads when we're blocking the current request anyway.
+ * Tasks that implement {@link AsyncPreloadTask} are started directly and don't occupy an executor
+ * thread while they wait. Of the remaining tasks, the last one always executes in the current
+ * thread to avoid creating unnecessary additional threads when we're blocking the current request
+ * anyway.
  */
 public class ConcurrentPreloaderService implements PreloaderService {
   private final ExecutorService executor;
@@ -52,10 +54,19 @@ public class ConcurrentPreloaderService implements PreloaderService {
 
   public Collection<PreloadedData> preload(Collection<Callable<PreloadedData>> tasks) {
     ConcurrentPreloads preloads = new ConcurrentPreloads(tasks.size());
-    int processed = tasks.size();
+    int blockingTasks = 0;
     for (Callable<PreloadedData> task : tasks) {
-      processed -= 1;
-      if (processed == 0) {
+      if (!(task instanceof AsyncPreloadTask)) {
+        blockingTasks += 1;
+      }
+    }
+    for (Callable<PreloadedData> task : tasks) {
+      if (task instanceof AsyncPreloadTask) {
+        preloads.add(((AsyncPreloadTask) task).start());
+        continue;
+      }
+      blockingTasks -= 1;
+      if (blockingTasks == 0) {
         // The last preload fires in the current thread.
         FutureTask<PreloadedData> futureTask = new FutureTask<PreloadedData>(task);
         futureTask.run();
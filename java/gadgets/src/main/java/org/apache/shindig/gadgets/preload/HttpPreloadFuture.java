@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.preload;
+
+import org.apache.shindig.gadgets.http.HttpResponse;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Adapts an in-flight HTTP fetch to a future for preloaded data. The response is converted when
+ * it is read, on the reading thread.
+ */
+abstract class HttpPreloadFuture implements Future<PreloadedData> {
+  private final Future<HttpResponse> response;
+  private PreloadedData converted;
+  private ExecutionException failure;
+
+  HttpPreloadFuture(Future<HttpResponse> response) {
+    this.response = response;
+  }
+
+  /**
+   * Convert the fetched response into preloaded data, releasing the response.
+   */
+  protected abstract PreloadedData convert(HttpResponse response) throws Exception;
+
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return response.cancel(mayInterruptIfRunning);
+  }
+
+  public boolean isCancelled() {
+    return response.isCancelled();
+  }
+
+  public boolean isDone() {
+    return response.isDone();
+  }
+
+  public PreloadedData get() throws InterruptedException, ExecutionException {
+    return convertOrFail(response.get());
+  }
+
+  public PreloadedData get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    return convertOrFail(response.get(timeout, unit));
+  }
+
+  private synchronized PreloadedData convertOrFail(HttpResponse fetched)
+      throws ExecutionException {
+    // Converting releases the response, so it is converted once no matter how often it is read.
+    if (converted == null && failure == null) {
+      try {
+        converted = convert(fetched);
+      } catch (Exception e) {
+        failure = new ExecutionException(e);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return converted;
+  }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.shindig.gadgets.preload;
 
+import org.apache.shindig.common.util.ImmediateFuture;
 import org.apache.shindig.gadgets.FetchResponseUtils;
 import org.apache.shindig.gadgets.Gadget;
 import org.apache.shindig.gadgets.GadgetContext;
@@ -38,6 +39,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Handles HTTP Preloading (/ModulePrefs/Preload elements).
@@ -79,7 +81,7 @@ public class HttpPreloader implements Preloader {
         .setIgnoreCache(context.getIgnoreCache());
   }
 
-  class PreloadTask implements Callable<PreloadedData> {
+  class PreloadTask implements AsyncPreloadTask {
     private final GadgetContext context;
     private final Preload preload;
     private final String key;
@@ -95,6 +97,22 @@ public class HttpPreloader implements Preloader {
 
       return new HttpPreloadData(requestPipeline.execute(request), key);
     }
+
+    public Future<PreloadedData> start() {
+      HttpRequest request;
+      try {
+        request = newHttpRequest(context, preload);
+      } catch (GadgetException e) {
+        return ImmediateFuture.errorInstance(e);
+      }
+
+      return new HttpPreloadFuture(requestPipeline.executeAsync(request)) {
+        @Override
+        protected PreloadedData convert(HttpResponse response) {
+          return new HttpPreloadData(response, key);
+        }
+      };
+    }
   }
 
   /**
@@ -104,8 +122,12 @@ public class HttpPreloader implements Preloader {
     private final Map<String, Object> data;
 
     public HttpPreloadData(HttpResponse response, String key) {
-      this.data
-          = FetchResponseUtils.getResponseAsJson(response, key, response.getResponseAsString());
+      try {
+        this.data
+            = FetchResponseUtils.getResponseAsJson(response, key, response.getResponseAsString());
+      } finally {
+        response.release();
+      }
     }
 
     public Collection<Object> toJson() {
@@ -24,6 +24,7 @@ import org.apache.shindig.common.JsonUtil;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.uri.UriBuilder;
 import org.apache.shindig.common.util.CharsetUtil;
+import org.apache.shindig.common.util.ImmediateFuture;
 import org.apache.shindig.config.ContainerConfig;
 import org.apache.shindig.gadgets.AuthType;
 import org.apache.shindig.gadgets.GadgetContext;
@@ -38,11 +39,13 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.UnsupportedEncodingException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -174,13 +177,17 @@ public class PipelinedDataPreloader {
 
       // Unpack the response into a list of PreloadedData responses
       String responseText;
-      if (response.getHttpStatusCode() < 400) {
-        responseText = response.getResponseAsString();
-      } else {
-        // For error responses, unpack into the same error format used
-        // for os:HttpRequest
-        responseText = JsonSerializer.serialize(
-            createJsonError(response.getHttpStatusCode(), null, response));
+      try {
+        if (response.getHttpStatusCode() < 400) {
+          responseText = response.getResponseAsString();
+        } else {
+          // For error responses, unpack into the same error format used
+          // for os:HttpRequest
+          responseText = JsonSerializer.serialize(
+              createJsonError(response.getHttpStatusCode(), null, response));
+        }
+      } finally {
+        response.release();
       }
 
       final List<Object> data = parseSocialResponse(socialRequests, responseText);
@@ -223,7 +230,7 @@ public class PipelinedDataPreloader {
   }
 
   /** A task for loading os:HttpRequest */
-  class HttpPreloadTask implements Callable<PreloadedData> {
+  class HttpPreloadTask implements AsyncPreloadTask {
     private final GadgetContext context;
     private final RequestAuthenticationInfo preload;
     private final String key;
@@ -235,6 +242,26 @@ public class PipelinedDataPreloader {
     }
 
     public PreloadedData call() throws Exception {
+      return new Data(requestPipeline.execute(createRequest()));
+    }
+
+    public Future<PreloadedData> start() {
+      HttpRequest request;
+      try {
+        request = createRequest();
+      } catch (Exception e) {
+        return ImmediateFuture.errorInstance(e);
+      }
+
+      return new HttpPreloadFuture(requestPipeline.executeAsync(request)) {
+        @Override
+        protected PreloadedData convert(HttpResponse response) {
+          return new Data(response);
+        }
+      };
+    }
+
+    private HttpRequest createRequest() throws GadgetException, UnsupportedEncodingException {
       HttpRequest request = HttpPreloader.newHttpRequest(context, preload);
       String refreshIntervalStr = preload.getAttributes().get("refreshInterval");
       if (refreshIntervalStr != null) {
@@ -265,8 +292,7 @@ public class PipelinedDataPreloader {
           request.setUri(uriBuilder.toUri());
         }
       }
-
-      return new Data(requestPipeline.execute(request));
+      return request;
     }
 
     // TODO: change HttpPreloader to use this format
@@ -316,6 +342,8 @@ public class PipelinedDataPreloader {
           }
         } catch (JSONException outerJe) {
           throw new RuntimeException(outerJe);
+        } finally {
+          response.release();
         }
 
         this.data = wrapper;
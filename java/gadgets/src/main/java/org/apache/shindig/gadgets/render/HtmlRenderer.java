@@ -18,30 +18,61 @@
  */
 package org.apache.shindig.gadgets.render;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.shindig.auth.SecurityToken;
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.Weigher;
+import org.apache.shindig.gadgets.AuthType;
 import org.apache.shindig.gadgets.Gadget;
+import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.UserPrefs;
 import org.apache.shindig.gadgets.parse.GadgetHtmlParser;
 import org.apache.shindig.gadgets.preload.PreloadedData;
 import org.apache.shindig.gadgets.preload.PreloaderService;
 import org.apache.shindig.gadgets.rewrite.GadgetRewriter;
 import org.apache.shindig.gadgets.rewrite.MutableContent;
 import org.apache.shindig.gadgets.rewrite.RewritingException;
+import org.apache.shindig.gadgets.spec.GadgetSpec;
+import org.apache.shindig.gadgets.spec.ModulePrefs;
+import org.apache.shindig.gadgets.spec.Preload;
 import org.apache.shindig.gadgets.spec.View;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 /**
  * Handles producing output markup for a gadget based on the provided context.
+ *
+ * When a cache is set, the output of type=html views that are the same for every viewer is
+ * cached, keyed by the spec checksum and the request inputs that affect rendering.
  */
 public class HtmlRenderer {
   public static final String PATH_PARAM = "path";
+  public static final String RENDERED_GADGETS = "renderedGadgets";
+  private static final long DEFAULT_RENDERED_TTL = 300000L;
+
+  // Request parameters read by the rewriters.
+  private static final String[] RENDER_PARAMS = {"libs", "sanitize", "caja"};
+
+  private static final Weigher<String, String> WEIGHER = new Weigher<String, String>() {
+    public int weigh(String key, String content) {
+      return (key.length() + content.length()) * 2;
+    }
+  };
+
   private final PreloaderService preloader;
   private final ProxyRenderer proxyRenderer;
   private final List<GadgetRewriter> gadgetRewriters;
   private final GadgetHtmlParser htmlParser;
+  private Cache<String, String> renderedCache;
+  private long renderedTtl = DEFAULT_RENDERED_TTL;
 
   @Inject
   public HtmlRenderer(PreloaderService preloader,
@@ -54,6 +85,20 @@ public class HtmlRenderer {
     this.htmlParser = htmlParser;
   }
 
+  @Inject(optional = true)
+  public void setCacheProvider(CacheProvider cacheProvider) {
+    renderedCache = cacheProvider.createCache(RENDERED_GADGETS, WEIGHER);
+  }
+
+  /**
+   * How long, in milliseconds, rendered output is cached. Output also stops being used as soon
+   * as the spec is refreshed with different content.
+   */
+  @Inject(optional = true)
+  public void setRenderedTtl(@Named("shindig.cache.render.ttl") long renderedTtl) {
+    this.renderedTtl = renderedTtl;
+  }
+
   /**
    * Render the gadget into a string by performing the following steps:
    *
@@ -68,6 +113,22 @@ public class HtmlRenderer {
    * @throws RenderingException if any issues arise that prevent rendering.
    */
   public String render(Gadget gadget) throws RenderingException {
+    String key = createKey(gadget);
+    if (key != null) {
+      String cached = renderedCache.getElement(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    String rendered = renderUncached(gadget);
+    if (key != null) {
+      renderedCache.addElement(key, rendered, -1, renderedTtl);
+    }
+    return rendered;
+  }
+
+  private String renderUncached(Gadget gadget) throws RenderingException {
     try {
       View view = gadget.getCurrentView();
 
@@ -95,4 +156,79 @@ public class HtmlRenderer {
       throw new RenderingException(e.getMessage(), e);
     }
   }
+
+  /**
+   * @return The key to cache the output of the gadget under, or null if the output may differ
+   *     between viewers or must not be cached.
+   */
+  private String createKey(Gadget gadget) {
+    if (renderedCache == null || renderedTtl == 0) {
+      return null;
+    }
+    GadgetContext context = gadget.getContext();
+    View view = gadget.getCurrentView();
+    if (context.getIgnoreCache() || view.getHref() != null || !isViewerIndependent(gadget)) {
+      return null;
+    }
+
+    GadgetSpec spec = gadget.getSpec();
+    StringBuilder key = new StringBuilder();
+    appendKeyPart(key, spec.getUrl().toString());
+    appendKeyPart(key, spec.getChecksum());
+    appendKeyPart(key, view.getName());
+    appendKeyPart(key, context.getContainer());
+    appendKeyPart(key, context.getHost());
+    appendKeyPart(key, String.valueOf(context.getLocale()));
+    appendKeyPart(key, Integer.toString(context.getModuleId()));
+    appendKeyPart(key, Boolean.toString(context.getDebug()));
+    for (String param : RENDER_PARAMS) {
+      appendKeyPart(key, context.getParameter(param));
+    }
+    UserPrefs prefs = context.getUserPrefs();
+    if (prefs != null) {
+      Map<String, String> sorted = new TreeMap<String, String>(prefs.getPrefs());
+      for (Map.Entry<String, String> pref : sorted.entrySet()) {
+        appendKeyPart(key, pref.getKey());
+        appendKeyPart(key, pref.getValue());
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * Output is the same for every viewer unless it embeds the viewer's security token, or it
+   * depends on signed preloads, pipelined data or server-side templates. Templates are treated
+   * as viewer data as a whole, since their expressions may read the viewer and owner.
+   */
+  private static boolean isViewerIndependent(Gadget gadget) {
+    SecurityToken token = gadget.getContext().getToken();
+    if (token != null && (!StringUtils.isEmpty(token.getUpdatedToken()) ||
+        !StringUtils.isEmpty(token.getTrustedJson()))) {
+      return false;
+    }
+
+    ModulePrefs prefs = gadget.getSpec().getModulePrefs();
+    if (prefs.getFeatures().containsKey("opensocial-data") ||
+        prefs.getFeatures().containsKey("opensocial-templates") ||
+        gadget.getCurrentView().getPipelinedData() != null) {
+      return false;
+    }
+    for (Preload preload : prefs.getPreloads()) {
+      if (preload.getAuthType() != AuthType.NONE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Appends a length-prefixed value, so that no two sets of values produce the same key.
+   */
+  private static void appendKeyPart(StringBuilder key, String value) {
+    if (value == null) {
+      key.append('-');
+    } else {
+      key.append(value.length()).append(':').append(value);
+    }
+  }
 }
@@ -104,12 +104,16 @@ public class ProxyRenderer {
       httpCache.addResponse(request, response);
     }
 
-    if (response.isError()) {
-      throw new RenderingException("Unable to reach remote host. HTTP status " +
-        response.getHttpStatusCode());
-    }
+    try {
+      if (response.isError()) {
+        throw new RenderingException("Unable to reach remote host. HTTP status " +
+          response.getHttpStatusCode());
+      }
 
-    return response.getResponseAsString();
+      return response.getResponseAsString();
+    } finally {
+      response.release();
+    }
   }
 
   /**
@@ -31,6 +31,7 @@ import org.apache.shindig.gadgets.UnsupportedFeatureException;
 import org.apache.shindig.gadgets.UrlGenerator;
 import org.apache.shindig.gadgets.features.FeatureRegistry;
 import org.apache.shindig.gadgets.features.FeatureResource;
+import org.apache.shindig.gadgets.features.JsBundle;
 import org.apache.shindig.gadgets.preload.PreloadException;
 import org.apache.shindig.gadgets.preload.PreloadedData;
 import org.apache.shindig.gadgets.rewrite.GadgetRewriter;
@@ -262,9 +263,26 @@ public class RenderingGadgetRewriter implements GadgetRewriter {
       }
     }
     
+    List<String> allRequested = Lists.newArrayList(gadgetFeatureKeys);
+    allRequested.addAll(extern);
+    String libraryConfig =
+        getLibraryConfig(gadget, featureRegistry.getFeatures(allRequested));
+
+    // The joined JS of all resources that are needed by the gadget to render, minus all those
+    // included through externResources, is shared by every gadget needing the same features.
+    JsBundle bundle = featureRegistry.getJsBundle(context, gadgetFeatureKeys, extern);
+    if (!bundle.hasExternalResources()) {
+      String inlineJs = bundle.getContent() + libraryConfig;
+      if (inlineJs.length() > 0) {
+        Element inlineTag = headTag.getOwnerDocument().createElement("script");
+        headTag.appendChild(inlineTag);
+        inlineTag.appendChild(headTag.getOwnerDocument().createTextNode(inlineJs));
+      }
+      return;
+    }
+
     // Calculate inlineResources as all resources that are needed by the gadget to
     // render, minus all those included through externResources.
-    // TODO: profile and if needed, optimize this a bit.
     List<FeatureResource> inlineResources = Lists.newArrayList(gadgetResources);
     inlineResources.removeAll(externResources);
 
@@ -280,11 +298,6 @@ public class RenderingGadgetRewriter implements GadgetRewriter {
       }
     }
 
-    List<String> allRequested = Lists.newArrayList(gadgetFeatureKeys);
-    allRequested.addAll(extern);
-    String libraryConfig =
-        getLibraryConfig(gadget, featureRegistry.getFeatures(allRequested));
-    
     // Size has a small fudge factor added to it for delimiters and such.
     StringBuilder inlineJs = new StringBuilder(size + libraryConfig.length() + INLINE_JS_BUFFER);
 
@@ -17,6 +17,11 @@
  */
 package org.apache.shindig.gadgets.rewrite;
 
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.gadgets.http.CacheKeyBuilder;
+import org.apache.shindig.gadgets.http.DefaultHttpCache;
+import org.apache.shindig.gadgets.http.HttpCache;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.http.HttpResponseBuilder;
@@ -30,11 +35,21 @@ import com.google.inject.Inject;
 
 /**
  * Basic registry -- just iterates over rewriters and invokes them sequentially.
+ *
+ * When a cache is set, rewritten responses are cached for as long as the responses they were
+ * rewritten from, so that the rewriters run once per fetched response rather than once per
+ * request. Responses that no rewriter changed are returned as they are and never cached.
  */
 public class DefaultRequestRewriterRegistry implements RequestRewriterRegistry {
+  public static final String REWRITTEN_RESPONSES = "rewrittenResponses";
+
   protected final List<RequestRewriter> rewriters;
   protected final GadgetHtmlParser htmlParser;
 
+  private Cache<String, HttpResponse> rewrittenCache;
+  private HttpCache httpCache;
+  private ContentRewriterFeatureFactory featureFactory;
+
   @Inject
   public DefaultRequestRewriterRegistry(List<RequestRewriter> rewriters,
       GadgetHtmlParser htmlParser) {
@@ -45,9 +60,70 @@ public class DefaultRequestRewriterRegistry implements RequestRewriterRegistry {
     this.htmlParser = htmlParser;
   }
 
+  /**
+   * Enables caching of rewritten responses. Entries are keyed by the HTTP cache key of the
+   * request, the rewriting configuration that applies to it and the expiration of the original
+   * response, so a response fetched again is rewritten again.
+   */
+  @Inject(optional = true)
+  public void setRewrittenResponseCache(CacheProvider cacheProvider, HttpCache httpCache,
+      ContentRewriterFeatureFactory featureFactory) {
+    this.rewrittenCache = cacheProvider.createCache(REWRITTEN_RESPONSES, DefaultHttpCache.WEIGHER);
+    this.httpCache = httpCache;
+    this.featureFactory = featureFactory;
+  }
+
   /** {@inheritDoc} */
   public HttpResponse rewriteHttpResponse(HttpRequest req, HttpResponse resp)
       throws RewritingException {
+    String key = createKey(req, resp);
+    if (key == null) {
+      return rewrite(req, resp);
+    }
+
+    HttpResponse rewritten = rewrittenCache.getElement(key);
+    if (rewritten == null) {
+      rewritten = rewrite(req, resp);
+      // Only responses built by the rewriters are cached. Those are always held in memory, while
+      // an unchanged response may be backed by a file that the caller releases once written.
+      long ttl = resp.getCacheTtl();
+      if (rewritten != resp && ttl > 0 && !rewritten.isStrictNoCache()) {
+        rewrittenCache.addElement(key, rewritten, -1, ttl);
+      }
+    }
+    return rewritten;
+  }
+
+  /**
+   * @return The key to cache the rewritten response under, or null if it may not be cached.
+   */
+  private String createKey(HttpRequest req, HttpResponse resp) {
+    if (rewrittenCache == null || req.getIgnoreCache() || resp.isStrictNoCache() ||
+        !("GET".equals(req.getMethod()) || "GET".equals(req.getHeader("X-Method-Override")))) {
+      return null;
+    }
+
+    String httpKey;
+    try {
+      httpKey = httpCache.createKey(req);
+    } catch (IllegalArgumentException e) {
+      // Signed request without a security token; it will fail elsewhere.
+      return null;
+    }
+
+    return new CacheKeyBuilder()
+        .setLegacyParam(0, httpKey)
+        .setParam("f", featureFactory.get(req).getFingerprint())
+        .setParam("g", req.getGadget())
+        .setParam("c", req.getContainer())
+        .setParam("m", req.getRewriteMimeType())
+        .setParam("s", req.isSanitizationRequested())
+        .setParam("e", resp.getCacheExpiration())
+        .setParam("l", resp.getContentLength())
+        .build();
+  }
+
+  private HttpResponse rewrite(HttpRequest req, HttpResponse resp) throws RewritingException {
     MutableContent mc = new MutableContent(htmlParser, resp);
 
     boolean wasRewritten = false;
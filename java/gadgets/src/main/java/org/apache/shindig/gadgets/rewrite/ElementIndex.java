@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Index of the elements of a document by lower-case tag name, each kept in document order, so
+ * that rewriters can find elements without walking the whole tree.
+ *
+ * If the document supports DOM mutation events, the index is kept up to date as nodes are
+ * inserted and removed. Otherwise it is only valid until the document is next modified.
+ */
+class ElementIndex implements EventListener {
+  private static final String NODE_INSERTED = "DOMNodeInserted";
+  private static final String NODE_REMOVED = "DOMNodeRemoved";
+
+  static final Comparator<Node> DOCUMENT_ORDER = new Comparator<Node>() {
+    public int compare(Node a, Node b) {
+      if (a == b) {
+        return 0;
+      }
+      return (a.compareDocumentPosition(b) & Node.DOCUMENT_POSITION_FOLLOWING) != 0 ? -1 : 1;
+    }
+  };
+
+  private final Document document;
+  private final Map<String, List<Element>> elements = Maps.newHashMap();
+  private final boolean tracking;
+
+  /**
+   * Builds the index with a single walk over the document.
+   *
+   * @param track True to follow later changes to the document. Must be false for documents that
+   * are shared, since it registers listeners on the document.
+   */
+  ElementIndex(Document document, boolean track) {
+    this.document = document;
+    elements.putAll(collect(document));
+    if (track && document instanceof EventTarget) {
+      EventTarget target = (EventTarget) document;
+      target.addEventListener(NODE_INSERTED, this, false);
+      target.addEventListener(NODE_REMOVED, this, false);
+      tracking = true;
+    } else {
+      tracking = false;
+    }
+  }
+
+  Document getDocument() {
+    return document;
+  }
+
+  /**
+   * @return True if the index follows changes to the document.
+   */
+  boolean isTracking() {
+    return tracking;
+  }
+
+  /**
+   * @return A new list of the elements with any of the given names, in document order.
+   */
+  List<Element> get(Set<String> lowerCaseNames) {
+    List<Element> result = null;
+    boolean merged = false;
+    for (String name : lowerCaseNames) {
+      List<Element> named = elements.get(name);
+      if (named == null || named.isEmpty()) {
+        continue;
+      }
+      if (result == null) {
+        result = Lists.newArrayList(named);
+      } else {
+        result.addAll(named);
+        merged = true;
+      }
+    }
+    if (result == null) {
+      return Lists.newArrayList();
+    }
+    if (merged) {
+      Collections.sort(result, DOCUMENT_ORDER);
+    }
+    return result;
+  }
+
+  /**
+   * Stops following changes to the document.
+   */
+  void detach() {
+    if (tracking) {
+      EventTarget target = (EventTarget) document;
+      target.removeEventListener(NODE_INSERTED, this, false);
+      target.removeEventListener(NODE_REMOVED, this, false);
+    }
+  }
+
+  public void handleEvent(Event evt) {
+    Node target = (Node) evt.getTarget();
+    if (NODE_INSERTED.equals(evt.getType())) {
+      // The inserted elements are contiguous in document order, so each group goes in one place.
+      for (Map.Entry<String, List<Element>> entry : collect(target).entrySet()) {
+        List<Element> named = elements.get(entry.getKey());
+        if (named == null) {
+          elements.put(entry.getKey(), entry.getValue());
+        } else {
+          int index = Collections.binarySearch(named, entry.getValue().get(0), DOCUMENT_ORDER);
+          named.addAll(index < 0 ? -index - 1 : index, entry.getValue());
+        }
+      }
+    } else if (NODE_REMOVED.equals(evt.getType())) {
+      for (Map.Entry<String, List<Element>> entry : collect(target).entrySet()) {
+        List<Element> named = elements.get(entry.getKey());
+        if (named != null) {
+          named.removeAll(Sets.newHashSet(entry.getValue()));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The elements at and below the given node by lower-case name, in document order.
+   */
+  private static Map<String, List<Element>> collect(Node root) {
+    Map<String, List<Element>> found = Maps.newHashMap();
+    Node node = root;
+    while (node != null) {
+      if (node.getNodeType() == Node.ELEMENT_NODE) {
+        String name = node.getNodeName().toLowerCase();
+        List<Element> named = found.get(name);
+        if (named == null) {
+          named = Lists.newArrayList();
+          found.put(name, named);
+        }
+        named.add((Element) node);
+      }
+      Node next = node.getFirstChild();
+      while (next == null && node != root) {
+        next = node.getNextSibling();
+        if (next == null) {
+          node = node.getParentNode();
+        }
+      }
+      node = next;
+    }
+    return found;
+  }
+}
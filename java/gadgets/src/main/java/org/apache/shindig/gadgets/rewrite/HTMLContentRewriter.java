@@ -27,6 +27,9 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -77,7 +80,12 @@ public class HTMLContentRewriter implements GadgetRewriter, RequestRewriter {
       MutableContent content) {
     if (RewriterUtils.isHtml(request, original)) {
       ContentRewriterFeature feature = rewriterFeatureFactory.get(request);
-      return rewriteImpl(feature, request.getGadget(), request.getUri(), content,
+      if (content.hasDocument()) {
+        return rewriteImpl(feature, request.getGadget(), request.getUri(), content,
+            request.getContainer(), false, request.getIgnoreCache());
+      }
+      // Nothing else has needed a parse tree, so rewrite the markup as a stream.
+      return rewriteStreaming(feature, request.getGadget(), request.getUri(), content,
           request.getContainer(), false, request.getIgnoreCache());
     }
     
@@ -106,13 +114,17 @@ public class HTMLContentRewriter implements GadgetRewriter, RequestRewriter {
   boolean rewriteImpl(ContentRewriterFeature feature, Uri gadgetUri,
       Uri contentBase, MutableContent content, String container, boolean debug,
       boolean ignoreCache) {
-    if (!feature.isRewriteEnabled() || content.getDocument() == null) {
+    if (!feature.isRewriteEnabled() || content.getReadOnlyDocument() == null) {
+      return false;
+    }
+
+    // Only copy a shared parse tree if there is something to rewrite in it.
+    if (!content.hasWritableDocument() && content.getElementsByTagName(TAGS).isEmpty()) {
       return false;
     }
 
     // Get ALL interesting tags
-    List<Element> tagList =
-        DomUtil.getElementsByTagNameCaseInsensitive(content.getDocument(), TAGS);
+    List<Element> tagList = content.getWritableElementsByTagName(TAGS);
 
     Element head = (Element)DomUtil.getFirstNamedChildNode(
         content.getDocument().getDocumentElement(), "head");
@@ -136,6 +148,176 @@ public class HTMLContentRewriter implements GadgetRewriter, RequestRewriter {
     return mutated;
   }
 
+  /**
+   * Rewrites the content in a single pass over the markup, without parsing it into a tree. Links
+   * are proxied and style content rewritten where they are, and adjacent script and stylesheet
+   * references are concatenated. Unlike {@link #rewriteImpl}, styles are not moved into the head,
+   * and only references that are adjacent, separated by nothing but whitespace, are concatenated.
+   */
+  boolean rewriteStreaming(ContentRewriterFeature feature, Uri gadgetUri,
+      Uri contentBase, MutableContent content, String container, boolean debug,
+      boolean ignoreCache) {
+    if (!feature.isRewriteEnabled()) {
+      return false;
+    }
+
+    List<StreamingHtmlRewriter.TagHandler> handlers = Lists.newArrayList();
+    LinkRewriter linkRewriter = proxyingLinkRewriterFactory.create(gadgetUri,
+        feature, container, debug, ignoreCache);
+    ConcatLinkRewriter concatRewriter = concatLinkRewriterFactory.create(gadgetUri,
+        feature, container, debug, ignoreCache);
+    if (feature.getIncludedTags().contains("style")) {
+      handlers.add(new StyleHandler(linkRewriter, contentBase));
+      handlers.add(new ConcatHandler(feature, concatRewriter, contentBase, "link",
+          "text/css", "href"));
+    }
+    if (feature.getIncludedTags().contains("script")) {
+      handlers.add(new ConcatHandler(feature, concatRewriter, contentBase, "script",
+          JS_MIME_TYPE, "src"));
+    }
+    Set<String> tagNames = Sets.intersection(LINKING_TAG_ATTRS.keySet(),
+        feature.getIncludedTags());
+    if (!tagNames.isEmpty()) {
+      handlers.add(new ProxyHandler(ImmutableSet.copyOf(tagNames), linkRewriter, contentBase));
+    }
+    if (handlers.isEmpty()) {
+      return false;
+    }
+
+    String html = content.getContent();
+    StringWriter out = new StringWriter((html.length() * 11) / 10);
+    try {
+      if (!new StreamingHtmlRewriter(handlers).rewrite(new StringReader(html), out)) {
+        return false;
+      }
+    } catch (IOException e) {
+      // Not thrown by string readers and writers.
+      throw new RuntimeException(e);
+    }
+    content.setContent(out.toString());
+    return true;
+  }
+
+  /**
+   * Proxies the referenced content of images and embeds.
+   */
+  private static class ProxyHandler extends StreamingHtmlRewriter.TagHandler {
+    private final Set<String> tagNames;
+    private final LinkRewriter linkRewriter;
+    private final Uri contentBase;
+
+    ProxyHandler(Set<String> tagNames, LinkRewriter linkRewriter, Uri contentBase) {
+      this.tagNames = tagNames;
+      this.linkRewriter = linkRewriter;
+      this.contentBase = contentBase;
+    }
+
+    @Override
+    public Set<String> getTagNames() {
+      return tagNames;
+    }
+
+    @Override
+    public void startTag(StreamingHtmlRewriter.Tag tag) {
+      for (String attr : LINKING_TAG_ATTRS.get(tag.getName())) {
+        if (tag.hasAttribute(attr)) {
+          tag.setAttribute(attr, linkRewriter.rewrite(tag.getAttribute(attr), contentBase));
+        }
+      }
+    }
+  }
+
+  /**
+   * Rewrites links in the content of style elements.
+   */
+  private class StyleHandler extends StreamingHtmlRewriter.TagHandler {
+    private final LinkRewriter linkRewriter;
+    private final Uri contentBase;
+
+    StyleHandler(LinkRewriter linkRewriter, Uri contentBase) {
+      this.linkRewriter = linkRewriter;
+      this.contentBase = contentBase;
+    }
+
+    @Override
+    public Set<String> getTagNames() {
+      return ImmutableSet.of("style");
+    }
+
+    @Override
+    public String rewriteContent(StreamingHtmlRewriter.Tag tag, String content) {
+      StringWriter out = new StringWriter((content.length() * 11) / 10);
+      cssRewriter.rewrite(new StringReader(content), contentBase, linkRewriter, out, false);
+      return out.toString();
+    }
+  }
+
+  /**
+   * Concatenates adjacent script or stylesheet references.
+   */
+  private static class ConcatHandler extends StreamingHtmlRewriter.TagHandler {
+    private final ContentRewriterFeature feature;
+    private final ConcatLinkRewriter concatRewriter;
+    private final Uri contentBase;
+    private final String tagName;
+    private final String mimeType;
+    private final String attr;
+
+    ConcatHandler(ContentRewriterFeature feature, ConcatLinkRewriter concatRewriter,
+        Uri contentBase, String tagName, String mimeType, String attr) {
+      this.feature = feature;
+      this.concatRewriter = concatRewriter;
+      this.contentBase = contentBase;
+      this.tagName = tagName;
+      this.mimeType = mimeType;
+      this.attr = attr;
+    }
+
+    @Override
+    public Set<String> getTagNames() {
+      return ImmutableSet.of(tagName);
+    }
+
+    @Override
+    public void startTag(StreamingHtmlRewriter.Tag tag) {
+      if (!tag.hasAttribute(attr) || !feature.shouldRewriteURL(tag.getAttribute(attr))) {
+        return;
+      }
+      if (tagName.equals("script")) {
+        String type = tag.getAttribute("type");
+        if (type.length() == 0 || type.equalsIgnoreCase(JS_MIME_TYPE)) {
+          tag.setGroup(mimeType);
+        }
+      } else if ("stylesheet".equalsIgnoreCase(tag.getAttribute("rel")) ||
+          tag.getAttribute("type").toLowerCase().contains("css")) {
+        tag.setGroup(mimeType);
+      }
+    }
+
+    @Override
+    public void concatenate(List<StreamingHtmlRewriter.Tag> tags) {
+      // Eliminate duplicates while maintaining order
+      LinkedHashSet<Uri> nodeRefList = Sets.newLinkedHashSet();
+      for (StreamingHtmlRewriter.Tag tag : tags) {
+        try {
+          nodeRefList.add(contentBase.resolve(Uri.parse(tag.getAttribute(attr))));
+        } catch (IllegalArgumentException e) {
+          // Same behavior as concatenateTags
+          throw new RuntimeException(e);
+        }
+      }
+
+      List<Uri> concatenated = concatRewriter.rewrite(mimeType, nodeRefList);
+      for (int i = 0; i < tags.size(); i++) {
+        if (i < concatenated.size()) {
+          tags.get(i).setAttribute(attr, concatenated.get(i).toString());
+        } else {
+          tags.get(i).remove();
+        }
+      }
+    }
+  }
+
   protected boolean rewriteStyleTags(Element head, List<Element> elementList,
       ContentRewriterFeature feature, Uri gadgetUri, Uri contentBase, String container,
       boolean debug, boolean ignoreCache) {
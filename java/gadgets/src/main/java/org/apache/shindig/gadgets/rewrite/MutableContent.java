@@ -22,9 +22,14 @@ import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.parse.GadgetHtmlParser;
 import org.apache.shindig.gadgets.parse.HtmlSerialization;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
@@ -35,6 +40,10 @@ public class MutableContent {
   private String content;
   private HttpResponse contentSource;
   private Document document;
+  // A parsed document that may be shared through the parser's cache, used until a writable
+  // document is needed.
+  private Document readOnlyDocument;
+  private ElementIndex elementIndex;
   private final GadgetHtmlParser contentParser;
   private final Map<String, Object> pipelinedData;
 
@@ -100,7 +109,9 @@ public class MutableContent {
     if (content == null || !content.equals(newContent)) {
       content = newContent;
       document = null;
+      readOnlyDocument = null;
       contentSource = null;
+      dropElementIndex();
     }
   }
 
@@ -113,6 +124,9 @@ public class MutableContent {
     if (document != null) {
       content = null;
       contentSource = null;
+      if (elementIndex != null && !elementIndex.isTracking()) {
+        dropElementIndex();
+      }
     }
   }
   
@@ -124,30 +138,120 @@ public class MutableContent {
    * this method must be called again. However, this practice is highly
    * discouraged, as parsing a tree from String is a costly operation and should
    * be done at most once per rewrite.
+   *
+   * If the parse tree came from the parser's cache, it is copied the first time this is called.
+   * Rewriters that only inspect the content should use {@link #getReadOnlyDocument} instead.
    */
   public Document getDocument() {
     // TODO - Consider actually imposing one parse limit on rewriter pipeline
     if (document != null) {
       return document;
     }
-    try {
-      document = contentParser.parseDom(getContent());
-      document.setUserData(MUTABLE_CONTENT_LISTENER, this, null);
-    } catch (GadgetException e) {
-      // TODO: emit info message
+    Document source = getReadOnlyDocument();
+    if (source == null) {
       return null;
     }
+    document = contentParser.copyForWrite(source);
+    readOnlyDocument = null;
+    dropElementIndex();
+    document.setUserData(MUTABLE_CONTENT_LISTENER, this, null);
     return document;
   }
 
+  /**
+   * Retrieves the object contents in parsed form without copying a tree shared through the
+   * parser's cache. The result must not be modified; see
+   * {@link GadgetHtmlParser#parseDomReadOnly} for how it may be read. Once
+   * {@link #getDocument} has been called, this returns the same writable document.
+   */
+  public Document getReadOnlyDocument() {
+    if (document != null) {
+      return document;
+    }
+    if (readOnlyDocument == null) {
+      try {
+        readOnlyDocument = contentParser.parseDomReadOnly(getContent());
+      } catch (GadgetException e) {
+        // TODO: emit info message
+        return null;
+      }
+    }
+    return readOnlyDocument;
+  }
+
   /**
    * True if current state has a parsed document. Allows rewriters to switch mode based on
    * which content is most readily available
    */
   public boolean hasDocument() {
+    return (document != null || readOnlyDocument != null);
+  }
+
+  /**
+   * True if {@link #getDocument} has already produced a document that may be modified, so
+   * calling it again costs nothing.
+   */
+  public boolean hasWritableDocument() {
     return (document != null);
   }
   
+  /**
+   * Finds elements by tag name without walking the document. The first call indexes every
+   * element in one walk; the index then follows elements as they are inserted and removed, if
+   * the DOM implementation supports mutation events, and is rebuilt after
+   * {@link #documentChanged} otherwise.
+   *
+   * The elements come from the document {@link #getReadOnlyDocument} returns, so they must not
+   * be modified; use {@link #getWritableElementsByTagName} for elements that will be.
+   *
+   * @param lowerCaseNames Tag names, in lower case.
+   * @return A new list of the matching elements in document order, empty if the content could
+   *     not be parsed.
+   */
+  public List<Element> getElementsByTagName(Set<String> lowerCaseNames) {
+    Document doc = getReadOnlyDocument();
+    if (doc == null) {
+      return Lists.newArrayList();
+    }
+    if (elementIndex == null || elementIndex.getDocument() != doc) {
+      dropElementIndex();
+      // Only track the writable document; a shared document must not be given listeners.
+      elementIndex = new ElementIndex(doc, doc == document);
+    }
+    return elementIndex.get(lowerCaseNames);
+  }
+
+  /**
+   * @see #getElementsByTagName(Set)
+   */
+  public List<Element> getElementsByTagName(String lowerCaseName) {
+    return getElementsByTagName(ImmutableSet.of(lowerCaseName));
+  }
+
+  /**
+   * Like {@link #getElementsByTagName(Set)}, but the elements come from the writable document
+   * {@link #getDocument} returns, copying a shared parse tree first if necessary, so they may be
+   * modified.
+   */
+  public List<Element> getWritableElementsByTagName(Set<String> lowerCaseNames) {
+    getDocument();
+    return getElementsByTagName(lowerCaseNames);
+  }
+
+  /**
+   * @see #getWritableElementsByTagName(Set)
+   */
+  public List<Element> getWritableElementsByTagName(String lowerCaseName) {
+    return getWritableElementsByTagName(ImmutableSet.of(lowerCaseName));
+  }
+
+  private void dropElementIndex() {
+    if (elementIndex != null) {
+      elementIndex.detach();
+      elementIndex = null;
+    }
+  }
+
   public void addPipelinedData(String key, Object value) {
     pipelinedData.put(key, value);
   }
@@ -26,14 +26,15 @@ import org.apache.shindig.gadgets.preload.PipelineExecutor;
 import org.apache.shindig.gadgets.spec.PipelinedData;
 import org.apache.shindig.gadgets.spec.SpecParserException;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +47,9 @@ public class PipelineDataGadgetRewriter implements GadgetRewriter {
 
   private static final Logger logger = Logger.getLogger(
       PipelineDataGadgetRewriter.class.getName());
+
+  private static final Set<String> OSML_DATA_TAGS =
+      ImmutableSet.of(GadgetHtmlParser.OSML_DATA_TAG.toLowerCase());
   
   private final PipelineExecutor executor;
 
@@ -60,8 +64,14 @@ public class PipelineDataGadgetRewriter implements GadgetRewriter {
       return;
     }
     
+    // Only copy a shared parse tree if it holds pipelined data.
+    if (!content.hasWritableDocument() &&
+        content.getElementsByTagName(OSML_DATA_TAGS).isEmpty()) {
+      return;
+    }
+
     Document doc = content.getDocument();
-    Map<PipelinedData, Node> pipelineNodes = parsePipelinedData(gadget, doc);
+    Map<PipelinedData, Node> pipelineNodes = parsePipelinedData(gadget, content);
     
     if (pipelineNodes.isEmpty()) {
       return;
@@ -111,15 +121,13 @@ public class PipelineDataGadgetRewriter implements GadgetRewriter {
   }
 
   /**
-   * Parses pipelined data out of a Document.
+   * Parses pipelined data out of the writable document of the content.
    */
-  Map<PipelinedData, Node> parsePipelinedData(Gadget gadget, Document doc) {
-    NodeList dataTags = doc.getElementsByTagName(GadgetHtmlParser.OSML_DATA_TAG);
+  Map<PipelinedData, Node> parsePipelinedData(Gadget gadget, MutableContent content) {
     Map<PipelinedData, Node> pipelineNodes = Maps.newHashMap();
-    for (int i = 0; i < dataTags.getLength(); i++) {
-      Node n = dataTags.item(i);
+    for (Element n : content.getWritableElementsByTagName(OSML_DATA_TAGS)) {
       try {
-        PipelinedData pipelineData = new PipelinedData((Element) n, gadget.getSpec().getUrl());
+        PipelinedData pipelineData = new PipelinedData(n, gadget.getSpec().getUrl());
         pipelineNodes.put(pipelineData, n);
       } catch (SpecParserException e) {
         // Leave the element to the client
@@ -0,0 +1,533 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Rewrites HTML as it is read, without building a parse tree. Markup is tokenized as a stream,
+ * start tags of interest are passed to a chain of {@link TagHandler}s, and everything is written
+ * to the output as soon as it has been handled. Untouched markup is copied exactly as it was.
+ *
+ * Memory use is bounded by the largest single tag, script or style element, rather than by the
+ * size of the document. The only tags held back are runs of adjacent tags that a handler has
+ * asked to concatenate, such as consecutive script references.
+ *
+ * Rewriters that need to see or restructure the whole document should use the parse tree in
+ * {@link MutableContent} instead.
+ */
+public class StreamingHtmlRewriter {
+  // Elements whose content is text that runs until their end tag, whatever it looks like.
+  private static final Set<String> RAW_TEXT_TAGS =
+      ImmutableSet.of("script", "style", "textarea", "title", "xmp");
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Map<String, List<TagHandler>> handlers = Maps.newHashMap();
+
+  public StreamingHtmlRewriter(List<? extends TagHandler> tagHandlers) {
+    for (TagHandler handler : tagHandlers) {
+      for (String name : handler.getTagNames()) {
+        List<TagHandler> forName = handlers.get(name);
+        if (forName == null) {
+          forName = Lists.newArrayList();
+          handlers.put(name, forName);
+        }
+        forName.add(handler);
+      }
+    }
+  }
+
+  /**
+   * Rewrites the HTML read from in, writing the result to out.
+   *
+   * @return True if anything was changed.
+   */
+  public boolean rewrite(Reader in, Writer out) throws IOException {
+    return new Pass(in, out).run();
+  }
+
+  /**
+   * Receives the start tags of the elements it is registered for, in document order.
+   */
+  public abstract static class TagHandler {
+    /**
+     * @return Lower case names of the tags to handle.
+     */
+    public abstract Set<String> getTagNames();
+
+    /**
+     * Called for each start tag with one of the handled names. The handler may change its
+     * attributes, remove it, or put it in a group to be concatenated with adjacent tags.
+     */
+    public void startTag(Tag tag) {}
+
+    /**
+     * Called with the content of each handled script, style or other element whose content is
+     * not markup.
+     *
+     * @return The content to write, which is the given content if it is unchanged.
+     */
+    public String rewriteContent(Tag tag, String content) {
+      return content;
+    }
+
+    /**
+     * Called with each run of adjacent tags, separated only by whitespace, that this handler put
+     * in the same group. Tags are concatenated by changing some and removing the others.
+     */
+    public void concatenate(List<Tag> tags) {}
+  }
+
+  /**
+   * A start tag, with the content and end tag of its element if it is a script, style or other
+   * element whose content is not markup.
+   */
+  public static class Tag {
+    private final String name;
+    private final String raw;
+    private final List<String> attributeNames = Lists.newArrayList();
+    // Values with character references decoded, null for attributes without a value.
+    private final List<String> attributeValues = Lists.newArrayList();
+    private boolean selfClosing;
+    private boolean modified;
+    private boolean removed;
+    private String group;
+    private TagHandler groupHandler;
+    private String content;
+    private String endTag;
+
+    Tag(String raw) {
+      this.raw = raw;
+      // Leave off the closing '>', which is missing if the input ended inside the tag.
+      int length = raw.endsWith(">") ? raw.length() - 1 : raw.length();
+      int i = 1;
+      while (i < length && !isTagNameEnd(raw.charAt(i))) {
+        ++i;
+      }
+      name = raw.substring(1, i).toLowerCase();
+
+      while (i < length) {
+        char c = raw.charAt(i);
+        if (Character.isWhitespace(c)) {
+          ++i;
+        } else if (c == '/') {
+          selfClosing = i == length - 1;
+          ++i;
+        } else {
+          int start = i;
+          while (i < length && !isTagNameEnd(raw.charAt(i)) && raw.charAt(i) != '=') {
+            ++i;
+          }
+          String attributeName = raw.substring(start, i);
+          if (attributeName.length() == 0) {
+            // A stray '=', skip it.
+            ++i;
+            continue;
+          }
+          int afterName = i;
+          while (i < length && Character.isWhitespace(raw.charAt(i))) {
+            ++i;
+          }
+          String value = null;
+          if (i < length && raw.charAt(i) == '=') {
+            ++i;
+            while (i < length && Character.isWhitespace(raw.charAt(i))) {
+              ++i;
+            }
+            if (i < length && (raw.charAt(i) == '"' || raw.charAt(i) == '\'')) {
+              int end = raw.indexOf(raw.charAt(i), i + 1);
+              if (end == -1) {
+                end = length;
+              }
+              value = raw.substring(i + 1, end);
+              i = Math.min(end + 1, length);
+            } else {
+              start = i;
+              while (i < length && !Character.isWhitespace(raw.charAt(i))) {
+                ++i;
+              }
+              value = raw.substring(start, i);
+            }
+            value = StringEscapeUtils.unescapeHtml(value);
+          } else {
+            i = afterName;
+          }
+          attributeNames.add(attributeName);
+          attributeValues.add(value);
+        }
+      }
+    }
+
+    private static boolean isTagNameEnd(char c) {
+      return Character.isWhitespace(c) || c == '/' || c == '>';
+    }
+
+    /**
+     * @return The lower case tag name.
+     */
+    public String getName() {
+      return name;
+    }
+
+    private int indexOf(String attributeName) {
+      for (int i = 0; i < attributeNames.size(); ++i) {
+        if (attributeNames.get(i).equalsIgnoreCase(attributeName)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    public boolean hasAttribute(String attributeName) {
+      return indexOf(attributeName) != -1;
+    }
+
+    /**
+     * @return The decoded value of the attribute, or an empty string if it has none, as with
+     * Element.getAttribute.
+     */
+    public String getAttribute(String attributeName) {
+      int index = indexOf(attributeName);
+      if (index == -1 || attributeValues.get(index) == null) {
+        return "";
+      }
+      return attributeValues.get(index);
+    }
+
+    public void setAttribute(String attributeName, String value) {
+      int index = indexOf(attributeName);
+      if (index == -1) {
+        attributeNames.add(attributeName);
+        attributeValues.add(value);
+      } else {
+        attributeValues.set(index, value);
+      }
+      modified = true;
+    }
+
+    /**
+     * Removes the tag, along with its content and end tag.
+     */
+    public void remove() {
+      removed = true;
+    }
+
+    /**
+     * Puts the tag in a group, so that it is passed to the handler's
+     * {@link TagHandler#concatenate} along with adjacent tags in the same group.
+     */
+    public void setGroup(String group) {
+      this.group = group;
+    }
+
+    public String getContent() {
+      return content;
+    }
+
+    /**
+     * @return True if the tag has been changed or removed.
+     */
+    boolean write(Writer out) throws IOException {
+      if (removed) {
+        return true;
+      }
+      if (modified) {
+        out.write('<');
+        out.write(name);
+        for (int i = 0; i < attributeNames.size(); ++i) {
+          out.write(' ');
+          out.write(attributeNames.get(i));
+          String value = attributeValues.get(i);
+          if (value != null) {
+            out.write("=\"");
+            out.write(StringUtils.replace(StringUtils.replace(value, "&", "&amp;"),
+                "\"", "&quot;"));
+            out.write('"');
+          }
+        }
+        out.write(selfClosing ? "/>" : ">");
+      } else {
+        out.write(raw);
+      }
+      if (content != null) {
+        out.write(content);
+      }
+      if (endTag != null) {
+        out.write(endTag);
+      }
+      return modified;
+    }
+  }
+
+  /**
+   * The state of a single rewrite.
+   */
+  private class Pass {
+    private final Reader in;
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private boolean mutated;
+
+    // Tags waiting to be concatenated, with the whitespace between them.
+    private final List<Object> run = Lists.newArrayList();
+    private Tag runTag;
+
+    Pass(Reader in, Writer out) {
+      this.in = in;
+      this.out = out;
+    }
+
+    boolean run() throws IOException {
+      while (fill(1)) {
+        if (buffer[pos] == '<') {
+          int next = peek(1);
+          if (isLetter(next)) {
+            startTag();
+          } else if (next == '/' && isLetter(peek(2))) {
+            flushRun();
+            copyThrough(">");
+          } else if (next == '!' && peek(2) == '-' && peek(3) == '-') {
+            flushRun();
+            copyThrough("-->");
+          } else if (next == '!' || next == '?') {
+            flushRun();
+            copyThrough(">");
+          } else {
+            text(1);
+          }
+        } else {
+          text(0);
+        }
+      }
+      flushRun();
+      return mutated;
+    }
+
+    /**
+     * Ensures that at least count characters are buffered from pos.
+     *
+     * @return False if the input ends first.
+     */
+    private boolean fill(int count) throws IOException {
+      if (limit - pos >= count) {
+        return true;
+      }
+      if (pos > 0) {
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+      }
+      while (limit < count) {
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+          return false;
+        }
+        limit += read;
+      }
+      return true;
+    }
+
+    private int peek(int offset) throws IOException {
+      return fill(offset + 1) ? buffer[pos + offset] : -1;
+    }
+
+    private boolean isLetter(int c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Writes text up to the next '<', starting after skip characters.
+     */
+    private void text(int skip) throws IOException {
+      int end = pos + skip;
+      while (end < limit && buffer[end] != '<') {
+        ++end;
+      }
+      if (!run.isEmpty()) {
+        String text = new String(buffer, pos, end - pos);
+        if (StringUtils.isWhitespace(text)) {
+          run.add(text);
+          pos = end;
+          return;
+        }
+        flushRun();
+      }
+      out.write(buffer, pos, end - pos);
+      pos = end;
+    }
+
+    /**
+     * Writes everything up to and including the terminator, or to the end of the input.
+     */
+    private void copyThrough(String terminator) throws IOException {
+      char first = terminator.charAt(0);
+      while (fill(1)) {
+        int end = pos;
+        while (end < limit && buffer[end] != first) {
+          ++end;
+        }
+        out.write(buffer, pos, end - pos);
+        pos = end;
+        if (pos == limit) {
+          continue;
+        }
+        if (matches(terminator)) {
+          out.write(terminator);
+          pos += terminator.length();
+          return;
+        }
+        out.write(first);
+        ++pos;
+      }
+    }
+
+    private boolean matches(String s) throws IOException {
+      if (!fill(s.length())) {
+        return false;
+      }
+      for (int i = 0; i < s.length(); ++i) {
+        if (Character.toLowerCase(buffer[pos + i]) != s.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Reads a tag through its closing '>', ignoring any inside quoted attribute values.
+     */
+    private String readTag() throws IOException {
+      StringBuilder tag = new StringBuilder();
+      char quote = 0;
+      char last = 0;
+      while (fill(1)) {
+        char c = buffer[pos++];
+        tag.append(c);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          }
+        } else if (c == '>') {
+          break;
+        } else if ((c == '"' || c == '\'') && last == '=') {
+          quote = c;
+        }
+        if (!Character.isWhitespace(c)) {
+          last = c;
+        }
+      }
+      return tag.toString();
+    }
+
+    private void startTag() throws IOException {
+      Tag tag = new Tag(readTag());
+      List<TagHandler> tagHandlers = handlers.get(tag.name);
+      if (tagHandlers == null) {
+        tagHandlers = Collections.emptyList();
+      }
+      for (TagHandler handler : tagHandlers) {
+        String group = tag.group;
+        handler.startTag(tag);
+        if (tag.group != group) {
+          tag.groupHandler = handler;
+        }
+      }
+
+      if (RAW_TEXT_TAGS.contains(tag.name) && !tag.selfClosing) {
+        readRawText(tag);
+        for (TagHandler handler : tagHandlers) {
+          String content = handler.rewriteContent(tag, tag.content);
+          if (!content.equals(tag.content)) {
+            tag.content = content;
+            mutated = true;
+          }
+        }
+      }
+
+      if (tag.group != null && StringUtils.isBlank(tag.content)) {
+        if (runTag != null &&
+            (!tag.group.equals(runTag.group) || tag.groupHandler != runTag.groupHandler)) {
+          flushRun();
+        }
+        runTag = tag;
+        run.add(tag);
+      } else {
+        flushRun();
+        mutated |= tag.write(out);
+      }
+    }
+
+    /**
+     * Reads the content of an element whose content is not markup, and its end tag.
+     */
+    private void readRawText(Tag tag) throws IOException {
+      StringBuilder content = new StringBuilder();
+      String end = "</" + tag.name;
+      while (fill(1)) {
+        if (buffer[pos] == '<' && matches(end)) {
+          int after = peek(end.length());
+          if (after == -1 || after == '>' || after == '/' || Character.isWhitespace(after)) {
+            tag.endTag = readTag();
+            break;
+          }
+        }
+        content.append(buffer[pos++]);
+      }
+      tag.content = content.toString();
+    }
+
+    private void flushRun() throws IOException {
+      if (run.isEmpty()) {
+        return;
+      }
+      List<Tag> tags = Lists.newArrayList();
+      for (Object item : run) {
+        if (item instanceof Tag) {
+          tags.add((Tag) item);
+        }
+      }
+      runTag.groupHandler.concatenate(tags);
+      for (Object item : run) {
+        if (item instanceof Tag) {
+          mutated |= ((Tag) item).write(out);
+        } else {
+          out.write((String) item);
+        }
+      }
+      run.clear();
+      runTag = null;
+    }
+  }
+}
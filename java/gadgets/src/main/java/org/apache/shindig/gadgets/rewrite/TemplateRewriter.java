@@ -52,7 +52,6 @@ import com.google.inject.Provider;
 import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import java.io.IOException;
 import java.util.Collection;
@@ -149,13 +148,8 @@ public class TemplateRewriter implements GadgetRewriter {
     registries.add(osmlLibrary.getTagRegistry());
     libraries.add(osmlLibrary);
 
-    NodeList templateElements = content.getDocument()
-        .getElementsByTagName(GadgetHtmlParser.OSML_TEMPLATE_TAG);
-    ImmutableList.Builder<Element> builder = ImmutableList.builder();
-    for (int i = 0; i < templateElements.getLength(); i++) {
-      builder.add((Element) templateElements.item(i));
-    }
-    List<Element> templates = builder.build();
+    List<Element> templates = ImmutableList.copyOf(content.getWritableElementsByTagName(
+        GadgetHtmlParser.OSML_TEMPLATE_TAG.toLowerCase()));
 
     // User-defined custom tags - Priority 3
     registries.add(registerCustomTags(templates));
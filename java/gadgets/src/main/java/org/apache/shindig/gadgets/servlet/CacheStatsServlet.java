@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.servlet;
+
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.CacheStats;
+import org.apache.shindig.common.servlet.HttpUtil;
+import org.apache.shindig.common.servlet.InjectedServlet;
+
+import com.google.inject.Inject;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reports the size and activity of every named cache as JSON, for tuning cache capacities.
+ *
+ * The response is an object keyed by cache name, for example:
+ *
+ * {"httpResponses": {"size": 812, "capacity": 10000, "hitCount": 52310, "missCount": 4127,
+ *                    "evictionCount": 0, "hitRate": 0.927}}
+ *
+ * The servlet is declared in the sample web.xml files but not mapped to a URL, since the cache
+ * names and sizes describe the server's internals. To use it, uncomment the mapping for
+ * /gadgets/admin/caches and restrict who can reach it, for example with a security-constraint.
+ */
+public class CacheStatsServlet extends InjectedServlet {
+  private CacheProvider cacheProvider;
+
+  @Inject
+  public void setCacheProvider(CacheProvider cacheProvider) {
+    this.cacheProvider = cacheProvider;
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    JSONObject result = new JSONObject();
+    try {
+      for (Map.Entry<String, Cache<?, ?>> entry : cacheProvider.getCaches().entrySet()) {
+        result.put(entry.getKey(), toJson(entry.getValue()));
+      }
+    } catch (JSONException e) {
+      // Only thrown for non-finite numbers, which the rates never are.
+      throw new IllegalStateException(e);
+    }
+    HttpUtil.setCachingHeaders(response, 0);
+    response.setContentType("application/json; charset=UTF-8");
+    response.getWriter().write(result.toString());
+  }
+
+  private static JSONObject toJson(Cache<?, ?> cache) throws JSONException {
+    CacheStats stats = cache.getStats();
+    return new JSONObject()
+        .put("size", cache.getSize())
+        .put("capacity", cache.getCapacity())
+        .put("hitCount", stats.getHitCount())
+        .put("missCount", stats.getMissCount())
+        .put("evictionCount", stats.getEvictionCount())
+        .put("hitRate", stats.getHitRate());
+  }
+}
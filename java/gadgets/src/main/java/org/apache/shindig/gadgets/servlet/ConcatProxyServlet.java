@@ -18,11 +18,16 @@
 
 package org.apache.shindig.gadgets.servlet;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import org.apache.shindig.common.servlet.HttpUtil;
 import org.apache.shindig.common.servlet.InjectedServlet;
 import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseFuture;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
@@ -32,6 +37,7 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,13 +52,27 @@ public class ConcatProxyServlet extends InjectedServlet {
   private static final Logger logger
       = Logger.getLogger(ConcatProxyServlet.class.getName());
 
+  private static final int DEFAULT_MAX_PARTS_IN_FLIGHT = 4;
+
   private transient ProxyHandler proxyHandler;
+  private int maxPartsInFlight = DEFAULT_MAX_PARTS_IN_FLIGHT;
 
   @Inject
   public void setProxyHandler(ProxyHandler proxyHandler) {
     this.proxyHandler = proxyHandler;
   }
 
+  /**
+   * The number of parts of one request that are fetched at the same time.
+   */
+  @Inject(optional = true)
+  public void setMaxPartsInFlight(
+      @Named("shindig.concat.max-parts-in-flight") int maxPartsInFlight) {
+    Preconditions.checkArgument(maxPartsInFlight > 0,
+        "max-parts-in-flight must be greater than 0");
+    this.maxPartsInFlight = maxPartsInFlight;
+  }
+
   @SuppressWarnings("boxing")
   @Override
   protected void doGet(HttpServletRequest request, HttpServletResponse response)
@@ -77,35 +97,77 @@ public class ConcatProxyServlet extends InjectedServlet {
     }
     
     response.setHeader("Content-Disposition", "attachment;filename=p.txt");
+
+    List<RequestWrapper> parts = Lists.newArrayList();
     for (int i = 1; i < Integer.MAX_VALUE; i++) {
       String url = request.getParameter(Integer.toString(i));
       if (url == null) {
         break;
       }
-      try {
-        response.getOutputStream().println("/* ---- Start " + url + " ---- */");
-
-        ResponseWrapper wrapper = new ResponseWrapper(response);
-        proxyHandler.doFetch(new RequestWrapper(request, url), wrapper);
+      parts.add(new RequestWrapper(request, url));
+    }
 
-        if (wrapper.getStatus() != HttpServletResponse.SC_OK) {
-          response.getOutputStream().println(
-              formatHttpError(wrapper.getStatus(), wrapper.getErrorMessage()));
+    // Fetch a few parts ahead of the one being written so that origin round trips overlap, without
+    // starting every part of a large request at once. Results are written out in order.
+    List<ProxyHandler.PendingFetch> pending = Lists.newArrayList();
+    int written = 0;
+    try {
+      for (int i = 0; i < parts.size(); i++) {
+        while (pending.size() < parts.size() && pending.size() < i + maxPartsInFlight) {
+          pending.add(proxyHandler.fetchAsync(parts.get(pending.size())));
         }
 
-        response.getOutputStream().println("/* ---- End " + url + " ---- */");
-      } catch (GadgetException ge) {
-        if (ge.getCode() != GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT) {
-          outputError(ge, url, response);
-          return;
-        } else {
-          response.getOutputStream().println("/* ---- End " + url + " 404 ---- */");
+        RequestWrapper part = parts.get(i);
+        String url = part.url;
+        try {
+          response.getOutputStream().println("/* ---- Start " + url + " ---- */");
+
+          ResponseWrapper wrapper = new ResponseWrapper(response);
+          written = i + 1;
+          proxyHandler.doFetch(part, wrapper, pending.get(i));
+
+          if (wrapper.getStatus() != HttpServletResponse.SC_OK) {
+            response.getOutputStream().println(
+                formatHttpError(wrapper.getStatus(), wrapper.getErrorMessage()));
+          }
+
+          response.getOutputStream().println("/* ---- End " + url + " ---- */");
+        } catch (GadgetException ge) {
+          if (ge.getCode() != GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT) {
+            outputError(ge, url, response);
+            return;
+          } else {
+            response.getOutputStream().println("/* ---- End " + url + " 404 ---- */");
+          }
         }
       }
+    } finally {
+      // Parts fetched ahead of a failure are never written.
+      for (int i = written; i < pending.size(); i++) {
+        discard(pending.get(i));
+      }
     }
     response.setStatus(200);
   }
 
+  /**
+   * Releases the response to a part that won't be written once it arrives.
+   */
+  private static void discard(ProxyHandler.PendingFetch part) {
+    if (part.response == null) {
+      return;
+    }
+    part.response.addCallback(new HttpResponseFuture.Callback() {
+      public void onResponse(HttpResponse response) {
+        response.release();
+      }
+
+      public void onFailure(GadgetException e) {
+        // Nothing was fetched, so there is nothing to release.
+      }
+    });
+  }
+
   private static String formatHttpError(int status, String errorMessage) {
     StringBuilder err = new StringBuilder();
     err.append("/* ---- Error ");
@@ -153,6 +215,15 @@ public class ConcatProxyServlet extends InjectedServlet {
       }
       return super.getParameter(paramName);
     }
+
+    @Override
+    public String getHeader(String name) {
+      // Parts share one output stream, so they must not be individually gzipped.
+      if ("Accept-Encoding".equalsIgnoreCase(name)) {
+        return null;
+      }
+      return super.getHeader(name);
+    }
   }
 
   /**
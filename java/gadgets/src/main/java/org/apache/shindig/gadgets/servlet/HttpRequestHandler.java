@@ -218,14 +218,19 @@ public class HttpRequestHandler {
         req.setCacheTtl(httpApiRequest.refreshInterval);
       }
 
-      HttpResponse results = requestPipeline.execute(req);
-      // TODO: os:HttpRequest and Preload do not use the content rewriter.
-      // Should we really do so here?
-      results = contentRewriterRegistry.rewriteHttpResponse(req, results);
-
-      HttpApiResponse httpApiResponse = new HttpApiResponse(results,
-          transformBody(httpApiRequest, results),
-          httpApiRequest);
+      HttpResponse fetched = requestPipeline.execute(req);
+      HttpApiResponse httpApiResponse;
+      try {
+        // TODO: os:HttpRequest and Preload do not use the content rewriter.
+        // Should we really do so here?
+        HttpResponse results = contentRewriterRegistry.rewriteHttpResponse(req, fetched);
+
+        httpApiResponse = new HttpApiResponse(results,
+            transformBody(httpApiRequest, results),
+            httpApiRequest);
+      } finally {
+        fetched.release();
+      }
 
       // Renew the security token if we can
       if (requestItem.getToken() != null) {
@@ -27,12 +27,13 @@ import org.apache.shindig.gadgets.RenderingContext;
 import org.apache.shindig.gadgets.UrlGenerator;
 import org.apache.shindig.gadgets.UrlValidationStatus;
 import org.apache.shindig.gadgets.features.FeatureRegistry;
-import org.apache.shindig.gadgets.features.FeatureResource;
+import org.apache.shindig.gadgets.features.JsBundle;
 
 import com.google.inject.Inject;
 
+import org.apache.commons.lang.StringUtils;
+
 import java.io.IOException;
-import java.util.Collection;
 import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
@@ -61,10 +62,12 @@ public class JsServlet extends InjectedServlet {
       throws IOException {
     // If an If-Modified-Since header is ever provided, we always say
     // not modified. This is because when there actually is a change,
-    // cache busting should occur.
+    // cache busting should occur. If-None-Match takes precedence, and is checked against
+    // the ETag of the content below.
     UrlValidationStatus vstatus = urlGenerator.validateJsUrl(
         req.getRequestURL().append('?').append(req.getQueryString()).toString());
-    if (req.getHeader("If-Modified-Since") != null &&
+    String ifNoneMatch = req.getHeader("If-None-Match");
+    if (ifNoneMatch == null && req.getHeader("If-Modified-Since") != null &&
         vstatus == UrlValidationStatus.VALID_VERSIONED) {
       resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
       return;
@@ -87,7 +90,7 @@ public class JsServlet extends InjectedServlet {
     String containerParam = req.getParameter("container");
     String containerStr = req.getParameter("c");
 
-    boolean debug = "1".equals(debugStr);
+    final boolean debug = "1".equals(debugStr);
     final RenderingContext context = "1".equals(containerStr) ?
         RenderingContext.CONTAINER : RenderingContext.GADGET;
     final String container = 
@@ -103,25 +106,14 @@ public class JsServlet extends InjectedServlet {
       public String getContainer() {
         return container;
       }
-    };
-    Collection<? extends FeatureResource> resources =
-        registry.getFeatureResources(ctx, needed, null);
-    StringBuilder jsData = new StringBuilder();
-    boolean isProxyCacheable = true;
-    for (FeatureResource featureResource : resources) {
-      String content = debug ? featureResource.getDebugContent() : featureResource.getContent();
-      if (!featureResource.isExternal()) {
-        jsData.append(content);
-      } else {
-        // Support external/type=url feature serving through document.write()
-        jsData.append("document.write('<script src=\"").append(content).append("\"></script>')");
-      }
-      isProxyCacheable = isProxyCacheable && featureResource.isProxyCacheable();
-      jsData.append(";\n");
-    }
-
 
-    if (jsData.length() == 0) {
+      @Override
+      public boolean getDebug() {
+        return debug;
+      }
+    };
+    JsBundle bundle = registry.getJsBundle(ctx, needed, ImmutableSet.<String>of());
+    if (bundle.getContentLength() == 0) {
       resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
       return;
     }
@@ -129,11 +121,11 @@ public class JsServlet extends InjectedServlet {
     switch (vstatus) {
       case VALID_VERSIONED:
         // Versioned files get cached indefinitely
-        HttpUtil.setCachingHeaders(resp, !isProxyCacheable);
+        HttpUtil.setCachingHeaders(resp, !bundle.isProxyCacheable());
         break;
       case VALID_UNVERSIONED:
         // Unversioned files get cached for 1 hour.
-        HttpUtil.setCachingHeaders(resp, 60 * 60, !isProxyCacheable);
+        HttpUtil.setCachingHeaders(resp, 60 * 60, !bundle.isProxyCacheable());
         break;
       case INVALID:
         // URL is invalid in some way, likely version mismatch.
@@ -141,9 +133,43 @@ public class JsServlet extends InjectedServlet {
         HttpUtil.setNoCache(resp);
         break;
     }
+
+    // The gzipped content is made once per bundle, so it costs nothing to send it to clients
+    // that accept it. Each encoding has its own strong ETag.
+    boolean gzip =
+        HttpUtil.acceptsGzip(req) && bundle.getGzippedLength() < bundle.getContentLength();
+    String etag = '"' + bundle.getChecksum() + (gzip ? "-gzip" : "") + '"';
+    resp.setHeader("ETag", etag);
+    resp.addHeader("Vary", "Accept-Encoding");
+    if (ifNoneMatch != null && etagMatches(ifNoneMatch, etag)) {
+      resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
     resp.setContentType("text/javascript; charset=utf-8");
-    byte[] response = jsData.toString().getBytes("UTF-8");
-    resp.setContentLength(response.length);
-    resp.getOutputStream().write(response);
+    if (gzip) {
+      resp.setHeader("Content-Encoding", "gzip");
+      resp.setContentLength(bundle.getGzippedLength());
+      bundle.writeGzippedTo(resp.getOutputStream());
+    } else {
+      resp.setContentLength(bundle.getContentLength());
+      bundle.writeTo(resp.getOutputStream());
+    }
+  }
+
+  /**
+   * @return True if the If-None-Match header value is "*" or lists the given ETag.
+   */
+  private static boolean etagMatches(String ifNoneMatch, String etag) {
+    for (String candidate : StringUtils.split(ifNoneMatch, ',')) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals("*") || candidate.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
   }
 }
@@ -82,19 +82,25 @@ public class MakeRequestHandler extends ProxyBase {
     HttpRequest rcr = buildHttpRequest(request);
 
     // Serialize the response
-    HttpResponse results = requestPipeline.execute(rcr);
-
-    // Rewrite the response
-    if (contentRewriterRegistry != null) {
-      try {
-        results = contentRewriterRegistry.rewriteHttpResponse(rcr, results);
-      } catch (RewritingException e) {
-        throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e);
+    HttpResponse fetched = requestPipeline.execute(rcr);
+    HttpResponse results = fetched;
+    String output;
+    try {
+      // Rewrite the response
+      if (contentRewriterRegistry != null) {
+        try {
+          results = contentRewriterRegistry.rewriteHttpResponse(rcr, results);
+        } catch (RewritingException e) {
+          throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e);
+        }
       }
-    }
 
-    // Serialize the response
-    String output = convertResponseToJson(rcr.getSecurityToken(), request, results);
+      // Serialize the response
+      output = convertResponseToJson(rcr.getSecurityToken(), request, results);
+    } finally {
+      // Large bodies are kept in temporary files only until they have been serialized.
+      fetched.release();
+    }
 
     // Find and set the refresh interval
     setResponseHeaders(request, response, results);
@@ -29,16 +29,19 @@ import com.google.inject.Singleton;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.shindig.common.servlet.HttpUtil;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.LockedDomainService;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseFuture;
 import org.apache.shindig.gadgets.http.RequestPipeline;
 import org.apache.shindig.gadgets.rewrite.RequestRewriterRegistry;
 import org.apache.shindig.gadgets.rewrite.RewritingException;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -124,14 +127,10 @@ public class ProxyHandler extends ProxyBase {
     }
   }
 
-  @Override
-  protected void doFetch(HttpServletRequest request, HttpServletResponse response)
-      throws IOException, GadgetException {
-    if (request.getHeader("If-Modified-Since") != null) {
-      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-      return;
-    }
-
+  /**
+   * Verifies that open proxy requests are only served from the proxy domain.
+   */
+  private void checkLockedDomain(HttpServletRequest request) throws GadgetException {
     String host = request.getHeader("Host");
     if (!lockedDomainService.isSafeForOpenProxy(host)) {
       // Force embedded images and the like to their own domain to avoid XSS
@@ -141,18 +140,88 @@ public class ProxyHandler extends ProxyBase {
       logger.info(msg);
       throw new GadgetException(GadgetException.Code.INVALID_PARAMETER, msg);
     }
+  }
+
+  @Override
+  protected void doFetch(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, GadgetException {
+    if (request.getHeader("If-Modified-Since") != null) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
 
+    checkLockedDomain(request);
     HttpRequest rcr = buildHttpRequest(request, URL_PARAM);
-    HttpResponse results = requestPipeline.execute(rcr);
-    
+    writeResponse(request, response, rcr, requestPipeline.execute(rcr));
+  }
+
+  /**
+   * Starts fetching the content for a proxy request without blocking the calling thread. The
+   * result is written out by {@link #doFetch(HttpServletRequest, HttpServletResponse,
+   * PendingFetch)}, which allows several proxied resources to be fetched concurrently.
+   */
+  PendingFetch fetchAsync(HttpServletRequest request) {
+    if (request.getHeader("If-Modified-Since") != null) {
+      return new PendingFetch(null, null);
+    }
+
+    try {
+      checkLockedDomain(request);
+      HttpRequest rcr = buildHttpRequest(request, URL_PARAM);
+      return new PendingFetch(rcr, requestPipeline.executeAsync(rcr));
+    } catch (GadgetException e) {
+      return new PendingFetch(null, HttpResponseFuture.failed(e));
+    }
+  }
+
+  /**
+   * Writes out the response to a proxy request started by {@link #fetchAsync}.
+   */
+  void doFetch(HttpServletRequest request, HttpServletResponse response,
+      PendingFetch pending) throws IOException, GadgetException {
+    if (pending.response == null) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    HttpResponse results = pending.response.getResponse();
+    writeResponse(request, response, pending.request, results);
+  }
+
+  /**
+   * A proxy request started by {@link #fetchAsync}, with the content being fetched for it.
+   */
+  static final class PendingFetch {
+    final HttpRequest request;
+    // Null if the client already has the content, as with the synchronous doFetch.
+    final HttpResponseFuture response;
+
+    private PendingFetch(HttpRequest request, HttpResponseFuture response) {
+      this.request = request;
+      this.response = response;
+    }
+  }
+
+  private void writeResponse(HttpServletRequest request, HttpServletResponse response,
+      HttpRequest rcr, HttpResponse results) throws IOException, GadgetException {
     if (results.isError()) {
       // Error: try the fallback. Particularly useful for proxied images.
       HttpRequest fallbackRcr = buildHttpRequest(request, FALLBACK_URL_PARAM);
       if (fallbackRcr != null) {
+        results.release();
         results = requestPipeline.execute(fallbackRcr);
       } 
     }
-    
+
+    try {
+      writeResults(request, response, rcr, results);
+    } finally {
+      // Large bodies are kept in temporary files only until they have been sent.
+      results.release();
+    }
+  }
+
+  private void writeResults(HttpServletRequest request, HttpServletResponse response,
+      HttpRequest rcr, HttpResponse results) throws IOException, GadgetException {
     if (contentRewriterRegistry != null) {
       try {
         results = contentRewriterRegistry.rewriteHttpResponse(rcr, results);
@@ -191,6 +260,21 @@ public class ProxyHandler extends ProxyBase {
       response.sendError(results.getHttpStatusCode());
     }
 
-    IOUtils.copy(results.getResponse(), response.getOutputStream());
+    // Stream the body through a fixed-size buffer. Large bodies are read straight from disk, and
+    // bodies cached compressed are sent without inflating them when the client accepts gzip.
+    InputStream body;
+    if (results.isGzipped() && results.getHttpStatusCode() == HttpResponse.SC_OK &&
+        HttpUtil.acceptsGzip(request)) {
+      response.setHeader("Content-Encoding", "gzip");
+      response.addHeader("Vary", "Accept-Encoding");
+      body = results.getGzippedResponse();
+    } else {
+      body = results.getResponse();
+    }
+    try {
+      IOUtils.copy(body, response.getOutputStream());
+    } finally {
+      IOUtils.closeQuietly(body);
+    }
   }
 }
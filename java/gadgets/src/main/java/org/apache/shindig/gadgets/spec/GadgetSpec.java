@@ -50,7 +50,8 @@ public class GadgetSpec {
    *
    * @param url The original url of the gadget.
    * @param doc The pre-parsed xml document.
-   * @param original Unparsed input XML. Used to generate checksums.
+   * @param original Unparsed input XML. Used to generate checksums, and kept so that the spec
+   *     can be stored outside of the JVM.
    *
    * @throws SpecParserException If xml can not be processed as a valid gadget spec.
    */
@@ -59,6 +60,7 @@ public class GadgetSpec {
 
     // This might not be good enough; should we take message bundle changes into account?
     this.checksum = HashUtil.checksum(original.getBytes());
+    this.source = original;
 
     NodeList children = doc.getChildNodes();
 
@@ -134,6 +136,7 @@ public class GadgetSpec {
   private GadgetSpec(GadgetSpec spec) {
     url = spec.url;
     checksum = spec.checksum;
+    source = spec.source;
     attributes.putAll(spec.attributes);
   }
 
@@ -153,6 +156,14 @@ public class GadgetSpec {
     return checksum;
   }
 
+  /**
+   * The unparsed XML the spec was created from.
+   */
+  private final String source;
+  public String getSource() {
+    return source;
+  }
+
   /**
    * ModulePrefs
    */
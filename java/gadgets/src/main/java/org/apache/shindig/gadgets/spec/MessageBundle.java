@@ -76,6 +76,17 @@ public class MessageBundle {
      languageDirection = locale.getLanguageDirection();
    }
 
+  /**
+   * Constructs a message bundle from previously extracted messages.
+   *
+   * @param messages The content of the message map.
+   * @param languageDirection The language direction, ltr or rtl.
+   */
+  public MessageBundle(Map<String, String> messages, String languageDirection) {
+    this.messages = ImmutableMap.copyOf(messages);
+    this.languageDirection = languageDirection;
+  }
+
   /**
    * Constructs a message bundle from a /ModulePrefs/Locale with nested messages.
    * @param element XML Dom element to parse
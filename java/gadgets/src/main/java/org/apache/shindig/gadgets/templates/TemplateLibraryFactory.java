@@ -58,13 +58,18 @@ public class TemplateLibraryFactory {
     // 5 minute TTL.
     request.setCacheTtl(300);
     HttpResponse response = pipeline.execute(request);
-    if (response.getHttpStatusCode() != HttpResponse.SC_OK) {
-      throw new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT,
-          "Unable to retrieve template library xml. HTTP error " +
-          response.getHttpStatusCode());      
+    String content;
+    try {
+      if (response.getHttpStatusCode() != HttpResponse.SC_OK) {
+        throw new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT,
+            "Unable to retrieve template library xml. HTTP error " +
+            response.getHttpStatusCode());
+      }
+
+      content = response.getResponseAsString();
+    } finally {
+      response.release();
     }
-    
-    String content = response.getResponseAsString();
     try {
       String key = null;
       Element element = null;
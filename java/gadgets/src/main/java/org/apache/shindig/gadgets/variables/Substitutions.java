@@ -19,13 +19,20 @@ package org.apache.shindig.gadgets.variables;
 
 import org.apache.shindig.common.uri.Uri;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * Performs string substitutions for message bundles, user prefs, and bidi
  * variables.
+ *
+ * Each string is split into literal text and placeholders the first time it is substituted, and
+ * later substitutions of the same string only append the parts. Spec strings are the same
+ * objects on every render, so in practice each one is scanned once.
  */
 public class Substitutions {
   /**
@@ -68,6 +75,9 @@ public class Substitutions {
     }
   }
 
+  // Compiled strings, keyed by identity and dropped along with the strings.
+  private static final Map<String, Template> TEMPLATES = new MapMaker().weakKeys().makeMap();
+
   private final Map<String, String> substitutions;
 
   public Substitutions() {
@@ -105,8 +115,25 @@ public class Substitutions {
     }
   }
 
-  private void performSubstitutions(String input, StringBuilder output, boolean isNested) {
-    int lastPosition = 0, i;
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof Substitutions)) {
+      return false;
+    }
+    return substitutions.equals(((Substitutions) obj).substitutions);
+  }
+
+  @Override
+  public int hashCode() {
+    return substitutions.hashCode();
+  }
+
+  private void performSubstitutions(String input, int start, StringBuilder output,
+      boolean isNested) {
+    int lastPosition = start, i;
     while ((i = input.indexOf("__", lastPosition)) != -1) {
       int next = input.indexOf("__", i + 2);
       if (next == -1) {
@@ -138,7 +165,7 @@ public class Substitutions {
         lastPosition = next + 2;
         if (isMessage && !isNested) {
           // Messages can be recursive
-          performSubstitutions(replacement, output, true);
+          performSubstitutions(replacement, 0, output, true);
         } else {
           output.append(replacement);
         }
@@ -156,9 +183,21 @@ public class Substitutions {
    * @return The substituted string.
    */
   public String substituteString(String input) {
+    Template template = TEMPLATES.get(input);
+    if (template == null) {
+      template = Template.compile(input);
+      TEMPLATES.put(input, template);
+    }
+    return template.substitute(this, input);
+  }
+
+  /**
+   * Substitutes by scanning the string, without compiling it.
+   */
+  String scanAndSubstitute(String input) {
     if (input.contains("__")) {
       StringBuilder output = new StringBuilder(input.length() * 120 / 100);
-      performSubstitutions(input, output, false);
+      performSubstitutions(input, 0, output, false);
       return output.toString();
     }
     return input;
@@ -179,4 +218,102 @@ public class Substitutions {
       return Uri.parse("");
     }
   }
+
+  /**
+   * A string split into literal runs and placeholders. Text between "__" markers that can't be a
+   * placeholder, because it doesn't start with the prefix of any {@link Type}, is literal.
+   */
+  private static final class Template {
+    private static final Template NO_PLACEHOLDERS = new Template(null, null, null);
+
+    // literals[i] precedes placeholders[i]; the last literal follows the last placeholder.
+    private final String[] literals;
+    // Each placeholder is kept with its leading "__" and without its trailing "__", the form
+    // substitutions are stored in.
+    private final String[] placeholders;
+    private final int[] positions;
+
+    private Template(String[] literals, String[] placeholders, int[] positions) {
+      this.literals = literals;
+      this.placeholders = placeholders;
+      this.positions = positions;
+    }
+
+    /**
+     * Splits the input the same way {@link Substitutions#performSubstitutions} scans it,
+     * assuming that every placeholder will be found.
+     */
+    static Template compile(String input) {
+      List<String> literals = Lists.newArrayList();
+      List<String> placeholders = Lists.newArrayList();
+      List<Integer> positions = Lists.newArrayList();
+      StringBuilder literal = new StringBuilder();
+      int lastPosition = 0, i;
+      while ((i = input.indexOf("__", lastPosition)) != -1) {
+        int next = input.indexOf("__", i + 2);
+        if (next == -1) {
+          break;
+        }
+        literal.append(input, lastPosition, i);
+        String pattern = input.substring(i, next);
+        if (isPlaceholder(pattern)) {
+          literals.add(literal.toString());
+          literal.setLength(0);
+          placeholders.add(pattern);
+          positions.add(i);
+          lastPosition = next + 2;
+        } else {
+          literal.append('_');
+          lastPosition = i + 1;
+        }
+      }
+      if (placeholders.isEmpty()) {
+        return NO_PLACEHOLDERS;
+      }
+      literal.append(input, lastPosition, input.length());
+      literals.add(literal.toString());
+
+      int[] positionArray = new int[positions.size()];
+      for (int j = 0; j < positionArray.length; ++j) {
+        positionArray[j] = positions.get(j);
+      }
+      return new Template(literals.toArray(new String[literals.size()]),
+          placeholders.toArray(new String[placeholders.size()]), positionArray);
+    }
+
+    private static boolean isPlaceholder(String pattern) {
+      for (Type type : Type.values()) {
+        if (pattern.startsWith(type.prefix)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    String substitute(Substitutions substitutions, String input) {
+      if (placeholders == null) {
+        return input;
+      }
+      StringBuilder output = new StringBuilder(input.length() * 120 / 100);
+      for (int i = 0; i < placeholders.length; ++i) {
+        output.append(literals[i]);
+        String replacement = substitutions.substitutions.get(placeholders[i]);
+        if (replacement == null) {
+          // The scanner moves on one character at a time from here, so the rest of the input
+          // may split differently. Let it handle the rest.
+          output.append('_');
+          substitutions.performSubstitutions(input, positions[i] + 1, output, false);
+          return output.toString();
+        }
+        if (placeholders[i].startsWith(Type.MESSAGE.prefix)) {
+          // Messages can be recursive
+          substitutions.performSubstitutions(replacement, 0, output, true);
+        } else {
+          output.append(replacement);
+        }
+      }
+      output.append(literals[placeholders.length]);
+      return output.toString();
+    }
+  }
 }
@@ -18,6 +18,8 @@
  */
 package org.apache.shindig.gadgets.variables;
 
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.MessageBundleFactory;
@@ -28,19 +30,31 @@ import com.google.inject.Inject;
 
 /**
  * Performs variable substitution on a gadget spec.
+ *
+ * When a cache is set, substituted specs are reused for requests that substitute the same values
+ * into the same spec, so that hot gadgets don't rebuild the spec on every render.
  */
 public class VariableSubstituter {
+  public static final String CACHE_NAME = "substitutedSpecs";
+
   private final MessageBundleFactory messageBundleFactory;
+  private Cache<String, SubstitutedSpec> cache;
 
   @Inject
   public VariableSubstituter(MessageBundleFactory messageBundleFactory) {
     this.messageBundleFactory = messageBundleFactory;
   }
 
+  @Inject(optional = true)
+  public void setCacheProvider(CacheProvider cacheProvider) {
+    cache = cacheProvider.createCache(CACHE_NAME);
+  }
+
   /**
    * Substitutes all hangman variables into the gadget spec.
    *
-   * @return A new GadgetSpec, with all fields substituted as needed.
+   * @return A GadgetSpec with all fields substituted as needed. It may be shared with other
+   *     requests and must not be modified.
    */
   public GadgetSpec substitute(GadgetContext context, GadgetSpec spec) throws GadgetException {
     MessageBundle bundle =
@@ -54,6 +68,29 @@ public class VariableSubstituter {
         Integer.toString(context.getModuleId()));
     UserPrefSubstituter.addSubstitutions(substituter, spec, context.getUserPrefs());
 
-    return spec.substitute(substituter);
+    if (cache == null || context.getIgnoreCache()) {
+      return spec.substitute(substituter);
+    }
+
+    // The hash only narrows the lookup; the values themselves are compared before reuse.
+    String key = spec.getUrl().toString() + ':' + spec.getChecksum() + ':' +
+        substituter.hashCode();
+    SubstitutedSpec cached = cache.getElement(key);
+    if (cached != null && cached.substitutions.equals(substituter)) {
+      return cached.spec;
+    }
+    GadgetSpec substituted = spec.substitute(substituter);
+    cache.addElement(key, new SubstitutedSpec(substituter, substituted));
+    return substituted;
+  }
+
+  private static class SubstitutedSpec {
+    private final Substitutions substitutions;
+    private final GadgetSpec spec;
+
+    SubstitutedSpec(Substitutions substitutions, GadgetSpec spec) {
+      this.substitutions = substitutions;
+      this.spec = spec;
+    }
   }
 }
@@ -23,14 +23,15 @@ import static org.easymock.classextension.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import org.apache.shindig.common.cache.CacheEntry;
 import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.common.cache.LruCacheProvider;
-import org.apache.shindig.common.cache.SoftExpiringCache;
 import org.apache.shindig.common.testing.TestExecutorService;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.config.ContainerConfig;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseFuture;
 import org.apache.shindig.gadgets.http.HttpResponseBuilder;
 import org.apache.shindig.gadgets.http.RequestPipeline;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
@@ -188,8 +189,8 @@ public class DefaultGadgetSpecFactoryTest {
 
     specFactory.getGadgetSpec(createContext(SPEC_URL, true));
 
-    SoftExpiringCache.CachedObject<Object> inCache = specFactory.cache.getElement(SPEC_URL);
-    specFactory.cache.addElement(SPEC_URL, inCache.obj, -1);
+    CacheEntry<Object> inCache = specFactory.cache.getEntry(SPEC_URL);
+    specFactory.cache.addElement(SPEC_URL, inCache.getValue(), 0, -1);
 
     GadgetSpec spec = specFactory.getGadgetSpec(createContext(SPEC_URL, false));
 
@@ -211,8 +212,8 @@ public class DefaultGadgetSpecFactoryTest {
 
     specFactory.getGadgetSpec(createContext(SPEC_URL, true));
 
-    SoftExpiringCache.CachedObject<Object> inCache = specFactory.cache.getElement(SPEC_URL);
-    specFactory.cache.addElement(SPEC_URL, inCache.obj, -1);
+    CacheEntry<Object> inCache = specFactory.cache.getEntry(SPEC_URL);
+    specFactory.cache.addElement(SPEC_URL, inCache.getValue(), 0, -1);
 
     GadgetSpec spec = specFactory.getGadgetSpec(createContext(SPEC_URL, false));
 
@@ -313,6 +314,10 @@ public class DefaultGadgetSpecFactoryTest {
       return new HttpResponse(LOCAL_SPEC_XML);
     }
 
+    public HttpResponseFuture executeAsync(HttpRequest request) {
+      return HttpResponseFuture.immediate(execute(request));
+    }
+
     public void normalizeProtocol(HttpRequest request) throws GadgetException {
       //No Op
     }
@@ -33,6 +33,7 @@ import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.util.TimeSource;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseFuture;
 import org.apache.shindig.gadgets.http.HttpResponseBuilder;
 import org.apache.shindig.gadgets.http.RequestPipeline;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
@@ -347,6 +348,10 @@ public class DefaultMessageBundleFactoryTest {
       return new HttpResponse(BASIC_BUNDLE);
     }
 
+    public HttpResponseFuture executeAsync(HttpRequest request) {
+      return HttpResponseFuture.immediate(execute(request));
+    }
+
     public void normalizeProtocol(HttpRequest request) { }
   }
 }
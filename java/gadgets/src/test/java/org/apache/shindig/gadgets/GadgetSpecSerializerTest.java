@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.gadgets.spec.GadgetSpec;
+import org.apache.shindig.gadgets.spec.SpecParserException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Tests for GadgetSpecSerializer.
+ */
+public class GadgetSpecSerializerTest {
+  private static final Uri SPEC_URL = Uri.parse("http://example.org/gadget.xml");
+  private static final String SPEC_XML
+      = "<Module>" +
+        "  <ModulePrefs title='GadgetSpecSerializerTest'/>" +
+        "  <Content type='html'>Hello, \u4e16\u754c!</Content>" +
+        "</Module>";
+
+  private final GadgetSpecSerializer serializer = new GadgetSpecSerializer();
+
+  private Object roundTrip(Object value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    serializer.write(value, out);
+    out.close();
+    return serializer.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  @Test
+  public void specParsedFromSource() throws Exception {
+    GadgetSpec spec = new GadgetSpec(SPEC_URL, SPEC_XML);
+    GadgetSpec copy = (GadgetSpec) roundTrip(spec);
+    assertEquals(SPEC_URL, copy.getUrl());
+    assertEquals(spec.getChecksum(), copy.getChecksum());
+    assertEquals("Hello, \u4e16\u754c!", copy.getView(GadgetSpec.DEFAULT_VIEW).getContent());
+  }
+
+  @Test
+  public void exceptionKept() throws Exception {
+    GadgetException e = new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT,
+        "Unable to retrieve spec");
+    GadgetException copy = (GadgetException) roundTrip(e);
+    assertEquals(e.getCode(), copy.getCode());
+    assertEquals(e.getMessage(), copy.getMessage());
+  }
+
+  @Test
+  public void parserExceptionKept() throws Exception {
+    Object copy = roundTrip(new SpecParserException("Bad spec"));
+    assertTrue(copy instanceof SpecParserException);
+    assertEquals("Bad spec", ((SpecParserException) copy).getMessage());
+  }
+}
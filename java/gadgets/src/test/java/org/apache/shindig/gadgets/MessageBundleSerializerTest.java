@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.shindig.gadgets.spec.MessageBundle;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Tests for MessageBundleSerializer.
+ */
+public class MessageBundleSerializerTest {
+  private final MessageBundleSerializer serializer = new MessageBundleSerializer();
+
+  private Object roundTrip(Object value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    serializer.write(value, out);
+    out.close();
+    return serializer.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  @Test
+  public void bundleKept() throws Exception {
+    MessageBundle bundle
+        = new MessageBundle(ImmutableMap.of("hello", "Hello", "bye", "Goodbye"), "rtl");
+    MessageBundle copy = (MessageBundle) roundTrip(bundle);
+    assertEquals(bundle.getMessages(), copy.getMessages());
+    assertEquals("rtl", copy.getLanguageDirection());
+  }
+
+  @Test
+  public void exceptionKept() throws Exception {
+    GadgetException e = new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT,
+        "Unable to retrieve bundle");
+    GadgetException copy = (GadgetException) roundTrip(e);
+    assertEquals(e.getCode(), copy.getCode());
+    assertEquals(e.getMessage(), copy.getMessage());
+  }
+
+  @Test(expected = IOException.class)
+  public void otherValuesRejected() throws Exception {
+    serializer.write("not a bundle", new DataOutputStream(new ByteArrayOutputStream()));
+  }
+}
@@ -18,12 +18,15 @@
 package org.apache.shindig.gadgets.features;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import org.apache.shindig.common.cache.LruCacheProvider;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.uri.UriBuilder;
 import org.apache.shindig.config.ContainerConfig;
@@ -376,6 +379,46 @@ public class FeatureRegistryTest {
     assertEquals(5, resources.size());
   }
   
+  @Test
+  public void getJsBundle() throws Exception {
+    setupFullRegistry("gadget", null);
+    GadgetContext ctx = getCtx(RenderingContext.GADGET, null);
+    JsBundle bundle = registry.getJsBundle(
+        ctx, Lists.newArrayList("top", "nodep"), Lists.newArrayList("mid_b"));
+    assertEquals("mid_a;\ntop;\nnodep;\n", bundle.getContent());
+    assertEquals(bundle.getContent().length(), bundle.getContentLength());
+    assertFalse(bundle.hasExternalResources());
+  }
+  
+  @Test
+  public void getJsBundleCached() throws Exception {
+    setupFullRegistry("gadget", "one");
+    registry.setCacheProvider(new LruCacheProvider(10));
+    List<String> needed = Lists.newArrayList("nodep");
+    List<String> excluded = Lists.newArrayList();
+    JsBundle bundle =
+        registry.getJsBundle(getCtx(RenderingContext.GADGET, "one"), needed, excluded);
+    assertSame(bundle,
+        registry.getJsBundle(getCtx(RenderingContext.GADGET, "one"), needed, excluded));
+    
+    // Other containers get their own bundle.
+    JsBundle other =
+        registry.getJsBundle(getCtx(RenderingContext.GADGET, "two"), needed, excluded);
+    assertEquals("", other.getContent());
+    assertEquals("nodep;\n", bundle.getContent());
+  }
+  
+  @Test
+  public void getJsBundleUnsupportedNotCached() throws Exception {
+    setupFullRegistry("gadget", null);
+    registry.setCacheProvider(new LruCacheProvider(10));
+    GadgetContext ctx = getCtx(RenderingContext.GADGET, null);
+    List<String> needed = Lists.newArrayList("nodep", "does-not-exist");
+    JsBundle bundle = registry.getJsBundle(ctx, needed, Lists.<String>newArrayList());
+    assertEquals("nodep;\n", bundle.getContent());
+    assertNotSame(bundle, registry.getJsBundle(ctx, needed, Lists.<String>newArrayList()));
+  }
+  
   @Test
   public void getFeaturesStringsNoTransitive() throws Exception {
     setupFullRegistry("gadget", null);
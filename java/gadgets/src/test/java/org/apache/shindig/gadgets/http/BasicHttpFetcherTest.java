@@ -17,7 +17,15 @@
  */
 package org.apache.shindig.gadgets.http;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import junitx.framework.ArrayAssert;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.junit.Before;
+import org.junit.Test;
 
 public class BasicHttpFetcherTest extends AbstractHttpFetcherTest {
 
@@ -25,4 +33,117 @@ public class BasicHttpFetcherTest extends AbstractHttpFetcherTest {
   public void setUp() {
     fetcher = new BasicHttpFetcher();
   }
-}
\ No newline at end of file
+
+  @Test
+  public void connectionPoolConfiguration() {
+    BasicHttpFetcher basicFetcher = new BasicHttpFetcher();
+    basicFetcher.setConnectionTimeoutMs(1234);
+    basicFetcher.setMaxConnectionsPerHost(7);
+    basicFetcher.setMaxTotalConnections(42);
+
+    HttpConnectionManagerParams params = basicFetcher.getConnectionManagerParams();
+    assertEquals(1234, params.getConnectionTimeout());
+    assertEquals(7, params.getDefaultMaxConnectionsPerHost());
+    assertEquals(42, params.getMaxTotalConnections());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidReadTimeout() {
+    new BasicHttpFetcher().setReadTimeoutMs(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidMaxConnectionsPerHost() {
+    new BasicHttpFetcher().setMaxConnectionsPerHost(0);
+  }
+
+  @Test
+  public void largeBodySpilledToDisk() throws Exception {
+    BasicHttpFetcher basicFetcher = new BasicHttpFetcher();
+    basicFetcher.setSpillThresholdBytes(1000);
+
+    byte[] body = new byte[5000];
+    for (int i = 0; i < body.length; ++i) {
+      body[i] = (byte) (i % 255);
+    }
+    HttpRequest request = new HttpRequest(BASE_URL)
+        .setMethod("POST")
+        .setPostBody(body)
+        .addHeader("content-type", "application/octet-stream");
+    HttpResponse response = basicFetcher.fetch(request);
+
+    assertNotNull(response.getResponseFile());
+    assertEquals(body.length, response.getContentLength());
+    ArrayAssert.assertEquals(body, response.getResponseAsBytes());
+  }
+
+  @Test
+  public void smallBodyKeptInMemory() throws Exception {
+    BasicHttpFetcher basicFetcher = new BasicHttpFetcher();
+    basicFetcher.setSpillThresholdBytes(1000);
+
+    HttpResponse response = basicFetcher.fetch(new HttpRequest(BASE_URL));
+
+    assertNull(response.getResponseFile());
+  }
+
+  @Test
+  public void maxObjectSizeEnforcedWhenSpilling() throws Exception {
+    BasicHttpFetcher basicFetcher = new BasicHttpFetcher();
+    basicFetcher.setSpillThresholdBytes(1000);
+    basicFetcher.setMaxObjectSizeBytes(3000);
+
+    HttpRequest request = new HttpRequest(BASE_URL)
+        .setMethod("POST")
+        .setPostBody(new byte[5000])
+        .addHeader("content-type", "application/octet-stream");
+    HttpResponse response = basicFetcher.fetch(request);
+
+    assertEquals(HttpResponse.SC_BAD_REQUEST, response.getHttpStatusCode());
+  }
+
+  @Test
+  public void releaseDeletesSpilledBody() throws Exception {
+    BasicHttpFetcher basicFetcher = new BasicHttpFetcher();
+    basicFetcher.setSpillThresholdBytes(1000);
+    long spilledBefore = FileResponseBody.getSpilledBytes();
+
+    HttpRequest request = new HttpRequest(BASE_URL)
+        .setMethod("POST")
+        .setPostBody(new byte[5000])
+        .addHeader("content-type", "application/octet-stream");
+    HttpResponse response = basicFetcher.fetch(request);
+    assertEquals(spilledBefore + 5000, FileResponseBody.getSpilledBytes());
+
+    response.release();
+
+    assertFalse(response.retain());
+    assertEquals(spilledBefore, FileResponseBody.getSpilledBytes());
+  }
+
+  @Test
+  public void bodyKeptInMemoryOverSpillLimit() throws Exception {
+    BasicHttpFetcher basicFetcher = new BasicHttpFetcher();
+    basicFetcher.setSpillThresholdBytes(1000);
+    basicFetcher.setMaxSpilledBytes(FileResponseBody.getSpilledBytes() + 2000);
+
+    HttpRequest request = new HttpRequest(BASE_URL)
+        .setMethod("POST")
+        .setPostBody(new byte[5000])
+        .addHeader("content-type", "application/octet-stream");
+    HttpResponse response = basicFetcher.fetch(request);
+
+    assertNull(response.getResponseFile());
+    assertEquals(5000, response.getContentLength());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidSpillThreshold() {
+    new BasicHttpFetcher().setSpillThresholdBytes(-1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidMaxSpilledBytes() {
+    new BasicHttpFetcher().setMaxSpilledBytes(-1);
+  }
+}
@@ -18,6 +18,12 @@
 package org.apache.shindig.gadgets.http;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
@@ -26,6 +32,8 @@ import org.apache.shindig.common.uri.Uri;
 
 import org.junit.Test;
 
+import java.io.File;
+
 /**
  * Tests for basic content cache
  */
@@ -73,4 +81,76 @@ public class DefaultHttpCacheTest {
 
     assertEquals(0, cache.getSize());
   }
+
+  @Test
+  public void textResponseCompressed() throws Exception {
+    httpCache.setCompressText(true);
+    HttpRequest request = new HttpRequest(DEFAULT_URI);
+    String body = StringUtils.repeat("compressible text ", 200);
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "text/plain; charset=UTF-8")
+        .setResponseString(body)
+        .create();
+
+    httpCache.addResponse(request, response);
+
+    HttpResponse cached = cache.getElement(httpCache.createKey(request));
+    assertTrue(cached.isGzipped());
+    assertTrue(cached.getGzippedLength() < body.length());
+    assertEquals(body.length(), cached.getContentLength());
+    assertEquals(body, cached.getResponseAsString());
+    assertEquals(response, cached);
+  }
+
+  @Test
+  public void binaryResponseNotCompressed() throws Exception {
+    httpCache.setCompressText(true);
+    HttpRequest request = new HttpRequest(DEFAULT_URI);
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "image/png")
+        .setResponse(new byte[4096])
+        .create();
+
+    httpCache.addResponse(request, response);
+
+    assertFalse(cache.getElement(httpCache.createKey(request)).isGzipped());
+  }
+
+  @Test
+  public void smallTextResponseNotCompressed() throws Exception {
+    httpCache.setCompressText(true);
+    HttpRequest request = new HttpRequest(DEFAULT_URI);
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "text/plain")
+        .setResponseString("short")
+        .create();
+
+    httpCache.addResponse(request, response);
+
+    assertFalse(cache.getElement(httpCache.createKey(request)).isGzipped());
+  }
+
+  @Test
+  public void fileBodyNotCached() throws Exception {
+    File file = FileResponseBody.createTempFile();
+    FileUtils.writeStringToFile(file, "large body");
+    HttpRequest request = new HttpRequest(DEFAULT_URI);
+    HttpResponse response = new HttpResponseBuilder().setResponseFile(file).create();
+
+    assertFalse(httpCache.addResponse(request, response));
+    assertNull(cache.getElement(httpCache.createKey(request)));
+    assertEquals("large body", response.getResponseAsString());
+    response.release();
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void fileBodyWeighed() throws Exception {
+    File file = FileResponseBody.createTempFile();
+    FileUtils.writeByteArrayToFile(file, new byte[5000]);
+    HttpResponse response = new HttpResponseBuilder().setResponseFile(file).create();
+
+    assertTrue(DefaultHttpCache.WEIGHER.weigh("key", response) > 5000);
+    response.release();
+  }
 }
@@ -26,9 +26,19 @@ import org.apache.shindig.gadgets.rewrite.image.NoOpImageRewriter;
 import com.google.common.collect.Maps;
 import com.google.inject.Provider;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
 import org.junit.Test;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DefaultRequestPipelineTest {
   private static final Uri DEFAULT_URI = Uri.parse("http://example.org/gadget.xml");
@@ -39,6 +49,12 @@ public class DefaultRequestPipelineTest {
 
   private final RequestPipeline pipeline = new DefaultRequestPipeline(fetcher, cache, oauth,
       new NoOpImageRewriter(), new NoOpInvalidationService());
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
 
   @Test
   public void authTypeNoneNotCached() throws Exception {
@@ -94,6 +110,121 @@ public class DefaultRequestPipelineTest {
     assertEquals(1, fetcher.fetchCount);
   }
 
+  @Test
+  public void staleWithinRevalidateWindowServedAndRefreshed() throws Exception {
+    HttpRequest request = new HttpRequest(DEFAULT_URI)
+        .setAuthType(AuthType.NONE);
+
+    HttpResponse cached = new HttpResponseBuilder()
+        .setResponseString("stale")
+        .addHeader("Cache-Control", "max-age=0, stale-while-revalidate=60")
+        .create();
+    cache.data.put(DEFAULT_URI, cached);
+
+    HttpResponse fetched = new HttpResponse("fetched");
+    fetcher.response = fetched;
+
+    HttpResponse response = pipeline.execute(request);
+
+    assertEquals(cached, response);
+    assertEquals(1, fetcher.fetchCount);
+    assertEquals(fetched, cache.data.get(DEFAULT_URI));
+    assertEquals(1, ((DefaultRequestPipeline) pipeline).getStaleHitCount());
+  }
+
+  @Test
+  public void staleWithinErrorWindowServedOnFailure() throws Exception {
+    HttpRequest request = new HttpRequest(DEFAULT_URI)
+        .setAuthType(AuthType.NONE);
+
+    HttpResponse cached = new HttpResponseBuilder()
+        .setResponseString("stale")
+        .addHeader("Cache-Control", "max-age=0, stale-if-error=60")
+        .create();
+    cache.data.put(DEFAULT_URI, cached);
+
+    HttpResponse response = pipeline.execute(request);
+
+    assertEquals(cached, response);
+    assertEquals(1, fetcher.fetchCount);
+    assertEquals(0, cache.writeCount);
+  }
+
+  @Test
+  public void staleWithinErrorWindowServedOnErrorResponse() throws Exception {
+    HttpRequest request = new HttpRequest(DEFAULT_URI)
+        .setAuthType(AuthType.NONE);
+
+    HttpResponse cached = new HttpResponseBuilder()
+        .setResponseString("stale")
+        .addHeader("Cache-Control", "max-age=0")
+        .create();
+    cache.data.put(DEFAULT_URI, cached);
+    fetcher.response = HttpResponse.error();
+
+    // The window comes from configuration when the response doesn't specify one.
+    ((DefaultRequestPipeline) pipeline).setStaleIfErrorMs(60000L);
+
+    assertEquals(cached, pipeline.execute(request));
+    assertEquals(0, cache.writeCount);
+  }
+
+  @Test
+  public void expiredEntryRevalidatedWithNotModified() throws Exception {
+    HttpRequest request = new HttpRequest(DEFAULT_URI)
+        .setAuthType(AuthType.NONE);
+
+    HttpResponse cached = new HttpResponseBuilder()
+        .setResponseString("cached")
+        .addHeader("Cache-Control", "max-age=0")
+        .addHeader("ETag", "\"v1\"")
+        .addHeader("Last-Modified", "Wed, 09 Jul 2008 19:18:33 GMT")
+        .create();
+    cache.data.put(DEFAULT_URI, cached);
+
+    fetcher.response = new HttpResponseBuilder()
+        .setHttpStatusCode(HttpResponse.SC_NOT_MODIFIED)
+        .addHeader("Cache-Control", "max-age=60")
+        .create();
+
+    HttpResponse response = pipeline.execute(request);
+
+    assertEquals("\"v1\"", fetcher.request.getHeader("If-None-Match"));
+    assertEquals("Wed, 09 Jul 2008 19:18:33 GMT", fetcher.request.getHeader("If-Modified-Since"));
+    assertEquals(null, request.getHeader("If-None-Match"));
+    assertEquals(HttpResponse.SC_OK, response.getHttpStatusCode());
+    assertEquals("cached", response.getResponseAsString());
+    assertTrue(response.getCacheTtl() > 0);
+    assertEquals(response, cache.data.get(DEFAULT_URI));
+    assertEquals(1, cache.writeCount);
+    assertEquals(1, ((DefaultRequestPipeline) pipeline).getNotModifiedCount());
+  }
+
+  @Test
+  public void callerConditionalRequestPassedThrough() throws Exception {
+    HttpRequest request = new HttpRequest(DEFAULT_URI)
+        .setAuthType(AuthType.NONE)
+        .setHeader("If-None-Match", "\"v2\"");
+
+    HttpResponse cached = new HttpResponseBuilder()
+        .setResponseString("cached")
+        .addHeader("Cache-Control", "max-age=0")
+        .addHeader("ETag", "\"v1\"")
+        .create();
+    cache.data.put(DEFAULT_URI, cached);
+
+    fetcher.response = new HttpResponseBuilder()
+        .setHttpStatusCode(HttpResponse.SC_NOT_MODIFIED)
+        .create();
+
+    HttpResponse response = pipeline.execute(request);
+
+    assertEquals(request, fetcher.request);
+    assertEquals(HttpResponse.SC_NOT_MODIFIED, response.getHttpStatusCode());
+    assertEquals(cached, cache.data.get(DEFAULT_URI));
+    assertEquals(0, ((DefaultRequestPipeline) pipeline).getNotModifiedCount());
+  }
+
   @Test
   public void authTypeNoneIgnoreCache() throws Exception {
     HttpRequest request = new HttpRequest(DEFAULT_URI)
@@ -147,6 +278,252 @@ public class DefaultRequestPipelineTest {
     assertEquals(0, cache.writeCount);
   }
 
+  @Test
+  public void executeAsyncWasCached() throws Exception {
+    HttpRequest request = new HttpRequest(DEFAULT_URI)
+        .setAuthType(AuthType.NONE);
+
+    HttpResponse cached = new HttpResponse("cached");
+    cache.data.put(DEFAULT_URI, cached);
+
+    HttpResponseFuture future = pipeline.executeAsync(request);
+
+    assertTrue(future.isDone());
+    assertEquals(cached, future.getResponse());
+    assertEquals(0, fetcher.fetchCount);
+  }
+
+  @Test
+  public void executeAsyncNotCached() throws Exception {
+    HttpRequest request = new HttpRequest(DEFAULT_URI)
+        .setAuthType(AuthType.NONE);
+
+    fetcher.response = new HttpResponse("response");
+
+    HttpResponse response = pipeline.executeAsync(request).getResponse();
+
+    assertEquals(fetcher.response, response);
+    assertEquals(response, cache.data.get(DEFAULT_URI));
+    assertEquals(1, cache.writeCount);
+    assertEquals(1, fetcher.fetchCount);
+  }
+
+  @Test(expected = GadgetException.class)
+  public void executeAsyncFetchFailure() throws Exception {
+    HttpRequest request = new HttpRequest(DEFAULT_URI)
+        .setAuthType(AuthType.NONE);
+
+    pipeline.executeAsync(request).getResponse();
+  }
+
+  @Test
+  public void executeAsyncUsesExecutor() throws Exception {
+    HttpRequest request = new HttpRequest(DEFAULT_URI)
+        .setAuthType(AuthType.OAUTH);
+
+    oauth.httpResponse = new HttpResponse("oauth result");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      ((DefaultRequestPipeline) pipeline).setExecutor(executor);
+      HttpResponse response = pipeline.executeAsync(request).get(5, TimeUnit.SECONDS);
+      assertEquals(oauth.httpResponse, response);
+      assertEquals(1, oauth.fetchCount);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void concurrentMissesAreCoalesced() throws Exception {
+    BlockingHttpFetcher blockingFetcher = new BlockingHttpFetcher();
+    DefaultRequestPipeline coalescing = newCoalescingPipeline(blockingFetcher);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<HttpResponse> first = executor.submit(executeCallable(coalescing));
+      blockingFetcher.fetchStarted.await();
+      Future<HttpResponse> second = executor.submit(executeCallable(coalescing));
+      while (coalescing.getCoalescedCount() == 0) {
+        Thread.sleep(1);
+      }
+      blockingFetcher.release.countDown();
+
+      assertEquals(blockingFetcher.response, first.get(5, TimeUnit.SECONDS));
+      assertEquals(blockingFetcher.response, second.get(5, TimeUnit.SECONDS));
+      assertEquals(1, blockingFetcher.fetchCount.get());
+      assertEquals(1, coalescing.getOriginFetchCount());
+      assertEquals(1, coalescing.getCoalescedCount());
+      assertEquals(0, coalescing.getCoalesceTimeoutCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void coalescedRequestTimesOut() throws Exception {
+    BlockingHttpFetcher blockingFetcher = new BlockingHttpFetcher();
+    DefaultRequestPipeline coalescing = newCoalescingPipeline(blockingFetcher);
+    coalescing.setCoalesceTimeoutMs(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<HttpResponse> first = executor.submit(executeCallable(coalescing));
+      blockingFetcher.fetchStarted.await();
+      Future<HttpResponse> second = executor.submit(executeCallable(coalescing));
+      while (blockingFetcher.fetchCount.get() < 2) {
+        Thread.sleep(1);
+      }
+      blockingFetcher.release.countDown();
+
+      assertEquals(blockingFetcher.response, first.get(5, TimeUnit.SECONDS));
+      assertEquals(blockingFetcher.response, second.get(5, TimeUnit.SECONDS));
+      assertEquals(2, coalescing.getOriginFetchCount());
+      assertEquals(1, coalescing.getCoalesceTimeoutCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void asyncCoalescedRequestTimesOut() throws Exception {
+    BlockingHttpFetcher blockingFetcher = new BlockingHttpFetcher();
+    final DefaultRequestPipeline coalescing = newCoalescingPipeline(blockingFetcher);
+    coalescing.setCoalesceTimeoutMs(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(1);
+    try {
+      // Without an executor, the leading fetch blocks the thread that starts it.
+      Future<HttpResponse> first = executor.submit(new Callable<HttpResponse>() {
+        public HttpResponse call() throws Exception {
+          return coalescing.executeAsync(new HttpRequest(DEFAULT_URI)).getResponse();
+        }
+      });
+      blockingFetcher.fetchStarted.await();
+      HttpResponseFuture second = coalescing.executeAsync(new HttpRequest(DEFAULT_URI));
+      while (blockingFetcher.fetchCount.get() < 2) {
+        Thread.sleep(1);
+      }
+      blockingFetcher.release.countDown();
+
+      assertEquals(blockingFetcher.response, first.get(5, TimeUnit.SECONDS));
+      assertEquals(blockingFetcher.response, second.get(5, TimeUnit.SECONDS));
+      assertEquals(1, coalescing.getCoalescedCount());
+      assertEquals(1, coalescing.getCoalesceTimeoutCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void requestsWithOwnHeadersNotCoalesced() throws Exception {
+    BlockingHttpFetcher blockingFetcher = new BlockingHttpFetcher();
+    final DefaultRequestPipeline coalescing = newCoalescingPipeline(blockingFetcher);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<HttpResponse> first = executor.submit(executeCallable(coalescing));
+      blockingFetcher.fetchStarted.await();
+      Future<HttpResponse> second = executor.submit(new Callable<HttpResponse>() {
+        public HttpResponse call() throws Exception {
+          return coalescing.execute(
+              new HttpRequest(DEFAULT_URI).addHeader("Authorization", "secret"));
+        }
+      });
+      while (blockingFetcher.fetchCount.get() < 2) {
+        Thread.sleep(1);
+      }
+      blockingFetcher.release.countDown();
+
+      first.get(5, TimeUnit.SECONDS);
+      second.get(5, TimeUnit.SECONDS);
+      assertEquals(0, coalescing.getCoalescedCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void uncacheableResponseNotShared() throws Exception {
+    BlockingHttpFetcher blockingFetcher = new BlockingHttpFetcher(new HttpResponseBuilder()
+        .setResponseString("private").setHeader("Cache-Control", "private").create());
+    DefaultRequestPipeline coalescing = newCoalescingPipeline(blockingFetcher);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<HttpResponse> first = executor.submit(executeCallable(coalescing));
+      blockingFetcher.fetchStarted.await();
+      HttpResponseFuture second = coalescing.executeAsync(new HttpRequest(DEFAULT_URI));
+      while (coalescing.getCoalescedCount() == 0) {
+        Thread.sleep(1);
+      }
+      blockingFetcher.release.countDown();
+
+      first.get(5, TimeUnit.SECONDS);
+      second.get(5, TimeUnit.SECONDS);
+      assertEquals(2, blockingFetcher.fetchCount.get());
+      assertEquals(0, coalescing.getCoalesceTimeoutCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private DefaultRequestPipeline newCoalescingPipeline(HttpFetcher httpFetcher) {
+    FakeHttpCache keyedCache = new FakeHttpCache() {
+      @Override
+      public synchronized boolean addResponse(HttpRequest request, HttpResponse response) {
+        return super.addResponse(request, response);
+      }
+
+      @Override
+      public synchronized HttpResponse getStaleResponse(HttpRequest request) {
+        return super.getStaleResponse(request);
+      }
+
+      @Override
+      public String createKey(HttpRequest request) {
+        return request.getUri().toString();
+      }
+    };
+    DefaultRequestPipeline coalescing = new DefaultRequestPipeline(httpFetcher, keyedCache, oauth,
+        new NoOpImageRewriter(), new NoOpInvalidationService());
+    coalescing.setScheduler(scheduler);
+    return coalescing;
+  }
+
+  private static Callable<HttpResponse> executeCallable(final RequestPipeline pipeline) {
+    return new Callable<HttpResponse>() {
+      public HttpResponse call() throws Exception {
+        return pipeline.execute(new HttpRequest(DEFAULT_URI));
+      }
+    };
+  }
+
+  private static class BlockingHttpFetcher implements HttpFetcher {
+    private final CountDownLatch fetchStarted = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger fetchCount = new AtomicInteger();
+    private final HttpResponse response;
+
+    private BlockingHttpFetcher() {
+      this(new HttpResponse("fetched"));
+    }
+
+    private BlockingHttpFetcher(HttpResponse response) {
+      this.response = response;
+    }
+
+    public HttpResponse fetch(HttpRequest request) throws GadgetException {
+      fetchCount.incrementAndGet();
+      fetchStarted.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT, e);
+      }
+      return response;
+    }
+  }
+
   public static class FakeHttpFetcher implements HttpFetcher {
     protected HttpRequest request;
     protected HttpResponse response;
@@ -184,6 +561,11 @@ public class DefaultRequestPipelineTest {
       return data.get(request.getUri());
     }
 
+    public HttpResponse getStaleResponse(HttpRequest request) {
+      readCount++;
+      return data.get(request.getUri());
+    }
+
     public HttpResponse removeResponse(HttpRequest key) {
       throw new UnsupportedOperationException();
     }
@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+/**
+ * Tests for DiskResponseStore.
+ */
+public class DiskResponseStoreTest {
+  private static final int SEGMENT_SIZE = 8192;
+  private static final HttpResponse RESPONSE = new HttpResponse("response");
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = File.createTempFile("shindig-disk-cache", "");
+    directory.delete();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  private DiskResponseStore open(long maxBytes) throws Exception {
+    return new DiskResponseStore(directory.getPath(), SEGMENT_SIZE, maxBytes);
+  }
+
+  private DiskResponseStore open() throws Exception {
+    return open(SEGMENT_SIZE * 100L);
+  }
+
+  private static HttpResponse bigResponse(char c) {
+    return new HttpResponse(StringUtils.repeat(String.valueOf(c), SEGMENT_SIZE / 4));
+  }
+
+  @Test
+  public void putAndGet() throws Exception {
+    DiskResponseStore store = open();
+    assertTrue(store.put("key", RESPONSE));
+    assertEquals(RESPONSE, store.get("key"));
+    assertEquals(1, store.size());
+  }
+
+  @Test
+  public void getMissing() throws Exception {
+    assertNull(open().get("key"));
+  }
+
+  @Test
+  public void putReplaces() throws Exception {
+    DiskResponseStore store = open();
+    HttpResponse other = new HttpResponse("other");
+    store.put("key", RESPONSE);
+    store.put("key", other);
+    assertEquals(other, store.get("key"));
+    assertEquals(1, store.size());
+  }
+
+  @Test
+  public void remove() throws Exception {
+    DiskResponseStore store = open();
+    store.put("key", RESPONSE);
+    assertTrue(store.remove("key"));
+    assertFalse(store.remove("key"));
+    assertNull(store.get("key"));
+  }
+
+  @Test
+  public void tooLargeNotStored() throws Exception {
+    DiskResponseStore store = open();
+    assertFalse(store.put("key", new HttpResponse(StringUtils.repeat("x", SEGMENT_SIZE))));
+    assertNull(store.get("key"));
+  }
+
+  @Test
+  public void entriesRecovered() throws Exception {
+    DiskResponseStore store = open();
+    store.put("key", RESPONSE);
+    store.put("other", bigResponse('o'));
+    store.flush();
+
+    DiskResponseStore recovered = open();
+    assertEquals(RESPONSE, recovered.get("key"));
+    assertEquals(bigResponse('o'), recovered.get("other"));
+  }
+
+  @Test
+  public void removalRecovered() throws Exception {
+    DiskResponseStore store = open();
+    store.put("key", RESPONSE);
+    store.put("other", RESPONSE);
+    store.remove("key");
+    store.flush();
+
+    DiskResponseStore recovered = open();
+    assertNull(recovered.get("key"));
+    assertEquals(RESPONSE, recovered.get("other"));
+  }
+
+  @Test
+  public void corruptTailDiscarded() throws Exception {
+    DiskResponseStore store = open();
+    store.put("key", RESPONSE);
+    store.put("other", bigResponse('o'));
+    store.flush();
+
+    // Damage a byte inside the last record's value, as a torn write would.
+    File segment = new File(directory, "segment-0000000000.dat");
+    RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+    try {
+      long last = SEGMENT_SIZE - 1;
+      raf.seek(last);
+      while (raf.read() == 0) {
+        raf.seek(--last);
+      }
+      raf.seek(last - 100);
+      raf.write(raf.read() ^ 0xff);
+    } finally {
+      raf.close();
+    }
+
+    DiskResponseStore recovered = open();
+    assertEquals(RESPONSE, recovered.get("key"));
+    assertNull(recovered.get("other"));
+
+    // New records take the place of the discarded one.
+    HttpResponse replacement = new HttpResponse("replacement");
+    recovered.put("new", replacement);
+    recovered.flush();
+    DiskResponseStore reopened = open();
+    assertEquals(RESPONSE, reopened.get("key"));
+    assertEquals(replacement, reopened.get("new"));
+    assertNull(reopened.get("other"));
+  }
+
+  @Test
+  public void oldestSegmentEvictedWhenFull() throws Exception {
+    DiskResponseStore store = open(SEGMENT_SIZE * 3L);
+    for (char c = 'a'; c <= 'z'; ++c) {
+      store.put(String.valueOf(c), bigResponse(c));
+    }
+    assertTrue(store.getSegmentIds().size() <= 3);
+    assertNull(store.get("a"));
+    assertEquals(bigResponse('z'), store.get("z"));
+    // The last dropped segment is kept as a spare for reuse.
+    assertEquals(store.getSegmentIds().size() + 1, directory.list().length);
+  }
+
+  @Test
+  public void droppedSegmentsNotRecovered() throws Exception {
+    DiskResponseStore store = open(SEGMENT_SIZE * 3L);
+    for (char c = 'a'; c <= 'z'; ++c) {
+      store.put(String.valueOf(c), bigResponse(c));
+    }
+    store.flush();
+
+    DiskResponseStore recovered = open(SEGMENT_SIZE * 3L);
+    assertNull(recovered.get("a"));
+    assertEquals(bigResponse('z'), recovered.get("z"));
+    assertEquals(store.size(), recovered.size());
+  }
+
+  @Test
+  public void unreadableEntryReleased() throws Exception {
+    DiskResponseStore store = open();
+    store.put("key", RESPONSE);
+    long liveBytes = store.getLiveBytes();
+    store.put("other", bigResponse('o'));
+    store.flush();
+
+    File segment = new File(directory, "segment-0000000000.dat");
+    RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+    try {
+      long last = SEGMENT_SIZE - 1;
+      raf.seek(last);
+      while (raf.read() == 0) {
+        raf.seek(--last);
+      }
+      raf.seek(last - 100);
+      raf.write(raf.read() ^ 0xff);
+    } finally {
+      raf.close();
+    }
+
+    assertNull(store.get("other"));
+    assertEquals(1, store.size());
+    assertEquals(liveBytes, store.getLiveBytes());
+  }
+
+  @Test
+  public void oldestSegmentCompacted() throws Exception {
+    DiskResponseStore store = open();
+    store.put("keep", RESPONSE);
+    for (int i = 0; i < 20; ++i) {
+      store.put("overwritten", bigResponse((char) ('a' + i)));
+    }
+    assertFalse(store.getSegmentIds().contains(0));
+    assertEquals(RESPONSE, store.get("keep"));
+    assertEquals(bigResponse((char) ('a' + 19)), store.get("overwritten"));
+
+    store.flush();
+    DiskResponseStore recovered = open();
+    assertEquals(RESPONSE, recovered.get("keep"));
+    assertEquals(bigResponse((char) ('a' + 19)), recovered.get("overwritten"));
+  }
+
+  @Test
+  public void keyWrittenTwiceInSegmentCompactedOnce() throws Exception {
+    DiskResponseStore store = open();
+    store.put("keep", new HttpResponse("first"));
+    store.put("keep", RESPONSE);
+    long liveBytes = store.getLiveBytes();
+    for (int i = 0; i < 20; ++i) {
+      store.put("overwritten", bigResponse((char) ('a' + i)));
+    }
+    assertFalse(store.getSegmentIds().contains(0));
+    assertEquals(RESPONSE, store.get("keep"));
+    assertEquals(2, store.size());
+
+    store.remove("overwritten");
+    assertEquals(liveBytes, store.getLiveBytes());
+  }
+
+  @Test
+  public void headersAndMetadataStored() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .setResponseString("response")
+        .addHeader("X-Header", "header")
+        .setMetadata("name", "value")
+        .create();
+    DiskResponseStore store = open();
+    store.put("key", response);
+    HttpResponse stored = store.get("key");
+    assertEquals(response, stored);
+    assertEquals("header", stored.getHeader("X-Header"));
+    assertEquals("value", stored.getMetadata().get("name"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maxBytesTooSmall() throws Exception {
+    open(SEGMENT_SIZE);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+/**
+ * Tests for FileResponseBody
+ */
+public class FileResponseBodyTest {
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = FileResponseBody.createTempFile();
+    FileUtils.writeByteArrayToFile(file, new byte[100]);
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void releaseDeletesFile() {
+    long spilledBefore = FileResponseBody.getSpilledBytes();
+    FileResponseBody body = new FileResponseBody(file);
+    assertEquals(spilledBefore + 100, FileResponseBody.getSpilledBytes());
+
+    body.release();
+
+    assertFalse(file.exists());
+    assertTrue(body.isReleased());
+    assertEquals(spilledBefore, FileResponseBody.getSpilledBytes());
+  }
+
+  @Test
+  public void retainedFileKeptUntilLastRelease() {
+    FileResponseBody body = new FileResponseBody(file);
+    assertTrue(body.retain());
+
+    body.release();
+    assertTrue(file.exists());
+
+    body.release();
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void releasedBodyCannotBeRetained() {
+    FileResponseBody body = new FileResponseBody(file);
+    body.release();
+
+    assertFalse(body.retain());
+  }
+
+  @Test
+  public void extraReleaseIgnored() {
+    long spilledBefore = FileResponseBody.getSpilledBytes();
+    FileResponseBody body = new FileResponseBody(file);
+    body.release();
+    body.release();
+
+    assertEquals(spilledBefore, FileResponseBody.getSpilledBytes());
+  }
+
+  @Test
+  public void filesCreatedInLockedProcessDirectory() throws Exception {
+    File directory = FileResponseBody.getDirectory();
+
+    assertEquals(directory, file.getParentFile());
+    assertTrue(new File(directory, FileResponseBody.LOCK_NAME).exists());
+
+    FileResponseBody.deleteStaleDirectories(directory.getParentFile(), Long.MAX_VALUE);
+    assertTrue(file.exists());
+  }
+
+  @Test
+  public void abandonedDirectoryDeleted() throws Exception {
+    File parent = createDirectory(null);
+    try {
+      File abandoned = createDirectory(parent);
+      new File(abandoned, FileResponseBody.LOCK_NAME).createNewFile();
+      File body = File.createTempFile(FileResponseBody.FILE_PREFIX, FileResponseBody.FILE_SUFFIX,
+          abandoned);
+
+      assertEquals(1, FileResponseBody.deleteStaleDirectories(parent, 0L));
+
+      assertFalse(body.exists());
+      assertFalse(abandoned.exists());
+    } finally {
+      FileUtils.deleteDirectory(parent);
+    }
+  }
+
+  @Test
+  public void lockedDirectoryKept() throws Exception {
+    File parent = createDirectory(null);
+    try {
+      File owned = createDirectory(parent);
+      RandomAccessFile lockFile =
+          new RandomAccessFile(new File(owned, FileResponseBody.LOCK_NAME), "rw");
+      try {
+        lockFile.getChannel().lock();
+
+        assertEquals(0, FileResponseBody.deleteStaleDirectories(parent, Long.MAX_VALUE));
+        assertTrue(owned.exists());
+      } finally {
+        lockFile.close();
+      }
+    } finally {
+      FileUtils.deleteDirectory(parent);
+    }
+  }
+
+  @Test
+  public void recentUnlockedDirectoryKept() throws Exception {
+    File parent = createDirectory(null);
+    try {
+      File created = createDirectory(parent);
+
+      assertEquals(0, FileResponseBody.deleteStaleDirectories(parent, created.lastModified()));
+      assertTrue(created.exists());
+
+      assertEquals(1, FileResponseBody.deleteStaleDirectories(parent, Long.MAX_VALUE));
+      assertFalse(created.exists());
+    } finally {
+      FileUtils.deleteDirectory(parent);
+    }
+  }
+
+  /**
+   * Creates a response directory in parent, or a directory for the test itself when null.
+   */
+  private static File createDirectory(File parent) throws Exception {
+    String prefix = parent == null ? "test" : FileResponseBody.DIRECTORY_PREFIX;
+    File dir = File.createTempFile(prefix, "", parent);
+    dir.delete();
+    dir.mkdir();
+    return dir;
+  }
+}
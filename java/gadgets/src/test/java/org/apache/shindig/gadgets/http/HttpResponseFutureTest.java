@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.shindig.gadgets.GadgetException;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class HttpResponseFutureTest {
+  private static final HttpResponse RESPONSE = new HttpResponse("hello");
+
+  private static class RecordingCallback implements HttpResponseFuture.Callback {
+    HttpResponse response;
+    GadgetException exception;
+    int calls;
+
+    public void onResponse(HttpResponse response) {
+      this.response = response;
+      calls++;
+    }
+
+    public void onFailure(GadgetException e) {
+      this.exception = e;
+      calls++;
+    }
+  }
+
+  @Test
+  public void callbackRunsOnCompletion() throws Exception {
+    HttpResponseFuture future = new HttpResponseFuture();
+    RecordingCallback callback = new RecordingCallback();
+    future.addCallback(callback);
+    assertEquals(0, callback.calls);
+
+    assertTrue(future.set(RESPONSE));
+
+    assertTrue(future.isDone());
+    assertEquals(1, callback.calls);
+    assertSame(RESPONSE, callback.response);
+    assertSame(RESPONSE, future.get());
+  }
+
+  @Test
+  public void callbackRunsImmediatelyWhenDone() {
+    RecordingCallback callback = new RecordingCallback();
+    HttpResponseFuture.immediate(RESPONSE).addCallback(callback);
+    assertEquals(1, callback.calls);
+    assertSame(RESPONSE, callback.response);
+  }
+
+  @Test
+  public void completesOnlyOnce() throws Exception {
+    HttpResponseFuture future = new HttpResponseFuture();
+    RecordingCallback callback = new RecordingCallback();
+    future.addCallback(callback);
+
+    assertTrue(future.set(RESPONSE));
+    assertFalse(future.set(new HttpResponse("other")));
+    assertFalse(future.setException(new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR)));
+
+    assertEquals(1, callback.calls);
+    assertSame(RESPONSE, future.getResponse());
+  }
+
+  @Test
+  public void failure() throws Exception {
+    GadgetException e = new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT);
+    HttpResponseFuture future = HttpResponseFuture.failed(e);
+    RecordingCallback callback = new RecordingCallback();
+    future.addCallback(callback);
+
+    assertSame(e, callback.exception);
+    assertNull(callback.response);
+    try {
+      future.get();
+      fail("Expected ExecutionException");
+    } catch (ExecutionException ee) {
+      assertSame(e, ee.getCause());
+    }
+    try {
+      future.getResponse();
+      fail("Expected GadgetException");
+    } catch (GadgetException ge) {
+      assertSame(e, ge);
+    }
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void getTimesOut() throws Exception {
+    new HttpResponseFuture().get(1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void cancel() {
+    HttpResponseFuture future = new HttpResponseFuture();
+    RecordingCallback callback = new RecordingCallback();
+    future.addCallback(callback);
+
+    assertTrue(future.cancel(true));
+    assertTrue(future.isCancelled());
+    assertFalse(future.set(RESPONSE));
+    assertEquals(1, callback.calls);
+    assertTrue(callback.exception != null);
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks for HttpResponse serialization: the original Externalizable layout, the binary
+ * Externalizable layout, and HttpResponseSerializer. Reports throughput and bytes per entry.
+ */
+public class HttpResponseSerializationBenchmark {
+  private final HttpResponseSerializer serializer = new HttpResponseSerializer();
+  private final HttpResponse response;
+  private int numRuns;
+  private boolean warmup;
+
+  private HttpResponseSerializationBenchmark(int bodySize, int numRuns) throws Exception {
+    response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "text/html; charset=UTF-8")
+        .addHeader("Cache-Control", "public, max-age=3600")
+        .addHeader("Last-Modified", "Mon, 01 Jun 2009 10:00:00 GMT")
+        .addHeader("ETag", "\"4a23a6e0-1d2b\"")
+        .addHeader("Server", "Apache")
+        .addHeader("Vary", "Accept-Encoding")
+        .setResponseString(StringUtils.repeat("x", bodySize))
+        .setMetadata("rewritten", "true")
+        .create();
+
+    this.numRuns = 1000;
+    warmup = true;
+    runAll();
+    //Sleep to let JIT kick in
+    Thread.sleep(10000L);
+    this.numRuns = numRuns;
+    warmup = false;
+    runAll();
+  }
+
+  private void runAll() throws Exception {
+    output("Body of " + response.getContentLength() + " bytes-----------------");
+    timeLegacyExternalizable();
+    timeExternalizable();
+    timeSerializer();
+  }
+
+  private void output(String string) {
+    if (!warmup) {
+      System.out.println(string);
+    }
+  }
+
+  private void report(String name, long millis, int bytes) {
+    output(name + " [" + millis + " ms total: " + ((double) millis * 1000) / numRuns +
+        " us/entry, " + (numRuns * 1000L) / Math.max(millis, 1) + " entries/s, " +
+        bytes + " bytes/entry]");
+  }
+
+  private void timeLegacyExternalizable() throws Exception {
+    LegacyResponse legacy = new LegacyResponse(response);
+    int bytes = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < numRuns; ++i) {
+      byte[] serialized = writeObject(legacy);
+      readObject(serialized);
+      bytes = serialized.length;
+    }
+    report("Original Externalizable", System.currentTimeMillis() - start, bytes);
+  }
+
+  private void timeExternalizable() throws Exception {
+    int bytes = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < numRuns; ++i) {
+      byte[] serialized = writeObject(response);
+      readObject(serialized);
+      bytes = serialized.length;
+    }
+    report("Binary Externalizable", System.currentTimeMillis() - start, bytes);
+  }
+
+  private void timeSerializer() throws Exception {
+    int bytes = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < numRuns; ++i) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(out);
+      serializer.write(response, data);
+      data.close();
+      byte[] serialized = out.toByteArray();
+      serializer.read(new DataInputStream(new ByteArrayInputStream(serialized)));
+      bytes = serialized.length;
+    }
+    report("HttpResponseSerializer", System.currentTimeMillis() - start, bytes);
+  }
+
+  private static byte[] writeObject(Object object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(object);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static Object readObject(byte[] bytes) throws Exception {
+    return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+  }
+
+  /**
+   * Writes the layout HttpResponse used before the binary format, and reads it back through
+   * HttpResponse.readExternal, which recomputes everything from the headers.
+   */
+  public static class LegacyResponse implements Externalizable {
+    private HttpResponse response;
+
+    public LegacyResponse() {}
+
+    LegacyResponse(HttpResponse response) {
+      this.response = response;
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+      out.writeInt(response.getHttpStatusCode());
+      Map<String, List<String>> map = Maps.newHashMap();
+      for (Map.Entry<String, String> header : response.getHeaders().entries()) {
+        List<String> values = map.get(header.getKey());
+        if (values == null) {
+          values = Lists.newArrayList();
+          map.put(header.getKey(), values);
+        }
+        values.add(header.getValue());
+      }
+      out.writeObject(map);
+      byte[] body = response.getResponseAsBytes();
+      out.writeInt(body.length);
+      out.write(body);
+    }
+
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      response = new HttpResponse();
+      response.readExternal(in);
+    }
+  }
+
+  public static void main(String[] args) {
+    // Test can be run as standalone program to compare serialization throughput and sizes.
+    if (args.length != 2) {
+      System.err.println("Args: <body-bytes> <num-runs>");
+      System.exit(1);
+    }
+
+    try {
+      new HttpResponseSerializationBenchmark(Integer.parseInt(args[0]),
+          Integer.parseInt(args[1]));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
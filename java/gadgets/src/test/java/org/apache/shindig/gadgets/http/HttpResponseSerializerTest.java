@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Tests for HttpResponseSerializer.
+ */
+public class HttpResponseSerializerTest {
+  private final HttpResponseSerializer serializer = new HttpResponseSerializer();
+
+  private HttpResponse roundTrip(HttpResponse response) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    serializer.write(response, out);
+    out.close();
+    return serializer.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  @Test
+  public void statusHeadersAndBodyKept() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .setHttpStatusCode(HttpResponse.SC_NOT_FOUND)
+        .addHeader("Content-Type", "text/plain; charset=UTF-8")
+        .addHeader("Set-Cookie", "a=b")
+        .addHeader("Set-Cookie", "c=d")
+        .setResponseString("not found")
+        .create();
+
+    HttpResponse copy = roundTrip(response);
+    assertEquals(response, copy);
+    assertEquals("not found", copy.getResponseAsString());
+    assertEquals(2, copy.getHeaders("Set-Cookie").size());
+  }
+
+  @Test
+  public void metadataKept() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .setMetadata("key", "value")
+        .create();
+    assertEquals("value", roundTrip(response).getMetadata().get("key"));
+  }
+
+  @Test
+  public void gzippedBodyKeptCompressed() throws Exception {
+    String body = StringUtils.repeat("compressible ", 1000);
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "text/html")
+        .setResponseString(body)
+        .compressResponse()
+        .create();
+
+    HttpResponse copy = roundTrip(response);
+    assertTrue(copy.isGzipped());
+    assertEquals(response.getGzippedLength(), copy.getGzippedLength());
+    assertEquals(body, copy.getResponseAsString());
+  }
+
+  @Test
+  public void plainBodyNotCompressed() throws Exception {
+    assertFalse(roundTrip(new HttpResponse("body")).isGzipped());
+  }
+
+  @Test
+  public void versionOneRead() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(1);
+    out.writeInt(HttpResponse.SC_OK);
+    out.writeInt(1);
+    out.writeUTF("Content-Type");
+    out.writeUTF("text/plain; charset=UTF-8");
+    out.writeInt(1);
+    out.writeUTF("key");
+    out.writeUTF("value");
+    out.writeBoolean(false);
+    out.writeInt(4);
+    out.write("body".getBytes("UTF-8"));
+    out.close();
+
+    HttpResponse response
+        = serializer.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(HttpResponse.SC_OK, response.getHttpStatusCode());
+    assertEquals("text/plain; charset=UTF-8", response.getHeader("Content-Type"));
+    assertEquals("value", response.getMetadata().get("key"));
+    assertEquals("body", response.getResponseAsString());
+  }
+
+  @Test(expected = IOException.class)
+  public void unknownVersionRejected() throws Exception {
+    serializer.read(new DataInputStream(new ByteArrayInputStream(new byte[] {99})));
+  }
+}
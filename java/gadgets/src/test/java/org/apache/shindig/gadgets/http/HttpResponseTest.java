@@ -23,15 +23,22 @@ import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertNotNull;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import static junitx.framework.Assert.assertEquals;
 import static junitx.framework.Assert.assertFalse;
@@ -302,6 +309,24 @@ public class HttpResponseTest {
     assertTtlOk(maxAge, response);
   }
 
+  @Test
+  public void testStaleDirectives() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Cache-Control", "max-age=10, stale-while-revalidate=30, stale-if-error=600")
+        .create();
+    assertEquals(30000L, response.getStaleWhileRevalidateTtl());
+    assertEquals(600000L, response.getStaleIfErrorTtl());
+  }
+
+  @Test
+  public void testStaleDirectivesMissingOrInvalid() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Cache-Control", "max-age=10, stale-while-revalidate=soon")
+        .create();
+    assertEquals(-1L, response.getStaleWhileRevalidateTtl());
+    assertEquals(-1L, response.getStaleIfErrorTtl());
+  }
+
   @Test
   public void testMaxAgeInvalidDate() throws Exception {
     int maxAge = 10;
@@ -498,4 +523,126 @@ public class HttpResponseTest {
 
     assertEquals(expectedResponse, deserialized);
   }
+
+  @Test
+  public void testSerializationKeepsComputedValues() throws Exception {
+    long now = System.currentTimeMillis();
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "text/html; charset=ISO-8859-1")
+        .addHeader("Cache-Control", "max-age=1000, stale-if-error=30")
+        .addHeader("Date", DateUtil.formatRfc1123Date(now))
+        .addHeader("X-Unicode", "\u4F60\u597D")
+        .setResponse(LATIN1_DATA)
+        .setMetadata("foo", "bar")
+        .create();
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(baos);
+    out.writeObject(response);
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+    HttpResponse deserialized = (HttpResponse)in.readObject();
+
+    assertEquals(response, deserialized);
+    assertEquals("ISO-8859-1", deserialized.getEncoding());
+    assertEquals(LATIN1_STRING, deserialized.getResponseAsString());
+    assertEquals(response.getCacheExpiration(), deserialized.getCacheExpiration());
+    assertEquals(30000L, deserialized.getStaleIfErrorTtl());
+    assertEquals("\u4F60\u597D", deserialized.getHeader("X-Unicode"));
+    assertEquals("bar", deserialized.getMetadata().get("foo"));
+  }
+
+  @Test
+  public void testLegacySerializationRead() throws Exception {
+    long now = System.currentTimeMillis();
+    Map<String, List<String>> headers = Maps.newHashMap();
+    headers.put("Cache-Control", Lists.newArrayList("max-age=1000"));
+    headers.put("Date", Lists.newArrayList(DateUtil.formatRfc1123Date(now)));
+    headers.put("Foo", Lists.newArrayList("bar", "baz"));
+
+    // The layout written before the binary format.
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(baos);
+    out.writeInt(HttpResponse.SC_OK);
+    out.writeObject(headers);
+    out.writeInt(UTF8_DATA.length);
+    out.write(UTF8_DATA);
+    out.close();
+
+    HttpResponse deserialized = new HttpResponse();
+    deserialized.readExternal(new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())));
+
+    assertEquals(HttpResponse.SC_OK, deserialized.getHttpStatusCode());
+    assertEquals(Arrays.asList("bar", "baz"), Lists.newArrayList(deserialized.getHeaders("Foo")));
+    assertEquals(roundToSeconds(now + 1000000L),
+        roundToSeconds(deserialized.getCacheExpiration()));
+    assertTrue(Arrays.equals(UTF8_DATA, IOUtils.toByteArray(deserialized.getResponse())));
+    assertTrue(deserialized.getMetadata().isEmpty());
+  }
+
+  @Test
+  public void testHeaderLookupsAreCaseInsensitive() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("X-Foo", "one")
+        .addHeader("x-foo", "two")
+        .addHeader("Cache-Control", "no-store")
+        .create();
+
+    assertEquals("one", response.getHeader("x-FOO"));
+    assertEquals(Arrays.asList("one", "two"), Lists.newArrayList(response.getHeaders("X-FOO")));
+    assertTrue(response.getHeaders("X-Bar").isEmpty());
+    assertEquals(2, response.getHeaders().get("x-foo").size());
+    assertTrue(response.isStrictNoCache());
+
+    HttpResponse other = new HttpResponseBuilder()
+        .addHeader("x-foo", "one")
+        .addHeader("X-Foo", "two")
+        .addHeader("cache-control", "no-store")
+        .addHeader("Date", response.getHeader("Date"))
+        .create();
+    assertEquals(response, other);
+  }
+
+  @Test
+  public void testFileBackedBody() throws Exception {
+    File file = File.createTempFile("response", ".tmp");
+    FileOutputStream os = new FileOutputStream(file);
+    os.write(UTF8_DATA);
+    os.close();
+
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "text/plain; charset=UTF-8")
+        .setResponseFile(file)
+        .create();
+
+    assertEquals(UTF8_DATA.length, response.getContentLength());
+    assertTrue(Arrays.equals(UTF8_DATA, IOUtils.toByteArray(response.getResponse())));
+    assertEquals(UTF8_STRING, response.getResponseAsString());
+
+    // Copies share the file rather than reading it onto the heap.
+    HttpResponse copy = new HttpResponseBuilder(response).addHeader("Foo", "bar").create();
+    assertTrue(response.getResponseFile() == copy.getResponseFile());
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(baos);
+    out.writeObject(response);
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+    assertEquals(response, in.readObject());
+  }
+
+  @Test
+  public void testFileBackedBodyEncodingDetection() throws Exception {
+    File file = File.createTempFile("response", ".tmp");
+    FileOutputStream os = new FileOutputStream(file);
+    os.write(LATIN1_DATA);
+    os.close();
+
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "text/plain")
+        .setResponseFile(file)
+        .create();
+
+    assertEquals("ISO-8859-1", response.getEncoding().toUpperCase());
+    assertEquals("text/plain; charset=ISO-8859-1", response.getHeader("Content-Type"));
+    response.release();
+  }
 }
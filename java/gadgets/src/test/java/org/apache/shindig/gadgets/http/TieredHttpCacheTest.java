@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.uri.Uri;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * Tests for TieredHttpCache.
+ */
+public class TieredHttpCacheTest {
+  private static final HttpRequest REQUEST = new HttpRequest(Uri.parse("http://example.org/a"));
+  private static final HttpResponse RESPONSE = new HttpResponse("response");
+
+  private final CacheProvider cacheProvider = new LruCacheProvider(10);
+  private final Cache<String, HttpResponse> cache
+      = cacheProvider.createCache(DefaultHttpCache.CACHE_NAME);
+  private File directory;
+  private DiskResponseStore diskStore;
+  private TieredHttpCache httpCache;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = File.createTempFile("shindig-disk-cache", "");
+    directory.delete();
+    diskStore = new DiskResponseStore(directory.getPath(), 8192, 8192 * 10);
+    httpCache = new TieredHttpCache(cacheProvider, diskStore);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Test
+  public void addWritesBothTiers() {
+    httpCache.addResponse(REQUEST, RESPONSE);
+    String key = httpCache.createKey(REQUEST);
+    assertEquals(RESPONSE, cache.getElement(key));
+    assertEquals(RESPONSE, diskStore.get(key));
+  }
+
+  @Test
+  public void diskHitPromoted() {
+    httpCache.addResponse(REQUEST, RESPONSE);
+    String key = httpCache.createKey(REQUEST);
+    cache.removeElement(key);
+
+    assertEquals(RESPONSE, httpCache.getResponse(REQUEST));
+    assertEquals(RESPONSE, cache.getElement(key));
+  }
+
+  @Test
+  public void removeClearsBothTiers() {
+    httpCache.addResponse(REQUEST, RESPONSE);
+    httpCache.removeResponse(REQUEST);
+    assertNull(httpCache.getResponse(REQUEST));
+    assertNull(diskStore.get(httpCache.createKey(REQUEST)));
+  }
+}
@@ -28,6 +28,7 @@ import org.apache.shindig.gadgets.Gadget;
 import org.apache.shindig.gadgets.http.HttpFetcher;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseFuture;
 import org.apache.shindig.gadgets.http.HttpResponseBuilder;
 import org.apache.shindig.gadgets.http.RequestPipeline;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
@@ -36,14 +37,17 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Tests for HttpPreloader.
@@ -64,6 +68,10 @@ public class HttpPreloaderTest extends PreloaderTestFixture {
       return oauthFetcher.fetch(request);
     }
 
+    public HttpResponseFuture executeAsync(HttpRequest request) {
+      return HttpResponseFuture.immediate(execute(request));
+    }
+
     public void normalizeProtocol(HttpRequest request) {}
   };
 
@@ -218,6 +226,44 @@ public class HttpPreloaderTest extends PreloaderTestFixture {
     checkResults(list.get(1), PRELOAD_HREF2);
   }
 
+  @Test
+  public void spilledResponseReleasedOnce() throws Exception {
+    final File file = File.createTempFile("preload", ".tmp");
+    FileUtils.writeStringToFile(file, PRELOAD_CONTENT, "UTF-8");
+    RequestPipeline spillingPipeline = new RequestPipeline() {
+      public HttpResponse execute(HttpRequest request) {
+        return new HttpResponseBuilder()
+            .setMetadata(PRELOAD_METADATA)
+            .setResponseFile(file)
+            .addHeader("Set-Cookie", "yo=momma")
+            .create();
+      }
+
+      public HttpResponseFuture executeAsync(HttpRequest request) {
+        return HttpResponseFuture.immediate(execute(request));
+      }
+
+      public void normalizeProtocol(HttpRequest request) {}
+    };
+    String xml =
+        "<Module><ModulePrefs title=''>" +
+        " <Preload href='" + PRELOAD_HREF + "'/>" +
+        "</ModulePrefs><Content/></Module>";
+    GadgetSpec spec = new GadgetSpec(GADGET_URL, xml);
+    Preloader preloader = new HttpPreloader(spillingPipeline);
+
+    Gadget gadget = new Gadget()
+        .setContext(context)
+        .setSpec(spec)
+        .setCurrentView(spec.getView(GadgetSpec.DEFAULT_VIEW));
+    Callable<PreloadedData> task = preloader.createPreloadTasks(gadget).iterator().next();
+    Future<PreloadedData> future = ((AsyncPreloadTask) task).start();
+
+    checkResults(future.get().toJson().iterator().next());
+    assertFalse(file.exists());
+    checkResults(future.get().toJson().iterator().next());
+  }
+
   private List<Object> getAll(Collection<Callable<PreloadedData>> preloaded) throws Exception {
     List<Object> list = Lists.newArrayList();
     for (Callable<PreloadedData> preloadCallable : preloaded) {
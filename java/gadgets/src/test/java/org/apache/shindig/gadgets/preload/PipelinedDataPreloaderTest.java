@@ -32,6 +32,7 @@ import org.apache.shindig.gadgets.GadgetELResolver;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseFuture;
 import org.apache.shindig.gadgets.http.HttpResponseBuilder;
 import org.apache.shindig.gadgets.http.RequestPipeline;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
@@ -509,6 +510,10 @@ public class PipelinedDataPreloaderTest extends PreloaderTestFixture {
       return response;
     }
 
+    public HttpResponseFuture executeAsync(HttpRequest request) {
+      return HttpResponseFuture.immediate(execute(request));
+    }
+
     public void normalizeProtocol(HttpRequest request) throws GadgetException {}
   }
 }
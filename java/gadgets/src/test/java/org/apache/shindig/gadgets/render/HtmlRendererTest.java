@@ -23,6 +23,8 @@ import static org.junit.Assert.assertTrue;
 
 import org.apache.shindig.auth.AnonymousSecurityToken;
 import org.apache.shindig.auth.SecurityToken;
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.testing.FakeGadgetToken;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.xml.XmlUtil;
 import org.apache.shindig.gadgets.Gadget;
@@ -32,6 +34,7 @@ import org.apache.shindig.gadgets.preload.PreloadedData;
 import org.apache.shindig.gadgets.preload.PreloaderService;
 import org.apache.shindig.gadgets.rewrite.CaptureRewriter;
 import org.apache.shindig.gadgets.rewrite.GadgetRewriter;
+import org.apache.shindig.gadgets.rewrite.MutableContent;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.View;
 import org.junit.Before;
@@ -64,12 +67,18 @@ public class HtmlRendererTest {
   private HtmlRenderer renderer;
 
   private Gadget makeGadget(String content) throws GadgetException {
+    return makeGadget("", content, CONTEXT);
+  }
+
+  private Gadget makeGadget(String prefs, String content, GadgetContext context)
+      throws GadgetException {
     GadgetSpec spec = new GadgetSpec(SPEC_URL,
-        "<Module><ModulePrefs title=''/><Content><![CDATA[" + content + "]]></Content></Module>");
+        "<Module><ModulePrefs title=''>" + prefs + "</ModulePrefs>" +
+        "<Content><![CDATA[" + content + "]]></Content></Module>");
 
     return new Gadget()
         .setSpec(spec)
-        .setContext(CONTEXT)
+        .setContext(context)
         .setCurrentView(spec.getView("default"));
   }
 
@@ -112,6 +121,85 @@ public class HtmlRendererTest {
     assertTrue("Rewriting not performed.", captureRewriter.viewWasRewritten());
   }
 
+  private CountingRewriter setUpCachingRenderer() {
+    CountingRewriter counter = new CountingRewriter();
+    renderer = new HtmlRenderer(preloaderService, proxyRenderer,
+        ImmutableList.of((GadgetRewriter) counter), null);
+    renderer.setCacheProvider(new LruCacheProvider(10));
+    return counter;
+  }
+
+  @Test
+  public void renderedOutputCached() throws Exception {
+    CountingRewriter counter = setUpCachingRenderer();
+    assertEquals(BASIC_HTML_CONTENT + "1", renderer.render(makeGadget(BASIC_HTML_CONTENT)));
+    assertEquals(BASIC_HTML_CONTENT + "1", renderer.render(makeGadget(BASIC_HTML_CONTENT)));
+    assertEquals(1, counter.count);
+  }
+
+  @Test
+  public void changedSpecRenderedAgain() throws Exception {
+    CountingRewriter counter = setUpCachingRenderer();
+    renderer.render(makeGadget(BASIC_HTML_CONTENT));
+    assertEquals(PROXIED_HTML_CONTENT + "2", renderer.render(makeGadget(PROXIED_HTML_CONTENT)));
+    assertEquals(2, counter.count);
+  }
+
+  @Test
+  public void ignoreCacheNotCached() throws Exception {
+    CountingRewriter counter = setUpCachingRenderer();
+    GadgetContext context = new GadgetContext() {
+      @Override
+      public boolean getIgnoreCache() {
+        return true;
+      }
+    };
+    renderer.render(makeGadget("", BASIC_HTML_CONTENT, context));
+    renderer.render(makeGadget("", BASIC_HTML_CONTENT, context));
+    assertEquals(2, counter.count);
+  }
+
+  @Test
+  public void personalTokenNotCached() throws Exception {
+    CountingRewriter counter = setUpCachingRenderer();
+    GadgetContext context = new GadgetContext() {
+      @Override
+      public SecurityToken getToken() {
+        return new FakeGadgetToken().setUpdatedToken("updated");
+      }
+    };
+    renderer.render(makeGadget("", BASIC_HTML_CONTENT, context));
+    renderer.render(makeGadget("", BASIC_HTML_CONTENT, context));
+    assertEquals(2, counter.count);
+  }
+
+  @Test
+  public void signedPreloadNotCached() throws Exception {
+    CountingRewriter counter = setUpCachingRenderer();
+    String prefs = "<Preload href='http://example.org/data' authz='signed'/>";
+    renderer.render(makeGadget(prefs, BASIC_HTML_CONTENT, CONTEXT));
+    renderer.render(makeGadget(prefs, BASIC_HTML_CONTENT, CONTEXT));
+    assertEquals(2, counter.count);
+  }
+
+  @Test
+  public void templatesNotCached() throws Exception {
+    CountingRewriter counter = setUpCachingRenderer();
+    String prefs = "<Require feature='opensocial-templates'/>";
+    renderer.render(makeGadget(prefs, BASIC_HTML_CONTENT, CONTEXT));
+    renderer.render(makeGadget(prefs, BASIC_HTML_CONTENT, CONTEXT));
+    assertEquals(2, counter.count);
+  }
+
+  private static class CountingRewriter implements GadgetRewriter {
+    private int count;
+
+    public void rewrite(Gadget gadget, MutableContent content) {
+      count++;
+      content.setContent(content.getContent() + count);
+    }
+  }
+
   private static class FakeProxyRenderer extends ProxyRenderer {
     public FakeProxyRenderer() {
       super(null, null, null);
@@ -34,6 +34,7 @@ import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.http.AbstractHttpCache;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseFuture;
 import org.apache.shindig.gadgets.http.RequestPipeline;
 import org.apache.shindig.gadgets.preload.PipelineExecutor;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
@@ -299,6 +300,14 @@ public class ProxyRendererTest {
       return lastHttpRequest;
     }
 
+    public HttpResponseFuture executeAsync(HttpRequest request) {
+      try {
+        return HttpResponseFuture.immediate(execute(request));
+      } catch (GadgetException e) {
+        return HttpResponseFuture.failed(e);
+      }
+    }
+
     public void normalizeProtocol(HttpRequest request) throws GadgetException { }
   }
 
@@ -44,6 +44,7 @@ import org.apache.shindig.gadgets.UrlGenerator;
 import org.apache.shindig.gadgets.UrlValidationStatus;
 import org.apache.shindig.gadgets.features.FeatureRegistry;
 import org.apache.shindig.gadgets.features.FeatureResource;
+import org.apache.shindig.gadgets.features.JsBundle;
 import org.apache.shindig.gadgets.parse.GadgetHtmlParser;
 import org.apache.shindig.gadgets.parse.ParseModule;
 import org.apache.shindig.gadgets.preload.PreloadException;
@@ -678,6 +679,9 @@ public class RenderingGadgetRewriterTest {
         .andReturn(ImmutableList.<FeatureResource>of());
     expect(featureRegistry.getFeatures(eq(ImmutableList.of("core", "bar"))))
         .andReturn(ImmutableList.of("core"));
+    expect(featureRegistry.getJsBundle(same(gadget.getContext()),
+        eq(ImmutableList.<String>of("core")), eq(ImmutableSet.<String>of("bar"))))
+        .andReturn(new JsBundle(ImmutableList.<FeatureResource>of(), false));
     replay(featureRegistry);
     
     rewrite(gadget, "");
@@ -846,6 +850,10 @@ public class RenderingGadgetRewriterTest {
         .andReturn(gadgetResources);
     expect(featureRegistry.getFeatures(eq(allFeatures)))
         .andReturn(allFeatures);
+    List<FeatureResource> inlineResources = Lists.newArrayList(gadgetResources);
+    inlineResources.removeAll(externResources);
+    expect(featureRegistry.getJsBundle(same(gadgetContext), eq(gadgetFeatures), eq(externLibs)))
+        .andReturn(new JsBundle(inlineResources, gadgetContext.getDebug()));
     replay(featureRegistry);
   }
   
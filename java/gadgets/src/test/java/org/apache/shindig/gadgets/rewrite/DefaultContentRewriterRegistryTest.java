@@ -21,9 +21,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import org.apache.shindig.common.cache.LruCacheProvider;
 import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.gadgets.http.DefaultHttpCache;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseBuilder;
 import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
@@ -83,4 +86,90 @@ public class DefaultContentRewriterRegistryTest extends BaseRewriterTestCase {
     assertSame(rewritten, fakeResponse);
     control.verify();
   }
+
+  private int rewriteCount;
+
+  private DefaultRequestRewriterRegistry createCachingRegistry() {
+    RequestRewriter counting = new RequestRewriter() {
+      public boolean rewrite(HttpRequest request, HttpResponse original, MutableContent content) {
+        rewriteCount++;
+        content.setContent(content.getContent() + "!");
+        return true;
+      }
+    };
+    LruCacheProvider cacheProvider = new LruCacheProvider(10);
+    DefaultRequestRewriterRegistry cachingRegistry = new DefaultRequestRewriterRegistry(
+        Lists.newArrayList(counting), parser);
+    cachingRegistry.setRewrittenResponseCache(cacheProvider, new DefaultHttpCache(cacheProvider),
+        rewriterFeatureFactory);
+    return cachingRegistry;
+  }
+
+  private static HttpResponse cacheableResponse(String body) {
+    return new HttpResponseBuilder()
+        .setResponseString(body)
+        .setHeader("Cache-Control", "public,max-age=60")
+        .create();
+  }
+
+  @Test
+  public void rewrittenResponseCached() throws Exception {
+    registry = createCachingRegistry();
+    HttpResponse response = cacheableResponse("Hello, world");
+
+    HttpResponse first = registry.rewriteHttpResponse(new HttpRequest(SPEC_URL), response);
+    HttpResponse second = registry.rewriteHttpResponse(new HttpRequest(SPEC_URL), response);
+
+    assertEquals("Hello, world!", first.getResponseAsString());
+    assertSame(first, second);
+    assertEquals(1, rewriteCount);
+  }
+
+  @Test
+  public void changedResponseRewrittenAgain() throws Exception {
+    registry = createCachingRegistry();
+
+    registry.rewriteHttpResponse(new HttpRequest(SPEC_URL), cacheableResponse("Hello"));
+    HttpResponse rewritten = registry.rewriteHttpResponse(new HttpRequest(SPEC_URL),
+        cacheableResponse("Hello, world"));
+
+    assertEquals("Hello, world!", rewritten.getResponseAsString());
+    assertEquals(2, rewriteCount);
+  }
+
+  @Test
+  public void differentContainerRewrittenAgain() throws Exception {
+    registry = createCachingRegistry();
+    HttpResponse response = cacheableResponse("Hello, world");
+
+    registry.rewriteHttpResponse(new HttpRequest(SPEC_URL), response);
+    registry.rewriteHttpResponse(new HttpRequest(SPEC_URL).setContainer("other"), response);
+
+    assertEquals(2, rewriteCount);
+  }
+
+  @Test
+  public void ignoreCacheNotCached() throws Exception {
+    registry = createCachingRegistry();
+    HttpResponse response = cacheableResponse("Hello, world");
+
+    registry.rewriteHttpResponse(new HttpRequest(SPEC_URL).setIgnoreCache(true), response);
+    registry.rewriteHttpResponse(new HttpRequest(SPEC_URL).setIgnoreCache(true), response);
+
+    assertEquals(2, rewriteCount);
+  }
+
+  @Test
+  public void uncacheableResponseNotCached() throws Exception {
+    registry = createCachingRegistry();
+    HttpResponse response = new HttpResponseBuilder()
+        .setResponseString("Hello, world")
+        .setHeader("Cache-Control", "private,max-age=0")
+        .create();
+
+    registry.rewriteHttpResponse(new HttpRequest(SPEC_URL), response);
+    registry.rewriteHttpResponse(new HttpRequest(SPEC_URL), response);
+
+    assertEquals(2, rewriteCount);
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+public class ElementIndexTest {
+  private static final Set<String> SCRIPT = ImmutableSet.of("script");
+  private static final Set<String> SCRIPT_AND_IMG = ImmutableSet.of("script", "img");
+
+  private Document doc;
+  private Element body;
+  private Element script1;
+  private Element img;
+  private Element script2;
+
+  @Before
+  public void setUp() throws Exception {
+    doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    Element html = doc.createElement("html");
+    doc.appendChild(html);
+    body = doc.createElement("body");
+    html.appendChild(body);
+    script1 = doc.createElement("SCRIPT");
+    body.appendChild(script1);
+    Element div = doc.createElement("div");
+    body.appendChild(div);
+    img = doc.createElement("img");
+    div.appendChild(img);
+    script2 = doc.createElement("script");
+    body.appendChild(script2);
+  }
+
+  @Test
+  public void elementsInDocumentOrder() {
+    ElementIndex index = new ElementIndex(doc, false);
+    assertEquals(Arrays.asList(script1, script2), index.get(SCRIPT));
+    assertEquals(Arrays.asList(script1, img, script2), index.get(SCRIPT_AND_IMG));
+    assertTrue(index.get(ImmutableSet.of("link")).isEmpty());
+  }
+
+  @Test
+  public void insertedElementsIndexed() {
+    ElementIndex index = new ElementIndex(doc, true);
+    assertTrue(index.isTracking());
+
+    Element div = doc.createElement("div");
+    Element script = doc.createElement("script");
+    div.appendChild(script);
+    body.insertBefore(div, script2);
+
+    assertEquals(Arrays.asList(script1, script, script2), index.get(SCRIPT));
+  }
+
+  @Test
+  public void removedElementsDropped() {
+    ElementIndex index = new ElementIndex(doc, true);
+    body.removeChild(img.getParentNode());
+    body.removeChild(script1);
+
+    assertEquals(Arrays.asList(script2), index.get(SCRIPT_AND_IMG));
+  }
+
+  @Test
+  public void movedElementsReordered() {
+    ElementIndex index = new ElementIndex(doc, true);
+    body.appendChild(script1);
+
+    assertEquals(Arrays.asList(img, script2, script1), index.get(SCRIPT_AND_IMG));
+  }
+
+  @Test
+  public void detachedIndexStopsTracking() {
+    ElementIndex index = new ElementIndex(doc, true);
+    index.detach();
+    body.removeChild(script1);
+
+    assertEquals(Arrays.asList(script1, script2), index.get(SCRIPT));
+  }
+
+  @Test
+  public void untrackedIndexLeavesDocumentAlone() {
+    ElementIndex index = new ElementIndex(doc, false);
+    assertFalse(index.isTracking());
+    body.removeChild(script1);
+
+    assertEquals(Arrays.asList(script1, script2), index.get(SCRIPT));
+  }
+}
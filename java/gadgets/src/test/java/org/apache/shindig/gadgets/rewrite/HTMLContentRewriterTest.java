@@ -21,7 +21,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseBuilder;
 import org.apache.shindig.gadgets.parse.caja.CajaCssLexerParser;
 
 import org.apache.commons.io.IOUtils;
@@ -388,6 +391,35 @@ public class HTMLContentRewriterTest extends BaseRewriterTestCase {
     assertTrue(text.contains(MOCK_CONCAT_BASE));
   }
 
+  @Test
+  public void testProxiedHtmlRewrittenWithoutParsing() throws Exception {
+    String content = "<html><head><script src=\"1.js\"></script>\n<script src='2.js'></script>" +
+        "</head><body><img src=\"a.png\"><style>div { background: url(b.png); }</style>" +
+        "<p>text</p></body></html>";
+    HttpRequest request = new HttpRequest(Uri.parse("http://www.example.org/dir/page.html"));
+    request.setGadget(SPEC_URL);
+    HttpResponse response = new HttpResponseBuilder()
+        .setHeader("Content-Type", "text/html")
+        .setResponseString(content)
+        .create();
+    MutableContent mc = new MutableContent(parser, response);
+
+    assertTrue(rewriter.rewrite(request, response, mc));
+    assertFalse(mc.hasDocument());
+
+    String text = mc.getContent();
+    assertEquals(1, StringUtils.countMatches(text, "<script"));
+    assertTrue(text.contains("<script src=\"http://www.test.com/dir/concat?" +
+        "rewriteMime=text/javascript&amp;gadget=http%3A%2F%2Fwww.example.org%2Fdir%2Fg.xml" +
+        "&amp;fp=1150739864&amp;refresh=3600" +
+        "&amp;1=http%3A%2F%2Fwww.example.org%2Fdir%2F1.js" +
+        "&amp;2=http%3A%2F%2Fwww.example.org%2Fdir%2F2.js\"></script>"));
+    assertTrue(text.contains("<img src=\"" + DEFAULT_PROXY_BASE +
+        "http%3A%2F%2Fwww.example.org%2Fdir%2Fa.png"));
+    assertTrue(text.contains(DEFAULT_PROXY_BASE + "http%3A%2F%2Fwww.example.org%2Fdir%2Fb.png"));
+    assertTrue(text.contains("<p>text</p></body></html>"));
+  }
+
   @Test
   public void testNoRewriteUnknownMimeType() {
     MutableContent mc = control.createMock(MutableContent.class); 
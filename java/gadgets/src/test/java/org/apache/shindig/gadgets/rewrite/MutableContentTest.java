@@ -26,20 +26,27 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.Assert;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import java.util.List;
+
 public class MutableContentTest {
+  private GadgetHtmlParser parser;
   private MutableContent mhc;
 
   @Before
   public void setUp() throws Exception {
     Injector injector = Guice.createInjector(new ParseModule(), new PropertiesModule());
-    mhc = new MutableContent(injector.getInstance(GadgetHtmlParser.class), "DEFAULT VIEW");
+    parser = injector.getInstance(GadgetHtmlParser.class);
+    mhc = new MutableContent(parser, "DEFAULT VIEW");
   }
 
   @Test
@@ -81,4 +88,64 @@ public class MutableContentTest {
     // GadgetHtmlNode hasn't changed because string hasn't changed
     assertSame(document, mhc.getDocument());
   }
+
+  @Test
+  public void readOnlyDocumentShared() throws Exception {
+    MutableContent other = new MutableContent(parser, "DEFAULT VIEW");
+    Document shared = mhc.getReadOnlyDocument();
+    assertSame(shared, other.getReadOnlyDocument());
+    assertTrue(GadgetHtmlParser.isReadOnly(shared));
+    assertTrue(mhc.hasDocument());
+    assertFalse(mhc.hasWritableDocument());
+  }
+
+  @Test
+  public void writableDocumentCopiedOnFirstUse() throws Exception {
+    MutableContent other = new MutableContent(parser, "DEFAULT VIEW");
+    Document shared = other.getReadOnlyDocument();
+
+    Document document = mhc.getDocument();
+    assertNotSame(shared, document);
+    assertFalse(GadgetHtmlParser.isReadOnly(document));
+    assertTrue(mhc.hasWritableDocument());
+    assertSame(document, mhc.getReadOnlyDocument());
+
+    document.getFirstChild().getFirstChild().setTextContent("FOO CONTENT");
+    MutableContent.notifyEdit(document);
+    assertTrue(mhc.getContent().contains("FOO CONTENT"));
+    assertEquals("DEFAULT VIEW", other.getContent());
+    assertFalse(shared.getDocumentElement().getTextContent().contains("FOO CONTENT"));
+  }
+
+  @Test
+  public void elementsByTagNameFollowEdits() throws Exception {
+    mhc.setContent("<img src=\"a.gif\"><script>x</script>");
+    assertEquals(1, mhc.getElementsByTagName("script").size());
+
+    Document document = mhc.getDocument();
+    Element script = document.createElement("script");
+    document.getDocumentElement().appendChild(script);
+    MutableContent.notifyEdit(document);
+
+    List<Element> scripts = mhc.getElementsByTagName("script");
+    assertEquals(2, scripts.size());
+    assertSame(script, scripts.get(1));
+
+    mhc.setContent("<img src=\"a.gif\">");
+    assertTrue(mhc.getElementsByTagName("script").isEmpty());
+  }
+
+  @Test
+  public void writableElementsComeFromWritableDocument() throws Exception {
+    mhc.setContent("<img src=\"a.gif\"><script>x</script>");
+    Element shared = mhc.getElementsByTagName("script").get(0);
+
+    List<Element> scripts = mhc.getWritableElementsByTagName("script");
+
+    assertTrue(mhc.hasWritableDocument());
+    assertEquals(1, scripts.size());
+    assertSame(mhc.getDocument(), scripts.get(0).getOwnerDocument());
+    assertFalse(GadgetHtmlParser.isReadOnly(scripts.get(0).getOwnerDocument()));
+    assertNotSame(shared, scripts.get(0));
+  }
 }
@@ -240,7 +240,7 @@ public class PipelineDataGadgetRewriterTest {
 
     setupGadget(getGadgetXml(contentWithDataRequest));
     Map<PipelinedData, ? extends Object> pipelines =
-        rewriter.parsePipelinedData(gadget, content.getDocument());
+        rewriter.parsePipelinedData(gadget, content);
     assertEquals(1, pipelines.size());
     PipelinedData pipeline = pipelines.keySet().iterator().next();
     PipelinedData.Batch batch = pipeline.getBatch(Expressions.forTesting(), new RootELResolver());
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for StreamingHtmlRewriter.
+ */
+public class StreamingHtmlRewriterTest {
+  private static final String HTML = "<!DOCTYPE html>\n<html><HEAD><title>a <img src=x></title>" +
+      "<!-- <img src='comment.png'> -->" +
+      "<script>var s = '<img src=\"script.png\">';</script></HEAD>\n" +
+      "<body onload=\"go()\"><IMG SRC='a.png' alt=\"a &amp; b\">< not a tag" +
+      "<img src=\"b.png\"/><p>text</p></body></html>";
+
+  private final List<String> concatenated = Lists.newArrayList();
+
+  private String rewrite(String html, StreamingHtmlRewriter.TagHandler... handlers)
+      throws Exception {
+    StringWriter out = new StringWriter();
+    boolean mutated = new StreamingHtmlRewriter(Arrays.asList(handlers))
+        .rewrite(new StringReader(html), out);
+    assertEquals(!html.equals(out.toString()), mutated);
+    return out.toString();
+  }
+
+  private final StreamingHtmlRewriter.TagHandler imgHandler =
+      new StreamingHtmlRewriter.TagHandler() {
+    @Override
+    public Set<String> getTagNames() {
+      return ImmutableSet.of("img");
+    }
+
+    @Override
+    public void startTag(StreamingHtmlRewriter.Tag tag) {
+      tag.setAttribute("src", "/proxy?url=" + tag.getAttribute("src"));
+    }
+  };
+
+  private final StreamingHtmlRewriter.TagHandler scriptHandler =
+      new StreamingHtmlRewriter.TagHandler() {
+    @Override
+    public Set<String> getTagNames() {
+      return ImmutableSet.of("script");
+    }
+
+    @Override
+    public void startTag(StreamingHtmlRewriter.Tag tag) {
+      if (tag.hasAttribute("src")) {
+        tag.setGroup("js");
+      }
+    }
+
+    @Override
+    public String rewriteContent(StreamingHtmlRewriter.Tag tag, String content) {
+      return content.toUpperCase();
+    }
+
+    @Override
+    public void concatenate(List<StreamingHtmlRewriter.Tag> tags) {
+      List<String> srcs = Lists.newArrayList();
+      for (StreamingHtmlRewriter.Tag tag : tags) {
+        srcs.add(tag.getAttribute("src"));
+      }
+      concatenated.add(StringUtils.join(srcs, ","));
+      tags.get(0).setAttribute("src", "/concat?" + StringUtils.join(srcs, "&"));
+      for (StreamingHtmlRewriter.Tag tag : tags.subList(1, tags.size())) {
+        tag.remove();
+      }
+    }
+  };
+
+  @Test
+  public void untouchedMarkupCopied() throws Exception {
+    assertEquals(HTML, rewrite(HTML));
+    assertEquals(HTML, rewrite(HTML, new StreamingHtmlRewriter.TagHandler() {
+      @Override
+      public Set<String> getTagNames() {
+        return ImmutableSet.of("p", "body");
+      }
+    }));
+  }
+
+  @Test
+  public void attributesRewritten() throws Exception {
+    String expected = "<!DOCTYPE html>\n<html><HEAD><title>a <img src=x></title>" +
+        "<!-- <img src='comment.png'> -->" +
+        "<script>var s = '<img src=\"script.png\">';</script></HEAD>\n" +
+        "<body onload=\"go()\"><img SRC=\"/proxy?url=a.png\" alt=\"a &amp; b\">< not a tag" +
+        "<img src=\"/proxy?url=b.png\"/><p>text</p></body></html>";
+    assertEquals(expected, rewrite(HTML, imgHandler));
+  }
+
+  @Test
+  public void contentRewritten() throws Exception {
+    assertEquals("<p><script type=x>ABC</script><SCRIPT>D</script ></p>",
+        rewrite("<p><script type=x>abc</script><SCRIPT>d</script ></p>", scriptHandler));
+  }
+
+  @Test
+  public void adjacentTagsConcatenated() throws Exception {
+    String html = "<script src=a.js></script>\n <script src='b.js'></script>" +
+        "<p><script src=c.js></script>x<script src=d.js></script></p>";
+    assertEquals("<script src=\"/concat?a.js&amp;b.js\"></script>\n " +
+        "<p><script src=\"/concat?c.js\"></script>x<script src=\"/concat?d.js\"></script></p>",
+        rewrite(html, scriptHandler));
+    assertEquals(Arrays.asList("a.js,b.js", "c.js", "d.js"), concatenated);
+  }
+
+  @Test
+  public void unterminatedMarkupCopied() throws Exception {
+    for (String html : new String[] {"<img src=a", "<script>abc", "<!-- abc", "<", "a <"}) {
+      assertEquals(html, rewrite(html));
+    }
+    assertEquals("<img src=\"/proxy?url=a\">", rewrite("<img src=a", imgHandler));
+  }
+
+  @Test
+  public void largeInputStreamed() throws Exception {
+    String html = StringUtils.repeat("<p class='x'>text</p><img src=a.png>", 2000);
+    String expected = StringUtils.repeat("<p class='x'>text</p><img src=\"/proxy?url=a.png\">",
+        2000);
+    assertEquals(expected, rewrite(html, imgHandler));
+    assertFalse(html.equals(expected));
+    assertTrue(expected.length() > 8192);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.servlet;
+
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.LruCacheProvider;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Tests for CacheStatsServlet.
+ */
+public class CacheStatsServletTest extends ServletTestFixture {
+
+  @Test
+  public void testStatsReported() throws Exception {
+    LruCacheProvider cacheProvider = new LruCacheProvider(10);
+    Cache<String, String> cache = cacheProvider.createCache("foo");
+    cache.addElement("key", "value");
+    cache.getElement("key");
+    cache.getElement("missing");
+
+    CacheStatsServlet servlet = new CacheStatsServlet();
+    servlet.setCacheProvider(cacheProvider);
+    replay();
+    servlet.doGet(request, recorder);
+    verify();
+
+    assertEquals("application/json; charset=UTF-8", recorder.getContentType());
+    JSONObject foo = new JSONObject(recorder.getResponseAsString()).getJSONObject("foo");
+    assertEquals(1, foo.getLong("size"));
+    assertEquals(10, foo.getLong("capacity"));
+    assertEquals(1, foo.getLong("hitCount"));
+    assertEquals(1, foo.getLong("missCount"));
+    assertEquals(0, foo.getLong("evictionCount"));
+    assertEquals(0.5, foo.getDouble("hitRate"), 0.001);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.servlet;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+
+import org.apache.shindig.gadgets.GadgetContext;
+import org.apache.shindig.gadgets.UrlGenerator;
+import org.apache.shindig.gadgets.UrlValidationStatus;
+import org.apache.shindig.gadgets.features.FeatureRegistry;
+import org.apache.shindig.gadgets.features.FeatureResource;
+import org.apache.shindig.gadgets.features.JsBundle;
+
+import com.google.common.collect.ImmutableList;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collection;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tests for JsServlet.
+ */
+public class JsServletTest extends ServletTestFixture {
+  private static final String JS = StringUtils.repeat("gadgets.foo = function() {};\n", 20);
+  private static final JsBundle BUNDLE = new JsBundle(
+      ImmutableList.<FeatureResource>of(new FeatureResource.Simple(JS, JS)), false);
+
+  private final UrlGenerator urlGenerator = mock(UrlGenerator.class);
+  private final JsServlet servlet = new JsServlet();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    servlet.setUrlGenerator(urlGenerator);
+    servlet.setRegistry(new FeatureRegistry(null) {
+      @Override
+      public JsBundle getJsBundle(
+          GadgetContext ctx, Collection<String> needed, Collection<String> excluded) {
+        return BUNDLE;
+      }
+    });
+    expect(request.getRequestURL())
+        .andReturn(new StringBuffer("http://example.org/gadgets/js/foo.js"));
+    expect(request.getRequestURI()).andReturn("/gadgets/js/foo.js");
+  }
+
+  private void expectUrlStatus(UrlValidationStatus status) {
+    expect(urlGenerator.validateJsUrl(isA(String.class))).andReturn(status);
+  }
+
+  @Test
+  public void testPlainContent() throws Exception {
+    expectUrlStatus(UrlValidationStatus.VALID_UNVERSIONED);
+    replay();
+    servlet.doGet(request, recorder);
+    verify();
+
+    assertEquals(JS + ";\n", recorder.getResponseAsString());
+    assertEquals('"' + BUNDLE.getChecksum() + '"', recorder.getHeader("ETag"));
+    assertEquals("Accept-Encoding", recorder.getHeader("Vary"));
+    assertNull(recorder.getHeader("Content-Encoding"));
+  }
+
+  @Test
+  public void testGzippedContent() throws Exception {
+    expectUrlStatus(UrlValidationStatus.VALID_UNVERSIONED);
+    expect(request.getHeader("Accept-Encoding")).andReturn("gzip, deflate");
+    replay();
+    servlet.doGet(request, recorder);
+    verify();
+
+    assertEquals("gzip", recorder.getHeader("Content-Encoding"));
+    assertEquals('"' + BUNDLE.getChecksum() + "-gzip\"", recorder.getHeader("ETag"));
+    byte[] body = recorder.getResponseAsBytes();
+    assertEquals(BUNDLE.getGzippedLength(), body.length);
+    assertEquals(JS + ";\n", IOUtils.toString(
+        new GZIPInputStream(new ByteArrayInputStream(body)), "UTF-8"));
+  }
+
+  @Test
+  public void testGzipRefused() throws Exception {
+    expectUrlStatus(UrlValidationStatus.VALID_UNVERSIONED);
+    expect(request.getHeader("Accept-Encoding")).andReturn("gzip;q=0, deflate");
+    replay();
+    servlet.doGet(request, recorder);
+    verify();
+
+    assertNull(recorder.getHeader("Content-Encoding"));
+    assertEquals(JS + ";\n", recorder.getResponseAsString());
+  }
+
+  @Test
+  public void testMatchingETagNotModified() throws Exception {
+    expectUrlStatus(UrlValidationStatus.VALID_UNVERSIONED);
+    expect(request.getHeader("If-None-Match"))
+        .andReturn("\"other\", \"" + BUNDLE.getChecksum() + '"');
+    replay();
+    servlet.doGet(request, recorder);
+    verify();
+
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, recorder.getHttpStatusCode());
+    assertEquals(0, recorder.getResponseAsBytes().length);
+  }
+
+  @Test
+  public void testOtherETagModified() throws Exception {
+    expect(request.getHeader("If-None-Match")).andReturn("\"other\"");
+    expect(request.getHeader("If-Modified-Since")).andReturn("Sat, 1 Jan 2000 00:00:00 GMT");
+    expectUrlStatus(UrlValidationStatus.VALID_VERSIONED);
+    replay();
+    servlet.doGet(request, recorder);
+    verify();
+
+    assertEquals(HttpServletResponse.SC_OK, recorder.getHttpStatusCode());
+    assertEquals(JS + ";\n", recorder.getResponseAsString());
+  }
+}
@@ -24,16 +24,31 @@ import static org.easymock.EasyMock.isA;
 
 import com.google.common.collect.Maps;
 
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.servlet.HttpServletResponseRecorder;
 import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.util.DateUtil;
 import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.http.DefaultHttpCache;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.http.HttpResponseBuilder;
+import org.apache.shindig.gadgets.http.HttpResponseFuture;
+import org.apache.shindig.gadgets.rewrite.ContentRewriterFeatureFactory;
+import org.apache.shindig.gadgets.rewrite.DefaultRequestRewriterRegistry;
+import org.apache.shindig.gadgets.rewrite.MutableContent;
+import org.apache.shindig.gadgets.rewrite.RequestRewriter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.easymock.Capture;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -78,6 +93,35 @@ public class ProxyHandlerTest extends ServletTestFixture {
     assertFalse(rewriter.responseWasRewritten());
   }
 
+  public void testAsyncIfModifiedSinceAlwaysReturnsEarly() throws Exception {
+    expect(request.getHeader("If-Modified-Since"))
+        .andReturn("Yes, this is an invalid header.").atLeastOnce();
+    replay();
+
+    proxyHandler.doFetch(request, recorder, proxyHandler.fetchAsync(request));
+    verify();
+
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, recorder.getHttpStatusCode());
+    assertFalse(rewriter.responseWasRewritten());
+  }
+
+  public void testAsyncFetchWritesFetchedRequest() throws Exception {
+    setupProxyRequestMock("www.example.com", URL_ONE);
+    expect(lockedDomainService.isSafeForOpenProxy("www.example.com")).andReturn(true);
+    HttpResponse resp = new HttpResponseBuilder().setResponse(DATA_ONE.getBytes()).create();
+    expect(pipeline.executeAsync(new HttpRequest(Uri.parse(URL_ONE))))
+        .andReturn(HttpResponseFuture.immediate(resp));
+    replay();
+
+    ProxyHandler.PendingFetch pending = proxyHandler.fetchAsync(request);
+    proxyHandler.doFetch(request, recorder, pending);
+    verify();
+
+    assertEquals(Uri.parse(URL_ONE), pending.request.getUri());
+    assertEquals(DATA_ONE, recorder.getResponseAsString());
+    assertTrue(rewriter.responseWasRewritten());
+  }
+
   public void testLockedDomainEmbed() throws Exception {
     setupProxyRequestMock("www.example.com", URL_ONE);
     expect(lockedDomainService.isSafeForOpenProxy("www.example.com")).andReturn(true);
@@ -112,6 +156,90 @@ public class ProxyHandlerTest extends ServletTestFixture {
     assertTrue(rewriter.responseWasRewritten());
   }
 
+  public void testGzippedResponseServedCompressed() throws Exception {
+    ProxyHandler handler = new ProxyHandler(pipeline, lockedDomainService, null);
+    setupProxyRequestMock("www.example.com", URL_ONE);
+    expect(request.getHeader("Accept-Encoding")).andReturn("gzip, deflate").anyTimes();
+    expect(lockedDomainService.isSafeForOpenProxy("www.example.com")).andReturn(true);
+    HttpResponse resp = new HttpResponseBuilder()
+        .setResponseString(DATA_ONE)
+        .compressResponse()
+        .create();
+    expect(pipeline.execute(isA(HttpRequest.class))).andReturn(resp);
+    replay();
+
+    handler.fetch(request, recorder);
+    verify();
+
+    assertEquals("gzip", recorder.getHeader("Content-Encoding"));
+    InputStream body =
+        new GZIPInputStream(new ByteArrayInputStream(recorder.getResponseAsBytes()));
+    assertEquals(DATA_ONE, IOUtils.toString(body, "UTF-8"));
+  }
+
+  public void testGzippedResponseInflatedForOtherClients() throws Exception {
+    ProxyHandler handler = new ProxyHandler(pipeline, lockedDomainService, null);
+    setupProxyRequestMock("www.example.com", URL_ONE);
+    expect(lockedDomainService.isSafeForOpenProxy("www.example.com")).andReturn(true);
+    HttpResponse resp = new HttpResponseBuilder()
+        .setResponseString(DATA_ONE)
+        .compressResponse()
+        .create();
+    expect(pipeline.execute(isA(HttpRequest.class))).andReturn(resp);
+    replay();
+
+    handler.fetch(request, recorder);
+    verify();
+
+    assertNull(recorder.getHeader("Content-Encoding"));
+    assertEquals(DATA_ONE, recorder.getResponseAsString());
+  }
+
+  public void testSpilledUnrewrittenResponseServedTwice() throws Exception {
+    RequestRewriter unchanged = new RequestRewriter() {
+      public boolean rewrite(HttpRequest request, HttpResponse original, MutableContent content) {
+        return false;
+      }
+    };
+    LruCacheProvider cacheProvider = new LruCacheProvider(10);
+    DefaultRequestRewriterRegistry cachingRegistry = new DefaultRequestRewriterRegistry(
+        Arrays.asList(unchanged), null);
+    cachingRegistry.setRewrittenResponseCache(cacheProvider, new DefaultHttpCache(cacheProvider),
+        new ContentRewriterFeatureFactory(null, ".*", "", "86400", "", "false"));
+    ProxyHandler handler = new ProxyHandler(pipeline, lockedDomainService, cachingRegistry);
+
+    // The first request is served from a body spilled to disk, the second from the same body
+    // held in memory, which has the same expiration and length.
+    File spilled = File.createTempFile("proxy", ".tmp");
+    FileUtils.writeStringToFile(spilled, DATA_ONE, "UTF-8");
+    String date = DateUtil.formatRfc1123Date(System.currentTimeMillis());
+    HttpResponse fetched = new HttpResponseBuilder()
+        .setResponseFile(spilled)
+        .setHeader("Date", date)
+        .setHeader("Cache-Control", "public,max-age=60")
+        .create();
+    HttpResponse cached = new HttpResponseBuilder()
+        .setResponseString(DATA_ONE)
+        .setHeader("Date", date)
+        .setHeader("Cache-Control", "public,max-age=60")
+        .create();
+
+    expect(request.getHeader("Host")).andReturn("www.example.com").times(2);
+    expect(request.getParameter("url")).andReturn(URL_ONE).atLeastOnce();
+    expect(lockedDomainService.isSafeForOpenProxy("www.example.com")).andReturn(true).times(2);
+    expect(pipeline.execute(isA(HttpRequest.class))).andReturn(fetched).andReturn(cached);
+    replay();
+
+    handler.fetch(request, recorder);
+    HttpServletResponseRecorder second = new HttpServletResponseRecorder(response);
+    handler.fetch(request, second);
+    verify();
+
+    assertFalse(spilled.exists());
+    assertEquals(DATA_ONE, recorder.getResponseAsString());
+    assertEquals(DATA_ONE, second.getResponseAsString());
+  }
+
   public void testLockedDomainFailedEmbed() throws Exception {
     setupFailedProxyRequestMock("www.example.com", URL_ONE);
     expect(lockedDomainService.isSafeForOpenProxy("www.example.com")).andReturn(false);
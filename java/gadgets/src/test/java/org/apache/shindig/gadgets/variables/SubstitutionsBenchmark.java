@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.variables;
+
+import org.apache.shindig.gadgets.variables.Substitutions.Type;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Benchmarks substitution of compiled strings against scanning each string on every call, for
+ * gadget content with a few placeholders and for titles and attributes with none.
+ */
+public class SubstitutionsBenchmark {
+  private final Substitutions substitutions = new Substitutions();
+  private final String content;
+  private final String[] attributes = {
+      "Weather for __UP_city__", "http://example.org/thumbnail.png", "A gadget by Example",
+      "__MSG_title__", "http://example.org/gadget.html?m=__MODULE_ID__", "320", "true"
+  };
+  private int numRuns;
+  private boolean warmup;
+
+  private SubstitutionsBenchmark(int numRuns) throws Exception {
+    substitutions.addSubstitution(Type.MESSAGE, "title", "Weather");
+    substitutions.addSubstitution(Type.MESSAGE, "loading", "Loading __UP_city__...");
+    substitutions.addSubstitution(Type.BIDI, "START_EDGE", "left");
+    substitutions.addSubstitution(Type.USER_PREF, "city", "Amsterdam");
+    substitutions.addSubstitution(Type.MODULE, "ID", "42");
+
+    // Typical content: mostly markup and script, with a handful of placeholders.
+    content = "<div id='w___MODULE_ID__' style='float: __BIDI_START_EDGE__'>__MSG_loading__</div>" +
+        StringUtils.repeat("<script>var gadget_data = {'a': 1, 'b': [1, 2, 3]};</script>\n", 200) +
+        "<div class='footer'>__MSG_title__ for __UP_city__</div>";
+
+    this.numRuns = 10000;
+    warmup = true;
+    runAll();
+    //Sleep to let JIT kick in
+    Thread.sleep(10000L);
+    this.numRuns = numRuns;
+    warmup = false;
+    runAll();
+  }
+
+  private void runAll() {
+    output("Content of " + content.length() + " chars-----------------");
+    timeScanning(content, "Scanning, content");
+    timeCompiled(content, "Compiled, content");
+    timeScanningAttributes();
+    timeCompiledAttributes();
+  }
+
+  private void output(String string) {
+    if (!warmup) {
+      System.out.println(string);
+    }
+  }
+
+  private void report(String name, long nanos) {
+    output(name + " [" + nanos / 1000000 + " ms total: " + ((double) nanos / 1000) / numRuns +
+        " us/run]");
+  }
+
+  private void timeScanning(String input, String name) {
+    long start = System.nanoTime();
+    for (int i = 0; i < numRuns; ++i) {
+      substitutions.scanAndSubstitute(input);
+    }
+    report(name, System.nanoTime() - start);
+  }
+
+  private void timeCompiled(String input, String name) {
+    long start = System.nanoTime();
+    for (int i = 0; i < numRuns; ++i) {
+      substitutions.substituteString(input);
+    }
+    report(name, System.nanoTime() - start);
+  }
+
+  private void timeScanningAttributes() {
+    long start = System.nanoTime();
+    for (int i = 0; i < numRuns; ++i) {
+      for (String attribute : attributes) {
+        substitutions.scanAndSubstitute(attribute);
+      }
+    }
+    report("Scanning, " + attributes.length + " attributes", System.nanoTime() - start);
+  }
+
+  private void timeCompiledAttributes() {
+    long start = System.nanoTime();
+    for (int i = 0; i < numRuns; ++i) {
+      for (String attribute : attributes) {
+        substitutions.substituteString(attribute);
+      }
+    }
+    report("Compiled, " + attributes.length + " attributes", System.nanoTime() - start);
+  }
+
+  public static void main(String[] args) {
+    // Test can be run as standalone program to compare substitution throughput.
+    if (args.length != 1) {
+      System.err.println("Args: <num-runs>");
+      System.exit(1);
+    }
+
+    try {
+      new SubstitutionsBenchmark(Integer.parseInt(args[0]));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -109,6 +109,31 @@ public class SubstitutionsTest extends TestCase {
     assertEquals("<div id='div___HI_THERE123_'/>", subst.substituteString(msg));
   }
 
+  public void testCompiledStringReusedWithOtherValues() throws Exception {
+    String msg = "Hello, __UP_name__ from __MODULE_ID__!";
+    subst.addSubstitution(Type.USER_PREF, "name", "world");
+    subst.addSubstitution(Type.MODULE, "ID", "1");
+    assertEquals("Hello, world from 1!", subst.substituteString(msg));
+
+    Substitutions other = new Substitutions();
+    other.addSubstitution(Type.USER_PREF, "name", "planet");
+    other.addSubstitution(Type.MODULE, "ID", "2");
+    assertEquals("Hello, planet from 2!", other.substituteString(msg));
+  }
+
+  public void testMissingSubstitutionScannedLikeBefore() throws Exception {
+    String msg = "__UP_missing__MODULE_ID__ and __MSG_missing__";
+    subst.addSubstitution(Type.MODULE, "ID", "123");
+    assertEquals("__UP_missing123 and __MSG_missing__", subst.substituteString(msg));
+    assertEquals(subst.scanAndSubstitute(msg), subst.substituteString(msg));
+  }
+
+  public void testNoPlaceholdersReturnsSameString() throws Exception {
+    String msg = "Hello, var__x__ world";
+    subst.addSubstitution(Type.MODULE, "ID", "123");
+    assertSame(msg, subst.substituteString(msg));
+  }
+
   public void loadTest() throws Exception {
     String msg
         = "Random text and __UP_hello__, amongst other words __MSG_world__ stuff __weeeeee";
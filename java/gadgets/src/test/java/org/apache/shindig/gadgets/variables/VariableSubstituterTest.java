@@ -19,7 +19,10 @@
 package org.apache.shindig.gadgets.variables;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
+import org.apache.shindig.common.cache.LruCacheProvider;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.GadgetException;
@@ -94,6 +97,50 @@ public class VariableSubstituterTest {
     assertEquals("I heart shindig", spec.getModulePrefs().getTitle());
   }
 
+  private static GadgetContext prefsContext(final String value, final boolean ignoreCache) {
+    return new GadgetContext() {
+      @Override
+      public UserPrefs getUserPrefs() {
+        return new UserPrefs(ImmutableMap.of("foo", value));
+      }
+
+      @Override
+      public boolean getIgnoreCache() {
+        return ignoreCache;
+      }
+    };
+  }
+
+  @Test
+  public void substitutedSpecReused() throws Exception {
+    substituter.setCacheProvider(new LruCacheProvider(10));
+    GadgetSpec spec = new GadgetSpec(Uri.parse("#"),
+        "<Module><ModulePrefs title='I heart __UP_foo__'/><UserPref name='foo'/>" +
+        "<Content/></Module>");
+
+    GadgetSpec first = substituter.substitute(prefsContext("shindig", false), spec);
+    GadgetSpec second = substituter.substitute(prefsContext("shindig", false), spec);
+    GadgetSpec other = substituter.substitute(prefsContext("gadgets", false), spec);
+
+    assertSame(first, second);
+    assertEquals("I heart gadgets", other.getModulePrefs().getTitle());
+    assertSame(other, substituter.substitute(prefsContext("gadgets", false), spec));
+  }
+
+  @Test
+  public void substitutedSpecNotReusedWithIgnoreCache() throws Exception {
+    substituter.setCacheProvider(new LruCacheProvider(10));
+    GadgetSpec spec = new GadgetSpec(Uri.parse("#"),
+        "<Module><ModulePrefs title='I heart __UP_foo__'/><UserPref name='foo'/>" +
+        "<Content/></Module>");
+
+    GadgetSpec first = substituter.substitute(prefsContext("shindig", true), spec);
+    GadgetSpec second = substituter.substitute(prefsContext("shindig", true), spec);
+
+    assertNotSame(first, second);
+    assertEquals("I heart shindig", second.getModulePrefs().getTitle());
+  }
+
   private static class FakeMessageBundleFactory implements MessageBundleFactory {
 
     public MessageBundle getBundle(GadgetSpec spec, Locale locale, boolean ignoreCache)